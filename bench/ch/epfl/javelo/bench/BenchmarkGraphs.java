@@ -0,0 +1,144 @@
+package ch.epfl.javelo.bench;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import ch.epfl.javelo.Math2;
+import ch.epfl.javelo.data.Graph;
+import ch.epfl.javelo.data.GraphEdges;
+import ch.epfl.javelo.data.GraphSectors;
+import ch.epfl.javelo.data.SyntheticGraphGenerator;
+import ch.epfl.javelo.projection.PointCh;
+
+/**
+ * Synthetic graph shared by the benchmarks: a grid of about 240'000 nodes (60 km x 40 km),
+ * generated by {@code SyntheticGraphGenerator} in a temporary directory once per JVM.
+ * <p>
+ * Non-instantiable.
+ */
+public final class BenchmarkGraphs {
+
+    private static final int NODE_COUNT = 240_000;
+    private static final long SEED = 2022;
+
+    private static Graph graph;
+    private static GraphEdges edges;
+    private static GraphSectors sectors;
+    // Bounding box of the nodes
+    private static double minE, maxE, minN, maxN;
+
+    private BenchmarkGraphs() {}
+
+    /**
+     * Retrieves the graph, generating it on the first call.
+     *
+     * @return the synthetic graph
+     */
+    public static synchronized Graph graph() {
+        if (graph == null) {
+            try {
+                Path directory = Files.createTempDirectory("javelo-bench");
+                SyntheticGraphGenerator.generate(directory, NODE_COUNT,
+                                                 SyntheticGraphGenerator.Topology.GRID, SEED);
+                graph = Graph.loadFrom(directory);
+                edges = new GraphEdges(mapFile(directory, "edges.bin"),
+                                       mapFile(directory, "profile_ids.bin").asIntBuffer(),
+                                       mapFile(directory, "elevations.bin").asShortBuffer());
+                sectors = new GraphSectors(mapFile(directory, "sectors.bin"));
+                // The files stay mapped until the JVM exits, and are deleted before their
+                // directory (in the reverse order of registration)
+                directory.toFile().deleteOnExit();
+                try (var files = Files.list(directory)) {
+                    for (Path file : files.toList())
+                        file.toFile().deleteOnExit();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            minE = minN = Double.POSITIVE_INFINITY;
+            maxE = maxN = Double.NEGATIVE_INFINITY;
+            for (int nodeId = 0; nodeId < graph.nodeCount(); nodeId++) {
+                PointCh point = graph.nodePoint(nodeId);
+                minE = Math.min(minE, point.e());
+                maxE = Math.max(maxE, point.e());
+                minN = Math.min(minN, point.n());
+                maxN = Math.max(maxN, point.n());
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * Retrieves the edges of the graph, generating it on the first call.
+     *
+     * @return the edges of the synthetic graph
+     */
+    public static synchronized GraphEdges edges() {
+        graph();
+        return edges;
+    }
+
+    /**
+     * Retrieves the sectors of the graph, generating it on the first call.
+     *
+     * @return the sectors of the synthetic graph
+     */
+    public static synchronized GraphSectors sectors() {
+        graph();
+        return sectors;
+    }
+
+    /**
+     * Retrieves the type of the profile of an edge of the graph.
+     *
+     * @param edgeId id of the edge
+     * @return the type of the profile of the edge, between 0 (no profile) and 3
+     */
+    public static synchronized int profileType(int edgeId) {
+        return edges().profileIds().get(edgeId) >>> 30;
+    }
+
+    /**
+     * Builds a random point inside the bounding box of the nodes of the graph.
+     *
+     * @param rng random generator
+     * @return a random point of the graph's area
+     */
+    public static synchronized PointCh randomPoint(SplittableRandom rng) {
+        graph();
+        return new PointCh(rng.nextDouble(minE, maxE), rng.nextDouble(minN, maxN));
+    }
+
+    /**
+     * Retrieves the south-west corner of the bounding box of the nodes of the graph.
+     *
+     * @return the south-west corner of the graph's area
+     */
+    public static synchronized PointCh southWestCorner() {
+        graph();
+        return new PointCh(minE, minN);
+    }
+
+    /**
+     * Builds a point, clamped to the bounding box of the nodes of the graph.
+     *
+     * @param e east coordinate of the point
+     * @param n north coordinate of the point
+     * @return the point, moved inside the bounding box of the graph if needed
+     */
+    public static synchronized PointCh clamp(double e, double n) {
+        graph();
+        return new PointCh(Math2.clamp(minE, e, maxE), Math2.clamp(minN, n, maxN));
+    }
+
+    private static ByteBuffer mapFile(Path directory, String fileName) throws IOException {
+        try (FileChannel channel = FileChannel.open(directory.resolve(fileName))) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+}
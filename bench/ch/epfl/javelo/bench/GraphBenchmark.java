@@ -0,0 +1,172 @@
+package ch.epfl.javelo.bench;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ch.epfl.javelo.Bits;
+import ch.epfl.javelo.Math2;
+import ch.epfl.javelo.Q28_4;
+import ch.epfl.javelo.data.EdgePoint;
+import ch.epfl.javelo.data.Graph;
+import ch.epfl.javelo.data.GraphEdges;
+import ch.epfl.javelo.data.GraphSectors;
+import ch.epfl.javelo.data.GraphSectors.Sector;
+import ch.epfl.javelo.projection.PointCh;
+
+/**
+ * Measures the accessors of the graph: the search of the closest node (compared to the search
+ * listing the sectors as records and building a point for every candidate node, and searched for
+ * all the points at once) and of the closest edge to random points, and the decoding of the
+ * profiles of the edges of each type (compared to the decoding delta by delta).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class GraphBenchmark {
+
+    private static final int COUNT = 1024;
+
+    /**
+     * Search distance around the points, in meters (the one of the application).
+     */
+    private static final double SEARCH_DISTANCE = 500;
+
+    /**
+     * Type of the profiles decoded by {@code profileSamples}.
+     */
+    @Param({"1", "2", "3"})
+    public int profileType;
+
+    private Graph graph;
+    private GraphEdges edges;
+    private GraphSectors sectors;
+    private final PointCh[] points = new PointCh[COUNT];
+    private final int[] edgeIds = new int[COUNT];
+    private int index;
+
+    @Setup
+    public void setUp() {
+        graph = BenchmarkGraphs.graph();
+        edges = BenchmarkGraphs.edges();
+        sectors = BenchmarkGraphs.sectors();
+        SplittableRandom rng = new SplittableRandom(2022);
+        for (int i = 0; i < COUNT; i++) {
+            points[i] = BenchmarkGraphs.randomPoint(rng);
+            if (graph.nodeClosestTo(points[i], SEARCH_DISTANCE)
+                    != nodeClosestToSectorRecords(graph, sectors, points[i], SEARCH_DISTANCE))
+                throw new IllegalStateException("Different closest nodes to " + points[i]);
+        }
+        for (int i = 0; i < COUNT; ) {
+            int edgeId = rng.nextInt(graph.edgeCount());
+            if (BenchmarkGraphs.profileType(edgeId) == profileType)
+                edgeIds[i++] = edgeId;
+        }
+    }
+
+    @Benchmark
+    public int nodeClosestTo() {
+        return graph.nodeClosestTo(points[index++ % COUNT], SEARCH_DISTANCE);
+    }
+
+    @Benchmark
+    public int nodeClosestToSectorRecords() {
+        return nodeClosestToSectorRecords(graph, sectors, points[index++ % COUNT],
+                                          SEARCH_DISTANCE);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public int[] nodesClosestTo() {
+        return graph.nodesClosestTo(List.of(points), SEARCH_DISTANCE);
+    }
+
+    @Benchmark
+    public EdgePoint edgeClosestTo() {
+        return graph.edgeClosestTo(points[index++ % COUNT], SEARCH_DISTANCE);
+    }
+
+    @Benchmark
+    public float[] profileSamples() {
+        return edges.profileSamples(edgeIds[index++ % COUNT]);
+    }
+
+    @Benchmark
+    public float[] profileSamplesDeltaByDelta() {
+        return profileSamplesDeltaByDelta(edges, edgeIds[index++ % COUNT]);
+    }
+
+    /**
+     * Searches the closest node to a point by listing the sectors in the area as {@code Sector}
+     * records and building a {@code PointCh} for every candidate node, as
+     * {@code Graph.nodeClosestTo} did before iterating over the sectors and the coordinates of the
+     * nodes directly (the baseline of {@code nodeClosestTo}).
+     */
+    private static int nodeClosestToSectorRecords(Graph graph,
+                                                  GraphSectors sectors,
+                                                  PointCh point,
+                                                  double searchDistance) {
+        int closestNodeId = -1;
+        double smallestSquaredDistance = Math.pow(searchDistance, 2);
+        for (Sector sector : sectors.sectorsInArea(point, searchDistance))
+            for (int nodeId = sector.startNodeId(); nodeId < sector.endNodeId(); nodeId++) {
+                double squaredDistanceToPoint = graph.nodePoint(nodeId).squaredDistanceTo(point);
+                if (squaredDistanceToPoint < smallestSquaredDistance) {
+                    smallestSquaredDistance = squaredDistanceToPoint;
+                    closestNodeId = nodeId;
+                }
+            }
+        return closestNodeId;
+    }
+
+    /**
+     * Decodes the samples of a profile delta by delta with {@code Bits.extractSigned}, summing
+     * them as floats, then reverses them if needed, as {@code profileSamples} did before decoding
+     * whole shorts (the baseline of {@code profileSamples}).
+     */
+    private static float[] profileSamplesDeltaByDelta(GraphEdges edges, int edgeId) {
+        int profileId = edges.profileIds().get(edgeId);
+        int type = profileId >>> 30;
+        int firstSampleId = profileId & ((1 << 30) - 1);
+        int length = Short.toUnsignedInt(edges.edgesBuffer().getShort(10 * edgeId + 4));
+        float[] samples = new float[1 + Math2.ceilDiv(length, 32)];
+        samples[0] = Q28_4.asFloat(Short.toUnsignedInt(edges.elevations().get(firstSampleId)));
+        if (type == 1)
+            for (int i = 1; i < samples.length; i++)
+                samples[i] = Q28_4.asFloat(
+                        Short.toUnsignedInt(edges.elevations().get(firstSampleId + i)));
+        else {
+            int samplesPerShort = (type - 1) * 2;
+            int sampleSize = Short.SIZE / samplesPerShort;
+            for (int i = 1; i < samples.length; i++) {
+                short compressed = edges.elevations().get(
+                        firstSampleId + 1 + (i - 1) / samplesPerShort);
+                int start = (-i & ~-samplesPerShort) * sampleSize;
+                samples[i] = samples[i - 1]
+                        + Q28_4.asFloat(Bits.extractSigned(compressed, start, sampleSize));
+            }
+        }
+        if (edges.isInverted(edgeId))
+            for (int i = 0, j = samples.length - 1; i < j; i++, j--) {
+                float sample = samples[i];
+                samples[i] = samples[j];
+                samples[j] = sample;
+            }
+        return samples;
+    }
+
+}
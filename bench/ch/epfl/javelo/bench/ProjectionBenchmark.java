@@ -0,0 +1,88 @@
+package ch.epfl.javelo.bench;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import ch.epfl.javelo.projection.Ch1903;
+import ch.epfl.javelo.projection.SwissBounds;
+import ch.epfl.javelo.projection.WebMercator;
+
+/**
+ * Measures the conversions between the Swiss coordinates, WGS84 and Web Mercator, on random points
+ * of Switzerland. The times are given per conversion of a point (both coordinates).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ProjectionBenchmark {
+
+    private static final int COUNT = 1024;
+
+    private final double[] es = new double[COUNT], ns = new double[COUNT];
+    private final double[] lons = new double[COUNT], lats = new double[COUNT];
+    private final double[] xs = new double[COUNT], ys = new double[COUNT];
+
+    @Setup
+    public void setUp() {
+        SplittableRandom rng = new SplittableRandom(2022);
+        for (int i = 0; i < COUNT; i++) {
+            es[i] = rng.nextDouble(SwissBounds.MIN_E, SwissBounds.MAX_E);
+            ns[i] = rng.nextDouble(SwissBounds.MIN_N, SwissBounds.MAX_N);
+            lons[i] = Ch1903.lon(es[i], ns[i]);
+            lats[i] = Ch1903.lat(es[i], ns[i]);
+            xs[i] = WebMercator.x(lons[i]);
+            ys[i] = WebMercator.y(lats[i]);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public void ch1903ToWgs84(Blackhole blackhole) {
+        for (int i = 0; i < COUNT; i++) {
+            blackhole.consume(Ch1903.lon(es[i], ns[i]));
+            blackhole.consume(Ch1903.lat(es[i], ns[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public void wgs84ToCh1903(Blackhole blackhole) {
+        for (int i = 0; i < COUNT; i++) {
+            blackhole.consume(Ch1903.e(lons[i], lats[i]));
+            blackhole.consume(Ch1903.n(lons[i], lats[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public void wgs84ToWebMercator(Blackhole blackhole) {
+        for (int i = 0; i < COUNT; i++) {
+            blackhole.consume(WebMercator.x(lons[i]));
+            blackhole.consume(WebMercator.y(lats[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public void webMercatorToWgs84(Blackhole blackhole) {
+        for (int i = 0; i < COUNT; i++) {
+            blackhole.consume(WebMercator.lon(xs[i]));
+            blackhole.consume(WebMercator.lat(ys[i]));
+        }
+    }
+
+}
@@ -0,0 +1,85 @@
+package ch.epfl.javelo.bench;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+import ch.epfl.javelo.data.Graph;
+import ch.epfl.javelo.projection.PointCh;
+import ch.epfl.javelo.routing.CityBikeCF;
+import ch.epfl.javelo.routing.ElevationProfile;
+import ch.epfl.javelo.routing.ElevationProfileComputer;
+import ch.epfl.javelo.routing.GpxGenerator;
+import ch.epfl.javelo.routing.Route;
+import ch.epfl.javelo.routing.RouteComputer;
+import ch.epfl.javelo.routing.RoutePoint;
+
+/**
+ * Measures the computations done on a route once it is found, on a route of about 10 km of the
+ * synthetic graph: its elevation profile, the closest point of the route to points near it (as
+ * when the mouse moves over the map) and its GPX document.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RouteBenchmark {
+
+    private static final int POINT_COUNT = 1024;
+
+    /**
+     * Maximum distance between the samples of the profile, in meters (the one of the application).
+     */
+    private static final double MAX_STEP_LENGTH = 5;
+
+    private Route route;
+    private ElevationProfile profile;
+    private final PointCh[] points = new PointCh[POINT_COUNT];
+    private int pointIndex;
+
+    @Setup
+    public void setUp() {
+        Graph graph = BenchmarkGraphs.graph();
+        RouteComputer routeComputer = new RouteComputer(graph, new CityBikeCF(graph));
+        PointCh corner = BenchmarkGraphs.southWestCorner();
+        int startNodeId = graph.nodeClosestTo(BenchmarkGraphs.clamp(corner.e() + 5_000,
+                                                                    corner.n() + 5_000), 200);
+        int endNodeId = graph.nodeClosestTo(BenchmarkGraphs.clamp(corner.e() + 12_000,
+                                                                  corner.n() + 12_000), 200);
+        route = routeComputer.bestRouteBetween(startNodeId, endNodeId);
+        profile = ElevationProfileComputer.elevationProfile(route, MAX_STEP_LENGTH);
+        SplittableRandom rng = new SplittableRandom(2022);
+        for (int i = 0; i < POINT_COUNT; i++) {
+            PointCh point = route.pointAt(rng.nextDouble(route.length()));
+            points[i] = new PointCh(point.e() + rng.nextDouble(-300, 300),
+                                    point.n() + rng.nextDouble(-300, 300));
+        }
+    }
+
+    @Benchmark
+    public ElevationProfile elevationProfile() {
+        return ElevationProfileComputer.elevationProfile(route, MAX_STEP_LENGTH);
+    }
+
+    @Benchmark
+    public RoutePoint pointClosestTo() {
+        return route.pointClosestTo(points[pointIndex++ % POINT_COUNT]);
+    }
+
+    @Benchmark
+    public Document createGpx() {
+        return GpxGenerator.createGpx(route, profile);
+    }
+
+}
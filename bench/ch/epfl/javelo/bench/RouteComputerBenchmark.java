@@ -0,0 +1,75 @@
+package ch.epfl.javelo.bench;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ch.epfl.javelo.data.Graph;
+import ch.epfl.javelo.projection.PointCh;
+import ch.epfl.javelo.routing.CityBikeCF;
+import ch.epfl.javelo.routing.Route;
+import ch.epfl.javelo.routing.RouteComputer;
+
+/**
+ * Measures {@code RouteComputer.bestRouteBetween} on pairs of nodes of the synthetic graph
+ * separated by about 1 km (short), 10 km (medium) or 40 km (long) as the crow flies.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RouteComputerBenchmark {
+
+    private static final int PAIR_COUNT = 64;
+
+    /**
+     * Distance as the crow flies between the nodes of a pair, in meters.
+     */
+    @Param({"1000", "10000", "40000"})
+    public double distance;
+
+    private RouteComputer routeComputer;
+    private final int[] startNodeIds = new int[PAIR_COUNT];
+    private final int[] endNodeIds = new int[PAIR_COUNT];
+    private int pairIndex;
+
+    @Setup
+    public void setUp() {
+        Graph graph = BenchmarkGraphs.graph();
+        routeComputer = new RouteComputer(graph, new CityBikeCF(graph));
+        SplittableRandom rng = new SplittableRandom(2022);
+        for (int i = 0; i < PAIR_COUNT; ) {
+            int startNodeId = rng.nextInt(graph.nodeCount());
+            PointCh start = graph.nodePoint(startNodeId);
+            double angle = rng.nextDouble(2 * Math.PI);
+            int endNodeId = graph.nodeClosestTo(
+                    BenchmarkGraphs.clamp(start.e() + distance * Math.cos(angle),
+                                          start.n() + distance * Math.sin(angle)), 200);
+            // Destinations outside of the graph are clamped, closer than the distance
+            if (endNodeId == -1
+                    || graph.nodePoint(endNodeId).distanceTo(start) < 0.8 * distance)
+                continue;
+            startNodeIds[i] = startNodeId;
+            endNodeIds[i] = endNodeId;
+            i++;
+        }
+    }
+
+    @Benchmark
+    public Route bestRouteBetween() {
+        int i = pairIndex++ % PAIR_COUNT;
+        return routeComputer.bestRouteBetween(startNodeIds[i], endNodeIds[i]);
+    }
+
+}
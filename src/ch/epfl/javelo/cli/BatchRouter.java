@@ -0,0 +1,302 @@
+package ch.epfl.javelo.cli;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import ch.epfl.javelo.Preconditions;
+import ch.epfl.javelo.data.Graph;
+import ch.epfl.javelo.projection.PointCh;
+import ch.epfl.javelo.projection.SwissBounds;
+import ch.epfl.javelo.routing.ElevationProfile;
+import ch.epfl.javelo.routing.ElevationProfileComputer;
+import ch.epfl.javelo.routing.GpxGenerator;
+import ch.epfl.javelo.routing.Landmarks;
+import ch.epfl.javelo.routing.Route;
+import ch.epfl.javelo.routing.RouteComputer;
+
+/**
+ * Headless tool computing the routes of many origin/destination pairs on a graph loaded once, on
+ * all cores.
+ * <p>
+ * Usage: {@code BatchRouter <graph directory> [--threads <count>] [--gpx <directory>]}. The pairs
+ * are read from the standard input, one per line, either as two node ids
+ * ({@code startNodeId,endNodeId}) or as the coordinates of two points in the Swiss system
+ * ({@code startE,startN,endE,endN}), snapped to the closest node within 500 m. Empty lines and
+ * lines starting with {@code #} are ignored.
+ * <p>
+ * The results are written to the standard output, in the order of the input, as CSV lines:
+ * {@code line,start_node,end_node,status,length,ascent,descent}, the status being one of
+ * {@code ok}, {@code no_route}, {@code no_node}, {@code same_node} and {@code invalid}. With
+ * {@code --gpx}, the route of each line is also written to {@code <directory>/<line>.gpx}. The
+ * throughput statistics are written to the standard error at the end.
+ * <p>
+ * The routes are computed by the default route computer of the graph (see
+ * {@code RouteComputer.loadDefault}).
+ *
+ * @author Lucas Jung (324724)
+ * @author Florian Kolly (328313)
+ */
+public final class BatchRouter {
+
+    /**
+     * Maximum radius, in meters, where a node is sought for a point.
+     */
+    private static final int SEARCH_DISTANCE = 500;
+
+    /**
+     * Maximum distance between the samples of the elevation profiles, in meters.
+     */
+    private static final int MAX_STEP_LENGTH = 5;
+
+    /**
+     * Number of lines read in advance for each thread, bounding the memory used by the results
+     * waiting to be written in order.
+     */
+    private static final int PENDING_LINES_PER_THREAD = 64;
+
+    /**
+     * Header of the output.
+     */
+    private static final String HEADER = "line,start_node,end_node,status,length,ascent,descent";
+
+    private final Graph graph;
+    private final RouteComputer routeComputer;
+    private final Path gpxDirectory;
+
+    /**
+     * BatchRouter's constructor.
+     *
+     * @param graph         the graph
+     * @param routeComputer route computer of the graph, used by all threads
+     * @param gpxDirectory  directory in which the GPX file of each route is written, or
+     *                      {@code null} to not write any
+     */
+    public BatchRouter(Graph graph, RouteComputer routeComputer, Path gpxDirectory) {
+        this.graph = graph;
+        this.routeComputer = routeComputer;
+        this.gpxDirectory = gpxDirectory;
+    }
+
+    /**
+     * Statistics of a batch. (record)
+     *
+     * @param queryCount   number of queries (pairs read)
+     * @param routeCount   number of routes found
+     * @param elapsedNanos duration of the batch, in nanoseconds
+     */
+    public record Statistics(int queryCount, int routeCount, long elapsedNanos) {
+
+        /**
+         * Computes the throughput of the batch.
+         *
+         * @return the number of queries per second
+         */
+        public double queriesPerSecond() {
+            return queryCount / (elapsedNanos / 1e9);
+        }
+
+    }
+
+    /**
+     * Result of the query of a line.
+     *
+     * @param csvLine  output line
+     * @param isRouted whether a route was found
+     */
+    private record Result(String csvLine, boolean isRouted) {
+
+    }
+
+    /**
+     * Entry point of the tool.
+     *
+     * @param args command line arguments, see the documentation of the class
+     * @throws IOException          if any input/output error is thrown during file related
+     *                              operations
+     * @throws InterruptedException if the thread is interrupted while waiting for the routes
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 0 || args.length % 2 == 0) {
+            System.err.println(
+                    "Usage: BatchRouter <graph directory> [--threads <count>] [--gpx <directory>]");
+            System.exit(2);
+        }
+        Path basePath = Path.of(args[0]);
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        Path gpxDirectory = null;
+        for (int i = 1; i < args.length; i += 2) {
+            switch (args[i]) {
+                case "--threads" -> threadCount = Integer.parseInt(args[i + 1]);
+                case "--gpx" -> gpxDirectory = Files.createDirectories(Path.of(args[i + 1]));
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        long t0 = System.nanoTime();
+        Graph graph = Graph.loadFrom(basePath);
+        RouteComputer routeComputer = RouteComputer.loadDefault(basePath, graph);
+        Landmarks landmarks = routeComputer.landmarks();
+        System.err.printf(Locale.ROOT, "Graph of %d nodes loaded in %.1f s%s%n",
+                          graph.nodeCount(), (System.nanoTime() - t0) / 1e9,
+                          landmarks != null ? ", with " + landmarks.count() + " landmarks" : "");
+
+        BatchRouter batchRouter = new BatchRouter(graph, routeComputer, gpxDirectory);
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        Writer writer = new BufferedWriter(
+                new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        Statistics statistics = batchRouter.run(reader, writer, threadCount);
+        writer.flush();
+        System.err.printf(Locale.ROOT, "%d queries, %d routes in %.1f s: %.1f queries/s"
+                                  + " on %d threads%n",
+                          statistics.queryCount(), statistics.routeCount(),
+                          statistics.elapsedNanos() / 1e9, statistics.queriesPerSecond(),
+                          threadCount);
+    }
+
+    /**
+     * Computes the routes of all the pairs of a reader, on {@code threadCount} threads, and writes
+     * the results in the order of the input as soon as they are available.
+     *
+     * @param reader      reader of the pairs, see the documentation of the class
+     * @param writer      writer of the results (not flushed)
+     * @param threadCount number of threads computing the routes
+     * @return the statistics of the batch
+     * @throws IOException              if any input/output error is thrown while reading the
+     *                                  pairs, writing the results or writing a GPX file
+     * @throws InterruptedException     if the thread is interrupted while waiting for the routes
+     * @throws IllegalArgumentException if {@code threadCount} is not strictly positive
+     */
+    public Statistics run(BufferedReader reader, Writer writer, int threadCount)
+            throws IOException, InterruptedException {
+        Preconditions.checkArgument(threadCount > 0);
+        long t0 = System.nanoTime();
+        int queryCount = 0, routeCount = 0;
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        Queue<Future<Result>> pendingResults = new ArrayDeque<>();
+        try {
+            writer.write(HEADER);
+            writer.write('\n');
+            int lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.strip();
+                if (line.isEmpty() || line.startsWith("#"))
+                    continue;
+                int queryLineNumber = lineNumber;
+                String query = line;
+                pendingResults.add(executor.submit(() -> route(queryLineNumber, query)));
+                queryCount++;
+                if (pendingResults.size() >= threadCount * PENDING_LINES_PER_THREAD
+                        && write(pendingResults.remove(), writer))
+                    routeCount++;
+            }
+            while (!pendingResults.isEmpty())
+                if (write(pendingResults.remove(), writer))
+                    routeCount++;
+        } finally {
+            executor.shutdownNow();
+        }
+        return new Statistics(queryCount, routeCount, System.nanoTime() - t0);
+    }
+
+    /**
+     * Waits for a result and writes it.
+     *
+     * @return whether a route was found
+     */
+    private static boolean write(Future<Result> pendingResult, Writer writer)
+            throws IOException, InterruptedException {
+        Result result;
+        try {
+            result = pendingResult.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException uncheckedIOException)
+                throw uncheckedIOException.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+        writer.write(result.csvLine());
+        writer.write('\n');
+        return result.isRouted();
+    }
+
+    /**
+     * Computes the route of a line of the input.
+     *
+     * @param lineNumber number of the line, from 1
+     * @param line       line of the input, neither empty nor a comment
+     * @return the result of the query
+     * @throws UncheckedIOException if the GPX file of the route can't be written
+     */
+    private Result route(int lineNumber, String line) {
+        String[] fields = line.split(",");
+        int startNodeId, endNodeId;
+        try {
+            if (fields.length == 2) {
+                startNodeId = Integer.parseInt(fields[0].strip());
+                endNodeId = Integer.parseInt(fields[1].strip());
+                if (!isNodeId(startNodeId) || !isNodeId(endNodeId))
+                    return failure(lineNumber, -1, -1, "invalid");
+            } else if (fields.length == 4) {
+                double startE = Double.parseDouble(fields[0]);
+                double startN = Double.parseDouble(fields[1]);
+                double endE = Double.parseDouble(fields[2]);
+                double endN = Double.parseDouble(fields[3]);
+                if (!SwissBounds.containsEN(startE, startN) || !SwissBounds.containsEN(endE, endN))
+                    return failure(lineNumber, -1, -1, "invalid");
+                startNodeId = graph.nodeClosestTo(new PointCh(startE, startN), SEARCH_DISTANCE);
+                endNodeId = graph.nodeClosestTo(new PointCh(endE, endN), SEARCH_DISTANCE);
+                if (startNodeId == -1 || endNodeId == -1)
+                    return failure(lineNumber, startNodeId, endNodeId, "no_node");
+            } else
+                return failure(lineNumber, -1, -1, "invalid");
+        } catch (NumberFormatException e) {
+            return failure(lineNumber, -1, -1, "invalid");
+        }
+        if (startNodeId == endNodeId)
+            return failure(lineNumber, startNodeId, endNodeId, "same_node");
+
+        Route route = routeComputer.bestRouteBetween(startNodeId, endNodeId);
+        if (route == null)
+            return failure(lineNumber, startNodeId, endNodeId, "no_route");
+        ElevationProfile profile = ElevationProfileComputer.elevationProfile(route,
+                                                                             MAX_STEP_LENGTH);
+        if (gpxDirectory != null) {
+            try {
+                GpxGenerator.writeGpx(gpxDirectory.resolve(lineNumber + ".gpx").toString(), route,
+                                      profile);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return new Result(String.format(Locale.ROOT, "%d,%d,%d,ok,%.1f,%.1f,%.1f", lineNumber,
+                                         startNodeId, endNodeId, route.length(),
+                                         profile.totalAscent(), profile.totalDescent()),
+                          true);
+    }
+
+    private boolean isNodeId(int nodeId) {
+        return 0 <= nodeId && nodeId < graph.nodeCount();
+    }
+
+    private static Result failure(int lineNumber, int startNodeId, int endNodeId, String status) {
+        return new Result(lineNumber + "," + startNodeId + "," + endNodeId + "," + status + ",,,",
+                          false);
+    }
+
+}
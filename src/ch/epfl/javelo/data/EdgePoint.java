@@ -0,0 +1,18 @@
+package ch.epfl.javelo.data;
+
+/**
+ * A point along an edge of the graph. (record)
+ * <p>
+ * Arguments are not checked.
+ *
+ * @param edgeId     id (index) of the edge
+ * @param fromNodeId id (index) of the edge's starting node
+ * @param position   position of the point along the edge, from its starting node, in meters
+ *                   (between 0 and the edge's length)
+ *
+ * @author Lucas Jung (324724)
+ * @author Florian Kolly (328313)
+ */
+public record EdgePoint(int edgeId, int fromNodeId, double position) {
+
+}
@@ -1,17 +1,24 @@
 package ch.epfl.javelo.data;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
 import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.ShortBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.function.DoubleUnaryOperator;
 import ch.epfl.javelo.Functions;
-import ch.epfl.javelo.data.GraphSectors.Sector;
+import ch.epfl.javelo.Math2;
 import ch.epfl.javelo.projection.PointCh;
 
 /**
@@ -25,13 +32,53 @@ import ch.epfl.javelo.projection.PointCh;
  */
 public final class Graph {
 
+    /**
+     * Number of integers of the header of the files derived from the nodes and edges of the
+     * graph (see {@code derivedFileHeader}).
+     */
+    public static final int DERIVED_FILE_HEADER_INTS = 4;
+
+    /**
+     * Prefix of the names of the files derived from a graph, next to its files, which depend on its
+     * node and edge ids. Any such file, whichever package computes it, must be named with this
+     * prefix to be deleted once the graph is written (see {@code deleteDerivedFiles}).
+     */
+    public static final String DERIVED_FILE_PREFIX = "derived_";
+
+    /**
+     * Approximate number of nodes, and of edges, sampled to compute the fingerprint of the graph.
+     */
+    private static final int FINGERPRINT_SAMPLES = 1024;
+
+    // 64-bit FNV-1a hash constants
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
     private final GraphNodes nodes;
     private final GraphSectors sectors;
     private final GraphEdges edges;
+
+    /**
+     * Graph's incoming edges, mapped or computed on first use if they were not given
+     * ({@code null} until then).
+     */
+    private volatile GraphInEdges inEdges;
+
+    /**
+     * Spatial index of the graph's edges, mapped or computed on first use if it was not given
+     * ({@code null} until then).
+     */
+    private volatile GraphEdgeIndex edgeIndex;
     private final List<AttributeSet> attributeSets;
 
     /**
-     * Loads and creates a graph.
+     * Directory of the graph's files, from which the incoming edges and the edge index are mapped
+     * on first use, or {@code null} if they are computed in memory.
+     */
+    private final Path basePath;
+
+    /**
+     * Loads and creates a graph, whose incoming edges and edge index are computed on first use.
      * <p>
      * WARNING: Creating a graph with {@code GraphNodes}, {@code GraphSectors} or {@code GraphEdges}
      * generated with modifiable buffers violates immutability.
@@ -45,21 +92,69 @@ public final class Graph {
                  GraphSectors sectors,
                  GraphEdges edges,
                  List<AttributeSet> attributeSets) {
+        this(nodes, sectors, edges, null, null, attributeSets);
+    }
+
+    /**
+     * Loads and creates a graph.
+     * <p>
+     * WARNING: Creating a graph with {@code GraphNodes}, {@code GraphSectors},
+     * {@code GraphEdges}, {@code GraphInEdges} or {@code GraphEdgeIndex} generated with modifiable
+     * buffers violates immutability.
+     *
+     * @param nodes         graph's nodes
+     * @param sectors       graph's sectors
+     * @param edges         graph's edges
+     * @param inEdges       graph's incoming edges, derived from {@code nodes} and {@code edges},
+     *                      or {@code null} to compute them on first use
+     * @param edgeIndex     graph's spatial index of the edges, derived from {@code nodes} and
+     *                      {@code edges}, or {@code null} to compute it on first use
+     * @param attributeSets graph's set of OSM attributes
+     */
+    public Graph(GraphNodes nodes,
+                 GraphSectors sectors,
+                 GraphEdges edges,
+                 GraphInEdges inEdges,
+                 GraphEdgeIndex edgeIndex,
+                 List<AttributeSet> attributeSets) {
+        this(nodes, sectors, edges, inEdges, edgeIndex, attributeSets, null);
+    }
+
+    private Graph(GraphNodes nodes,
+                  GraphSectors sectors,
+                  GraphEdges edges,
+                  GraphInEdges inEdges,
+                  GraphEdgeIndex edgeIndex,
+                  List<AttributeSet> attributeSets,
+                  Path basePath) {
         this.nodes = nodes;
         this.sectors = sectors;
         this.edges = edges;
+        this.inEdges = inEdges;
+        this.edgeIndex = edgeIndex;
         this.attributeSets = List.copyOf(attributeSets);
+        this.basePath = basePath;
     }
 
     /**
      * Generates a graph from the files in the directory indicated by {@code basePath}.
      * <p>
      * The following files are required: {@code nodes.bin}, {@code sectors.bin}, {@code edges.bin},
-     * {@code profile_ids.bin}, {@code elevations.bin}, {@code attributes.bin}.
+     * {@code profile_ids.bin}, {@code elevations.bin}, {@code attributes.bin}. The incoming edges
+     * are only needed by backward searches: they are mapped from {@code derived_in_edges.bin} on
+     * first use, the file being computed and written then if it is missing or does not match the
+     * graph (see {@code GraphInEdges}). Likewise, the spatial index of the edges is only needed to
+     * find the edge closest to a point: it is mapped from {@code derived_edge_index.bin} on first
+     * use (see {@code GraphEdgeIndex}).
+     * <p>
+     * The files are mapped into memory, not read: the graph only uses the memory of the pages it
+     * accesses, which the system can reclaim, and the mappings are released once the graph is
+     * garbage collected. Each file must be at most 2 GiB, the largest size of a buffer.
      *
      * @param basePath directory containing the files
      * @return the generated graph
-     * @throws IOException if any input/output error is thrown during file related operations
+     * @throws IOException if any input/output error is thrown during file related operations, or
+     *                     if a file is larger than 2 GiB
      */
     public static Graph loadFrom(Path basePath) throws IOException {
         IntBuffer nodesBuffer = mapFileToBuffer(basePath, "nodes.bin").asIntBuffer();
@@ -73,8 +168,10 @@ public final class Graph {
         while (attributesBuffer.hasRemaining())
             attributeSets.add(new AttributeSet(attributesBuffer.get()));
 
-        return new Graph(new GraphNodes(nodesBuffer), new GraphSectors(sectorsBuffer),
-                         new GraphEdges(edgesBuffer, profileIds, elevations), attributeSets);
+        GraphNodes nodes = new GraphNodes(nodesBuffer);
+        GraphEdges edges = new GraphEdges(edgesBuffer, profileIds, elevations);
+        return new Graph(nodes, new GraphSectors(sectorsBuffer), edges, null, null, attributeSets,
+                         basePath);
     }
 
     /**
@@ -118,6 +215,46 @@ public final class Graph {
         return nodes.edgeId(nodeId, edgeIndex);
     }
 
+    /**
+     * Retrieves the number of incoming edges of a given node.
+     * <p>
+     * Every edge is an incoming edge of its destination node, including the edges which a cost
+     * function forbids (e.g. against a one-way street): a backward search must evaluate the cost
+     * of an incoming edge from its starting node, as a forward search would.
+     *
+     * @param nodeId id (index) of the node
+     * @return the number of edges coming into the node
+     */
+    public int nodeInDegree(int nodeId) {
+        return inEdges().inDegree(nodeId);
+    }
+
+    /**
+     * Retrieves the id of the {@code edgeIndex}-th incoming edge of a node.
+     *
+     * @param nodeId    id (index) of the node
+     * @param edgeIndex index of the incoming edge, between 0 (included) and the in degree of the
+     *                  node (excluded)
+     * @return the id (index) of the {@code edgeIndex}-th edge coming into the node corresponding
+     *         to the given id
+     */
+    public int nodeInEdgeId(int nodeId, int edgeIndex) {
+        return inEdges().edgeId(nodeId, edgeIndex);
+    }
+
+    /**
+     * Retrieves the id of the starting node of the {@code edgeIndex}-th incoming edge of a node.
+     *
+     * @param nodeId    id (index) of the node
+     * @param edgeIndex index of the incoming edge, between 0 (included) and the in degree of the
+     *                  node (excluded)
+     * @return the id (index) of the node from which the {@code edgeIndex}-th edge coming into the
+     *         node corresponding to the given id starts
+     */
+    public int nodeInEdgeSourceNodeId(int nodeId, int edgeIndex) {
+        return inEdges().sourceNodeId(nodeId, edgeIndex);
+    }
+
     /**
      * Retrieves the index of the closest node to a given point, within a maximum distance of
      * {@code searchDistance} (in meters).
@@ -127,22 +264,111 @@ public final class Graph {
      * @return the closest node's id (index), -1 if there is no node within the given distance
      */
     public int nodeClosestTo(PointCh point, double searchDistance) {
-        List<Sector> closeSectors = sectors.sectorsInArea(point, searchDistance);
+        return nodeClosestTo(point.e(), point.n(), searchDistance);
+    }
+
+    /**
+     * Retrieves the indices of the closest nodes to the given points, within a maximum distance of
+     * {@code searchDistance} (in meters), e.g. to snap all the points of an imported track at once.
+     *
+     * @param points         center points around which the searches are performed
+     * @param searchDistance maximum search distance around each point (supposed positive or 0)
+     * @return the closest node's id (index) to each point, in the same order, -1 for the points
+     *         without any node within the given distance
+     */
+    public int[] nodesClosestTo(List<PointCh> points, double searchDistance) {
+        int[] closestNodeIds = new int[points.size()];
+        int i = 0;
+        for (PointCh point : points)
+            closestNodeIds[i++] = nodeClosestTo(point.e(), point.n(), searchDistance);
+        return closestNodeIds;
+    }
+
+    /**
+     * Same as {@code nodeClosestTo(PointCh, double)}, iterating over the sectors and the nodes'
+     * raw coordinates directly, without allocating anything. The distances are computed in
+     * sixteenths of a meter: as the scaling is a power of two, they are exactly the same.
+     */
+    private int nodeClosestTo(double e, double n, double searchDistance) {
+        int lowestColumn = GraphSectors.column(e - searchDistance);
+        int highestColumn = GraphSectors.column(e + searchDistance);
+        int lowestRow = GraphSectors.row(n - searchDistance);
+        int highestRow = GraphSectors.row(n + searchDistance);
+        double rawE = Math.scalb(e, 4), rawN = Math.scalb(n, 4);
+        double rawSearchDistance = Math.scalb(searchDistance, 4);
         int closestNodeId = -1;
-        double smallestSquaredDistance = Math.pow(searchDistance, 2);
-        for (Sector sector : closeSectors)
-            // Won't iterate if sector is empty
-            for (int nodeId = sector.startNodeId(); nodeId < sector.endNodeId(); nodeId++) {
-                PointCh candidate = nodePoint(nodeId);
-                double squaredDistanceToPoint = candidate.squaredDistanceTo(point);
-                if (squaredDistanceToPoint < smallestSquaredDistance) {
-                    smallestSquaredDistance = squaredDistanceToPoint;
-                    closestNodeId = nodeId;
+        double smallestSquaredDistance = rawSearchDistance * rawSearchDistance;
+        for (int row = lowestRow; row <= highestRow; row++)
+            for (int column = lowestColumn; column <= highestColumn; column++) {
+                int endNodeId = sectors.endNodeId(column, row);
+                // Won't iterate if sector is empty
+                for (int nodeId = sectors.startNodeId(column, row); nodeId < endNodeId; nodeId++) {
+                    double squaredDistanceToPoint = Math2.squaredNorm(
+                            rawE - nodes.rawNodeE(nodeId), rawN - nodes.rawNodeN(nodeId));
+                    if (squaredDistanceToPoint < smallestSquaredDistance) {
+                        smallestSquaredDistance = squaredDistanceToPoint;
+                        closestNodeId = nodeId;
+                    }
                 }
             }
         return closestNodeId;
     }
 
+    /**
+     * Retrieves the closest point to a given point on an edge of the graph, within a maximum
+     * distance of {@code searchDistance} (in meters). The edges are considered as straight segments
+     * between their nodes.
+     * <p>
+     * The edges are found with the spatial index of the edges, without allocating anything but the
+     * result. Of two opposite edges between the same nodes, either one can be returned.
+     *
+     * @param point          point to snap to the closest edge
+     * @param searchDistance maximum search distance around the point (supposed positive or 0)
+     * @return the closest point on an edge, the position along the edge being proportional to its
+     *         length, or {@code null} if no edge passes within the given distance
+     */
+    public EdgePoint edgeClosestTo(PointCh point, double searchDistance) {
+        GraphEdgeIndex index = edgeIndex();
+        double e = point.e(), n = point.n();
+        int minX = GraphEdgeIndex.cellX(e - searchDistance);
+        int maxX = GraphEdgeIndex.cellX(e + searchDistance);
+        int minY = GraphEdgeIndex.cellY(n - searchDistance);
+        int maxY = GraphEdgeIndex.cellY(n + searchDistance);
+        double smallestSquaredDistance = searchDistance * searchDistance;
+        int closestEdgeId = -1, closestFromNodeId = -1;
+        double closestRatio = 0;
+        for (int y = minY; y <= maxY; y++)
+            for (int entry = index.firstEntry(minX, y); entry < index.endEntry(maxX, y); entry++) {
+                int edgeId = index.edgeId(entry);
+                int fromNodeId = index.sourceNodeId(entry);
+                int toNodeId = edges.targetNodeId(edgeId);
+                double fromE = nodes.nodeE(fromNodeId), fromN = nodes.nodeN(fromNodeId);
+                double uE = nodes.nodeE(toNodeId) - fromE, uN = nodes.nodeN(toNodeId) - fromN;
+                double squaredLength = Math2.squaredNorm(uE, uN);
+                double ratio = squaredLength == 0 ? 0 : Math2.clamp(0,
+                        Math2.dotProduct(e - fromE, n - fromN, uE, uN) / squaredLength, 1);
+                double squaredDistance = Math2.squaredNorm(e - fromE - ratio * uE,
+                                                           n - fromN - ratio * uN);
+                if (squaredDistance < smallestSquaredDistance) {
+                    smallestSquaredDistance = squaredDistance;
+                    closestEdgeId = edgeId;
+                    closestFromNodeId = fromNodeId;
+                    closestRatio = ratio;
+                }
+            }
+        return closestEdgeId == -1 ? null : new EdgePoint(closestEdgeId, closestFromNodeId,
+                closestRatio * edgeLength(closestEdgeId));
+    }
+
+    /**
+     * Retrieves the total number of edges in the graph.
+     *
+     * @return the total number of edges
+     */
+    public int edgeCount() {
+        return edges.count();
+    }
+
     /**
      * Retrieves the index of an edge's destination node.
      *
@@ -174,6 +400,26 @@ public final class Graph {
         return attributeSets.get(edges.attributesIndex(edgeId));
     }
 
+    /**
+     * Retrieves the index of the OSM attributes of an edge within {@code attributeSets}. Edges
+     * sharing the same attributes share the same index.
+     *
+     * @param edgeId id (index) of the edge
+     * @return the index of the attribute set of the edge corresponding to the given id
+     */
+    public int edgeAttributesIndex(int edgeId) {
+        return edges.attributesIndex(edgeId);
+    }
+
+    /**
+     * Retrieves the distinct sets of OSM attributes of the graph's edges.
+     *
+     * @return the (unmodifiable) list of the attribute sets of the graph
+     */
+    public List<AttributeSet> attributeSets() {
+        return attributeSets;
+    }
+
     /**
      * Retrieves the length of an edge.
      *
@@ -207,11 +453,184 @@ public final class Graph {
         return Functions.sampled(edges.profileSamples(edgeId), edgeLength(edgeId));
     }
 
-    private static ByteBuffer mapFileToBuffer(Path basePath, String fileName) throws IOException {
+    /**
+     * Retrieves the incoming edges of the graph, on the first call mapping them from the
+     * directory of the graph's files (or computing them in memory if the graph was not loaded
+     * from files) if they were not given on creation.
+     *
+     * @return the edges coming into each node
+     * @throws UncheckedIOException if the existing file of the incoming edges can't be read
+     */
+    private GraphInEdges inEdges() {
+        GraphInEdges computedInEdges = inEdges;
+        if (computedInEdges == null) {
+            synchronized (this) {
+                if (inEdges == null) {
+                    try {
+                        inEdges = basePath == null
+                                ? GraphInEdges.of(nodes, edges)
+                                : GraphInEdges.loadFrom(basePath, nodes, edges);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                computedInEdges = inEdges;
+            }
+        }
+        return computedInEdges;
+    }
+
+    /**
+     * Retrieves the spatial index of the edges of the graph, on the first call mapping it from the
+     * directory of the graph's files (or computing it in memory if the graph was not loaded from
+     * files) if it was not given on creation.
+     *
+     * @return the spatial index of the edges
+     * @throws UncheckedIOException if the existing file of the index can't be read
+     */
+    private GraphEdgeIndex edgeIndex() {
+        GraphEdgeIndex computedEdgeIndex = edgeIndex;
+        if (computedEdgeIndex == null) {
+            synchronized (this) {
+                if (edgeIndex == null) {
+                    try {
+                        edgeIndex = basePath == null
+                                ? GraphEdgeIndex.of(nodes, edges)
+                                : GraphEdgeIndex.loadFrom(basePath, nodes, edges);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                computedEdgeIndex = edgeIndex;
+            }
+        }
+        return computedEdgeIndex;
+    }
+
+    /**
+     * Maps a file of the graph into memory.
+     *
+     * @param basePath directory containing the file
+     * @param fileName name of the file
+     * @return a read-only buffer of the file's content
+     * @throws IOException if the file can't be read, or if it is larger than a buffer can hold
+     *                     (2 GiB)
+     */
+    public static ByteBuffer mapFileToBuffer(Path basePath, String fileName) throws IOException {
         Path filePath = basePath.resolve(fileName);
         try (FileChannel channel = FileChannel.open(filePath)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException(filePath + " is larger than a buffer can map (2 GiB)");
             return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
         }
     }
 
+    /**
+     * Computes the header identifying this graph in the files derived from it, e.g. by the
+     * routing package (see {@code derivedFileHeader(GraphNodes, GraphEdges)}).
+     *
+     * @return the header, of {@code DERIVED_FILE_HEADER_INTS} integers
+     */
+    public int[] derivedFileHeader() {
+        return derivedFileHeader(nodes, edges);
+    }
+
+    /**
+     * Computes the header of the files derived from the nodes and edges of the graph
+     * ({@code derived_in_edges.bin} and {@code derived_edge_index.bin}), identifying the graph they
+     * were computed from: (int - U32) the number of nodes, (int - U32) the number of edges and
+     * (long, as two ints) a fingerprint of the graph, a hash of the coordinates and outgoing edges
+     * of about a thousand nodes spread over the graph, and of the targets of about a thousand
+     * edges spread over the graph.
+     * <p>
+     * WARNING: Two graphs with the same numbers of nodes and edges only differing on nodes and
+     * edges which are not sampled have the same header.
+     *
+     * @param nodes graph's nodes
+     * @param edges graph's edges
+     * @return the header, of {@code DERIVED_FILE_HEADER_INTS} integers
+     */
+    static int[] derivedFileHeader(GraphNodes nodes, GraphEdges edges) {
+        long hash = FNV_OFFSET_BASIS;
+        int nodeStep = Math.max(1, nodes.count() / FINGERPRINT_SAMPLES);
+        for (int nodeId = 0; nodeId < nodes.count(); nodeId += nodeStep) {
+            hash = (hash ^ nodes.rawNodeE(nodeId)) * FNV_PRIME;
+            hash = (hash ^ nodes.rawNodeN(nodeId)) * FNV_PRIME;
+            for (int edgeIndex = 0; edgeIndex < nodes.outDegree(nodeId); edgeIndex++)
+                hash = (hash ^ nodes.edgeId(nodeId, edgeIndex)) * FNV_PRIME;
+        }
+        int edgeStep = Math.max(1, edges.count() / FINGERPRINT_SAMPLES);
+        for (int edgeId = 0; edgeId < edges.count(); edgeId += edgeStep)
+            hash = (hash ^ edges.targetNodeId(edgeId)) * FNV_PRIME;
+        return new int[] {nodes.count(), edges.count(), (int) (hash >>> Integer.SIZE), (int) hash};
+    }
+
+    /**
+     * Checks whether a file derived from the nodes and edges of the graph starts with the given
+     * header.
+     *
+     * @param buffer content of the file
+     * @param header expected header (see {@code derivedFileHeader})
+     * @return true if the content starts with the header, false otherwise
+     */
+    public static boolean hasHeader(IntBuffer buffer, int[] header) {
+        if (buffer.capacity() < header.length)
+            return false;
+        for (int i = 0; i < header.length; i++)
+            if (buffer.get(i) != header[i])
+                return false;
+        return true;
+    }
+
+    /**
+     * Deletes the files derived from a graph from the directory indicated by {@code basePath},
+     * which depend on its node and edge ids and must be computed again once the graph is written:
+     * all the files whose name starts with {@code DERIVED_FILE_PREFIX}.
+     *
+     * @param basePath directory containing the files of the graph
+     * @throws IOException if any input/output error is thrown during file related operations
+     */
+    public static void deleteDerivedFiles(Path basePath) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(basePath,
+                                                                    DERIVED_FILE_PREFIX + "*")) {
+            for (Path file : files)
+                Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Writes a file of the graph atomically: the file is either missing (or left as it was) or
+     * complete. The content is written into a temporary file of the given size, mapped into
+     * memory, so that large files are written without being held in the heap, and then moved to
+     * the file (replacing any existing one).
+     *
+     * @param basePath directory containing the file
+     * @param fileName name of the file
+     * @param size     size of the file, in bytes
+     * @param writer   writer of the content of the file into a buffer of the given size, whose
+     *                 content is initially 0
+     * @throws IOException if any input/output error is thrown during file related operations, or
+     *                     if the size is larger than a buffer can hold (2 GiB)
+     */
+    public static void writeFileAtomically(Path basePath,
+                                           String fileName,
+                                           long size,
+                                           Consumer<ByteBuffer> writer) throws IOException {
+        if (size > Integer.MAX_VALUE)
+            throw new IOException(fileName + " would be larger than a buffer can map (2 GiB)");
+        Path tempPath = Files.createTempFile(basePath, fileName, ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.READ,
+                                                        StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                writer.accept(buffer);
+                buffer.force();
+            }
+            Files.move(tempPath, basePath.resolve(fileName), StandardCopyOption.ATOMIC_MOVE,
+                       StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
 }
@@ -0,0 +1,259 @@
+package ch.epfl.javelo.data;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import ch.epfl.javelo.Math2;
+import ch.epfl.javelo.projection.SwissBounds;
+
+/**
+ * Spatial index of the edges of the graph: a grid of 1024 x 1024 cells (about 341 m x 216 m)
+ * covering Switzerland, listing the edges whose bounding box intersects each cell, along with
+ * their starting node. (record)
+ * <p>
+ * Arguments are not checked.
+ * <p>
+ * The edges are considered as straight segments between their nodes, as in routes. The index is
+ * stored in the file {@code derived_edge_index.bin}: the header identifying the graph (see
+ * {@code Graph.derivedFileHeader}), the first entries (int - U32) of every cell followed by the
+ * total number of entries, then the entries grouped by cell (row by row, from the south-west),
+ * each one made of (int - U32) the edge's id and (int - U32) the id of its starting node. An edge
+ * appears in every cell its bounding box intersects.
+ *
+ * @param firstEntries data buffer containing the index of the first entry of each cell, followed
+ *                     by the total number of entries
+ * @param entries      data buffer containing the id and the starting node's id of each edge of
+ *                     each cell, grouped by cell
+ *
+ * @author Lucas Jung (324724)
+ * @author Florian Kolly (328313)
+ */
+public record GraphEdgeIndex(IntBuffer firstEntries, IntBuffer entries) {
+
+    /**
+     * Name of the file containing the index, in the directory of the graph's files.
+     */
+    public static final String FILE_NAME = Graph.DERIVED_FILE_PREFIX + "edge_index.bin";
+
+    /**
+     * Number of cells per axis on the grid covering Switzerland.
+     */
+    private static final int CELLS_PER_AXIS = 1024;
+
+    /**
+     * Total number of cells of the grid.
+     */
+    private static final int CELL_COUNT = CELLS_PER_AXIS * CELLS_PER_AXIS;
+
+    private static final double CELL_WIDTH = SwissBounds.WIDTH / CELLS_PER_AXIS;
+    private static final double CELL_HEIGHT = SwissBounds.HEIGHT / CELLS_PER_AXIS;
+
+    /**
+     * Position of the edge id within a buffer range corresponding to an entry.
+     */
+    private static final int OFFSET_EDGE_ID = 0;
+
+    /**
+     * Position of the starting node's id within a buffer range corresponding to an entry.
+     */
+    private static final int OFFSET_SOURCE_NODE_ID = OFFSET_EDGE_ID + 1;
+
+    /**
+     * Number of integers contained inside a buffer range corresponding to an entry.
+     */
+    private static final int ENTRY_INTS = OFFSET_SOURCE_NODE_ID + 1;
+
+    /**
+     * Computes the index of the edges of a graph, in memory.
+     *
+     * @param nodes graph's nodes
+     * @param edges graph's edges
+     * @return the spatial index of the edges, in heap buffers
+     */
+    public static GraphEdgeIndex of(GraphNodes nodes, GraphEdges edges) {
+        int[] firstEntries = firstEntries(nodes, edges);
+        IntBuffer content = IntBuffer.allocate(Math.toIntExact(fileInts(firstEntries)));
+        write(content, Graph.derivedFileHeader(nodes, edges), firstEntries, nodes, edges);
+        return ofFileContent(content);
+    }
+
+    /**
+     * Maps the index of the edges of a graph from the file {@code derived_edge_index.bin},
+     * computing and writing it first if it does not exist or does not match the graph (see
+     * {@code Graph.derivedFileHeader}). The entries are written directly into the mapped file,
+     * only the first entries of the cells are held in the heap. If the file can't be written
+     * (e.g. read-only directory), the index is computed in memory.
+     *
+     * @param basePath directory containing the files of the graph
+     * @param nodes    graph's nodes
+     * @param edges    graph's edges
+     * @return the spatial index of the edges
+     * @throws IOException if the existing file can't be read
+     */
+    static GraphEdgeIndex loadFrom(Path basePath, GraphNodes nodes, GraphEdges edges)
+            throws IOException {
+        int[] header = Graph.derivedFileHeader(nodes, edges);
+        Path filePath = basePath.resolve(FILE_NAME);
+        long firstEntriesEnd = Graph.DERIVED_FILE_HEADER_INTS + CELL_COUNT + 1;
+        if (Files.exists(filePath) && Files.size(filePath) >= Integer.BYTES * firstEntriesEnd) {
+            IntBuffer content = Graph.mapFileToBuffer(basePath, FILE_NAME).asIntBuffer();
+            long entryCount = content.get((int) firstEntriesEnd - 1);
+            if (Graph.hasHeader(content, header)
+                    && content.capacity() == firstEntriesEnd + (long) ENTRY_INTS * entryCount)
+                return ofFileContent(content);
+        }
+
+        int[] firstEntries = firstEntries(nodes, edges);
+        try {
+            Graph.writeFileAtomically(basePath, FILE_NAME, Integer.BYTES * fileInts(firstEntries),
+                                      buffer -> write(buffer.asIntBuffer(), header,
+                                                      firstEntries, nodes, edges));
+        } catch (IOException e) {
+            IntBuffer content = IntBuffer.allocate(Math.toIntExact(fileInts(firstEntries)));
+            write(content, header, firstEntries, nodes, edges);
+            return ofFileContent(content);
+        }
+        return ofFileContent(Graph.mapFileToBuffer(basePath, FILE_NAME).asIntBuffer());
+    }
+
+    /**
+     * Computes the index of the first entry of each cell, followed by the total number of entries.
+     */
+    private static int[] firstEntries(GraphNodes nodes, GraphEdges edges) {
+        int[] firstEntries = new int[CELL_COUNT + 1];
+        // Count the edges of each cell (shifted by one)
+        for (int nodeId = 0; nodeId < nodes.count(); nodeId++)
+            for (int edgeIndex = 0; edgeIndex < nodes.outDegree(nodeId); edgeIndex++) {
+                int targetNodeId = edges.targetNodeId(nodes.edgeId(nodeId, edgeIndex));
+                int minX = cellX(Math.min(nodes.nodeE(nodeId), nodes.nodeE(targetNodeId)));
+                int maxX = cellX(Math.max(nodes.nodeE(nodeId), nodes.nodeE(targetNodeId)));
+                int minY = cellY(Math.min(nodes.nodeN(nodeId), nodes.nodeN(targetNodeId)));
+                int maxY = cellY(Math.max(nodes.nodeN(nodeId), nodes.nodeN(targetNodeId)));
+                for (int y = minY; y <= maxY; y++)
+                    for (int x = minX; x <= maxX; x++)
+                        firstEntries[y * CELLS_PER_AXIS + x + 1]++;
+            }
+        for (int cell = 0; cell < CELL_COUNT; cell++)
+            firstEntries[cell + 1] += firstEntries[cell];
+        return firstEntries;
+    }
+
+    /**
+     * Computes the number of integers of the file of the index, given the first entries of its
+     * cells.
+     */
+    private static long fileInts(int[] firstEntries) {
+        return Graph.DERIVED_FILE_HEADER_INTS + CELL_COUNT + 1
+                + (long) ENTRY_INTS * firstEntries[CELL_COUNT];
+    }
+
+    /**
+     * Creates the index from the content of its file.
+     */
+    private static GraphEdgeIndex ofFileContent(IntBuffer content) {
+        int entriesStart = Graph.DERIVED_FILE_HEADER_INTS + CELL_COUNT + 1;
+        return new GraphEdgeIndex(content.slice(Graph.DERIVED_FILE_HEADER_INTS, CELL_COUNT + 1),
+                                  content.slice(entriesStart, content.capacity() - entriesStart));
+    }
+
+    /**
+     * Writes the index into the content of its file, whether in the heap or mapped.
+     *
+     * @param content      buffer of the content of the file
+     * @param header       header identifying the graph
+     * @param firstEntries index of the first entry of each cell, followed by the total number of
+     *                     entries
+     * @param nodes        graph's nodes
+     * @param edges        graph's edges
+     */
+    private static void write(IntBuffer content, int[] header, int[] firstEntries,
+                              GraphNodes nodes, GraphEdges edges) {
+        content.put(0, header);
+        content.put(header.length, firstEntries);
+        IntBuffer entries = content.slice(header.length + CELL_COUNT + 1,
+                                          content.capacity() - header.length - CELL_COUNT - 1);
+        int[] nextEntries = Arrays.copyOf(firstEntries, CELL_COUNT);
+        for (int nodeId = 0; nodeId < nodes.count(); nodeId++)
+            for (int edgeIndex = 0; edgeIndex < nodes.outDegree(nodeId); edgeIndex++) {
+                int edgeId = nodes.edgeId(nodeId, edgeIndex);
+                int targetNodeId = edges.targetNodeId(edgeId);
+                int minX = cellX(Math.min(nodes.nodeE(nodeId), nodes.nodeE(targetNodeId)));
+                int maxX = cellX(Math.max(nodes.nodeE(nodeId), nodes.nodeE(targetNodeId)));
+                int minY = cellY(Math.min(nodes.nodeN(nodeId), nodes.nodeN(targetNodeId)));
+                int maxY = cellY(Math.max(nodes.nodeN(nodeId), nodes.nodeN(targetNodeId)));
+                for (int y = minY; y <= maxY; y++)
+                    for (int x = minX; x <= maxX; x++) {
+                        int entry = nextEntries[y * CELLS_PER_AXIS + x]++;
+                        entries.put(entry * ENTRY_INTS + OFFSET_EDGE_ID, edgeId);
+                        entries.put(entry * ENTRY_INTS + OFFSET_SOURCE_NODE_ID, nodeId);
+                    }
+            }
+    }
+
+    /**
+     * Computes the index of the column of cells containing a coordinate.
+     *
+     * @param e east coordinate, in meters
+     * @return the index of the column (from the west), clamped to the grid
+     */
+    public static int cellX(double e) {
+        return Math2.clamp(0, (int) Math.floor((e - SwissBounds.MIN_E) / CELL_WIDTH),
+                           CELLS_PER_AXIS - 1);
+    }
+
+    /**
+     * Computes the index of the row of cells containing a coordinate.
+     *
+     * @param n north coordinate, in meters
+     * @return the index of the row (from the south), clamped to the grid
+     */
+    public static int cellY(double n) {
+        return Math2.clamp(0, (int) Math.floor((n - SwissBounds.MIN_N) / CELL_HEIGHT),
+                           CELLS_PER_AXIS - 1);
+    }
+
+    /**
+     * Retrieves the index of the first entry of a cell.
+     *
+     * @param x index of the column of the cell
+     * @param y index of the row of the cell
+     * @return the index of the first entry of the cell
+     */
+    public int firstEntry(int x, int y) {
+        return firstEntries.get(y * CELLS_PER_AXIS + x);
+    }
+
+    /**
+     * Retrieves the index of the entry following the last entry of a cell.
+     *
+     * @param x index of the column of the cell
+     * @param y index of the row of the cell
+     * @return the index of the first entry of the next cell
+     */
+    public int endEntry(int x, int y) {
+        return firstEntries.get(y * CELLS_PER_AXIS + x + 1);
+    }
+
+    /**
+     * Retrieves the edge of an entry.
+     *
+     * @param entry index of the entry
+     * @return the id (index) of the edge
+     */
+    public int edgeId(int entry) {
+        return entries.get(entry * ENTRY_INTS + OFFSET_EDGE_ID);
+    }
+
+    /**
+     * Retrieves the starting node of the edge of an entry.
+     *
+     * @param entry index of the entry
+     * @return the id (index) of the starting node of the edge
+     */
+    public int sourceNodeId(int entry) {
+        return entries.get(entry * ENTRY_INTS + OFFSET_SOURCE_NODE_ID);
+    }
+
+}
@@ -82,6 +82,15 @@ public record GraphEdges(ByteBuffer edgesBuffer, IntBuffer profileIds, ShortBuff
      */
     private static final int PROFILE_INTS = OFFSET_PROFILE_TYPE_ID + 1;
 
+    /**
+     * Computes the number of edges in the buffer.
+     *
+     * @return the total number of edges
+     */
+    public int count() {
+        return edgesBuffer.capacity() / EDGE_SIZE;
+    }
+
     /**
      * Indicates if an edge is going the opposite direction to how OSM represents it.
      *
@@ -158,7 +167,8 @@ public record GraphEdges(ByteBuffer edgesBuffer, IntBuffer profileIds, ShortBuff
                 ELEVATION_ID_LENGTH); // U30
 
         // Starting altitude (first sample, uncompressed short)
-        samples[0] = Q28_4.asFloat(Short.toUnsignedInt(elevations.get(firstSampleId))); // UQ12.4
+        int elevation = Short.toUnsignedInt(elevations.get(firstSampleId)); // UQ12.4
+        samples[0] = Q28_4.asFloat(elevation);
 
         if (profileType == 1) // uncompressed
             for (int i = 1; i < nbSamples; i++)
@@ -168,23 +178,35 @@ public record GraphEdges(ByteBuffer edgesBuffer, IntBuffer profileIds, ShortBuff
             final int SAMPLES_PER_SHORT = (profileType - 1) * 2;
             // Size of a sample in bits: type 2 -> 8, type 3 -> 4
             final int SAMPLE_SIZE = Short.SIZE / SAMPLES_PER_SHORT;
-
-            for (int offset = 1;
-                 offset <= Math2.ceilDiv(nbSamples - 1, SAMPLES_PER_SHORT);
-                 offset++) {
-                short compressedSamples = elevations.get(firstSampleId + offset);
-                // Index i: type 2 -> 0 / 1, 2 / 3, 4 / ..., nbSamples - 2 / nbSamples - 1
-                // Index i: type 3 -> 0 / 1, 2, 3, 4 / 5, 6, 7, 8 / ..., nbSamples - 4,
-                // nbSamples - 3 / nbSamples - 2, nbSamples - 1
-                for (int i = 1 + SAMPLES_PER_SHORT * (offset - 1);
-                     i <= offset * SAMPLES_PER_SHORT && i < nbSamples;
-                     i++) {
-                    // (i mod m = i & ~-m) when m is a power of 2
-                    int start = (-i & ~-SAMPLES_PER_SHORT) * SAMPLE_SIZE;
-                    float elevationDelta = Q28_4.asFloat(
-                            Bits.extractSigned(compressedSamples, start, SAMPLE_SIZE));
-                    samples[i] = samples[i - 1] + elevationDelta;
+            // Index of the first sample of the last short (whole shorts being decoded before)
+            int lastShortStart = nbSamples - (nbSamples - 1) % SAMPLES_PER_SHORT;
+            int compressedId = firstSampleId + 1;
+            int i = 1;
+
+            // Whole shorts, their deltas being extracted by arithmetic shifts of the short placed
+            // in the upper half of an int (first delta in the most significant bits), and summed
+            // as Q28.4 values, which the floats represent exactly
+            if (profileType == 2)
+                for (; i < lastShortStart; i += 2) {
+                    int deltas = elevations.get(compressedId++) << Short.SIZE; // Q4.4 Q4.4
+                    samples[i] = Q28_4.asFloat(elevation += deltas >> 24);
+                    samples[i + 1] = Q28_4.asFloat(elevation += deltas << 8 >> 24);
                 }
+            else
+                for (; i < lastShortStart; i += 4) {
+                    int deltas = elevations.get(compressedId++) << Short.SIZE; // Q0.4 (x4)
+                    samples[i] = Q28_4.asFloat(elevation += deltas >> 28);
+                    samples[i + 1] = Q28_4.asFloat(elevation += deltas << 4 >> 28);
+                    samples[i + 2] = Q28_4.asFloat(elevation += deltas << 8 >> 28);
+                    samples[i + 3] = Q28_4.asFloat(elevation += deltas << 12 >> 28);
+                }
+
+            // Last short, partially filled
+            if (i < nbSamples) {
+                int deltas = elevations.get(compressedId) << Short.SIZE;
+                for (int shift = 0; i < nbSamples; i++, shift += SAMPLE_SIZE)
+                    samples[i] = Q28_4.asFloat(
+                            elevation += deltas << shift >> (Integer.SIZE - SAMPLE_SIZE));
             }
         }
 
@@ -0,0 +1,192 @@
+package ch.epfl.javelo.data;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Reverse adjacency of the graph: the edges coming into every node, along with their starting
+ * node. (record)
+ * <p>
+ * Arguments are not checked.
+ * <p>
+ * The nodes only store their outgoing edges, this index is derived from them once and allows
+ * searching the graph backward. It is stored in the file {@code derived_in_edges.bin}: the header
+ * identifying the graph (see {@code Graph.derivedFileHeader}), the first entries (int - U32) of
+ * every node followed by the total number of edges, then the entries grouped by destination node,
+ * each one made of (int - U32) the edge's id and (int - U32) the id of its starting node.
+ *
+ * @param firstEntries data buffer containing the index of the first entry of each node, followed
+ *                     by the total number of entries (edges)
+ * @param entries      data buffer containing the id and the starting node's id of each incoming
+ *                     edge, grouped by destination node
+ *
+ * @author Lucas Jung (324724)
+ * @author Florian Kolly (328313)
+ */
+public record GraphInEdges(IntBuffer firstEntries, IntBuffer entries) {
+
+    /**
+     * Name of the file containing the incoming edges, in the directory of the graph's files.
+     */
+    public static final String FILE_NAME = Graph.DERIVED_FILE_PREFIX + "in_edges.bin";
+
+    /**
+     * Position of the edge id within a buffer range corresponding to an entry.
+     */
+    private static final int OFFSET_EDGE_ID = 0;
+
+    /**
+     * Position of the starting node's id within a buffer range corresponding to an entry.
+     */
+    private static final int OFFSET_SOURCE_NODE_ID = OFFSET_EDGE_ID + 1;
+
+    /**
+     * Number of integers contained inside a buffer range corresponding to an entry.
+     */
+    private static final int ENTRY_INTS = OFFSET_SOURCE_NODE_ID + 1;
+
+    /**
+     * Computes the incoming edges of every node, in memory.
+     *
+     * @param nodes graph's nodes
+     * @param edges graph's edges
+     * @return the reverse adjacency of the graph, in heap buffers
+     */
+    public static GraphInEdges of(GraphNodes nodes, GraphEdges edges) {
+        IntBuffer content = IntBuffer.allocate(Math.toIntExact(fileInts(nodes, edges)));
+        write(content, Graph.derivedFileHeader(nodes, edges), nodes, edges);
+        return ofFileContent(content, nodes.count());
+    }
+
+    /**
+     * Maps the incoming edges of a graph from the file {@code derived_in_edges.bin}, computing and
+     * writing it first if it does not exist or does not match the graph (see
+     * {@code Graph.derivedFileHeader}). The file is computed in place, without holding the
+     * incoming edges in the heap. If it can't be written (e.g. read-only directory), the incoming
+     * edges are computed in memory.
+     *
+     * @param basePath directory containing the files of the graph
+     * @param nodes    graph's nodes
+     * @param edges    graph's edges
+     * @return the reverse adjacency of the graph
+     * @throws IOException if the existing file can't be read
+     */
+    static GraphInEdges loadFrom(Path basePath, GraphNodes nodes, GraphEdges edges)
+            throws IOException {
+        int[] header = Graph.derivedFileHeader(nodes, edges);
+        long fileSize = Integer.BYTES * fileInts(nodes, edges);
+        Path filePath = basePath.resolve(FILE_NAME);
+        if (!(Files.exists(filePath) && Files.size(filePath) == fileSize
+                && Graph.hasHeader(Graph.mapFileToBuffer(basePath, FILE_NAME).asIntBuffer(),
+                                   header))) {
+            try {
+                Graph.writeFileAtomically(basePath, FILE_NAME, fileSize,
+                                          buffer -> write(buffer.asIntBuffer(), header,
+                                                          nodes, edges));
+            } catch (IOException e) {
+                return of(nodes, edges);
+            }
+        }
+        return ofFileContent(Graph.mapFileToBuffer(basePath, FILE_NAME).asIntBuffer(),
+                             nodes.count());
+    }
+
+    /**
+     * Computes the number of integers of the file of the incoming edges of a graph.
+     */
+    private static long fileInts(GraphNodes nodes, GraphEdges edges) {
+        return Graph.DERIVED_FILE_HEADER_INTS + nodes.count() + 1
+                + (long) ENTRY_INTS * edges.count();
+    }
+
+    /**
+     * Creates the incoming edges from the content of their file.
+     */
+    private static GraphInEdges ofFileContent(IntBuffer content, int nodeCount) {
+        int entriesStart = Graph.DERIVED_FILE_HEADER_INTS + nodeCount + 1;
+        return new GraphInEdges(content.slice(Graph.DERIVED_FILE_HEADER_INTS, nodeCount + 1),
+                                content.slice(entriesStart, content.capacity() - entriesStart));
+    }
+
+    /**
+     * Computes the incoming edges of every node into the content of their file, in place: only
+     * the buffer is used, whether in the heap or mapped.
+     *
+     * @param content buffer of the content of the file, filled with 0
+     * @param header  header identifying the graph
+     * @param nodes   graph's nodes
+     * @param edges   graph's edges
+     */
+    private static void write(IntBuffer content, int[] header, GraphNodes nodes,
+                              GraphEdges edges) {
+        int nodeCount = nodes.count();
+        content.put(0, header);
+        IntBuffer firstEntries = content.slice(header.length, nodeCount + 1);
+        IntBuffer entries = content.slice(header.length + nodeCount + 1,
+                                          content.capacity() - header.length - nodeCount - 1);
+        // Count the incoming edges of each node (shifted by one)
+        for (int nodeId = 0; nodeId < nodeCount; nodeId++)
+            for (int edgeIndex = 0; edgeIndex < nodes.outDegree(nodeId); edgeIndex++) {
+                int entryIndex = edges.targetNodeId(nodes.edgeId(nodeId, edgeIndex)) + 1;
+                firstEntries.put(entryIndex, firstEntries.get(entryIndex) + 1);
+            }
+        for (int nodeId = 0; nodeId < nodeCount; nodeId++)
+            firstEntries.put(nodeId + 1, firstEntries.get(nodeId + 1) + firstEntries.get(nodeId));
+
+        // The first entry of each node is used as the index of its next entry, becoming the first
+        // entry of the following node once its entries are written
+        for (int nodeId = 0; nodeId < nodeCount; nodeId++)
+            for (int edgeIndex = 0; edgeIndex < nodes.outDegree(nodeId); edgeIndex++) {
+                int edgeId = nodes.edgeId(nodeId, edgeIndex);
+                int targetNodeId = edges.targetNodeId(edgeId);
+                int entry = firstEntries.get(targetNodeId);
+                firstEntries.put(targetNodeId, entry + 1);
+                entries.put(entry * ENTRY_INTS + OFFSET_EDGE_ID, edgeId);
+                entries.put(entry * ENTRY_INTS + OFFSET_SOURCE_NODE_ID, nodeId);
+            }
+        for (int nodeId = nodeCount - 1; nodeId > 0; nodeId--)
+            firstEntries.put(nodeId, firstEntries.get(nodeId - 1));
+        firstEntries.put(0, 0);
+    }
+
+    /**
+     * Computes the number of edges coming into a node.
+     *
+     * @param nodeId id (index) of the node
+     * @return the number of edges whose destination is the node corresponding to the given id
+     */
+    public int inDegree(int nodeId) {
+        return firstEntries.get(nodeId + 1) - firstEntries.get(nodeId);
+    }
+
+    /**
+     * Retrieves the id of the edge number {@code edgeIndex} coming into a node.
+     *
+     * @param nodeId    id (index) of the node
+     * @param edgeIndex index of the edge coming into the given node, between 0 (included) and the
+     *                  in degree of the given node (excluded), supposed valid
+     * @return the id of the {@code edgeIndex}-th edge coming into the node corresponding to the
+     *         given id
+     */
+    public int edgeId(int nodeId, int edgeIndex) {
+        return entries.get((firstEntries.get(nodeId) + edgeIndex) * ENTRY_INTS + OFFSET_EDGE_ID);
+    }
+
+    /**
+     * Retrieves the id of the starting node of the edge number {@code edgeIndex} coming into a
+     * node.
+     *
+     * @param nodeId    id (index) of the node
+     * @param edgeIndex index of the edge coming into the given node, between 0 (included) and the
+     *                  in degree of the given node (excluded), supposed valid
+     * @return the id of the starting node of the {@code edgeIndex}-th edge coming into the node
+     *         corresponding to the given id
+     */
+    public int sourceNodeId(int nodeId, int edgeIndex) {
+        return entries.get((firstEntries.get(nodeId) + edgeIndex) * ENTRY_INTS
+                                   + OFFSET_SOURCE_NODE_ID);
+    }
+
+}
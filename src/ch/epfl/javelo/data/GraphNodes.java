@@ -79,6 +79,28 @@ public record GraphNodes(IntBuffer buffer) {
         return Q28_4.asDouble(buffer.get(nodeId * NODE_INTS + OFFSET_N));
     }
 
+    /**
+     * Retrieves the east coordinate of a node, as stored in the buffer.
+     *
+     * @param nodeId id (index) of the node
+     * @return the east coordinate of the node corresponding to the given id, in Q28.4 (sixteenths
+     *         of a meter)
+     */
+    public int rawNodeE(int nodeId) {
+        return buffer.get(nodeId * NODE_INTS + OFFSET_E);
+    }
+
+    /**
+     * Retrieves the north coordinate of a node, as stored in the buffer.
+     *
+     * @param nodeId id (index) of the node
+     * @return the north coordinate of the node corresponding to the given id, in Q28.4
+     *         (sixteenths of a meter)
+     */
+    public int rawNodeN(int nodeId) {
+        return buffer.get(nodeId * NODE_INTS + OFFSET_N);
+    }
+
     /**
      * Retrieves the number of outgoing edges of a node.
      *
@@ -0,0 +1,230 @@
+package ch.epfl.javelo.data;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import ch.epfl.javelo.Math2;
+import ch.epfl.javelo.Preconditions;
+import ch.epfl.javelo.Q28_4;
+import ch.epfl.javelo.projection.SwissBounds;
+
+/**
+ * Offline tool renumbering the nodes and edges of a graph along a Hilbert curve, so that nodes
+ * close to each other (and their edges) are close in memory, which makes the searches on the graph
+ * faster (fewer cache misses).
+ * <p>
+ * The curve is computed on a grid of 2^16 x 2^16 cells covering Switzerland, each sector being an
+ * aligned square of 2^9 x 2^9 cells: a Hilbert curve visits every aligned square in a single run,
+ * so the nodes of each sector stay contiguous, as {@code sectors.bin} requires. The sector of each
+ * node is the one given by the original {@code sectors.bin}. The edges are renumbered in the order
+ * of their source nodes.
+ * <p>
+ * {@code nodes.bin}, {@code sectors.bin}, {@code edges.bin} and {@code profile_ids.bin} are
+ * rewritten, {@code elevations.bin} and {@code attributes.bin} are copied unchanged (the profiles
+ * are only read to build routes, not by the searches). The files derived from the graph, which
+ * depend on its node and edge ids (incoming edges, edge index, landmarks, contraction hierarchy
+ * and cost tables), are deleted from the target directory (see {@code Graph.deleteDerivedFiles}),
+ * to be computed again.
+ * <p>
+ * Usage: {@code GraphRenumberer <graph directory> <target directory>}.
+ * <p>
+ * Non-instantiable.
+ *
+ * @author Lucas Jung (324724)
+ * @author Florian Kolly (328313)
+ */
+public final class GraphRenumberer {
+
+    private static final int SECTORS_PER_AXIS = 128;
+    private static final int SECTOR_COUNT = SECTORS_PER_AXIS * SECTORS_PER_AXIS;
+    private static final double SECTOR_WIDTH = SwissBounds.WIDTH / SECTORS_PER_AXIS;
+    private static final double SECTOR_HEIGHT = SwissBounds.HEIGHT / SECTORS_PER_AXIS;
+
+    /**
+     * Order of the Hilbert curve within a sector (2^9 cells per axis).
+     */
+    private static final int SECTOR_ORDER = 9;
+
+    /**
+     * Order of the Hilbert curve (2^16 cells per axis, i.e. 2^7 sectors of 2^9 cells).
+     */
+    private static final int ORDER = 7 + SECTOR_ORDER;
+
+    private static final int NODE_INTS = 3;
+    private static final int EDGE_BYTES = 10;
+    private static final int SECTOR_BYTES = 6;
+
+    /**
+     * Number of bits taken by the first edge id in the packed out degree and first edge id of a
+     * node.
+     */
+    private static final int EDGE_ID_LENGTH = 28;
+
+    private GraphRenumberer() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Preconditions.checkArgument(args.length == 2);
+        renumber(Path.of(args[0]), Path.of(args[1]));
+    }
+
+    /**
+     * Renumbers the nodes and edges of a graph along a Hilbert curve.
+     *
+     * @param basePath   directory containing the files of the graph
+     * @param targetPath directory to which the renumbered graph's files are written (created if
+     *                   needed)
+     * @throws IOException              if any input/output error is thrown during file related
+     *                                  operations
+     * @throws IllegalArgumentException if both directories are the same
+     */
+    public static void renumber(Path basePath, Path targetPath) throws IOException {
+        Preconditions.checkArgument(!basePath.toAbsolutePath().normalize()
+                .equals(targetPath.toAbsolutePath().normalize()));
+        IntBuffer nodes = mapFile(basePath, "nodes.bin").asIntBuffer();
+        ByteBuffer sectors = mapFile(basePath, "sectors.bin");
+        ByteBuffer edges = mapFile(basePath, "edges.bin");
+        IntBuffer profileIds = mapFile(basePath, "profile_ids.bin").asIntBuffer();
+        int nodeCount = nodes.capacity() / NODE_INTS;
+
+        int[] sectorIndexes = new int[nodeCount];
+        Arrays.fill(sectorIndexes, -1);
+        for (int sector = 0; sector < SECTOR_COUNT; sector++) {
+            int startNodeId = sectors.getInt(sector * SECTOR_BYTES);
+            int nodeCountInSector = Short.toUnsignedInt(
+                    sectors.getShort(sector * SECTOR_BYTES + Integer.BYTES));
+            for (int nodeId = startNodeId; nodeId < startNodeId + nodeCountInSector; nodeId++)
+                sectorIndexes[nodeId] = sector;
+        }
+
+        // Hilbert index (32 bits) packed with the node id (28 bits), sorted by index
+        long[] sortedNodes = new long[nodeCount];
+        for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+            double x = (Q28_4.asDouble(nodes.get(nodeId * NODE_INTS)) - SwissBounds.MIN_E)
+                    / SECTOR_WIDTH;
+            double y = (Q28_4.asDouble(nodes.get(nodeId * NODE_INTS + 1)) - SwissBounds.MIN_N)
+                    / SECTOR_HEIGHT;
+            int sector = sectorIndexes[nodeId];
+            if (sector == -1) // not in any sector, should not happen
+                sector = cell(y, SECTORS_PER_AXIS) * SECTORS_PER_AXIS + cell(x, SECTORS_PER_AXIS);
+            int sectorX = sector % SECTORS_PER_AXIS;
+            int sectorY = sector / SECTORS_PER_AXIS;
+            int cellX = (sectorX << SECTOR_ORDER)
+                    | cell((x - sectorX) * (1 << SECTOR_ORDER), 1 << SECTOR_ORDER);
+            int cellY = (sectorY << SECTOR_ORDER)
+                    | cell((y - sectorY) * (1 << SECTOR_ORDER), 1 << SECTOR_ORDER);
+            sortedNodes[nodeId] = (hilbertIndex(ORDER, cellX, cellY) << EDGE_ID_LENGTH) | nodeId;
+        }
+        Arrays.sort(sortedNodes);
+        int[] oldNodeIds = new int[nodeCount];
+        int[] newNodeIds = new int[nodeCount];
+        for (int newNodeId = 0; newNodeId < nodeCount; newNodeId++) {
+            int oldNodeId = (int) (sortedNodes[newNodeId] & ((1 << EDGE_ID_LENGTH) - 1));
+            oldNodeIds[newNodeId] = oldNodeId;
+            newNodeIds[oldNodeId] = newNodeId;
+        }
+
+        Files.createDirectories(targetPath);
+        try (DataOutputStream nodesStream = newStream(targetPath, "nodes.bin");
+             DataOutputStream edgesStream = newStream(targetPath, "edges.bin");
+             DataOutputStream profilesStream = newStream(targetPath, "profile_ids.bin")) {
+            int edgeCount = 0;
+            for (int oldNodeId : oldNodeIds) {
+                int outEdges = nodes.get(oldNodeId * NODE_INTS + 2);
+                int outDegree = outEdges >>> EDGE_ID_LENGTH;
+                int firstEdgeId = outEdges & ((1 << EDGE_ID_LENGTH) - 1);
+                nodesStream.writeInt(nodes.get(oldNodeId * NODE_INTS));
+                nodesStream.writeInt(nodes.get(oldNodeId * NODE_INTS + 1));
+                nodesStream.writeInt((outDegree << EDGE_ID_LENGTH) | edgeCount);
+                for (int edgeId = firstEdgeId; edgeId < firstEdgeId + outDegree; edgeId++) {
+                    // Direction (sign) and target node id
+                    int target = edges.getInt(edgeId * EDGE_BYTES);
+                    edgesStream.writeInt(target < 0 ? ~newNodeIds[~target] : newNodeIds[target]);
+                    for (int i = Integer.BYTES; i < EDGE_BYTES; i += Short.BYTES)
+                        edgesStream.writeShort(edges.getShort(edgeId * EDGE_BYTES + i));
+                    profilesStream.writeInt(profileIds.get(edgeId));
+                    edgeCount++;
+                }
+            }
+        }
+
+        // The nodes of each sector are contiguous, starting with the first one in the new order
+        int[] sectorStarts = new int[SECTOR_COUNT];
+        for (int newNodeId = nodeCount - 1; newNodeId >= 0; newNodeId--) {
+            int sector = sectorIndexes[oldNodeIds[newNodeId]];
+            if (sector != -1)
+                sectorStarts[sector] = newNodeId;
+        }
+        try (DataOutputStream sectorsStream = newStream(targetPath, "sectors.bin")) {
+            for (int sector = 0; sector < SECTOR_COUNT; sector++) {
+                sectorsStream.writeInt(sectorStarts[sector]);
+                sectorsStream.writeShort(sectors.getShort(sector * SECTOR_BYTES + Integer.BYTES));
+            }
+        }
+
+        for (String fileName : new String[] {"elevations.bin", "attributes.bin"})
+            Files.copy(basePath.resolve(fileName), targetPath.resolve(fileName),
+                       StandardCopyOption.REPLACE_EXISTING);
+        Graph.deleteDerivedFiles(targetPath);
+    }
+
+    /**
+     * Computes the index of a cell along a Hilbert curve.
+     *
+     * @param order order of the curve, covering a grid of 2^order x 2^order cells
+     * @param x     x index of the cell, between 0 (included) and 2^order (excluded)
+     * @param y     y index of the cell, between 0 (included) and 2^order (excluded)
+     * @return the position of the cell along the curve, between 0 (included) and 4^order
+     *         (excluded), starting from the cell (0, 0) and ending at the cell (2^order - 1, 0)
+     */
+    static long hilbertIndex(int order, int x, int y) {
+        int n = 1 << order;
+        long index = 0;
+        for (int s = n / 2; s > 0; s /= 2) {
+            int rx = (x & s) > 0 ? 1 : 0;
+            int ry = (y & s) > 0 ? 1 : 0;
+            index += (long) s * s * ((3 * rx) ^ ry);
+            // Rotates the quadrant so that the curve within it has the same orientation
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = n - 1 - x;
+                    y = n - 1 - y;
+                }
+                int t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Computes the index of the cell containing a coordinate, in a grid of cells of size 1.
+     *
+     * @param coordinate coordinate, in cells
+     * @param cellCount  number of cells
+     * @return the index of the cell, clamped between 0 and {@code cellCount - 1}
+     */
+    private static int cell(double coordinate, int cellCount) {
+        return Math2.clamp(0, (int) Math.floor(coordinate), cellCount - 1);
+    }
+
+    private static ByteBuffer mapFile(Path basePath, String fileName) throws IOException {
+        try (FileChannel channel = FileChannel.open(basePath.resolve(fileName))) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static DataOutputStream newStream(Path basePath, String fileName) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(basePath.resolve(fileName))));
+    }
+
+}
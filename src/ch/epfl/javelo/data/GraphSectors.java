@@ -80,38 +80,64 @@ public record GraphSectors(ByteBuffer buffer) {
      *         side length equals to twice the {@code distance}
      */
     public List<Sector> sectorsInArea(PointCh center, double distance) {
-        int lowestWidth = Math2.clamp(0,
-                (int) ((center.e() - SwissBounds.MIN_E - distance) / SECTOR_WIDTH),
-                SECTORS_PER_AXIS - 1);
-        int lowestHeight = Math2.clamp(0,
-                (int) ((center.n() - SwissBounds.MIN_N - distance) / SECTOR_HEIGHT),
-                SECTORS_PER_AXIS - 1);
-        int highestWidth = Math2.clamp(0,
-                (int) ((center.e() - SwissBounds.MIN_E + distance) / SECTOR_WIDTH),
-                SECTORS_PER_AXIS - 1);
-        int highestHeight = Math2.clamp(0,
-                (int) ((center.n() - SwissBounds.MIN_N + distance) / SECTOR_HEIGHT),
-                SECTORS_PER_AXIS - 1);
-
-        int firstSector = lowestHeight * SECTORS_PER_AXIS + lowestWidth;
-        int lastSector = highestHeight * SECTORS_PER_AXIS + highestWidth;
-        // Number of sectors to the right of firstSector (included)
-        int width = (lastSector - firstSector) % SECTORS_PER_AXIS;
-        // Number of sectors above firstSector (included)
-        int height = (lastSector - firstSector) / SECTORS_PER_AXIS;
+        int lowestColumn = column(center.e() - distance);
+        int highestColumn = column(center.e() + distance);
+        int lowestRow = row(center.n() - distance);
+        int highestRow = row(center.n() + distance);
 
         List<Sector> sectors = new ArrayList<>();
-        for (int y = 0; y <= height; y++)
-            for (int x = 0; x <= width; x++) {
-                int sectorNb = firstSector + x + y * SECTORS_PER_AXIS;
-                // As unsigned but small enough -> no need to convert to unsigned
-                int startNodeId = buffer.getInt(sectorNb * SECTOR_SIZE);
-                int nodeCount = Short.toUnsignedInt(
-                        buffer.getShort(sectorNb * SECTOR_SIZE + OFFSET_NODE_COUNT));
-                int endNodeId = startNodeId + nodeCount;
-                sectors.add(new Sector(startNodeId, endNodeId));
-            }
+        for (int row = lowestRow; row <= highestRow; row++)
+            for (int column = lowestColumn; column <= highestColumn; column++)
+                sectors.add(new Sector(startNodeId(column, row), endNodeId(column, row)));
         return sectors;
     }
 
+    /**
+     * Computes the column of the sectors containing a coordinate.
+     *
+     * @param e east coordinate, in meters
+     * @return the index of the column (from the west), clamped to the grid
+     */
+    public static int column(double e) {
+        return Math2.clamp(0, (int) ((e - SwissBounds.MIN_E) / SECTOR_WIDTH),
+                           SECTORS_PER_AXIS - 1);
+    }
+
+    /**
+     * Computes the row of the sectors containing a coordinate.
+     *
+     * @param n north coordinate, in meters
+     * @return the index of the row (from the south), clamped to the grid
+     */
+    public static int row(double n) {
+        return Math2.clamp(0, (int) ((n - SwissBounds.MIN_N) / SECTOR_HEIGHT),
+                           SECTORS_PER_AXIS - 1);
+    }
+
+    /**
+     * Retrieves the id of the first node of a sector, without allocating a {@code Sector}.
+     *
+     * @param column column of the sector (supposed valid)
+     * @param row    row of the sector (supposed valid)
+     * @return the id (index) of the first node in the sector
+     */
+    public int startNodeId(int column, int row) {
+        // As unsigned but small enough -> no need to convert to unsigned
+        return buffer.getInt((row * SECTORS_PER_AXIS + column) * SECTOR_SIZE + OFFSET_FIRST_NODE);
+    }
+
+    /**
+     * Retrieves the id of the node located right after the last node of a sector, without
+     * allocating a {@code Sector}.
+     *
+     * @param column column of the sector (supposed valid)
+     * @param row    row of the sector (supposed valid)
+     * @return the id (index) of the node located right after the last node in the sector
+     */
+    public int endNodeId(int column, int row) {
+        int sectorOffset = (row * SECTORS_PER_AXIS + column) * SECTOR_SIZE;
+        return buffer.getInt(sectorOffset + OFFSET_FIRST_NODE)
+                + Short.toUnsignedInt(buffer.getShort(sectorOffset + OFFSET_NODE_COUNT));
+    }
+
 }
@@ -0,0 +1,108 @@
+package ch.epfl.javelo.data;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import ch.epfl.javelo.Math2;
+import ch.epfl.javelo.Q28_4;
+
+/**
+ * Encoder of the elevation profiles of the edges, in the formats of {@code elevations.bin}
+ * decoded by {@code GraphEdges}: the first sample is always uncompressed (UQ12.4), the following
+ * ones are either uncompressed (type 1) or stored as deltas from the previous sample, Q4.4 (type
+ * 2, two per short) or Q0.4 (type 3, four per short), the first delta of each short in its most
+ * significant bits.
+ * <p>
+ * The samples are given in UQ12.4, and are encoded without loss.
+ * <p>
+ * Non-instantiable.
+ *
+ * @author Lucas Jung (324724)
+ * @author Florian Kolly (328313)
+ */
+public final class ProfileEncoder {
+
+    private ProfileEncoder() {
+    }
+
+    /**
+     * Computes the number of samples of the profile of an edge.
+     *
+     * @param lengthQ length of the edge (UQ12.4)
+     * @return the number of samples of its profile, one every 2 m at most
+     */
+    public static int sampleCount(int lengthQ) {
+        return 1 + Math2.ceilDiv(lengthQ, Q28_4.ofInt(2));
+    }
+
+    /**
+     * Chooses the most compact type encoding a profile without loss.
+     *
+     * @param samples samples of the profile (UQ12.4)
+     * @param count   number of samples, at the start of {@code samples}
+     * @return 3 if every delta between consecutive samples fits in 4 bits, 2 if every one fits in
+     *         8 bits, 1 otherwise
+     */
+    public static int type(int[] samples, int count) {
+        int type = 3;
+        for (int i = 1; i < count; i++) {
+            int delta = samples[i] - samples[i - 1];
+            if (delta < Byte.MIN_VALUE || delta > Byte.MAX_VALUE)
+                return 1;
+            if (delta < -8 || delta > 7)
+                type = 2;
+        }
+        return type;
+    }
+
+    /**
+     * Writes a profile with the given type.
+     *
+     * @param output  output to which the profile is written
+     * @param type    type of the profile, between 1 and 3, whose deltas must fit the samples
+     * @param samples samples of the profile (UQ12.4)
+     * @param count   number of samples, at the start of {@code samples}
+     * @return the number of shorts written
+     * @throws IOException if any input/output error is thrown while writing
+     */
+    public static int write(DataOutput output, int type, int[] samples, int count)
+            throws IOException {
+        output.writeShort(samples[0]);
+        if (type == 1) {
+            for (int i = 1; i < count; i++)
+                output.writeShort(samples[i]);
+            return count;
+        }
+        int samplesPerShort = (type - 1) * 2;
+        int sampleSize = Short.SIZE / samplesPerShort;
+        int shortCount = Math2.ceilDiv(count - 1, samplesPerShort);
+        for (int s = 0; s < shortCount; s++) {
+            int packed = 0;
+            for (int j = 0; j < samplesPerShort; j++) {
+                int i = 1 + s * samplesPerShort + j;
+                int delta = i < count ? samples[i] - samples[i - 1] : 0;
+                packed = (packed << sampleSize) | (delta & ((1 << sampleSize) - 1));
+            }
+            output.writeShort(packed);
+        }
+        return 1 + shortCount;
+    }
+
+    /**
+     * Computes the elevation gain of a profile, as stored in {@code edges.bin}.
+     *
+     * @param samples samples of the profile (UQ12.4)
+     * @param count   number of samples, at the start of {@code samples}
+     * @param inverse true to compute the gain from the last sample to the first one
+     * @return the sum of the positive deltas between consecutive samples (UQ12.4), clamped to
+     *         the greatest UQ12.4 value
+     */
+    public static int elevationGain(int[] samples, int count, boolean inverse) {
+        int gain = 0;
+        for (int i = 1; i < count; i++) {
+            int delta = samples[i] - samples[i - 1];
+            gain += Math.max(0, inverse ? -delta : delta);
+        }
+        return Math.min(gain, Character.MAX_VALUE);
+    }
+
+}
@@ -0,0 +1,478 @@
+package ch.epfl.javelo.data;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import ch.epfl.javelo.Math2;
+import ch.epfl.javelo.Preconditions;
+import ch.epfl.javelo.Q28_4;
+import ch.epfl.javelo.projection.SwissBounds;
+
+/**
+ * Offline tool generating a synthetic graph of any size, written in the files read by
+ * {@code Graph.loadFrom}, to measure the behaviour of the application on graphs of controlled
+ * size without the OpenStreetMap data.
+ * <p>
+ * The nodes are laid on a rectangular grid centered on Switzerland, whose spacing is 100 m, or
+ * less when needed for the grid to fit inside Switzerland, each node being moved randomly by at
+ * most a fifth of the spacing along each axis, without leaving its sector. Two topologies are
+ * available:
+ * <ul>
+ * <li>{@code GRID}: every node is linked to its four neighbours;</li>
+ * <li>{@code RANDOM_PLANAR}: 15% of the roads of the grid are removed and half of the cells of
+ * the grid are crossed by one of their diagonals, the graph staying planar.</li>
+ * </ul>
+ * Every road is made of two edges, the second one being inverted and sharing the profile of the
+ * first one. The profiles sample a hilly terrain rising to the south-east; 2% of the roads have
+ * no profile, the other ones are uncompressed (10%) or compressed with the most compact of the
+ * two compressed types whose deltas are large enough (the rest). The attributes of the roads are
+ * drawn from a mix of the common kinds of roads of the OpenStreetMap data, including one-way and
+ * forbidden roads.
+ * <p>
+ * The graph only depends on its size, its topology and the seed. The nodes are numbered sector
+ * by sector, and the files are written while the nodes are generated, so that graphs of tens of
+ * millions of nodes can be generated with little memory. The files derived from a previous graph
+ * (incoming edges, edge index, landmarks, contraction hierarchy and cost tables) are deleted from
+ * the target directory (see {@code Graph.deleteDerivedFiles}).
+ * <p>
+ * Usage: {@code SyntheticGraphGenerator <target directory> <node count> [grid|random_planar]
+ * [seed]}, the topology being {@code grid} and the seed 2022 by default.
+ * <p>
+ * Non-instantiable.
+ *
+ * @author Lucas Jung (324724)
+ * @author Florian Kolly (328313)
+ */
+public final class SyntheticGraphGenerator {
+
+    /**
+     * Topology of a synthetic graph.
+     */
+    public enum Topology {
+        GRID, RANDOM_PLANAR
+    }
+
+    /**
+     * Minimal number of nodes of a synthetic graph.
+     */
+    public static final int MIN_NODE_COUNT = 4;
+
+    /**
+     * Maximal number of nodes of a synthetic graph (random planar graphs of more than about 48
+     * million nodes have too many edges, see {@code generate}).
+     */
+    public static final int MAX_NODE_COUNT = 50_000_000;
+
+    private static final int SECTORS_PER_AXIS = 128;
+    private static final double SECTOR_WIDTH = SwissBounds.WIDTH / SECTORS_PER_AXIS;
+    private static final double SECTOR_HEIGHT = SwissBounds.HEIGHT / SECTORS_PER_AXIS;
+
+    /**
+     * Greatest spacing of the grid, in meters.
+     */
+    private static final double MAX_SPACING = 100;
+
+    /**
+     * Share of Switzerland's width and height the grid may cover at most.
+     */
+    private static final double MAX_EXTENT = 0.95;
+
+    /**
+     * Greatest move of a node along each axis, in spacings of the grid.
+     */
+    private static final double JITTER = 0.2;
+
+    private static final double REMOVED_ROAD_PROBABILITY = 0.15;
+    private static final double DIAGONAL_PROBABILITY = 0.5;
+    private static final double NO_PROFILE_PROBABILITY = 0.02;
+    private static final double UNCOMPRESSED_PROFILE_PROBABILITY = 0.1;
+
+    /**
+     * Number of bits taken by the first edge id in the packed out degree and first edge id of a
+     * node.
+     */
+    private static final int EDGE_ID_LENGTH = 28;
+    private static final int EDGE_BYTES = 10;
+
+    /**
+     * Greatest number of edges, for {@code edges.bin} to be mapped in a single buffer, and
+     * greatest number of samples, for their ids to fit in 30 bits.
+     */
+    private static final int MAX_EDGE_COUNT = Integer.MAX_VALUE / EDGE_BYTES;
+    private static final int MAX_SAMPLE_ID = (1 << 30) - 1;
+
+    // Kinds of roads, the lower-left cell or node of the road identifying it with its kind
+    private static final int HORIZONTAL = 0;
+    private static final int VERTICAL = 1;
+    private static final int RISING_DIAGONAL = 2;
+    private static final int FALLING_DIAGONAL = 3;
+
+    // Salts of the random values drawn for a road, added to its kind
+    private static final int EXISTENCE = 0;
+    private static final int ATTRIBUTES = 4;
+    private static final int PROFILE_TYPE = 8;
+
+    // Neighbours of a node: east, north, west, south, north-east, north-west, south-west,
+    // south-east, with the kind of the road leading to them, the offset of its lower-left cell or
+    // node and whether the node is the start of the road
+    private static final int[] DX = {1, 0, -1, 0, 1, -1, -1, 1};
+    private static final int[] DY = {0, 1, 0, -1, 1, 1, -1, -1};
+    private static final int[] ROAD_KINDS = {HORIZONTAL, VERTICAL, HORIZONTAL, VERTICAL,
+            RISING_DIAGONAL, FALLING_DIAGONAL, RISING_DIAGONAL, FALLING_DIAGONAL};
+    private static final int[] ROAD_DX = {0, 0, -1, 0, 0, -1, -1, 0};
+    private static final int[] ROAD_DY = {0, 0, 0, -1, 0, 0, -1, -1};
+    private static final boolean[] ROAD_STARTS = {true, true, false, false,
+            true, true, false, false};
+
+    /**
+     * Attribute sets of the roads, and the probability of each one, summing to 1.
+     */
+    private static final List<AttributeSet> ATTRIBUTE_SETS = List.of(
+            AttributeSet.of(Attribute.HIGHWAY_RESIDENTIAL, Attribute.SURFACE_ASPHALT),
+            AttributeSet.of(Attribute.HIGHWAY_RESIDENTIAL, Attribute.SURFACE_ASPHALT,
+                            Attribute.ONEWAY_YES),
+            AttributeSet.of(Attribute.HIGHWAY_SERVICE),
+            AttributeSet.of(Attribute.HIGHWAY_TRACK, Attribute.TRACKTYPE_GRADE2,
+                            Attribute.SURFACE_GRAVEL),
+            AttributeSet.of(Attribute.HIGHWAY_TRACK, Attribute.TRACKTYPE_GRADE4),
+            AttributeSet.of(Attribute.HIGHWAY_UNCLASSIFIED, Attribute.SURFACE_ASPHALT),
+            AttributeSet.of(Attribute.HIGHWAY_TERTIARY, Attribute.SURFACE_ASPHALT),
+            AttributeSet.of(Attribute.HIGHWAY_SECONDARY, Attribute.SURFACE_ASPHALT),
+            AttributeSet.of(Attribute.HIGHWAY_PRIMARY, Attribute.SURFACE_ASPHALT),
+            AttributeSet.of(Attribute.HIGHWAY_FOOTWAY),
+            AttributeSet.of(Attribute.HIGHWAY_PATH, Attribute.SURFACE_GROUND),
+            AttributeSet.of(Attribute.HIGHWAY_CYCLEWAY, Attribute.SURFACE_ASPHALT),
+            AttributeSet.of(Attribute.HIGHWAY_PATH, Attribute.BICYCLE_NO),
+            AttributeSet.of(Attribute.HIGHWAY_MOTORWAY));
+    private static final double[] ATTRIBUTE_SET_PROBABILITIES = {
+            0.24, 0.04, 0.12, 0.12, 0.05, 0.08, 0.08, 0.06, 0.04, 0.07, 0.05, 0.03, 0.01, 0.01};
+
+    private final Topology topology;
+    private final long seed;
+    private final int width, height;
+    private final double spacing, originE, originN;
+    // Sector column of each grid column, sector row of each grid row
+    private final int[] columns, rows;
+    // First grid column of each sector column, first grid row of each sector row, followed by the
+    // number of grid columns (resp. rows)
+    private final int[] firstXs, firstYs;
+    // Id of the first node of each sector
+    private final int[] firstNodeIds;
+    // Samples of the current profile, in UQ12.4
+    private int[] samples = new int[0];
+
+    private SyntheticGraphGenerator(int nodeCount, Topology topology, long seed) {
+        this.topology = topology;
+        this.seed = seed;
+        height = Math.max(2, (int) Math.round(
+                Math.sqrt(nodeCount * SwissBounds.HEIGHT / SwissBounds.WIDTH)));
+        width = Math.max(2, Math2.ceilDiv(nodeCount, height));
+        spacing = Math.min(MAX_SPACING, MAX_EXTENT * Math.min(SwissBounds.WIDTH / width,
+                                                              SwissBounds.HEIGHT / height));
+        originE = SwissBounds.MIN_E + (SwissBounds.WIDTH - spacing * (width - 1)) / 2;
+        originN = SwissBounds.MIN_N + (SwissBounds.HEIGHT - spacing * (height - 1)) / 2;
+
+        columns = new int[width];
+        firstXs = new int[SECTORS_PER_AXIS + 1];
+        for (int x = 0; x < width; x++) {
+            columns[x] = GraphSectors.column(originE + spacing * x);
+            firstXs[columns[x] + 1] = x + 1;
+        }
+        rows = new int[height];
+        firstYs = new int[SECTORS_PER_AXIS + 1];
+        for (int y = 0; y < height; y++) {
+            rows[y] = GraphSectors.row(originN + spacing * y);
+            firstYs[rows[y] + 1] = y + 1;
+        }
+        // Sectors without any grid column (resp. row) start where the previous one ends
+        for (int i = 1; i <= SECTORS_PER_AXIS; i++) {
+            firstXs[i] = Math.max(firstXs[i], firstXs[i - 1]);
+            firstYs[i] = Math.max(firstYs[i], firstYs[i - 1]);
+        }
+
+        firstNodeIds = new int[SECTORS_PER_AXIS * SECTORS_PER_AXIS];
+        int nodeId = 0;
+        for (int row = 0; row < SECTORS_PER_AXIS; row++)
+            for (int column = 0; column < SECTORS_PER_AXIS; column++) {
+                firstNodeIds[row * SECTORS_PER_AXIS + column] = nodeId;
+                int sectorNodeCount = columnWidth(column) * rowHeight(row);
+                Preconditions.checkArgument(sectorNodeCount <= Character.MAX_VALUE); // U16
+                nodeId += sectorNodeCount;
+            }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Preconditions.checkArgument(2 <= args.length && args.length <= 4);
+        Topology topology = args.length > 2
+                ? Topology.valueOf(args[2].toUpperCase(Locale.ROOT))
+                : Topology.GRID;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 2022;
+        generate(Path.of(args[0]), Integer.parseInt(args[1]), topology, seed);
+    }
+
+    /**
+     * Generates a synthetic graph and writes its files.
+     *
+     * @param targetPath directory to which the graph's files are written (created if needed)
+     * @param nodeCount  approximate number of nodes of the graph (the grid being rectangular, it
+     *                   may have slightly more)
+     * @param topology   topology of the graph
+     * @param seed       seed of the random values of the graph
+     * @return the number of nodes of the graph
+     * @throws IOException              if any input/output error is thrown during file related
+     *                                  operations
+     * @throws IllegalArgumentException if the number of nodes is not between
+     *                                  {@code MIN_NODE_COUNT} and {@code MAX_NODE_COUNT}
+     *                                  (included), or if the graph has more edges than
+     *                                  {@code Graph.loadFrom} can map or its profiles more
+     *                                  samples than {@code profile_ids.bin} can address
+     */
+    public static int generate(Path targetPath, int nodeCount, Topology topology, long seed)
+            throws IOException {
+        Preconditions.checkArgument(MIN_NODE_COUNT <= nodeCount && nodeCount <= MAX_NODE_COUNT);
+        return new SyntheticGraphGenerator(nodeCount, topology, seed).write(targetPath);
+    }
+
+    private int write(Path targetPath) throws IOException {
+        Files.createDirectories(targetPath);
+        // Profile id and elevation gain in the inverse direction (packed) of the roads whose
+        // first edge was written, but not the second one yet, by road key
+        Map<Long, Long> pendingRoads = new HashMap<>();
+        int nodeId = 0;
+        int edgeId = 0;
+        int sampleCount = 0;
+        try (DataOutputStream nodesStream = newStream(targetPath, "nodes.bin");
+             DataOutputStream edgesStream = newStream(targetPath, "edges.bin");
+             DataOutputStream profilesStream = newStream(targetPath, "profile_ids.bin");
+             DataOutputStream elevationsStream = newStream(targetPath, "elevations.bin")) {
+            for (int row = 0; row < SECTORS_PER_AXIS; row++)
+                for (int column = 0; column < SECTORS_PER_AXIS; column++)
+                    for (int y = firstYs[row]; y < firstYs[row + 1]; y++)
+                        for (int x = firstXs[column]; x < firstXs[column + 1]; x++) {
+                            int firstEdgeId = edgeId;
+                            for (int d = 0; d < DX.length; d++) {
+                                int targetX = x + DX[d];
+                                int targetY = y + DY[d];
+                                int roadX = x + ROAD_DX[d];
+                                int roadY = y + ROAD_DY[d];
+                                if (!isInGrid(targetX, targetY)
+                                        || !roadExists(roadX, roadY, ROAD_KINDS[d]))
+                                    continue;
+
+                                boolean isInverted = !ROAD_STARTS[d];
+                                int lengthQ = lengthQ(x, y, targetX, targetY);
+                                long roadKey = ((long) roadX << Integer.SIZE)
+                                        | ((long) roadY << 2) | ROAD_KINDS[d];
+                                Long pendingRoad = pendingRoads.remove(roadKey);
+                                int profileId, elevationGainQ;
+                                if (pendingRoad != null) {
+                                    profileId = (int) (pendingRoad >>> Integer.SIZE);
+                                    elevationGainQ = (int) (pendingRoad & 0xFFFF);
+                                } else {
+                                    // The profile goes from the start of the road to its end
+                                    int type = profileType(roadX, roadY, ROAD_KINDS[d],
+                                                           isInverted ? targetX : x,
+                                                           isInverted ? targetY : y,
+                                                           isInverted ? x : targetX,
+                                                           isInverted ? y : targetY,
+                                                           lengthQ);
+                                    int count = type == 0 ? 0 : ProfileEncoder.sampleCount(lengthQ);
+                                    profileId = (type << 30) | (type == 0 ? 0 : sampleCount);
+                                    if (type != 0)
+                                        sampleCount += ProfileEncoder.write(elevationsStream, type,
+                                                                            samples, count);
+                                    Preconditions.checkArgument(sampleCount <= MAX_SAMPLE_ID);
+                                    int ascentQ = ProfileEncoder.elevationGain(samples, count,
+                                                                               false);
+                                    int descentQ = ProfileEncoder.elevationGain(samples, count,
+                                                                                true);
+                                    elevationGainQ = isInverted ? descentQ : ascentQ;
+                                    pendingRoads.put(roadKey, ((long) profileId << Integer.SIZE)
+                                            | (isInverted ? ascentQ : descentQ));
+                                }
+
+                                Preconditions.checkArgument(edgeId < MAX_EDGE_COUNT);
+                                int targetNodeId = nodeId(targetX, targetY);
+                                edgesStream.writeInt(isInverted ? ~targetNodeId : targetNodeId);
+                                edgesStream.writeShort(lengthQ);
+                                edgesStream.writeShort(elevationGainQ);
+                                edgesStream.writeShort(attributeSetIndex(roadX, roadY,
+                                                                         ROAD_KINDS[d]));
+                                profilesStream.writeInt(profileId);
+                                edgeId++;
+                            }
+                            nodesStream.writeInt(rawE(x, y));
+                            nodesStream.writeInt(rawN(x, y));
+                            nodesStream.writeInt(((edgeId - firstEdgeId) << EDGE_ID_LENGTH)
+                                                         | firstEdgeId);
+                            nodeId++;
+                        }
+        }
+
+        try (DataOutputStream sectorsStream = newStream(targetPath, "sectors.bin")) {
+            for (int row = 0; row < SECTORS_PER_AXIS; row++)
+                for (int column = 0; column < SECTORS_PER_AXIS; column++) {
+                    sectorsStream.writeInt(firstNodeIds[row * SECTORS_PER_AXIS + column]);
+                    sectorsStream.writeShort(columnWidth(column) * rowHeight(row));
+                }
+        }
+        try (DataOutputStream attributesStream = newStream(targetPath, "attributes.bin")) {
+            for (AttributeSet attributeSet : ATTRIBUTE_SETS)
+                attributesStream.writeLong(attributeSet.bits());
+        }
+        Graph.deleteDerivedFiles(targetPath);
+        return nodeId;
+    }
+
+    private int columnWidth(int column) {
+        return firstXs[column + 1] - firstXs[column];
+    }
+
+    private int rowHeight(int row) {
+        return firstYs[row + 1] - firstYs[row];
+    }
+
+    private boolean isInGrid(int x, int y) {
+        return 0 <= x && x < width && 0 <= y && y < height;
+    }
+
+    /**
+     * Computes the id of the node of the grid at the given column and row, the nodes of each
+     * sector being numbered row by row.
+     */
+    private int nodeId(int x, int y) {
+        int column = columns[x];
+        int row = rows[y];
+        return firstNodeIds[row * SECTORS_PER_AXIS + column]
+                + (y - firstYs[row]) * columnWidth(column) + x - firstXs[column];
+    }
+
+    /**
+     * Computes the E coordinate (Q28.4) of the node of the grid at the given column and row,
+     * clamped to its sector. The bounds of the sectors being multiples of 1/16 m, the clamped
+     * coordinate lies in the sector exactly.
+     */
+    private int rawE(int x, int y) {
+        double e = originE + spacing * (x + JITTER * (2 * uniform(x, y, -1) - 1));
+        int min = (int) Math.scalb(SwissBounds.MIN_E + columns[x] * SECTOR_WIDTH, 4);
+        int max = (int) Math.scalb(SwissBounds.MIN_E + (columns[x] + 1) * SECTOR_WIDTH, 4) - 1;
+        return Math2.clamp(min, (int) Math.round(Math.scalb(e, 4)), max);
+    }
+
+    /**
+     * Computes the N coordinate (Q28.4) of the node of the grid at the given column and row,
+     * clamped to its sector.
+     */
+    private int rawN(int x, int y) {
+        double n = originN + spacing * (y + JITTER * (2 * uniform(x, y, -2) - 1));
+        int min = (int) Math.scalb(SwissBounds.MIN_N + rows[y] * SECTOR_HEIGHT, 4);
+        int max = (int) Math.scalb(SwissBounds.MIN_N + (rows[y] + 1) * SECTOR_HEIGHT, 4) - 1;
+        return Math2.clamp(min, (int) Math.round(Math.scalb(n, 4)), max);
+    }
+
+    /**
+     * Computes the length (UQ12.4) of the road between two nodes, the same in both directions.
+     */
+    private int lengthQ(int x1, int y1, int x2, int y2) {
+        double length = Math.hypot(Q28_4.asDouble(rawE(x2, y2) - rawE(x1, y1)),
+                                   Q28_4.asDouble(rawN(x2, y2) - rawN(x1, y1)));
+        return Math.max(1, (int) Math.round(Math.scalb(length, 4)));
+    }
+
+    private boolean roadExists(int roadX, int roadY, int kind) {
+        return switch (topology) {
+            case GRID -> kind == HORIZONTAL || kind == VERTICAL;
+            case RANDOM_PLANAR -> switch (kind) {
+                case HORIZONTAL, VERTICAL ->
+                        uniform(roadX, roadY, kind + EXISTENCE) >= REMOVED_ROAD_PROBABILITY;
+                // A single diagonal per cell, which therefore crosses no other road
+                default -> {
+                    double u = uniform(roadX, roadY, RISING_DIAGONAL + EXISTENCE);
+                    yield kind == RISING_DIAGONAL
+                            ? u < DIAGONAL_PROBABILITY / 2
+                            : DIAGONAL_PROBABILITY / 2 <= u && u < DIAGONAL_PROBABILITY;
+                }
+            };
+        };
+    }
+
+    private int attributeSetIndex(int roadX, int roadY, int kind) {
+        double u = uniform(roadX, roadY, kind + ATTRIBUTES);
+        int index = 0;
+        while (index < ATTRIBUTE_SETS.size() - 1 && u >= ATTRIBUTE_SET_PROBABILITIES[index])
+            u -= ATTRIBUTE_SET_PROBABILITIES[index++];
+        return index;
+    }
+
+    /**
+     * Samples the profile of a road, from its start node to its end node, into
+     * {@code samples}, and chooses its type: none, uncompressed, or the most compact type whose
+     * deltas are large enough.
+     */
+    private int profileType(int roadX, int roadY, int kind,
+                            int startX, int startY, int endX, int endY, int lengthQ) {
+        double u = uniform(roadX, roadY, kind + PROFILE_TYPE);
+        if (u < NO_PROFILE_PROBABILITY)
+            return 0;
+
+        int sampleCount = ProfileEncoder.sampleCount(lengthQ);
+        if (samples.length < sampleCount)
+            samples = new int[Math.max(sampleCount, 2 * samples.length)];
+        double startE = Q28_4.asDouble(rawE(startX, startY));
+        double startN = Q28_4.asDouble(rawN(startX, startY));
+        double endE = Q28_4.asDouble(rawE(endX, endY));
+        double endN = Q28_4.asDouble(rawN(endX, endY));
+        for (int i = 0; i < sampleCount; i++) {
+            double t = (double) i / (sampleCount - 1);
+            samples[i] = Math2.clamp(0, (int) Math.round(Math.scalb(elevation(
+                    Math2.interpolate(startE, endE, t), Math2.interpolate(startN, endN, t)), 4)),
+                                     Character.MAX_VALUE);
+        }
+        if (u < NO_PROFILE_PROBABILITY + UNCOMPRESSED_PROFILE_PROBABILITY)
+            return 1;
+        return ProfileEncoder.type(samples, sampleCount);
+    }
+
+    /**
+     * Computes the elevation of the terrain at a point, in meters: a plateau rising towards the
+     * Alps, in the south-east, covered by hills, smaller undulations and ranges of steep slopes.
+     */
+    private static double elevation(double e, double n) {
+        double x = (e - SwissBounds.MIN_E) / SwissBounds.WIDTH;
+        double y = (n - SwissBounds.MIN_N) / SwissBounds.HEIGHT;
+        return 450 + 1200 * x * (1 - y)
+                + 120 * Math.sin(e / 1800) * Math.cos(n / 2300)
+                + 25 * Math.sin((e + n) / 300)
+                + 200 * (1 + Math.sin(e / 3000 + n / 5000)) * Math.sin(n / 450);
+    }
+
+    /**
+     * Computes a random value between 0 (included) and 1 (excluded), depending only on the seed
+     * and the given integers.
+     */
+    private double uniform(int x, int y, int salt) {
+        long hash = mix(seed ^ mix(((long) x << Integer.SIZE) ^ (y & 0xFFFF_FFFFL)) ^ salt);
+        return (hash >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Mixes the bits of a long (finalizer of MurmurHash3).
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+
+    private static DataOutputStream newStream(Path basePath, String fileName) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(basePath.resolve(fileName))));
+    }
+
+}
@@ -6,6 +6,7 @@ import java.io.UncheckedIOException;
 import java.nio.file.Path;
 import ch.epfl.javelo.data.Graph;
 import ch.epfl.javelo.routing.CityBikeCF;
+import ch.epfl.javelo.routing.CostFactorTable;
 import ch.epfl.javelo.routing.CostFunction;
 import ch.epfl.javelo.routing.GpxGenerator;
 import ch.epfl.javelo.routing.RouteComputer;
@@ -80,7 +81,8 @@ public final class JaVelo extends Application {
     public void start(Stage stage) throws Exception {
         Graph graph = Graph.loadFrom(Path.of(GRAPH_DIRECTORY));
         TileManager tileManager = new TileManager(Path.of(CACHE_DIRECTORY), TILE_SERVER_NAME);
-        CostFunction costFunction = new CityBikeCF(graph);
+        // Cost factors evaluated once per edge instead of on every route computation
+        CostFunction costFunction = CostFactorTable.of(graph, new CityBikeCF(graph));
         RouteComputer routeComputer = new RouteComputer(graph, costFunction);
         RouteBean routeBean = new RouteBean(routeComputer);
         ErrorManager errorManager = new ErrorManager();
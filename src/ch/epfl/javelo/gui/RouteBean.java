@@ -2,14 +2,27 @@ package ch.epfl.javelo.gui;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import ch.epfl.javelo.routing.CostFunction;
 import ch.epfl.javelo.routing.ElevationProfile;
 import ch.epfl.javelo.routing.ElevationProfileComputer;
 import ch.epfl.javelo.routing.MultiRoute;
 import ch.epfl.javelo.routing.Route;
+import ch.epfl.javelo.routing.RouteCache;
 import ch.epfl.javelo.routing.RouteComputer;
+import ch.epfl.javelo.routing.RouteTree;
+import javafx.application.Platform;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.ReadOnlyObjectProperty;
@@ -22,6 +35,24 @@ import javafx.collections.ListChangeListener.Change;
 /**
  * JavaFX bean containing the JavaFX properties of the waypoints and the corresponding route.
  * (JavaFX Bean)
+ * <p>
+ * The route is computed in the background when the waypoints change, so the application thread is
+ * never blocked: the computation for the previous waypoints is cancelled, and the properties are
+ * updated on the application thread once the route of the latest waypoints is known. Every other
+ * method must be called by the application thread. The segments of a route are computed
+ * concurrently by a bounded pool of threads shared by all the route beans, and the idle threads
+ * stop after a while, releasing their search arrays.
+ * <p>
+ * When a single waypoint moves a short distance, its short segments (ending at it or starting
+ * from it) are computed incrementally, by growing the trees of the best routes from the waypoint
+ * before it and to the waypoint after it. The trees are kept as long as the same waypoint moves,
+ * so each new position only costs the search of the nodes which are farther from the fixed
+ * waypoints than the previous positions. The long segments are still computed by A* searches,
+ * faster than growing a tree over the whole area around the fixed waypoint.
+ * <p>
+ * The computed segments are kept in a route cache, by default the one shared by the whole
+ * application, so the segments of previous waypoints (e.g. a removed and added again waypoint) are
+ * not computed again.
  *
  * @author Lucas Jung (324724)
  * @author Florian Kolly (328313)
@@ -33,26 +64,118 @@ public final class RouteBean {
      */
     private static final int MAX_STEP_LENGTH = 5;
 
+    /**
+     * Maximum number of segments computed at the same time, by all the route beans. Each thread
+     * computing segments keeps its own search arrays (a few bytes per node of the graph), hence
+     * the limit.
+     */
+    private static final int MAX_SEGMENT_THREADS = 4;
+
+    /**
+     * Time, in seconds, after which an idle thread stops, releasing its search arrays.
+     */
+    private static final long IDLE_THREAD_TIMEOUT = 30;
+
+    /**
+     * Threads computing the segments missing from the cache concurrently, shared by all the route
+     * beans.
+     */
+    private static final ExecutorService SEGMENT_EXECUTOR = newDaemonThreadPool(
+            Math.min(MAX_SEGMENT_THREADS, Runtime.getRuntime().availableProcessors()),
+            "RouteBean segments");
+
+    /**
+     * Maximum distance, in meters, that a single waypoint can move for its segments to be computed
+     * incrementally.
+     */
+    private static final double MAX_INCREMENTAL_MOVE = 1_000;
+
+    /**
+     * Maximum distance, in meters, between the fixed and the moved waypoint of a segment computed
+     * incrementally.
+     */
+    private static final double MAX_INCREMENTAL_SEGMENT_LENGTH = 3_000;
+
     private final RouteComputer routeComputer;
 
+    /**
+     * Thread computing the routes, one at a time.
+     */
+    private final ExecutorService routeExecutor;
+
+    /**
+     * Runs the publication of the computed routes on the application thread.
+     */
+    private final Executor publisher;
+
     private final ObservableList<Waypoint> waypoints;
     private final ObjectProperty<Route> routeProperty;
     private final ObjectProperty<ElevationProfile> elevationProfileProperty;
     private final DoubleProperty highlightedPositionProperty;
 
     /**
-     * Cache memory storing every {@code SingleRoute} used in the current route.
+     * Cache of the segments, keyed by their start, destination and cost function.
      */
-    private final HashMap<NodeIdPair, Route> computedRoutes;
+    private final RouteCache routeCache;
 
     /**
-     * Constructor of a RouteBean.
+     * Waypoints of the current route.
+     */
+    private List<Waypoint> routeWaypoints;
+
+    /**
+     * Waypoints of the latest route computation started.
+     */
+    private List<Waypoint> requestedWaypoints;
+
+    /**
+     * Trees of the best routes from and to the fixed neighbours of the last moved waypoint,
+     * {@code null} until a waypoint moves. Only used by the route computation thread.
+     */
+    private RouteTree forwardTree;
+    private RouteTree backwardTree;
+
+    /**
+     * Number of route computations started, used to only publish the latest one.
+     */
+    private long generation;
+    private Future<?> pendingComputation;
+
+    /**
+     * Constructor of a RouteBean, caching the segments in the shared route cache.
      *
      * @param routeComputer a route planner
      */
     public RouteBean(RouteComputer routeComputer) {
+        this(routeComputer, RouteCache.shared());
+    }
+
+    /**
+     * Constructor of a RouteBean.
+     *
+     * @param routeComputer a route planner
+     * @param routeCache    cache of the segments
+     */
+    public RouteBean(RouteComputer routeComputer, RouteCache routeCache) {
+        this(routeComputer, routeCache, Platform::runLater);
+    }
+
+    /**
+     * Constructor of a RouteBean publishing the computed routes with a given executor instead of
+     * the JavaFX application thread.
+     *
+     * @param routeComputer a route planner
+     * @param routeCache    cache of the segments
+     * @param publisher     executor running the publication of the computed routes on the thread
+     *                      using the bean
+     */
+    RouteBean(RouteComputer routeComputer, RouteCache routeCache, Executor publisher) {
         this.routeComputer = routeComputer;
-        this.computedRoutes = new HashMap<>();
+        this.publisher = publisher;
+        this.routeCache = routeCache;
+        this.routeWaypoints = List.of();
+        this.requestedWaypoints = List.of();
+        this.routeExecutor = newDaemonThreadPool(1, "RouteBean route");
 
         this.waypoints = FXCollections.observableArrayList();
         this.routeProperty = new SimpleObjectProperty<>();
@@ -138,6 +261,9 @@ public final class RouteBean {
 
     /**
      * Retrieves the index of the segment at a given position, ignoring the empty segments.
+     * <p>
+     * The index is computed with the waypoints of the current route, which may be older than the
+     * current waypoints while a new route is being computed.
      *
      * @param position position on the route, in meters
      * @return the index of the segment at the position {@code position}
@@ -145,61 +271,289 @@ public final class RouteBean {
     public int indexOfNonEmptySegmentAt(double position) {
         int index = route().indexOfSegmentAt(position);
         for (int i = 0; i <= index; i++) {
-            int n1 = waypoints.get(i).closestNodeId();
-            int n2 = waypoints.get(i + 1).closestNodeId();
+            int n1 = routeWaypoints.get(i).closestNodeId();
+            int n2 = routeWaypoints.get(i + 1).closestNodeId();
             if (n1 == n2)
                 index++;
         }
-        return index;
+        return Math.min(index, waypoints.size() - 2);
     }
 
     /**
-     * Computes the best routes between every waypoint and combine them into a {@code MultiRoute}.
-     * If any of the route is {@code null} or if there are strictly less than 2 waypoints, the route
-     * and its profile are set to {@code null}.
+     * Starts computing the best routes between every waypoint and combining them into a
+     * {@code MultiRoute}, in the background, cancelling the computation of the previous waypoints
+     * if it is not over. If any of the route is {@code null} or if there are strictly less than 2
+     * waypoints, the route and its profile are set to {@code null}.
      */
     private void computeRoute() {
+        generation++;
+        if (pendingComputation != null)
+            pendingComputation.cancel(true);
         if (waypoints.size() < 2) {
             emptyRoute();
-            computedRoutes.clear();
+            requestedWaypoints = List.of();
             return;
         }
-        List<Route> segments = new ArrayList<>();
-        Set<NodeIdPair> keysToKeep = new HashSet<>();
-        for (int i = 0; i < waypoints.size() - 1; i++) {
-            int startNodeId = waypoints.get(i).closestNodeId();
-            int destinationNodeId = waypoints.get(i + 1).closestNodeId();
+
+        List<Waypoint> requestWaypoints = List.copyOf(waypoints);
+        // Roots of the trees computing the segments of a moved waypoint, -1 if there are none
+        int forwardRootNodeId = -1, backwardRootNodeId = -1;
+        int movedIndex = movedWaypointIndex(requestedWaypoints, requestWaypoints);
+        if (movedIndex > 0 && isIncremental(requestWaypoints, movedIndex - 1, movedIndex))
+            forwardRootNodeId = requestWaypoints.get(movedIndex - 1).closestNodeId();
+        if (movedIndex != -1 && movedIndex < requestWaypoints.size() - 1
+                && isIncremental(requestWaypoints, movedIndex + 1, movedIndex))
+            backwardRootNodeId = requestWaypoints.get(movedIndex + 1).closestNodeId();
+        requestedWaypoints = requestWaypoints;
+        List<NodeIdPair> keys = new ArrayList<>();
+        for (int i = 0; i < requestWaypoints.size() - 1; i++) {
+            int startNodeId = requestWaypoints.get(i).closestNodeId();
+            int destinationNodeId = requestWaypoints.get(i + 1).closestNodeId();
             // Don't compute route if start and destination are associated to the same node id
-            if (startNodeId == destinationNodeId)
-                continue;
-            NodeIdPair key = new NodeIdPair(startNodeId, destinationNodeId);
-            Route bestRoute = computedRoutes.containsKey(key) ? computedRoutes.get(key)
-                    : routeComputer.bestRouteBetween(startNodeId, destinationNodeId);
-            computedRoutes.putIfAbsent(key, bestRoute);
-            if (bestRoute == null) { // route could not be found
-                emptyRoute();
-                return;
+            if (startNodeId != destinationNodeId)
+                keys.add(new NodeIdPair(startNodeId, destinationNodeId));
+        }
+        // The computation gets the cached segments, the cache may evict them in the meantime. The
+        // segments known to be unreachable are mapped to null
+        Map<NodeIdPair, Route> routes = new HashMap<>();
+        CostFunction costFunction = routeComputer.costFunction();
+        for (NodeIdPair key : keys) {
+            RouteCache.CachedRoute cached = routeCache.get(key.startNodeId(),
+                                                           key.destinationNodeId(), costFunction);
+            if (cached != null)
+                routes.put(key, cached.route());
+        }
+
+        long requestGeneration = generation;
+        int forwardRoot = forwardRootNodeId, backwardRoot = backwardRootNodeId;
+        pendingComputation = routeExecutor.submit(() -> {
+            try {
+                computeMissingSegments(keys, routes, forwardRoot, backwardRoot);
+                for (Map.Entry<NodeIdPair, Route> entry : routes.entrySet()) {
+                    NodeIdPair key = entry.getKey();
+                    if (entry.getValue() == null)
+                        routeCache.putNoRoute(key.startNodeId(), key.destinationNodeId(),
+                                              costFunction);
+                    else
+                        routeCache.put(key.startNodeId(), key.destinationNodeId(), costFunction,
+                                       entry.getValue());
+                }
+                Route combinedRoute = combineSegments(keys, routes);
+                ElevationProfile profile = combinedRoute == null ? null
+                        : ElevationProfileComputer.elevationProfile(combinedRoute,
+                                                                    MAX_STEP_LENGTH);
+                publisher.execute(() -> publishRoute(requestGeneration, requestWaypoints,
+                                                     combinedRoute, profile));
+            } catch (CancellationException e) {
+                // Superseded by a newer computation
+            } catch (RuntimeException e) {
+                publisher.execute(() -> {
+                    throw e;
+                });
             }
-            keysToKeep.add(key);
-            segments.add(bestRoute);
+        });
+    }
+
+    /**
+     * Finds the waypoint which moved a short distance between two lists of waypoints.
+     *
+     * @param oldWaypoints previous waypoints
+     * @param newWaypoints current waypoints
+     * @return the index of the only waypoint which differs between the lists, if it moved at most
+     *         {@code MAX_INCREMENTAL_MOVE} meters, -1 otherwise
+     */
+    private static int movedWaypointIndex(List<Waypoint> oldWaypoints,
+                                          List<Waypoint> newWaypoints) {
+        if (oldWaypoints.size() != newWaypoints.size())
+            return -1;
+        int movedIndex = -1;
+        for (int i = 0; i < newWaypoints.size(); i++) {
+            if (oldWaypoints.get(i).equals(newWaypoints.get(i)))
+                continue;
+            if (movedIndex != -1)
+                return -1;
+            movedIndex = i;
         }
-        computedRoutes.keySet().retainAll(keysToKeep);
-        if (segments.isEmpty()) { // if all waypoints are on same node id
-            emptyRoute();
+        if (movedIndex != -1 && oldWaypoints.get(movedIndex).point()
+                .distanceTo(newWaypoints.get(movedIndex).point()) > MAX_INCREMENTAL_MOVE)
+            return -1;
+        return movedIndex;
+    }
+
+    /**
+     * Checks whether the segment between a fixed waypoint and the moved one is short enough to be
+     * computed incrementally.
+     *
+     * @param waypoints  the waypoints
+     * @param fixedIndex index of the fixed waypoint
+     * @param movedIndex index of the moved waypoint
+     * @return true if the waypoints are at most {@code MAX_INCREMENTAL_SEGMENT_LENGTH} meters
+     *         apart, false otherwise
+     */
+    private static boolean isIncremental(List<Waypoint> waypoints, int fixedIndex, int movedIndex) {
+        return waypoints.get(fixedIndex).point().distanceTo(waypoints.get(movedIndex).point())
+                <= MAX_INCREMENTAL_SEGMENT_LENGTH;
+    }
+
+    /**
+     * Computes the routes of the segments which are not known yet: the ones starting at
+     * {@code forwardRootNodeId} or ending at {@code backwardRootNodeId} with the trees of these
+     * nodes, the other ones concurrently if there are several. Called by the route computation
+     * thread.
+     *
+     * @param keys               start and destination of each segment of the route
+     * @param routes             known routes, to which the computed ones are added
+     * @param forwardRootNodeId  id of the start of the segments computed with the forward tree, or
+     *                           -1 if there are none
+     * @param backwardRootNodeId id of the destination of the segments computed with the backward
+     *                           tree, or -1 if there are none
+     * @throws CancellationException if the computation is cancelled
+     */
+    private void computeMissingSegments(List<NodeIdPair> keys,
+                                        Map<NodeIdPair, Route> routes,
+                                        int forwardRootNodeId,
+                                        int backwardRootNodeId) {
+        List<NodeIdPair> missingKeys = new ArrayList<>(new LinkedHashSet<>(keys));
+        missingKeys.removeAll(routes.keySet());
+        // The trees are only used by this thread, so they stay consistent when it is interrupted
+        for (NodeIdPair key : List.copyOf(missingKeys)) {
+            Route route;
+            if (key.startNodeId() == forwardRootNodeId)
+                route = forwardTree(forwardRootNodeId).route(key.destinationNodeId());
+            else if (key.destinationNodeId() == backwardRootNodeId)
+                route = backwardTree(backwardRootNodeId).route(key.startNodeId());
+            else
+                continue;
+            routes.put(key, route);
+            missingKeys.remove(key);
+        }
+        if (missingKeys.isEmpty())
             return;
+        if (missingKeys.size() == 1) {
+            NodeIdPair key = missingKeys.get(0);
+            routes.put(key, routeComputer.bestRouteBetween(key.startNodeId(),
+                                                           key.destinationNodeId()));
+            return;
+        }
+
+        List<Callable<Route>> tasks = new ArrayList<>();
+        for (NodeIdPair key : missingKeys)
+            tasks.add(() -> routeComputer.bestRouteBetween(key.startNodeId(),
+                                                           key.destinationNodeId()));
+        try {
+            // Interrupting this thread cancels the tasks which are not over
+            List<Future<Route>> missingRoutes = SEGMENT_EXECUTOR.invokeAll(tasks);
+            for (int i = 0; i < missingKeys.size(); i++)
+                routes.put(missingKeys.get(i), missingRoutes.get(i).get());
+        } catch (InterruptedException e) {
+            throw new CancellationException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause)
+                throw cause;
+            throw new IllegalStateException(e.getCause());
         }
-        Route combinedRoute = new MultiRoute(segments);
-        ElevationProfile profile = ElevationProfileComputer.elevationProfile(combinedRoute,
-                MAX_STEP_LENGTH);
-        routeProperty.set(combinedRoute);
+    }
+
+    /**
+     * Retrieves the tree of the best routes from a node, reusing the one of the previous node if
+     * it was the same. Called by the route computation thread.
+     *
+     * @param rootNodeId id of the starting node of the routes
+     * @return the forward tree of the node
+     */
+    private RouteTree forwardTree(int rootNodeId) {
+        if (forwardTree == null)
+            forwardTree = routeComputer.forwardTree(rootNodeId);
+        else if (forwardTree.rootNodeId() != rootNodeId)
+            forwardTree.reset(rootNodeId);
+        return forwardTree;
+    }
+
+    /**
+     * Retrieves the tree of the best routes to a node, reusing the one of the previous node if it
+     * was the same. Called by the route computation thread.
+     *
+     * @param rootNodeId id of the destination node of the routes
+     * @return the backward tree of the node
+     */
+    private RouteTree backwardTree(int rootNodeId) {
+        if (backwardTree == null)
+            backwardTree = routeComputer.backwardTree(rootNodeId);
+        else if (backwardTree.rootNodeId() != rootNodeId)
+            backwardTree.reset(rootNodeId);
+        return backwardTree;
+    }
+
+    /**
+     * Combines the routes of the segments into a single route.
+     *
+     * @param keys   start and destination of each segment of the route
+     * @param routes route of each segment
+     * @return the combined route, or {@code null} if there is no segment or if any of the routes
+     *         is {@code null}
+     */
+    private static Route combineSegments(List<NodeIdPair> keys, Map<NodeIdPair, Route> routes) {
+        if (keys.isEmpty()) // if all waypoints are on same node id
+            return null;
+        List<Route> segments = new ArrayList<>();
+        for (NodeIdPair key : keys) {
+            Route segment = routes.get(key);
+            if (segment == null) // route could not be found
+                return null;
+            segments.add(segment);
+        }
+        return new MultiRoute(segments);
+    }
+
+    /**
+     * Publishes the result of a route computation, unless newer waypoints have been given since.
+     * Called by the application thread.
+     *
+     * @param requestGeneration generation of the computation
+     * @param requestWaypoints  waypoints of the computed route
+     * @param route             the computed route, or {@code null} if it does not exist
+     * @param profile           the profile of the computed route, or {@code null}
+     */
+    private void publishRoute(long requestGeneration,
+                              List<Waypoint> requestWaypoints,
+                              Route route,
+                              ElevationProfile profile) {
+        if (requestGeneration != generation)
+            return;
+        pendingComputation = null;
+        routeWaypoints = requestWaypoints;
+        routeProperty.set(route);
         elevationProfileProperty.set(profile);
     }
 
     private void emptyRoute() {
+        routeWaypoints = List.of();
         routeProperty.set(null);
         elevationProfileProperty.set(null);
     }
 
+    /**
+     * Creates a pool of daemon threads, which don't prevent the application from exiting. The
+     * threads are only started when needed and stop after {@code IDLE_THREAD_TIMEOUT} seconds
+     * without work, so an idle pool (e.g. the one of a route bean no longer used) holds no thread,
+     * nor the search arrays of its threads.
+     *
+     * @param threadCount maximum number of threads of the pool
+     * @param name        name of the threads
+     * @return the thread pool
+     */
+    private static ExecutorService newDaemonThreadPool(int threadCount, String name) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                threadCount, threadCount, IDLE_THREAD_TIMEOUT, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, name);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
     /**
      * Pair of node ids representing the start and the end of a route between two waypoints.
      * (record)
@@ -2,6 +2,7 @@ package ch.epfl.javelo.gui;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import ch.epfl.javelo.data.Graph;
 import ch.epfl.javelo.projection.PointCh;
@@ -17,6 +18,12 @@ import javafx.scene.shape.SVGPath;
 
 /**
  * Manager for the display and the interaction with the waypoints.
+ * <p>
+ * While a pin is dragged, its waypoint is replaced by a preview waypoint at the pin's position,
+ * at most every {@code DRAG_PREVIEW_INTERVAL} milliseconds, so the route follows the pin (the
+ * segments of a single moved waypoint are computed incrementally, see {@code RouteBean}). The
+ * waypoint is committed when the pin is released, or restored if the pin is released where no
+ * waypoint can be placed.
  *
  * @author Lucas Jung (324724)
  * @author Florian Kolly (328313)
@@ -33,6 +40,11 @@ public final class WaypointsManager {
      */
     private static final String ERROR_MSG = "Aucune route à proximité !";
 
+    /**
+     * Minimum time, in milliseconds, between two preview waypoints while a pin is dragged.
+     */
+    private static final long DRAG_PREVIEW_INTERVAL = 50;
+
     private static final String CONTOUR_SVG = "M-8-20C-5-14-2-7 0 0 2-7 5-14 8-20 20-40-20-40-8-20";
     private static final String INTERIOR_SVG = "M0-23A1 1 0 000-29 1 1 0 000-23";
 
@@ -45,7 +57,13 @@ public final class WaypointsManager {
     private final List<Group> pins;
 
     private Point2D lastMousePosition;
-    private Point2D lastValidPinPosition;
+
+    /**
+     * Waypoint of the dragged pin when it was pressed, restored if the pin is released where no
+     * waypoint can be placed.
+     */
+    private Waypoint pressedWaypoint;
+    private long lastPreviewNanos;
 
     /**
      * Constructor of a waypoints manager.
@@ -69,7 +87,13 @@ public final class WaypointsManager {
         this.pane.setPickOnBounds(false); // don't block background events
 
         this.mapParamsProperty.addListener((p, o, n) -> positionPins());
-        this.waypoints.addListener((Change<? extends Waypoint> wp) -> redrawPins());
+        this.waypoints.addListener((Change<? extends Waypoint> wp) -> {
+            // A replaced waypoint (e.g. a drag preview) keeps its pin, which may be dragged
+            if (isReplacement(wp))
+                positionPins();
+            else
+                redrawPins();
+        });
 
         redrawPins();
     }
@@ -95,12 +119,29 @@ public final class WaypointsManager {
     public boolean addWaypoint(double x, double y) {
         PointCh point = mapParamsProperty.get().pointAt(x, y).toPointCh();
         Waypoint wp = waypointAt(point);
-        if (wp == null) // could not find a valid waypoint
+        if (wp == null) { // could not find a valid waypoint
+            errorConsumer.accept(ERROR_MSG);
             return false;
+        }
         waypoints.add(wp);
         return true;
     }
 
+    /**
+     * Checks whether a change of the waypoints only replaces waypoints, without changing their
+     * number nor their order.
+     *
+     * @param change change of the waypoints
+     * @return true if the change only replaces waypoints, false otherwise
+     */
+    private static boolean isReplacement(Change<? extends Waypoint> change) {
+        change.reset();
+        while (change.next())
+            if (!change.wasReplaced() || change.getAddedSize() != change.getRemovedSize())
+                return false;
+        return true;
+    }
+
     /**
      * Recreates and positions every pin (one for each waypoint).
      */
@@ -171,33 +212,54 @@ public final class WaypointsManager {
         // Move marker control
         pin.setOnMousePressed(e -> {
             lastMousePosition = new Point2D(e.getX(), e.getY());
-            lastValidPinPosition = new Point2D(pin.getLayoutX(), pin.getLayoutY());
+            pressedWaypoint = waypoints.get(waypointIndex);
+            lastPreviewNanos = System.nanoTime();
         });
         pin.setOnMouseDragged(e -> {
             Point2D movement = new Point2D(e.getX(), e.getY()).subtract(lastMousePosition);
             pin.setLayoutX(pin.getLayoutX() + movement.getX());
             pin.setLayoutY(pin.getLayoutY() + movement.getY());
+
+            // Preview of the route, throttled as every new waypoint starts a route computation
+            long nanos = System.nanoTime();
+            if (nanos - lastPreviewNanos < TimeUnit.MILLISECONDS.toNanos(DRAG_PREVIEW_INTERVAL))
+                return;
+            lastPreviewNanos = nanos;
+            Waypoint wp = waypointAt(pinPoint(pin, 0, 0));
+            if (wp != null) // the previous preview stays until the pin is at a valid position
+                waypoints.set(waypointIndex, wp);
         });
         pin.setOnMouseReleased(e -> {
             if (!e.isStillSincePress()) {
                 Point2D movement = new Point2D(e.getX(), e.getY()).subtract(lastMousePosition);
-                // CHANGE: format
-                PointCh point = mapParamsProperty.get()
-                                                 .pointAt(pin.getLayoutX() + movement.getX(),
-                                                         pin.getLayoutY() + movement.getY())
-                                                 .toPointCh();
-                Waypoint wp = waypointAt(point);
+                Waypoint wp = waypointAt(pinPoint(pin, movement.getX(), movement.getY()));
                 if (wp == null) {
-                    pin.setLayoutX(lastValidPinPosition.getX());
-                    pin.setLayoutY(lastValidPinPosition.getY());
+                    errorConsumer.accept(ERROR_MSG);
+                    if (!waypoints.get(waypointIndex).equals(pressedWaypoint))
+                        waypoints.set(waypointIndex, pressedWaypoint);
+                    positionPins();
                 } else
                     waypoints.set(waypointIndex, wp);
             }
-            lastValidPinPosition = null;
+            pressedWaypoint = null;
             lastMousePosition = null;
         });
     }
 
+    /**
+     * Retrieves the position in Switzerland of a pin moved by a given offset.
+     *
+     * @param pin pin
+     * @param dx  horizontal offset, in pixels
+     * @param dy  vertical offset, in pixels
+     * @return the position of the moved pin, or {@code null} if it is outside of Switzerland
+     */
+    private PointCh pinPoint(Group pin, double dx, double dy) {
+        return mapParamsProperty.get()
+                                .pointAt(pin.getLayoutX() + dx, pin.getLayoutY() + dy)
+                                .toPointCh();
+    }
+
     /**
      * Positions all waypoints on the map.
      */
@@ -210,8 +272,7 @@ public final class WaypointsManager {
     }
 
     /**
-     * Creates the waypoint at a given position in Switzerland if the position is valid, publishes
-     * an error to the error consumer otherwise.
+     * Creates the waypoint at a given position in Switzerland if the position is valid.
      *
      * @param point position of the waypoint in Switzerland
      * @return the waypoint at the given position in Switzerland if a graph node is found closer
@@ -220,11 +281,7 @@ public final class WaypointsManager {
     private Waypoint waypointAt(PointCh point) {
         // Point could be null if set outside of Switzerland
         int closestNodeId = point != null ? graph.nodeClosestTo(point, SEARCH_DISTANCE) : -1;
-        if (closestNodeId == -1) {
-            errorConsumer.accept(ERROR_MSG);
-            return null;
-        }
-        return new Waypoint(point, closestNodeId);
+        return closestNodeId == -1 ? null : new Waypoint(point, closestNodeId);
     }
 
 }
@@ -0,0 +1,179 @@
+package ch.epfl.javelo.osm;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import ch.epfl.javelo.Math2;
+
+/**
+ * Elevation model given by a grid in the ESRI ASCII format: a header giving the number of columns
+ * and rows, the position of the lower-left cell and the size of the cells, followed by the
+ * elevations of the cells, row by row from the north.
+ * <p>
+ * The elevations are stored as UQ12.4 values, the precision of {@code elevations.bin}, i.e. two
+ * bytes per cell (about 250 MB for the DHM25 model of Switzerland, 25 m cells).
+ * <p>
+ * Immutable.
+ *
+ * @author Lucas Jung (324724)
+ * @author Florian Kolly (328313)
+ */
+final class AsciiGridElevationModel implements ElevationModel {
+
+    /**
+     * Value of the cells without elevation.
+     */
+    private static final char NO_DATA = Character.MAX_VALUE;
+
+    // Offsets between the CH1903+ (LV95) and CH1903 (LV03) coordinates
+    private static final double LV03_OFFSET_E = 2_000_000;
+    private static final double LV03_OFFSET_N = 1_000_000;
+
+    private final int columnCount, rowCount;
+    // Coordinates of the center of the north-west cell, and size of the cells
+    private final double westE, northN, cellSize;
+    private final char[] elevations;
+
+    private AsciiGridElevationModel(int columnCount, int rowCount,
+                                    double westE, double northN, double cellSize,
+                                    char[] elevations) {
+        this.columnCount = columnCount;
+        this.rowCount = rowCount;
+        this.westE = westE;
+        this.northN = northN;
+        this.cellSize = cellSize;
+        this.elevations = elevations;
+    }
+
+    /**
+     * Loads a grid file.
+     *
+     * @param file grid file
+     * @return the elevation model of the grid
+     * @throws IOException if any input/output error is thrown while reading, or if the grid is
+     *                     malformed
+     */
+    static AsciiGridElevationModel load(Path file) throws IOException {
+        try (Tokenizer tokenizer = new Tokenizer(
+                Files.newBufferedReader(file, StandardCharsets.US_ASCII))) {
+            Map<String, Double> header = new HashMap<>();
+            String token;
+            while ((token = tokenizer.next()) != null && Character.isLetter(token.charAt(0)))
+                header.put(token.toLowerCase(Locale.ROOT), tokenizer.nextDouble());
+
+            int columnCount = (int) headerValue(header, "ncols", file);
+            int rowCount = (int) headerValue(header, "nrows", file);
+            double cellSize = headerValue(header, "cellsize", file);
+            if (columnCount < 2 || rowCount < 2 || !(cellSize > 0))
+                throw new IOException("Invalid grid size in " + file);
+            // Center of the south-west cell
+            double westE = header.containsKey("xllcenter")
+                    ? header.get("xllcenter")
+                    : headerValue(header, "xllcorner", file) + cellSize / 2;
+            double southN = header.containsKey("yllcenter")
+                    ? header.get("yllcenter")
+                    : headerValue(header, "yllcorner", file) + cellSize / 2;
+            if (westE < LV03_OFFSET_E) {
+                westE += LV03_OFFSET_E;
+                southN += LV03_OFFSET_N;
+            }
+            double noData = header.getOrDefault("nodata_value", Double.NaN);
+
+            char[] elevations = new char[Math.multiplyExact(columnCount, rowCount)];
+            for (int i = 0; i < elevations.length; i++) {
+                if (token == null)
+                    throw new IOException("Missing elevations in " + file);
+                double elevation = Double.parseDouble(token);
+                elevations[i] = elevation == noData || Double.isNaN(elevation)
+                        ? NO_DATA
+                        : (char) Math2.clamp(0, (int) Math.round(Math.scalb(elevation, 4)),
+                                             NO_DATA - 1);
+                token = tokenizer.next();
+            }
+            return new AsciiGridElevationModel(columnCount, rowCount, westE,
+                                               southN + (rowCount - 1) * cellSize, cellSize,
+                                               elevations);
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed grid " + file, e);
+        }
+    }
+
+    private static double headerValue(Map<String, Double> header, String key, Path file)
+            throws IOException {
+        Double value = header.get(key);
+        if (value == null)
+            throw new IOException("Missing " + key + " in the header of " + file);
+        return value;
+    }
+
+    @Override
+    public double elevationAt(double e, double n) {
+        double x = (e - westE) / cellSize;
+        double y = (northN - n) / cellSize;
+        if (!(0 <= x && x <= columnCount - 1 && 0 <= y && y <= rowCount - 1))
+            return Double.NaN;
+        int column = Math.min((int) x, columnCount - 2);
+        int row = Math.min((int) y, rowCount - 2);
+        int index = row * columnCount + column;
+        char northWest = elevations[index];
+        char northEast = elevations[index + 1];
+        char southWest = elevations[index + columnCount];
+        char southEast = elevations[index + columnCount + 1];
+        if (northWest == NO_DATA || northEast == NO_DATA
+                || southWest == NO_DATA || southEast == NO_DATA)
+            return Double.NaN;
+        double dx = x - column;
+        double dy = y - row;
+        double north = Math2.interpolate(northWest, northEast, dx);
+        double south = Math2.interpolate(southWest, southEast, dx);
+        return Math.scalb(Math2.interpolate(north, south, dy), -4);
+    }
+
+    /**
+     * Splitter of a text into the tokens separated by whitespace.
+     */
+    private static final class Tokenizer implements AutoCloseable {
+
+        private final Reader reader;
+        private final StringBuilder token = new StringBuilder();
+
+        Tokenizer(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * Reads the next token, or returns null at the end of the text.
+         */
+        String next() throws IOException {
+            token.setLength(0);
+            int c;
+            while ((c = reader.read()) != -1 && Character.isWhitespace(c)) {
+            }
+            while (c != -1 && !Character.isWhitespace(c)) {
+                token.append((char) c);
+                c = reader.read();
+            }
+            return token.length() == 0 ? null : token.toString();
+        }
+
+        double nextDouble() throws IOException {
+            String next = next();
+            if (next == null)
+                throw new IOException("Truncated header");
+            return Double.parseDouble(next);
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+
+    }
+
+}
@@ -0,0 +1,43 @@
+package ch.epfl.javelo.osm;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Digital elevation model, giving the elevation of the points of Switzerland.
+ *
+ * @author Lucas Jung (324724)
+ * @author Florian Kolly (328313)
+ */
+@FunctionalInterface
+public interface ElevationModel {
+
+    /**
+     * Elevation model without any elevation, the edges built with it having no profile.
+     */
+    ElevationModel NONE = (e, n) -> Double.NaN;
+
+    /**
+     * Computes the elevation of a point.
+     *
+     * @param e east coordinate of the point (CH1903+)
+     * @param n north coordinate of the point (CH1903+)
+     * @return the elevation of the point, in meters, or {@code Double.NaN} if it is unknown
+     */
+    double elevationAt(double e, double n);
+
+    /**
+     * Loads an elevation model from a grid in the ESRI ASCII format, e.g. the DHM25 or
+     * swissALTI3D models of swisstopo, whose coordinates are given in CH1903+ (LV95) or CH1903
+     * (LV03).
+     *
+     * @param file grid file
+     * @return the elevation model of the grid, interpolating bilinearly between its cells
+     * @throws IOException if any input/output error is thrown while reading, or if the grid is
+     *                     malformed
+     */
+    static ElevationModel loadAsciiGrid(Path file) throws IOException {
+        return AsciiGridElevationModel.load(file);
+    }
+
+}
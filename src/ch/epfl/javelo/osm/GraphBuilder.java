@@ -0,0 +1,495 @@
+package ch.epfl.javelo.osm;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import ch.epfl.javelo.Math2;
+import ch.epfl.javelo.Preconditions;
+import ch.epfl.javelo.Q28_4;
+import ch.epfl.javelo.data.Attribute;
+import ch.epfl.javelo.data.AttributeSet;
+import ch.epfl.javelo.data.Graph;
+import ch.epfl.javelo.data.GraphSectors;
+import ch.epfl.javelo.data.ProfileEncoder;
+import ch.epfl.javelo.projection.Ch1903;
+import ch.epfl.javelo.projection.SwissBounds;
+
+/**
+ * Offline tool building the files of a graph, as read by {@code Graph.loadFrom}, from an
+ * OpenStreetMap extract and an elevation model.
+ * <p>
+ * The roads are the ways whose {@code highway} tag is one of the attributes of JaVelo (e.g.
+ * {@code highway=residential}), except areas. Every node of a road inside Switzerland is a node
+ * of the graph, and every segment between two consecutive nodes of a road is made of two edges,
+ * the second one being inverted and sharing the profile of the first one. The attributes of the
+ * edges are the tags of their road which are attributes of JaVelo, each distinct set being
+ * stored once.
+ * <p>
+ * The graph is built in stages, the extract being read three times so that neither its nodes
+ * nor its ways are kept in memory:
+ * <ol>
+ * <li>the ways are read, keeping the ids of the nodes of the roads and their attribute sets;</li>
+ * <li>the nodes are read, keeping the coordinates of the nodes of the roads;</li>
+ * <li>the ways are read again, keeping their segments;</li>
+ * <li>the nodes are sorted by sector, and numbered in that order;</li>
+ * <li>the profiles of the segments are sampled every 2 m at most, and compressed with the most
+ * compact type storing them without loss, by several threads, chunk after chunk, and written as
+ * soon as they are computed;</li>
+ * <li>the nodes, sectors, edges (ordered by source node) and attribute sets are written.</li>
+ * </ol>
+ * The blocks of PBF extracts are decoded by several threads too. The memory used is about 25
+ * bytes per node and 45 bytes per segment of the roads.
+ * <p>
+ * The segments which cannot be stored are dropped: those having a node outside Switzerland or
+ * missing from the extract, those longer than 4095 m, and those of nodes which already have 15
+ * edges. The files derived from a previous graph (incoming edges, edge index, landmarks,
+ * contraction hierarchy and cost tables) are deleted from the target directory (see
+ * {@code Graph.deleteDerivedFiles}).
+ * <p>
+ * Usage: {@code GraphBuilder <OSM file (.osm, .osm.gz or .osm.pbf)> <target directory>
+ * [<elevation grid (ESRI ASCII)>]}, the edges having no profile without elevation grid.
+ * <p>
+ * Non-instantiable.
+ *
+ * @author Lucas Jung (324724)
+ * @author Florian Kolly (328313)
+ */
+public final class GraphBuilder {
+
+    /**
+     * Statistics of a build. (record)
+     *
+     * @param nodeCount           number of nodes of the graph
+     * @param edgeCount           number of edges of the graph
+     * @param attributeSetCount   number of distinct attribute sets of the edges
+     * @param droppedSegmentCount number of segments of the roads which could not be stored
+     */
+    public record Statistics(int nodeCount, int edgeCount, int attributeSetCount,
+                             int droppedSegmentCount) {
+    }
+
+    private static final int SECTORS_PER_AXIS = 128;
+    private static final int SECTOR_COUNT = SECTORS_PER_AXIS * SECTORS_PER_AXIS;
+
+    /**
+     * Number of bits taken by the first edge id in the packed out degree and first edge id of a
+     * node, and greatest out degree of a node (U4).
+     */
+    private static final int EDGE_ID_LENGTH = 28;
+    private static final int MAX_OUT_DEGREE = 15;
+
+    /**
+     * Greatest number of edges, for {@code edges.bin} to be mapped in a single buffer, and
+     * greatest number of samples, for their ids to fit in 30 bits.
+     */
+    private static final int MAX_EDGE_COUNT = Integer.MAX_VALUE / 10;
+    private static final int MAX_SAMPLE_ID = (1 << 30) - 1;
+
+    /**
+     * Coordinate of the nodes whose coordinates are unknown.
+     */
+    private static final int MISSING = Integer.MIN_VALUE;
+
+    /**
+     * Number of segments whose profiles are computed by a task.
+     */
+    private static final int PROFILE_CHUNK_SIZE = 1 << 14;
+
+    private static final Map<String, Attribute> ATTRIBUTES = new HashMap<>();
+
+    static {
+        for (Attribute attribute : Attribute.ALL)
+            ATTRIBUTES.put(attribute.keyValue(), attribute);
+    }
+
+    private GraphBuilder() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: GraphBuilder <OSM file> <target directory>"
+                                       + " [<elevation grid>]");
+            System.exit(2);
+        }
+        long t0 = System.nanoTime();
+        int threadCount = Runtime.getRuntime().availableProcessors();
+        ElevationModel elevationModel = args.length == 3
+                ? ElevationModel.loadAsciiGrid(Path.of(args[2]))
+                : ElevationModel.NONE;
+        Statistics statistics = build(OsmReader.of(Path.of(args[0]), threadCount), elevationModel,
+                                      Path.of(args[1]), threadCount);
+        System.err.printf(Locale.ROOT, "%d nodes, %d edges, %d attribute sets (%d segments"
+                                  + " dropped) built in %.1f s%n",
+                          statistics.nodeCount(), statistics.edgeCount(),
+                          statistics.attributeSetCount(), statistics.droppedSegmentCount(),
+                          (System.nanoTime() - t0) / 1e9);
+    }
+
+    /**
+     * Builds the files of a graph.
+     *
+     * @param reader         reader of the OpenStreetMap extract
+     * @param elevationModel elevation model giving the profiles of the edges
+     * @param targetPath     directory to which the graph's files are written (created if needed)
+     * @param threadCount    number of threads computing the profiles
+     * @return the statistics of the build
+     * @throws IOException              if any input/output error is thrown during file related
+     *                                  operations, or if the extract is malformed
+     * @throws IllegalArgumentException if the number of threads is not strictly positive, or if
+     *                                  the graph does not fit in the files (more than 65535 nodes
+     *                                  in a sector, too many edges or samples)
+     */
+    public static Statistics build(OsmReader reader,
+                                   ElevationModel elevationModel,
+                                   Path targetPath,
+                                   int threadCount) throws IOException {
+        Preconditions.checkArgument(threadCount > 0);
+
+        // 1. Ids of the nodes of the roads, and attribute sets of the roads
+        Map<AttributeSet, Integer> attributeSetIndexes = new LinkedHashMap<>();
+        LongList roadNodeIds = new LongList();
+        reader.read(new OsmHandler() {
+            @Override
+            public boolean handlesNodes() {
+                return false;
+            }
+
+            @Override
+            public void way(long id, long[] nodeIds, Map<String, String> tags) {
+                AttributeSet attributes = roadAttributes(tags);
+                if (attributes == null)
+                    return;
+                attributeSetIndexes.putIfAbsent(attributes, attributeSetIndexes.size());
+                for (long nodeId : nodeIds)
+                    roadNodeIds.add(nodeId);
+            }
+        });
+        Preconditions.checkArgument(attributeSetIndexes.size() <= Character.MAX_VALUE + 1); // U16
+        long[] nodeIds = distinct(roadNodeIds);
+
+        // 2. Coordinates (Q28.4) of the nodes of the roads
+        int[] es = new int[nodeIds.length];
+        int[] ns = new int[nodeIds.length];
+        Arrays.fill(es, MISSING);
+        reader.read(new OsmHandler() {
+            @Override
+            public boolean handlesWays() {
+                return false;
+            }
+
+            @Override
+            public void node(long id, double lon, double lat) {
+                int index = Arrays.binarySearch(nodeIds, id);
+                if (index < 0)
+                    return;
+                double e = Ch1903.e(Math.toRadians(lon), Math.toRadians(lat));
+                double n = Ch1903.n(Math.toRadians(lon), Math.toRadians(lat));
+                if (!SwissBounds.containsEN(e, n))
+                    return;
+                es[index] = (int) Math.round(Math.scalb(e, 4));
+                ns[index] = (int) Math.round(Math.scalb(n, 4));
+            }
+        });
+
+        // 3. Segments of the roads: indexes of their nodes, attribute set index and length
+        LongList segmentNodes = new LongList();
+        LongList segmentData = new LongList();
+        byte[] outDegrees = new byte[nodeIds.length];
+        int[] droppedSegmentCount = new int[1];
+        reader.read(new OsmHandler() {
+            @Override
+            public boolean handlesNodes() {
+                return false;
+            }
+
+            @Override
+            public void way(long id, long[] wayNodeIds, Map<String, String> tags) {
+                AttributeSet attributes = roadAttributes(tags);
+                if (attributes == null)
+                    return;
+                int attributeSetIndex = attributeSetIndexes.get(attributes);
+                for (int i = 1; i < wayNodeIds.length; i++) {
+                    int from = Arrays.binarySearch(nodeIds, wayNodeIds[i - 1]);
+                    int to = Arrays.binarySearch(nodeIds, wayNodeIds[i]);
+                    if (from == to)
+                        continue;
+                    long lengthQ = es[from] == MISSING || es[to] == MISSING
+                            ? Long.MAX_VALUE
+                            : Math.round(Math.hypot(es[to] - es[from], ns[to] - ns[from]));
+                    if (lengthQ > Character.MAX_VALUE // UQ12.4
+                            || outDegrees[from] == MAX_OUT_DEGREE
+                            || outDegrees[to] == MAX_OUT_DEGREE) {
+                        droppedSegmentCount[0]++;
+                        continue;
+                    }
+                    outDegrees[from]++;
+                    outDegrees[to]++;
+                    segmentNodes.add(((long) from << Integer.SIZE) | to);
+                    segmentData.add(((long) attributeSetIndex << Short.SIZE) | lengthQ);
+                }
+            }
+        });
+        int segmentCount = segmentNodes.size();
+        Preconditions.checkArgument(segmentCount <= MAX_EDGE_COUNT / 2);
+        int[] segmentFroms = new int[segmentCount];
+        int[] segmentTos = new int[segmentCount];
+        char[] attributeSetIndexes16 = new char[segmentCount];
+        char[] lengths = new char[segmentCount];
+        for (int s = 0; s < segmentCount; s++) {
+            segmentFroms[s] = (int) (segmentNodes.get(s) >>> Integer.SIZE);
+            segmentTos[s] = (int) segmentNodes.get(s);
+            attributeSetIndexes16[s] = (char) (segmentData.get(s) >>> Short.SIZE);
+            lengths[s] = (char) segmentData.get(s);
+        }
+
+        // 4. Nodes of the graph (the nodes of the segments), sorted by sector
+        int[] sectorNodeCounts = new int[SECTOR_COUNT];
+        int[] sectors = new int[nodeIds.length];
+        for (int i = 0; i < nodeIds.length; i++) {
+            if (outDegrees[i] == 0)
+                continue;
+            sectors[i] = GraphSectors.row(Q28_4.asDouble(ns[i])) * SECTORS_PER_AXIS
+                    + GraphSectors.column(Q28_4.asDouble(es[i]));
+            sectorNodeCounts[sectors[i]]++;
+        }
+        int[] sectorStarts = new int[SECTOR_COUNT];
+        int nodeCount = 0;
+        for (int sector = 0; sector < SECTOR_COUNT; sector++) {
+            Preconditions.checkArgument(sectorNodeCounts[sector] <= Character.MAX_VALUE); // U16
+            sectorStarts[sector] = nodeCount;
+            nodeCount += sectorNodeCounts[sector];
+        }
+        int[] newNodeIds = new int[nodeIds.length];
+        int[] oldNodeIndexes = new int[nodeCount];
+        int[] nextNodeIds = sectorStarts.clone();
+        for (int i = 0; i < nodeIds.length; i++) {
+            if (outDegrees[i] == 0)
+                continue;
+            newNodeIds[i] = nextNodeIds[sectors[i]]++;
+            oldNodeIndexes[newNodeIds[i]] = i;
+        }
+
+        // 5. Profiles of the segments
+        Files.createDirectories(targetPath);
+        int[] profileIds = new int[segmentCount];
+        char[] ascents = new char[segmentCount];
+        char[] descents = new char[segmentCount];
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        Queue<Future<Profiles>> pendingProfiles = new ArrayDeque<>();
+        try (DataOutputStream elevationsStream = newStream(targetPath, "elevations.bin")) {
+            int sampleCount = 0;
+            for (int first = 0; first < segmentCount; first += PROFILE_CHUNK_SIZE) {
+                int from = first;
+                int to = Math.min(first + PROFILE_CHUNK_SIZE, segmentCount);
+                pendingProfiles.add(executor.submit(() -> Profiles.compute(
+                        from, to, segmentFroms, segmentTos, lengths, es, ns, elevationModel)));
+                while (pendingProfiles.size() > 2 * threadCount)
+                    sampleCount = take(pendingProfiles).write(elevationsStream, sampleCount,
+                                                              profileIds, ascents, descents);
+            }
+            while (!pendingProfiles.isEmpty())
+                sampleCount = take(pendingProfiles).write(elevationsStream, sampleCount,
+                                                          profileIds, ascents, descents);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // 6. Nodes, sectors, edges (by source node) and attribute sets
+        int[] firstEdgeIds = new int[nodeCount + 1];
+        for (int nodeId = 0; nodeId < nodeCount; nodeId++)
+            firstEdgeIds[nodeId + 1] = firstEdgeIds[nodeId] + outDegrees[oldNodeIndexes[nodeId]];
+        int edgeCount = firstEdgeIds[nodeCount];
+        // Segment of each edge, shifted by one, the lowest bit being 1 if the edge is inverted
+        int[] edgeSegments = new int[edgeCount];
+        int[] nextEdgeIds = Arrays.copyOf(firstEdgeIds, nodeCount);
+        for (int s = 0; s < segmentCount; s++) {
+            edgeSegments[nextEdgeIds[newNodeIds[segmentFroms[s]]]++] = s << 1;
+            edgeSegments[nextEdgeIds[newNodeIds[segmentTos[s]]]++] = (s << 1) | 1;
+        }
+
+        try (DataOutputStream nodesStream = newStream(targetPath, "nodes.bin")) {
+            for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+                int i = oldNodeIndexes[nodeId];
+                nodesStream.writeInt(es[i]);
+                nodesStream.writeInt(ns[i]);
+                nodesStream.writeInt((outDegrees[i] << EDGE_ID_LENGTH) | firstEdgeIds[nodeId]);
+            }
+        }
+        try (DataOutputStream sectorsStream = newStream(targetPath, "sectors.bin")) {
+            for (int sector = 0; sector < SECTOR_COUNT; sector++) {
+                sectorsStream.writeInt(sectorStarts[sector]);
+                sectorsStream.writeShort(sectorNodeCounts[sector]);
+            }
+        }
+        try (DataOutputStream edgesStream = newStream(targetPath, "edges.bin");
+             DataOutputStream profilesStream = newStream(targetPath, "profile_ids.bin")) {
+            for (int edgeSegment : edgeSegments) {
+                int s = edgeSegment >>> 1;
+                boolean isInverted = (edgeSegment & 1) == 1;
+                edgesStream.writeInt(isInverted
+                                             ? ~newNodeIds[segmentFroms[s]]
+                                             : newNodeIds[segmentTos[s]]);
+                edgesStream.writeShort(lengths[s]);
+                edgesStream.writeShort(isInverted ? descents[s] : ascents[s]);
+                edgesStream.writeShort(attributeSetIndexes16[s]);
+                profilesStream.writeInt(profileIds[s]);
+            }
+        }
+        try (DataOutputStream attributesStream = newStream(targetPath, "attributes.bin")) {
+            for (AttributeSet attributeSet : attributeSetIndexes.keySet())
+                attributesStream.writeLong(attributeSet.bits());
+        }
+        Graph.deleteDerivedFiles(targetPath);
+
+        return new Statistics(nodeCount, edgeCount, attributeSetIndexes.size(),
+                              droppedSegmentCount[0]);
+    }
+
+    /**
+     * Computes the attribute set of a way, if it is a road.
+     *
+     * @param tags tags of the way
+     * @return the attributes of JaVelo among the tags of the way, or null if the way is not a
+     *         road
+     */
+    static AttributeSet roadAttributes(Map<String, String> tags) {
+        String highway = tags.get("highway");
+        if (highway == null || !ATTRIBUTES.containsKey("highway=" + highway)
+                || "yes".equals(tags.get("area")))
+            return null;
+        List<Attribute> attributes = tags.entrySet().stream()
+                .map(tag -> ATTRIBUTES.get(tag.getKey() + "=" + tag.getValue()))
+                .filter(attribute -> attribute != null)
+                .toList();
+        return AttributeSet.of(attributes.toArray(new Attribute[0]));
+    }
+
+    /**
+     * Sorts the values of a list, in parallel, and removes the duplicates.
+     */
+    private static long[] distinct(LongList list) {
+        long[] values = list.toArray();
+        Arrays.parallelSort(values);
+        int size = 0;
+        for (int i = 0; i < values.length; i++)
+            if (i == 0 || values[i] != values[i - 1])
+                values[size++] = values[i];
+        return Arrays.copyOf(values, size);
+    }
+
+    private static Profiles take(Queue<Future<Profiles>> pendingProfiles) throws IOException {
+        try {
+            return pendingProfiles.remove().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException)
+                throw ioException;
+            if (e.getCause() instanceof RuntimeException runtimeException)
+                throw runtimeException;
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static DataOutputStream newStream(Path basePath, String fileName) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(basePath.resolve(fileName))));
+    }
+
+    /**
+     * Profiles of a chunk of consecutive segments, encoded. (record)
+     *
+     * @param firstSegment index of the first segment of the chunk
+     * @param elevations   encoded profiles, as written in {@code elevations.bin}
+     * @param profileIds   type and index of the first sample of each profile, relative to the
+     *                     start of {@code elevations}
+     * @param ascents      elevation gains of the segments (UQ12.4), in their direction
+     * @param descents     elevation gains of the segments (UQ12.4), in the inverse direction
+     */
+    private record Profiles(int firstSegment, byte[] elevations, int[] profileIds,
+                            char[] ascents, char[] descents) {
+
+        /**
+         * Samples and encodes the profiles of the segments between {@code from} (included) and
+         * {@code to} (excluded), those having a sample of unknown elevation having no profile.
+         */
+        static Profiles compute(int from, int to, int[] segmentFroms, int[] segmentTos,
+                                char[] lengths, int[] es, int[] ns,
+                                ElevationModel elevationModel) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream stream = new DataOutputStream(bytes);
+            int[] profileIds = new int[to - from];
+            char[] ascents = new char[to - from];
+            char[] descents = new char[to - from];
+            int[] samples = new int[0];
+            int shortCount = 0;
+            for (int s = from; s < to; s++) {
+                int count = ProfileEncoder.sampleCount(lengths[s]);
+                if (samples.length < count)
+                    samples = new int[Math.max(count, 2 * samples.length)];
+                double fromE = Q28_4.asDouble(es[segmentFroms[s]]);
+                double fromN = Q28_4.asDouble(ns[segmentFroms[s]]);
+                double toE = Q28_4.asDouble(es[segmentTos[s]]);
+                double toN = Q28_4.asDouble(ns[segmentTos[s]]);
+                boolean isKnown = true;
+                for (int i = 0; i < count && isKnown; i++) {
+                    double t = count == 1 ? 0 : (double) i / (count - 1);
+                    double elevation = elevationModel.elevationAt(
+                            Math2.interpolate(fromE, toE, t), Math2.interpolate(fromN, toN, t));
+                    isKnown = !Double.isNaN(elevation);
+                    if (isKnown)
+                        samples[i] = Math2.clamp(0, (int) Math.round(Math.scalb(elevation, 4)),
+                                                 Character.MAX_VALUE);
+                }
+                if (!isKnown)
+                    continue;
+                int type = ProfileEncoder.type(samples, count);
+                profileIds[s - from] = (type << 30) | shortCount;
+                shortCount += ProfileEncoder.write(stream, type, samples, count);
+                ascents[s - from] = (char) ProfileEncoder.elevationGain(samples, count, false);
+                descents[s - from] = (char) ProfileEncoder.elevationGain(samples, count, true);
+            }
+            return new Profiles(from, bytes.toByteArray(), profileIds, ascents, descents);
+        }
+
+        /**
+         * Writes the profiles, and stores their ids and elevation gains.
+         *
+         * @return the number of samples written so far
+         */
+        int write(DataOutputStream stream, int sampleCount,
+                  int[] allProfileIds, char[] allAscents, char[] allDescents) throws IOException {
+            stream.write(elevations);
+            for (int i = 0; i < profileIds.length; i++) {
+                int type = profileIds[i] >>> 30;
+                allProfileIds[firstSegment + i] = type == 0
+                        ? 0
+                        : (type << 30) | (sampleCount + (profileIds[i] & MAX_SAMPLE_ID));
+            }
+            System.arraycopy(ascents, 0, allAscents, firstSegment, ascents.length);
+            System.arraycopy(descents, 0, allDescents, firstSegment, descents.length);
+            int newSampleCount = sampleCount + elevations.length / Short.BYTES;
+            Preconditions.checkArgument(newSampleCount <= MAX_SAMPLE_ID);
+            return newSampleCount;
+        }
+
+    }
+
+}
@@ -0,0 +1,66 @@
+package ch.epfl.javelo.osm;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of longs, storing them without boxing.
+ * <p>
+ * Mutable, not thread-safe. Arguments are not checked.
+ *
+ * @author Lucas Jung (324724)
+ * @author Florian Kolly (328313)
+ */
+final class LongList {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] values = new long[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * Adds a value at the end of the list.
+     *
+     * @param value value to add
+     */
+    void add(long value) {
+        if (size == values.length)
+            values = Arrays.copyOf(values, 2 * size);
+        values[size++] = value;
+    }
+
+    /**
+     * Retrieves a value of the list.
+     *
+     * @param index index of the value
+     * @return the value at the given index
+     */
+    long get(int index) {
+        return values[index];
+    }
+
+    /**
+     * Retrieves the number of values of the list.
+     *
+     * @return the size of the list
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Removes every value of the list, keeping its capacity.
+     */
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * Copies the values of the list into an array.
+     *
+     * @return a new array containing the values of the list, in order
+     */
+    long[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+}
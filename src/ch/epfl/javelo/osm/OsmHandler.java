@@ -0,0 +1,55 @@
+package ch.epfl.javelo.osm;
+
+import java.util.Map;
+
+/**
+ * Handler of the elements of an OpenStreetMap extract, called by an {@code OsmReader} from a
+ * single thread, in the order of the extract: every node, then every way. Relations are ignored.
+ * <p>
+ * The handler tells which kinds of elements it handles, so that the readers can skip decoding
+ * the other ones.
+ *
+ * @author Lucas Jung (324724)
+ * @author Florian Kolly (328313)
+ */
+public interface OsmHandler {
+
+    /**
+     * Tells whether the handler handles the nodes.
+     *
+     * @return true if {@code node} must be called for every node
+     */
+    default boolean handlesNodes() {
+        return true;
+    }
+
+    /**
+     * Tells whether the handler handles the ways.
+     *
+     * @return true if {@code way} must be called for every way
+     */
+    default boolean handlesWays() {
+        return true;
+    }
+
+    /**
+     * Handles a node.
+     *
+     * @param id  OpenStreetMap id of the node
+     * @param lon longitude of the node, in degrees (WGS84)
+     * @param lat latitude of the node, in degrees (WGS84)
+     */
+    default void node(long id, double lon, double lat) {
+    }
+
+    /**
+     * Handles a way.
+     *
+     * @param id      OpenStreetMap id of the way
+     * @param nodeIds ids of the nodes of the way, in order
+     * @param tags    tags of the way, by key
+     */
+    default void way(long id, long[] nodeIds, Map<String, String> tags) {
+    }
+
+}
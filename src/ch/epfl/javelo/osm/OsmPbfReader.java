@@ -0,0 +1,382 @@
+package ch.epfl.javelo.osm;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import ch.epfl.javelo.Preconditions;
+
+/**
+ * Reader of an OpenStreetMap extract in the PBF format ({@code .osm.pbf}).
+ * <p>
+ * The file is a sequence of blocks, each one compressed independently: the blocks are read one
+ * after the other, decompressed and decoded in parallel by a pool of threads, and passed to the
+ * handler in the order of the file. At most two blocks per thread are waiting to be passed to the
+ * handler, so that the memory used does not depend on the size of the file. The blocks only
+ * containing elements the handler does not handle are not decoded further than their groups.
+ * <p>
+ * Only the blocks compressed with zlib (or not compressed) are supported, as produced by the
+ * usual tools (osmium, osmosis, Geofabrik's exports).
+ * <p>
+ * Immutable.
+ *
+ * @author Lucas Jung (324724)
+ * @author Florian Kolly (328313)
+ */
+public final class OsmPbfReader implements OsmReader {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // Greatest sizes of a blob header and of a blob, given by the specification of the format
+    private static final int MAX_HEADER_SIZE = 64 * 1024;
+    private static final int MAX_BLOB_SIZE = 32 * 1024 * 1024;
+
+    private static final Set<String> SUPPORTED_FEATURES = Set.of("OsmSchema-V0.6", "DenseNodes");
+
+    // Fields of the messages
+    private static final int BLOB_HEADER_TYPE = 1, BLOB_HEADER_DATA_SIZE = 3;
+    private static final int BLOB_RAW = 1, BLOB_RAW_SIZE = 2, BLOB_ZLIB_DATA = 3,
+            BLOB_LAST_DATA = 7;
+    private static final int HEADER_REQUIRED_FEATURES = 4;
+    private static final int BLOCK_STRING_TABLE = 1, BLOCK_GROUP = 2, BLOCK_GRANULARITY = 17,
+            BLOCK_LAT_OFFSET = 19, BLOCK_LON_OFFSET = 20;
+    private static final int STRING_TABLE_STRING = 1;
+    private static final int GROUP_NODE = 1, GROUP_DENSE_NODES = 2, GROUP_WAY = 3;
+    private static final int NODE_ID = 1, NODE_LAT = 8, NODE_LON = 9;
+    private static final int DENSE_NODES_ID = 1, DENSE_NODES_LAT = 8, DENSE_NODES_LON = 9;
+    private static final int WAY_ID = 1, WAY_KEYS = 2, WAY_VALUES = 3, WAY_REFS = 8;
+
+    /**
+     * Default granularity of the coordinates, in nanodegrees.
+     */
+    private static final int DEFAULT_GRANULARITY = 100;
+
+    private final Path file;
+    private final int threadCount;
+
+    /**
+     * Creates the reader of an extract file.
+     *
+     * @param file        extract file
+     * @param threadCount number of threads decoding the blocks
+     * @throws IllegalArgumentException if the number of threads is not strictly positive
+     */
+    public OsmPbfReader(Path file, int threadCount) {
+        Preconditions.checkArgument(threadCount > 0);
+        this.file = file;
+        this.threadCount = threadCount;
+    }
+
+    @Override
+    public void read(OsmHandler handler) throws IOException {
+        boolean handlesNodes = handler.handlesNodes();
+        boolean handlesWays = handler.handlesWays();
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        Queue<Future<Block>> pendingBlocks = new ArrayDeque<>();
+        try (DataInputStream stream = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+            int headerSize;
+            while ((headerSize = readHeaderSize(stream)) != -1) {
+                if (headerSize > MAX_HEADER_SIZE)
+                    throw malformed(null);
+                String type = null;
+                int dataSize = -1;
+                ProtobufReader header = new ProtobufReader(stream.readNBytes(headerSize));
+                try {
+                    while (header.next())
+                        switch (header.fieldNumber()) {
+                            case BLOB_HEADER_TYPE -> type = header.string();
+                            case BLOB_HEADER_DATA_SIZE -> dataSize = (int) header.varint();
+                            default -> header.skip();
+                        }
+                } catch (RuntimeException e) {
+                    throw malformed(e);
+                }
+                if (dataSize < 0 || dataSize > MAX_BLOB_SIZE)
+                    throw malformed(null);
+                byte[] blob = stream.readNBytes(dataSize);
+                if (blob.length < dataSize)
+                    throw new EOFException();
+
+                if ("OSMHeader".equals(type))
+                    checkFeatures(blob);
+                else if ("OSMData".equals(type))
+                    pendingBlocks.add(executor.submit(
+                            () -> Block.decode(uncompress(blob), handlesNodes, handlesWays)));
+                while (pendingBlocks.size() > 2 * threadCount)
+                    take(pendingBlocks).passTo(handler);
+            }
+            while (!pendingBlocks.isEmpty())
+                take(pendingBlocks).passTo(handler);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Reads the size of the next blob header, or returns -1 at the end of the file.
+     */
+    private static int readHeaderSize(DataInputStream stream) throws IOException {
+        int firstByte = stream.read();
+        if (firstByte == -1)
+            return -1;
+        return (firstByte << 24) | (stream.readUnsignedByte() << 16)
+                | (stream.readUnsignedByte() << 8) | stream.readUnsignedByte();
+    }
+
+    private Block take(Queue<Future<Block>> pendingBlocks) throws IOException {
+        try {
+            return pendingBlocks.remove().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ioException
+                    ? ioException
+                    : malformed(e.getCause());
+        }
+    }
+
+    /**
+     * Checks that the features required to read the file, listed by its header block, are
+     * supported.
+     */
+    private void checkFeatures(byte[] blob) throws IOException {
+        String unsupportedFeature = null;
+        try {
+            ProtobufReader reader = new ProtobufReader(uncompress(blob));
+            while (reader.next())
+                if (reader.fieldNumber() == HEADER_REQUIRED_FEATURES) {
+                    String feature = reader.string();
+                    if (!SUPPORTED_FEATURES.contains(feature))
+                        unsupportedFeature = feature;
+                } else
+                    reader.skip();
+        } catch (RuntimeException e) {
+            throw malformed(e);
+        }
+        if (unsupportedFeature != null)
+            throw new IOException("Unsupported feature " + unsupportedFeature + " in " + file);
+    }
+
+    /**
+     * Extracts the data of a blob, uncompressing it if needed.
+     */
+    private static byte[] uncompress(byte[] blob) throws IOException {
+        ProtobufReader reader = new ProtobufReader(blob);
+        int rawSize = -1;
+        byte[] zlibData = null;
+        while (reader.next())
+            switch (reader.fieldNumber()) {
+                case BLOB_RAW -> {
+                    return reader.bytes();
+                }
+                case BLOB_RAW_SIZE -> rawSize = (int) reader.varint();
+                case BLOB_ZLIB_DATA -> zlibData = reader.bytes();
+                default -> {
+                    // The other fields up to 7 are the data compressed with other algorithms
+                    if (reader.fieldNumber() <= BLOB_LAST_DATA)
+                        throw new IOException(
+                                "Unsupported compression (field " + reader.fieldNumber() + ")");
+                    reader.skip();
+                }
+            }
+        if (zlibData == null || rawSize < 0 || rawSize > MAX_BLOB_SIZE)
+            throw new IOException("Blob without data");
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(zlibData);
+            byte[] data = new byte[rawSize];
+            int size = 0;
+            while (size < rawSize && !inflater.finished()) {
+                int inflated = inflater.inflate(data, size, rawSize - size);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    break;
+                size += inflated;
+            }
+            if (size != rawSize)
+                throw new IOException("Truncated blob");
+            return data;
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private IOException malformed(Throwable cause) {
+        return new IOException("Malformed PBF file " + file, cause);
+    }
+
+    /**
+     * Elements of a block, decoded.
+     */
+    private record Block(LongList nodeIds, double[] nodeLons, double[] nodeLats, List<Way> ways) {
+
+        private record Way(long id, long[] nodeIds, Map<String, String> tags) {
+        }
+
+        /**
+         * Decodes the elements of a block, the nodes (resp. ways) only if needed.
+         */
+        static Block decode(byte[] data, boolean decodesNodes, boolean decodesWays) {
+            ProtobufReader reader = new ProtobufReader(data);
+            List<String> strings = new ArrayList<>();
+            List<ProtobufReader> groups = new ArrayList<>();
+            long granularity = DEFAULT_GRANULARITY;
+            long latOffset = 0, lonOffset = 0;
+            // The groups are decoded after every field, the granularity and offsets following them
+            while (reader.next())
+                switch (reader.fieldNumber()) {
+                    case BLOCK_STRING_TABLE -> {
+                        ProtobufReader table = reader.message();
+                        while (table.next())
+                            if (table.fieldNumber() == STRING_TABLE_STRING)
+                                strings.add(table.string());
+                            else
+                                table.skip();
+                    }
+                    case BLOCK_GROUP -> groups.add(reader.message());
+                    case BLOCK_GRANULARITY -> granularity = reader.varint();
+                    case BLOCK_LAT_OFFSET -> latOffset = reader.varint();
+                    case BLOCK_LON_OFFSET -> lonOffset = reader.varint();
+                    default -> reader.skip();
+                }
+
+            LongList nodeIds = new LongList();
+            LongList lats = new LongList();
+            LongList lons = new LongList();
+            List<Way> ways = new ArrayList<>();
+            for (ProtobufReader group : groups)
+                while (group.next())
+                    switch (group.fieldNumber()) {
+                        case GROUP_NODE -> {
+                            if (decodesNodes)
+                                decodeNode(group.message(), nodeIds, lats, lons);
+                            else
+                                group.skip();
+                        }
+                        case GROUP_DENSE_NODES -> {
+                            if (decodesNodes)
+                                decodeDenseNodes(group.message(), nodeIds, lats, lons);
+                            else
+                                group.skip();
+                        }
+                        case GROUP_WAY -> {
+                            if (decodesWays)
+                                ways.add(decodeWay(group.message(), strings));
+                            else
+                                group.skip();
+                        }
+                        default -> group.skip();
+                    }
+
+            double[] nodeLons = new double[nodeIds.size()];
+            double[] nodeLats = new double[nodeIds.size()];
+            for (int i = 0; i < nodeIds.size(); i++) {
+                nodeLons[i] = 1e-9 * (lonOffset + granularity * lons.get(i));
+                nodeLats[i] = 1e-9 * (latOffset + granularity * lats.get(i));
+            }
+            return new Block(nodeIds, nodeLons, nodeLats, ways);
+        }
+
+        private static void decodeNode(ProtobufReader node,
+                                       LongList nodeIds, LongList lats, LongList lons) {
+            long id = 0, lat = 0, lon = 0;
+            while (node.next())
+                switch (node.fieldNumber()) {
+                    case NODE_ID -> id = node.signedVarint();
+                    case NODE_LAT -> lat = node.signedVarint();
+                    case NODE_LON -> lon = node.signedVarint();
+                    default -> node.skip();
+                }
+            nodeIds.add(id);
+            lats.add(lat);
+            lons.add(lon);
+        }
+
+        /**
+         * Decodes dense nodes, whose ids and coordinates are delta-encoded.
+         */
+        private static void decodeDenseNodes(ProtobufReader denseNodes,
+                                             LongList nodeIds, LongList lats, LongList lons) {
+            LongList idDeltas = new LongList();
+            LongList latDeltas = new LongList();
+            LongList lonDeltas = new LongList();
+            while (denseNodes.next())
+                switch (denseNodes.fieldNumber()) {
+                    case DENSE_NODES_ID -> denseNodes.varints(idDeltas, true);
+                    case DENSE_NODES_LAT -> denseNodes.varints(latDeltas, true);
+                    case DENSE_NODES_LON -> denseNodes.varints(lonDeltas, true);
+                    default -> denseNodes.skip();
+                }
+            if (latDeltas.size() != idDeltas.size() || lonDeltas.size() != idDeltas.size())
+                throw new IllegalStateException("Dense nodes of different sizes");
+            long id = 0, lat = 0, lon = 0;
+            for (int i = 0; i < idDeltas.size(); i++) {
+                id += idDeltas.get(i);
+                lat += latDeltas.get(i);
+                lon += lonDeltas.get(i);
+                nodeIds.add(id);
+                lats.add(lat);
+                lons.add(lon);
+            }
+        }
+
+        private static Way decodeWay(ProtobufReader way, List<String> strings) {
+            long id = 0;
+            LongList keys = new LongList();
+            LongList values = new LongList();
+            LongList refDeltas = new LongList();
+            while (way.next())
+                switch (way.fieldNumber()) {
+                    case WAY_ID -> id = way.varint();
+                    case WAY_KEYS -> way.varints(keys, false);
+                    case WAY_VALUES -> way.varints(values, false);
+                    case WAY_REFS -> way.varints(refDeltas, true);
+                    default -> way.skip();
+                }
+            if (keys.size() != values.size())
+                throw new IllegalStateException("Keys and values of different sizes");
+            Map<String, String> tags = new HashMap<>();
+            for (int i = 0; i < keys.size(); i++)
+                tags.put(strings.get((int) keys.get(i)), strings.get((int) values.get(i)));
+            long[] nodeIds = new long[refDeltas.size()];
+            long nodeId = 0;
+            for (int i = 0; i < nodeIds.length; i++) {
+                nodeId += refDeltas.get(i);
+                nodeIds[i] = nodeId;
+            }
+            return new Way(id, nodeIds, tags);
+        }
+
+        /**
+         * Passes the elements of the block to a handler.
+         */
+        void passTo(OsmHandler handler) {
+            for (int i = 0; i < nodeIds.size(); i++)
+                handler.node(nodeIds.get(i), nodeLons[i], nodeLats[i]);
+            for (Way way : ways)
+                handler.way(way.id(), way.nodeIds(), way.tags());
+        }
+
+    }
+
+}
@@ -0,0 +1,38 @@
+package ch.epfl.javelo.osm;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Reader of an OpenStreetMap extract, which can be read several times.
+ *
+ * @author Lucas Jung (324724)
+ * @author Florian Kolly (328313)
+ */
+public interface OsmReader {
+
+    /**
+     * Reads the extract, passing its elements to a handler.
+     *
+     * @param handler handler of the elements
+     * @throws IOException if any input/output error is thrown while reading, or if the extract
+     *                     is malformed
+     */
+    void read(OsmHandler handler) throws IOException;
+
+    /**
+     * Creates the reader of an extract file, depending on its extension: PBF for {@code .pbf}
+     * files, XML otherwise ({@code .osm}, or {@code .osm.gz} if compressed with gzip).
+     *
+     * @param file        extract file
+     * @param threadCount number of threads decoding the blocks of PBF files
+     * @return a reader of the file
+     * @throws IllegalArgumentException if the number of threads is not strictly positive
+     */
+    static OsmReader of(Path file, int threadCount) {
+        return file.getFileName().toString().endsWith(".pbf")
+                ? new OsmPbfReader(file, threadCount)
+                : new OsmXmlReader(file);
+    }
+
+}
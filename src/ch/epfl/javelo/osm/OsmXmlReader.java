@@ -0,0 +1,116 @@
+package ch.epfl.javelo.osm;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reader of an OpenStreetMap extract in the XML format ({@code .osm}, or {@code .osm.gz} if
+ * compressed with gzip), parsed as a stream: only the way being read is kept in memory.
+ * <p>
+ * The extract is expected in the order of the OpenStreetMap exports (nodes, then ways, then
+ * relations), the reading stopping at the first relation, or at the first way if the handler
+ * does not handle the ways.
+ * <p>
+ * Immutable.
+ *
+ * @author Lucas Jung (324724)
+ * @author Florian Kolly (328313)
+ */
+public final class OsmXmlReader implements OsmReader {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Path file;
+
+    /**
+     * Creates the reader of an extract file.
+     *
+     * @param file extract file
+     */
+    public OsmXmlReader(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public void read(OsmHandler handler) throws IOException {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        try (InputStream stream = open()) {
+            XMLStreamReader reader = factory.createXMLStreamReader(stream);
+            try {
+                read(reader, handler);
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException | NumberFormatException e) {
+            throw new IOException("Malformed OSM file " + file, e);
+        }
+    }
+
+    private void read(XMLStreamReader reader, OsmHandler handler) throws XMLStreamException {
+        boolean handlesNodes = handler.handlesNodes();
+        boolean handlesWays = handler.handlesWays();
+        // Way being read, if any
+        long wayId = -1;
+        LongList nodeIds = new LongList();
+        Map<String, String> tags = new HashMap<>();
+
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                switch (reader.getLocalName()) {
+                    case "node" -> {
+                        if (handlesNodes)
+                            handler.node(Long.parseLong(reader.getAttributeValue(null, "id")),
+                                         Double.parseDouble(reader.getAttributeValue(null, "lon")),
+                                         Double.parseDouble(reader.getAttributeValue(null, "lat")));
+                    }
+                    case "way" -> {
+                        if (!handlesWays)
+                            return;
+                        wayId = Long.parseLong(reader.getAttributeValue(null, "id"));
+                        nodeIds.clear();
+                        tags = new HashMap<>();
+                    }
+                    case "nd" -> {
+                        if (wayId != -1)
+                            nodeIds.add(Long.parseLong(reader.getAttributeValue(null, "ref")));
+                    }
+                    case "tag" -> {
+                        if (wayId != -1)
+                            tags.put(reader.getAttributeValue(null, "k"),
+                                     reader.getAttributeValue(null, "v"));
+                    }
+                    case "relation" -> {
+                        return;
+                    }
+                    default -> {
+                    }
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT && wayId != -1
+                    && reader.getLocalName().equals("way")) {
+                handler.way(wayId, nodeIds.toArray(), tags);
+                wayId = -1;
+            }
+        }
+    }
+
+    private InputStream open() throws IOException {
+        InputStream stream = new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE);
+        return file.getFileName().toString().endsWith(".gz")
+                ? new GZIPInputStream(stream, BUFFER_SIZE)
+                : stream;
+    }
+
+}
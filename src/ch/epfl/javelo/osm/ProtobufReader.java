@@ -0,0 +1,195 @@
+package ch.epfl.javelo.osm;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reader of the fields of a Protocol Buffers message, in the wire format, decoding only what the
+ * PBF format of OpenStreetMap needs: varints (signed with zigzag encoding or not), strings, bytes,
+ * nested messages and packed repeated varints.
+ * <p>
+ * Each field is read by calling {@code next}, then one of the reading methods (or {@code skip})
+ * according to its number and wire type. A malformed message makes the methods throw an
+ * {@code IndexOutOfBoundsException} or an {@code IllegalStateException}.
+ * <p>
+ * Mutable, not thread-safe.
+ *
+ * @author Lucas Jung (324724)
+ * @author Florian Kolly (328313)
+ */
+final class ProtobufReader {
+
+    // Wire types
+    static final int VARINT = 0;
+    static final int FIXED_64 = 1;
+    static final int LENGTH_DELIMITED = 2;
+    static final int FIXED_32 = 5;
+
+    private final byte[] bytes;
+    private final int limit;
+    private int position;
+    private int tag;
+
+    /**
+     * Creates a reader of the message stored in a slice of an array.
+     *
+     * @param bytes  array containing the message
+     * @param offset index of the first byte of the message
+     * @param length length of the message, in bytes
+     */
+    ProtobufReader(byte[] bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    /**
+     * Creates a reader of the message stored in a whole array.
+     *
+     * @param bytes message
+     */
+    ProtobufReader(byte[] bytes) {
+        this(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Tells whether bytes remain to be read, i.e. whether the message has other fields or the
+     * packed field has other values.
+     *
+     * @return true if bytes remain to be read
+     */
+    boolean hasRemaining() {
+        return position < limit;
+    }
+
+    /**
+     * Reads the tag of the next field.
+     *
+     * @return true if there was a next field, false if the end of the message was reached
+     */
+    boolean next() {
+        if (!hasRemaining())
+            return false;
+        tag = (int) varint();
+        return true;
+    }
+
+    /**
+     * Retrieves the number of the current field.
+     *
+     * @return the number of the field whose tag was read last
+     */
+    int fieldNumber() {
+        return tag >>> 3;
+    }
+
+    /**
+     * Retrieves the wire type of the current field.
+     *
+     * @return the wire type of the field whose tag was read last
+     */
+    int wireType() {
+        return tag & 0b111;
+    }
+
+    /**
+     * Reads a varint.
+     *
+     * @return the value of the varint, as an unsigned long
+     */
+    long varint() {
+        long value = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            byte b = bytes[position++];
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0)
+                return value;
+        }
+        throw new IllegalStateException("Malformed varint");
+    }
+
+    /**
+     * Reads a signed varint, encoded with the zigzag encoding ({@code sint32} or {@code sint64}).
+     *
+     * @return the value of the varint
+     */
+    long signedVarint() {
+        long value = varint();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Reads a length-delimited field as a string.
+     *
+     * @return the string, decoded from UTF-8
+     */
+    String string() {
+        int length = length();
+        String string = new String(bytes, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return string;
+    }
+
+    /**
+     * Reads a length-delimited field as a nested message, or as the values of a packed field.
+     *
+     * @return a reader of the nested message or the packed values
+     */
+    ProtobufReader message() {
+        int length = length();
+        ProtobufReader reader = new ProtobufReader(bytes, position, length);
+        position += length;
+        return reader;
+    }
+
+    /**
+     * Reads a length-delimited field as bytes.
+     *
+     * @return a copy of the bytes of the field
+     */
+    byte[] bytes() {
+        int length = length();
+        byte[] copy = new byte[length];
+        System.arraycopy(bytes, position, copy, 0, length);
+        position += length;
+        return copy;
+    }
+
+    /**
+     * Reads a repeated varint field, whether packed or not, adding its values to a list.
+     *
+     * @param values list to which the values are added
+     * @param signed true if the values are encoded with the zigzag encoding
+     */
+    void varints(LongList values, boolean signed) {
+        if (wireType() == LENGTH_DELIMITED) {
+            ProtobufReader packed = message();
+            while (packed.hasRemaining())
+                values.add(signed ? packed.signedVarint() : packed.varint());
+        } else
+            values.add(signed ? signedVarint() : varint());
+    }
+
+    /**
+     * Skips the value of the current field.
+     */
+    void skip() {
+        switch (wireType()) {
+            case VARINT -> varint();
+            case FIXED_64 -> position += Long.BYTES;
+            case LENGTH_DELIMITED -> {
+                int length = length();
+                position += length;
+            }
+            case FIXED_32 -> position += Integer.BYTES;
+            default -> throw new IllegalStateException("Unsupported wire type " + wireType());
+        }
+    }
+
+    private int length() {
+        long length = varint();
+        if (length > limit - position)
+            throw new IllegalStateException("Field longer than its message");
+        return (int) length;
+    }
+
+}
@@ -57,6 +57,9 @@ public record CityBikeCF(Graph graph) implements CostFunction {
     private static final AttributeSet TRACKLIKE = AttributeSet.of(HIGHWAY_TRACK, HIGHWAY_ROAD,
             HIGHWAY_PATH, HIGHWAY_FOOTWAY);
 
+    // Cost factor of steps, as the bike has to be carried (whatever the slope).
+    static final double STEPS_COST_FACTOR = 40;
+
     // Ternary logic
     private static final Optional<Boolean> TRUE = Optional.of(Boolean.TRUE);
     private static final Optional<Boolean> FALSE = Optional.of(Boolean.FALSE);
@@ -65,21 +68,29 @@ public record CityBikeCF(Graph graph) implements CostFunction {
     @Override
     public double costFactor(int nodeId, int edgeId) {
         var edgeAttributes = graph.edgeAttributes(edgeId);
+        var flatCost = flatCostFactor(edgeAttributes, graph.edgeIsInverted(edgeId));
+        if (ignoresSlope(edgeAttributes))
+            return flatCost;
+        var averageUpSlope = graph.edgeElevationGain(edgeId) / graph.edgeLength(edgeId);
+        return costFactor(flatCost, averageUpSlope);
+    }
 
+    // Cost factor of an edge, ignoring its slope. Only depends on the attributes of the edge and
+    // its direction, so it can be computed once per attribute set (see MemoizedCityBikeCF).
+    static double flatCostFactor(AttributeSet edgeAttributes, boolean isInverted) {
         // Exclude motorways.
         if (edgeAttributes.contains(HIGHWAY_MOTORWAY))
             return Double.POSITIVE_INFINITY;
 
         // Exclude forbidden one-way streets.
-        var isInverted = graph.edgeIsInverted(edgeId);
         var wrongOneWay = isInverted ? edgeAttributes.intersects(ONEWAY_FORWARD)
                 : edgeAttributes.contains(ONEWAY_M1);
         if (wrongOneWay && !edgeAttributes.intersects(ONEWAY_DOES_NOT_APPLY_TO_CYCLISTS))
             return Double.POSITIVE_INFINITY;
 
-        // Penalize steps, as the bike has to be carried.
+        // Penalize steps (see ignoresSlope).
         if (edgeAttributes.contains(HIGHWAY_STEPS))
-            return 40d;
+            return STEPS_COST_FACTOR;
 
         var isCycleRoute = edgeAttributes.intersects(CYCLE_ROUTE);
 
@@ -93,9 +104,17 @@ public record CityBikeCF(Graph graph) implements CostFunction {
             return Double.POSITIVE_INFINITY;
 
         // Marked cycle routes are always considered as perfect, anything else is worse.
-        var flatCost = isCycleRoute ? 1d : 0.05 + nonCycleRouteCostFactor(edgeAttributes);
+        return isCycleRoute ? 1d : 0.05 + nonCycleRouteCostFactor(edgeAttributes);
+    }
 
-        var averageUpSlope = graph.edgeElevationGain(edgeId) / graph.edgeLength(edgeId);
+    // True iff the cost factor of an edge is its flat cost factor, whatever its slope (steps).
+    static boolean ignoresSlope(AttributeSet edgeAttributes) {
+        return edgeAttributes.contains(HIGHWAY_STEPS);
+    }
+
+    // Cost factor of an edge whose slope is not ignored (see ignoresSlope), given its flat cost
+    // factor (see flatCostFactor) and its average up slope.
+    static double costFactor(double flatCost, double averageUpSlope) {
         if (averageUpSlope < 0.01)
             return flatCost;
         else if (averageUpSlope < 0.03)
@@ -108,7 +127,7 @@ public record CityBikeCF(Graph graph) implements CostFunction {
             return flatCost * 2.6;
     }
 
-    private Optional<Boolean> isAccessibleByBike(AttributeSet edgeAttributes) {
+    private static Optional<Boolean> isAccessibleByBike(AttributeSet edgeAttributes) {
         if (edgeAttributes.intersects(BIKE_ACCESS_ALLOWED))
             return TRUE;
         if (edgeAttributes.intersects(BIKE_ACCESS_FORBIDDEN))
@@ -116,11 +135,11 @@ public record CityBikeCF(Graph graph) implements CostFunction {
         return UNKNOWN;
     }
 
-    private Optional<Boolean> isAccessibleByVehicle(AttributeSet edgeAttributes) {
+    private static Optional<Boolean> isAccessibleByVehicle(AttributeSet edgeAttributes) {
         return edgeAttributes.intersects(VEHICLE_ACCESS_FORBIDDEN) ? FALSE : UNKNOWN;
     }
 
-    private Optional<Boolean> isAccessible(AttributeSet edgeAttributes) {
+    private static Optional<Boolean> isAccessible(AttributeSet edgeAttributes) {
         if (edgeAttributes.intersects(ACCESS_ALLOWED))
             return TRUE;
         if (edgeAttributes.intersects(ACCESS_FORBIDDEN))
@@ -130,7 +149,7 @@ public record CityBikeCF(Graph graph) implements CostFunction {
         return UNKNOWN;
     }
 
-    private double nonCycleRouteCostFactor(AttributeSet edgeAttributes) {
+    private static double nonCycleRouteCostFactor(AttributeSet edgeAttributes) {
         if (edgeAttributes.contains(HIGHWAY_PEDESTRIAN))
             return 3;
         if (edgeAttributes.contains(HIGHWAY_CYCLEWAY))
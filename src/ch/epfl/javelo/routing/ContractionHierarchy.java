@@ -0,0 +1,407 @@
+package ch.epfl.javelo.routing;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import ch.epfl.javelo.Preconditions;
+import ch.epfl.javelo.data.Graph;
+
+/**
+ * Contraction hierarchy of a graph for a given cost function. Used to compute the best route
+ * between two nodes much faster than a {@code RouteComputer}, after a (long) preprocessing.
+ * <p>
+ * Every node has a rank, its position in the contraction order, and shortcuts replace the best
+ * routes through the lower ranked nodes. The best route between two nodes is then found by two
+ * searches only going up in the hierarchy, one from each node, and the shortcuts are unpacked
+ * into the edges of the graph.
+ * <p>
+ * The hierarchy is stored next to the graph in two files, both starting with a header identifying
+ * the graph and the cost function (see {@code CostFactorTable.fileHeader}):
+ * {@code derived_ch_ranks.bin} (int - U32 rank of each node) and {@code derived_ch_shortcuts.bin}
+ * (5 ints per shortcut: starting node id, destination node id, cost as float bits, first and
+ * second arcs replaced). Arcs are numbered as follows: the edges of the graph keep their id, the
+ * shortcut at index i is the arc {@code edgeCount + i}.
+ * <p>
+ * Immutable. Thread-safe: each thread searches in its own workspaces.
+ *
+ * @author Lucas Jung (324724)
+ * @author Florian Kolly (328313)
+ */
+public final class ContractionHierarchy {
+
+    /**
+     * Name of the file containing the node ranks, in the directory of the graph's files.
+     */
+    public static final String RANKS_FILE_NAME = Graph.DERIVED_FILE_PREFIX + "ch_ranks.bin";
+
+    /**
+     * Name of the file containing the shortcuts, in the directory of the graph's files.
+     */
+    public static final String SHORTCUTS_FILE_NAME =
+            Graph.DERIVED_FILE_PREFIX + "ch_shortcuts.bin";
+
+    /**
+     * Number of integers of a shortcut within the shortcuts file.
+     */
+    private static final int SHORTCUT_INTS = 5;
+
+    private final Graph graph;
+
+    /**
+     * Header of the files, identifying the graph and the cost function of the hierarchy (see
+     * {@code CostFactorTable.fileHeader}).
+     */
+    private final int[] fileHeader;
+    private final int edgeCount;
+    private final int[] ranks;
+
+    // Arcs (edges, then shortcuts)
+    private final int[] arcFrom;
+    private final int[] arcTo;
+    private final float[] arcCosts;
+    private final int[] shortcutFirstArcs;
+    private final int[] shortcutSecondArcs;
+
+    /**
+     * Upward arcs, going from each node to a higher ranked one, stored consecutively: the arcs of
+     * node n are between index {@code upFirstArcs[n]} (included) and {@code upFirstArcs[n + 1]}
+     * (excluded).
+     */
+    private final int[] upFirstArcs;
+    private final int[] upArcs;
+
+    /**
+     * Downward arcs, coming into each node from a higher ranked one, stored like the upward ones.
+     */
+    private final int[] downFirstArcs;
+    private final int[] downArcs;
+
+    private final ThreadLocal<SearchWorkspace> forwardWorkspaces;
+    private final ThreadLocal<SearchWorkspace> backwardWorkspaces;
+
+    /**
+     * ContractionHierarchy's constructor.
+     *
+     * @param graph              the graph
+     * @param fileHeader         header identifying the graph and the cost function of the
+     *                           hierarchy
+     * @param ranks              rank of each node in the contraction order
+     * @param arcFrom            starting node id of each arc
+     * @param arcTo              destination node id of each arc
+     * @param arcCosts           cost of each arc, infinite for the unusable edges
+     * @param shortcutFirstArcs  first arc replaced by each shortcut
+     * @param shortcutSecondArcs second arc replaced by each shortcut
+     */
+    ContractionHierarchy(Graph graph,
+                         int[] fileHeader,
+                         int[] ranks,
+                         int[] arcFrom,
+                         int[] arcTo,
+                         float[] arcCosts,
+                         int[] shortcutFirstArcs,
+                         int[] shortcutSecondArcs) {
+        this.graph = graph;
+        this.fileHeader = fileHeader;
+        this.edgeCount = graph.edgeCount();
+        this.ranks = ranks;
+        this.arcFrom = arcFrom;
+        this.arcTo = arcTo;
+        this.arcCosts = arcCosts;
+        this.shortcutFirstArcs = shortcutFirstArcs;
+        this.shortcutSecondArcs = shortcutSecondArcs;
+
+        int nodeCount = graph.nodeCount();
+        this.upFirstArcs = new int[nodeCount + 1];
+        this.downFirstArcs = new int[nodeCount + 1];
+        for (int arc = 0; arc < arcFrom.length; arc++) {
+            if (arcCosts[arc] == Float.POSITIVE_INFINITY || arcFrom[arc] == arcTo[arc])
+                continue;
+            if (isUpward(arc))
+                upFirstArcs[arcFrom[arc] + 1]++;
+            else
+                downFirstArcs[arcTo[arc] + 1]++;
+        }
+        for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+            upFirstArcs[nodeId + 1] += upFirstArcs[nodeId];
+            downFirstArcs[nodeId + 1] += downFirstArcs[nodeId];
+        }
+        this.upArcs = new int[upFirstArcs[nodeCount]];
+        this.downArcs = new int[downFirstArcs[nodeCount]];
+        int[] upNext = Arrays.copyOf(upFirstArcs, nodeCount);
+        int[] downNext = Arrays.copyOf(downFirstArcs, nodeCount);
+        for (int arc = 0; arc < arcFrom.length; arc++) {
+            if (arcCosts[arc] == Float.POSITIVE_INFINITY || arcFrom[arc] == arcTo[arc])
+                continue;
+            if (isUpward(arc))
+                upArcs[upNext[arcFrom[arc]]++] = arc;
+            else
+                downArcs[downNext[arcTo[arc]]++] = arc;
+        }
+
+        this.forwardWorkspaces = ThreadLocal.withInitial(() -> new SearchWorkspace(nodeCount));
+        this.backwardWorkspaces = ThreadLocal.withInitial(() -> new SearchWorkspace(nodeCount));
+    }
+
+    /**
+     * Computes the contraction hierarchy of a graph (preprocessing). This can take several
+     * minutes for a large graph.
+     *
+     * @param graph        the graph
+     * @param costFunction cost function to consider for the route computation
+     * @return the contraction hierarchy of the graph
+     */
+    public static ContractionHierarchy build(Graph graph, CostFunction costFunction) {
+        return new ContractionHierarchyBuilder(graph, costFunction).build();
+    }
+
+    /**
+     * Loads the contraction hierarchy of a graph from the files in the directory indicated by
+     * {@code basePath}, previously written by {@code writeTo}.
+     * <p>
+     * The following files are required: {@code derived_ch_ranks.bin},
+     * {@code derived_ch_shortcuts.bin}. The shortcuts are only valid for the graph and the cost
+     * function used to build the hierarchy, so the files must have been written for both (see
+     * {@code CostFactorTable.fileHeader}).
+     *
+     * @param basePath     directory containing the files
+     * @param graph        the graph for which the hierarchy was built
+     * @param costFunction cost function used to build the hierarchy
+     * @return the loaded contraction hierarchy
+     * @throws IOException              if any input/output error is thrown during file related
+     *                                  operations
+     * @throws IllegalArgumentException if the files do not correspond to the graph and the cost
+     *                                  function
+     */
+    public static ContractionHierarchy loadFrom(Path basePath,
+                                                Graph graph,
+                                                CostFunction costFunction) throws IOException {
+        int[] fileHeader = CostFactorTable.fileHeader(graph, costFunction);
+        IntBuffer ranksBuffer = mapFileContent(basePath, RANKS_FILE_NAME, fileHeader);
+        IntBuffer shortcutsBuffer = mapFileContent(basePath, SHORTCUTS_FILE_NAME, fileHeader);
+        Preconditions.checkArgument(ranksBuffer.capacity() == graph.nodeCount());
+        Preconditions.checkArgument(shortcutsBuffer.capacity() % SHORTCUT_INTS == 0);
+
+        int[] ranks = new int[graph.nodeCount()];
+        ranksBuffer.get(ranks);
+        int edgeCount = graph.edgeCount();
+        int shortcutCount = shortcutsBuffer.capacity() / SHORTCUT_INTS;
+        int[] arcFrom = new int[edgeCount + shortcutCount];
+        int[] arcTo = new int[edgeCount + shortcutCount];
+        float[] arcCosts = new float[edgeCount + shortcutCount];
+        int[] shortcutFirstArcs = new int[shortcutCount];
+        int[] shortcutSecondArcs = new int[shortcutCount];
+
+        for (int nodeId = 0; nodeId < graph.nodeCount(); nodeId++)
+            for (int edgeIndex = 0; edgeIndex < graph.nodeOutDegree(nodeId); edgeIndex++) {
+                int edgeId = graph.nodeOutEdgeId(nodeId, edgeIndex);
+                arcFrom[edgeId] = nodeId;
+                arcTo[edgeId] = graph.edgeTargetNodeId(edgeId);
+                arcCosts[edgeId] = (float) (costFunction.costFactor(nodeId, edgeId)
+                        * graph.edgeLength(edgeId));
+            }
+        for (int i = 0; i < shortcutCount; i++) {
+            arcFrom[edgeCount + i] = shortcutsBuffer.get();
+            arcTo[edgeCount + i] = shortcutsBuffer.get();
+            arcCosts[edgeCount + i] = Float.intBitsToFloat(shortcutsBuffer.get());
+            shortcutFirstArcs[i] = shortcutsBuffer.get();
+            shortcutSecondArcs[i] = shortcutsBuffer.get();
+        }
+        return new ContractionHierarchy(graph, fileHeader, ranks, arcFrom, arcTo, arcCosts,
+                                        shortcutFirstArcs, shortcutSecondArcs);
+    }
+
+    /**
+     * Writes the node ranks and the shortcuts of this hierarchy in the directory indicated by
+     * {@code basePath}, usually the directory of the graph, atomically (see
+     * {@code Graph.writeFileAtomically}).
+     *
+     * @param basePath directory in which the files are written
+     * @throws IOException if any input/output error is thrown during file related operations
+     */
+    public void writeTo(Path basePath) throws IOException {
+        long headerSize = (long) fileHeader.length * Integer.BYTES;
+        Graph.writeFileAtomically(basePath, RANKS_FILE_NAME,
+                                  headerSize + (long) ranks.length * Integer.BYTES,
+                                  buffer -> buffer.asIntBuffer().put(fileHeader).put(ranks));
+        Graph.writeFileAtomically(
+                basePath, SHORTCUTS_FILE_NAME,
+                headerSize + (long) shortcutCount() * SHORTCUT_INTS * Integer.BYTES,
+                buffer -> {
+                    IntBuffer shortcuts = buffer.asIntBuffer().put(fileHeader);
+                    for (int i = 0; i < shortcutCount(); i++) {
+                        int arc = edgeCount + i;
+                        shortcuts.put(arcFrom[arc])
+                                .put(arcTo[arc])
+                                .put(Float.floatToIntBits(arcCosts[arc]))
+                                .put(shortcutFirstArcs[i])
+                                .put(shortcutSecondArcs[i]);
+                    }
+                });
+    }
+
+    /**
+     * Retrieves the number of shortcuts added by the preprocessing.
+     *
+     * @return the number of shortcuts of the hierarchy
+     */
+    public int shortcutCount() {
+        return shortcutFirstArcs.length;
+    }
+
+    /**
+     * Retrieves the rank of a node, its position in the contraction order.
+     *
+     * @param nodeId id (index) of the node
+     * @return the rank of the node, between 0 (included) and the number of nodes (excluded)
+     */
+    public int rank(int nodeId) {
+        return ranks[nodeId];
+    }
+
+    /**
+     * Computes the route minimizing the total cost between two nodes.
+     *
+     * @param startNodeId id (index) of the route's starting node
+     * @param endNodeId   id (index) of the route's destination node
+     * @return the route with the minimal total cost between the node with id {@code startNodeId}
+     *         and the node with id {@code endNodeId}, or {@code null} if no route exists between
+     *         those nodes
+     * @throws IllegalArgumentException if the starting node and the destination node are the same
+     */
+    public Route bestRouteBetween(int startNodeId, int endNodeId) {
+        Preconditions.checkArgument(startNodeId != endNodeId);
+        SearchWorkspace forward = forwardWorkspaces.get();
+        SearchWorkspace backward = backwardWorkspaces.get();
+        forward.reset();
+        backward.reset();
+        // Previous of each node: arc followed to reach it, -1 for the search's origin
+        forward.update(startNodeId, 0, -1);
+        forward.heap().addOrDecreaseKey(startNodeId, 0);
+        backward.update(endNodeId, 0, -1);
+        backward.heap().addOrDecreaseKey(endNodeId, 0);
+        // Cost of the best route found so far, through meetingNodeId
+        float bestCost = Float.POSITIVE_INFINITY;
+        int meetingNodeId = -1;
+
+        while (true) {
+            // A search stops once its closest node is further than the best route found
+            boolean forwardActive = !forward.heap().isEmpty()
+                    && forward.heap().minKey() < bestCost;
+            boolean backwardActive = !backward.heap().isEmpty()
+                    && backward.heap().minKey() < bestCost;
+            if (!forwardActive && !backwardActive)
+                break;
+            boolean isForward = forwardActive
+                    && (!backwardActive || forward.heap().minKey() <= backward.heap().minKey());
+            SearchWorkspace workspace = isForward ? forward : backward;
+            SearchWorkspace opposite = isForward ? backward : forward;
+
+            int currentNodeId = workspace.heap().poll();
+            workspace.settle(currentNodeId);
+            float currentDistance = workspace.distance(currentNodeId);
+            float routeCost = currentDistance + opposite.distance(currentNodeId);
+            if (routeCost < bestCost) {
+                bestCost = routeCost;
+                meetingNodeId = currentNodeId;
+            }
+
+            int[] firstArcs = isForward ? upFirstArcs : downFirstArcs;
+            int[] arcs = isForward ? upArcs : downArcs;
+            for (int i = firstArcs[currentNodeId]; i < firstArcs[currentNodeId + 1]; i++) {
+                int arc = arcs[i];
+                int nextNodeId = isForward ? arcTo[arc] : arcFrom[arc];
+                float distance = currentDistance + arcCosts[arc];
+                if (distance < workspace.distance(nextNodeId)) {
+                    workspace.update(nextNodeId, distance, arc);
+                    workspace.heap().addOrDecreaseKey(nextNodeId, distance);
+                }
+            }
+        }
+        if (meetingNodeId == -1)
+            return null; // path does not exist
+
+        // Arcs of the route in the hierarchy, from the start to the destination
+        List<Integer> routeArcs = new ArrayList<>();
+        for (int nodeId = meetingNodeId; forward.previous(nodeId) != -1; ) {
+            int arc = forward.previous(nodeId);
+            routeArcs.add(0, arc);
+            nodeId = arcFrom[arc];
+        }
+        for (int nodeId = meetingNodeId; backward.previous(nodeId) != -1; ) {
+            int arc = backward.previous(nodeId);
+            routeArcs.add(arc);
+            nodeId = arcTo[arc];
+        }
+        List<Edge> edges = new ArrayList<>();
+        for (int arc : routeArcs)
+            unpack(arc, edges);
+        return new SingleRoute(edges);
+    }
+
+    /**
+     * Retrieves the number of nodes settled (visited) by the last route computation of the calling
+     * thread, in both directions.
+     *
+     * @return the number of nodes settled by the last call to {@code bestRouteBetween} made by the
+     *         current thread, 0 if it never called it
+     */
+    public int lastSettledNodeCount() {
+        return forwardWorkspaces.get().settledCount() + backwardWorkspaces.get().settledCount();
+    }
+
+    /**
+     * Checks whether an arc goes up in the hierarchy.
+     *
+     * @param arc id of the arc
+     * @return true if the destination of the arc is ranked higher than its start, false otherwise
+     */
+    private boolean isUpward(int arc) {
+        return ranks[arcTo[arc]] > ranks[arcFrom[arc]];
+    }
+
+    /**
+     * Replaces an arc by the edges of the graph it represents, recursively for shortcuts.
+     *
+     * @param arc   id of the arc
+     * @param edges list to which the edges are appended, in the order of the route
+     */
+    private void unpack(int arc, List<Edge> edges) {
+        // Arcs still to unpack, the next one on top
+        int[] stack = new int[16];
+        int size = 0;
+        stack[size++] = arc;
+        while (size > 0) {
+            int current = stack[--size];
+            if (current < edgeCount) {
+                edges.add(Edge.of(graph, current, arcFrom[current], arcTo[current]));
+                continue;
+            }
+            if (size + 2 > stack.length)
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            stack[size++] = shortcutSecondArcs[current - edgeCount];
+            stack[size++] = shortcutFirstArcs[current - edgeCount];
+        }
+    }
+
+    /**
+     * Maps a file of the hierarchy in memory and checks its header.
+     *
+     * @param basePath   directory containing the file
+     * @param fileName   name of the file
+     * @param fileHeader expected header of the file
+     * @return the content of the file following the header
+     * @throws IOException              if any input/output error is thrown during file related
+     *                                  operations
+     * @throws IllegalArgumentException if the file does not start with the expected header
+     */
+    private static IntBuffer mapFileContent(Path basePath, String fileName, int[] fileHeader)
+            throws IOException {
+        IntBuffer buffer = Graph.mapFileToBuffer(basePath, fileName).asIntBuffer();
+        Preconditions.checkArgument(Graph.hasHeader(buffer, fileHeader));
+        return buffer.position(fileHeader.length).slice();
+    }
+
+}
@@ -0,0 +1,314 @@
+package ch.epfl.javelo.routing;
+
+import java.util.Arrays;
+import ch.epfl.javelo.data.Graph;
+
+/**
+ * Preprocessor computing the contraction hierarchy of a graph for a given cost function.
+ * <p>
+ * Nodes are contracted one by one, least important first. Contracting a node removes it from the
+ * remaining graph and adds a shortcut between two of its neighbours for every best route going
+ * through it, unless a (bounded) witness search finds another route at most as expensive. The
+ * importance of a node is its edge difference (shortcuts added minus edges removed) plus its number
+ * of already contracted neighbours, re-evaluated lazily when the node reaches the top of the queue.
+ * <p>
+ * Arcs are numbered as follows: the edges of the graph keep their id, shortcuts come after them.
+ * Edges whose cost is infinite are ignored.
+ * <p>
+ * Mutable, used once by {@code ContractionHierarchy.build}. Arguments are not checked.
+ *
+ * @author Lucas Jung (324724)
+ * @author Florian Kolly (328313)
+ */
+final class ContractionHierarchyBuilder {
+
+    /**
+     * Maximum number of nodes settled by a witness search when contracting a node.
+     */
+    private static final int WITNESS_SETTLED_LIMIT = 500;
+
+    /**
+     * Maximum number of nodes settled by a witness search when evaluating the importance of a node.
+     */
+    private static final int SIMULATION_SETTLED_LIMIT = 50;
+
+    /**
+     * Initial capacity of the adjacency list of a node.
+     */
+    private static final int INITIAL_DEGREE = 4;
+
+    private final Graph graph;
+    private final int[] fileHeader;
+    private final int edgeCount;
+
+    // Arcs (edges, then shortcuts)
+    private int arcCount;
+    private int[] arcFrom;
+    private int[] arcTo;
+    private float[] arcCosts;
+
+    /**
+     * Arcs replaced by each shortcut (index 0 corresponds to arc {@code edgeCount}).
+     */
+    private int[] shortcutFirstArcs;
+    private int[] shortcutSecondArcs;
+
+    /**
+     * Arcs going out of/coming into each node, only between nodes which are not contracted yet.
+     */
+    private final int[][] outArcs;
+    private final int[] outDegrees;
+    private final int[][] inArcs;
+    private final int[] inDegrees;
+
+    private final int[] ranks;
+    private final int[] contractedNeighbours;
+
+    private final SearchWorkspace witnessWorkspace;
+
+    /**
+     * ContractionHierarchyBuilder's constructor, collects the finite cost edges of the graph.
+     *
+     * @param graph        the graph
+     * @param costFunction cost function of the hierarchy
+     */
+    ContractionHierarchyBuilder(Graph graph, CostFunction costFunction) {
+        int nodeCount = graph.nodeCount();
+        this.graph = graph;
+        this.fileHeader = CostFactorTable.fileHeader(graph, costFunction);
+        this.edgeCount = graph.edgeCount();
+        this.arcCount = edgeCount;
+        this.arcFrom = new int[edgeCount * 2];
+        this.arcTo = new int[edgeCount * 2];
+        this.arcCosts = new float[edgeCount * 2];
+        this.shortcutFirstArcs = new int[edgeCount];
+        this.shortcutSecondArcs = new int[edgeCount];
+        this.outArcs = new int[nodeCount][];
+        this.outDegrees = new int[nodeCount];
+        this.inArcs = new int[nodeCount][];
+        this.inDegrees = new int[nodeCount];
+        this.ranks = new int[nodeCount];
+        this.contractedNeighbours = new int[nodeCount];
+        this.witnessWorkspace = new SearchWorkspace(nodeCount);
+
+        for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+            outArcs[nodeId] = new int[INITIAL_DEGREE];
+            inArcs[nodeId] = new int[INITIAL_DEGREE];
+        }
+        for (int nodeId = 0; nodeId < nodeCount; nodeId++)
+            for (int edgeIndex = 0; edgeIndex < graph.nodeOutDegree(nodeId); edgeIndex++) {
+                int edgeId = graph.nodeOutEdgeId(nodeId, edgeIndex);
+                int toNodeId = graph.edgeTargetNodeId(edgeId);
+                float cost = (float) (costFunction.costFactor(nodeId, edgeId)
+                        * graph.edgeLength(edgeId));
+                arcFrom[edgeId] = nodeId;
+                arcTo[edgeId] = toNodeId;
+                arcCosts[edgeId] = cost;
+                if (cost < Float.POSITIVE_INFINITY && toNodeId != nodeId)
+                    link(edgeId);
+            }
+    }
+
+    /**
+     * Contracts every node of the graph.
+     *
+     * @return the contraction hierarchy
+     */
+    ContractionHierarchy build() {
+        int nodeCount = ranks.length;
+        NodeHeap queue = new NodeHeap(nodeCount);
+        for (int nodeId = 0; nodeId < nodeCount; nodeId++)
+            queue.addOrDecreaseKey(nodeId, importance(nodeId));
+
+        int rank = 0;
+        while (!queue.isEmpty()) {
+            int nodeId = queue.poll();
+            // Lazy update: the importance may have grown since the node was queued
+            float importance = importance(nodeId);
+            if (!queue.isEmpty() && importance > queue.minKey()) {
+                queue.addOrDecreaseKey(nodeId, importance);
+                continue;
+            }
+            contract(nodeId, false);
+            ranks[nodeId] = rank++;
+        }
+
+        int shortcutCount = arcCount - edgeCount;
+        return new ContractionHierarchy(graph, fileHeader, ranks,
+                                        Arrays.copyOf(arcFrom, arcCount),
+                                        Arrays.copyOf(arcTo, arcCount),
+                                        Arrays.copyOf(arcCosts, arcCount),
+                                        Arrays.copyOf(shortcutFirstArcs, shortcutCount),
+                                        Arrays.copyOf(shortcutSecondArcs, shortcutCount));
+    }
+
+    /**
+     * Computes the importance of a (not contracted) node, the smallest is contracted first.
+     *
+     * @param nodeId id (index) of the node
+     * @return the importance of the node
+     */
+    private float importance(int nodeId) {
+        int shortcutCount = contract(nodeId, true);
+        int edgeDifference = shortcutCount - outDegrees[nodeId] - inDegrees[nodeId];
+        return 2 * edgeDifference + contractedNeighbours[nodeId];
+    }
+
+    /**
+     * Contracts a node, or simulates its contraction.
+     *
+     * @param nodeId   id (index) of the node
+     * @param simulate true to only count the shortcuts which would be added, false to actually
+     *                 contract the node
+     * @return the number of shortcuts added (or which would be added)
+     */
+    private int contract(int nodeId, boolean simulate) {
+        int shortcutCount = 0;
+        int settledLimit = simulate ? SIMULATION_SETTLED_LIMIT : WITNESS_SETTLED_LIMIT;
+        for (int i = 0; i < inDegrees[nodeId]; i++) {
+            int inArc = inArcs[nodeId][i];
+            int fromNodeId = arcFrom[inArc];
+            float maxCost = Float.NEGATIVE_INFINITY;
+            for (int j = 0; j < outDegrees[nodeId]; j++) {
+                int outArc = outArcs[nodeId][j];
+                if (arcTo[outArc] != fromNodeId)
+                    maxCost = Math.max(maxCost, arcCosts[inArc] + arcCosts[outArc]);
+            }
+            if (maxCost == Float.NEGATIVE_INFINITY)
+                continue;
+
+            witnessSearch(fromNodeId, nodeId, maxCost, settledLimit);
+            for (int j = 0; j < outDegrees[nodeId]; j++) {
+                int outArc = outArcs[nodeId][j];
+                int toNodeId = arcTo[outArc];
+                float cost = arcCosts[inArc] + arcCosts[outArc];
+                if (toNodeId == fromNodeId || witnessWorkspace.distance(toNodeId) <= cost)
+                    continue;
+                shortcutCount++;
+                if (!simulate)
+                    addShortcut(fromNodeId, toNodeId, cost, inArc, outArc);
+                // Following arcs to the same node need a cheaper route to be useful
+                witnessWorkspace.update(toNodeId, cost, -1);
+            }
+        }
+
+        if (!simulate) {
+            for (int i = 0; i < inDegrees[nodeId]; i++) {
+                int arc = inArcs[nodeId][i];
+                unlink(outArcs[arcFrom[arc]], outDegrees, arcFrom[arc], arc);
+                contractedNeighbours[arcFrom[arc]]++;
+            }
+            for (int i = 0; i < outDegrees[nodeId]; i++) {
+                int arc = outArcs[nodeId][i];
+                unlink(inArcs[arcTo[arc]], inDegrees, arcTo[arc], arc);
+                contractedNeighbours[arcTo[arc]]++;
+            }
+            outArcs[nodeId] = null;
+            inArcs[nodeId] = null;
+        }
+        return shortcutCount;
+    }
+
+    /**
+     * Searches the best routes from a node in the remaining graph, avoiding the node being
+     * contracted. The search stops once every remaining node is more expensive than
+     * {@code maxCost}, or after {@code settledLimit} nodes have been settled. Distances found are
+     * thus upper bounds of the real ones.
+     *
+     * @param startNodeId    id (index) of the starting node of the search
+     * @param ignoredNodeId  id (index) of the node being contracted
+     * @param maxCost        cost above which routes are useless
+     * @param settledLimit   maximum number of nodes to settle
+     */
+    private void witnessSearch(int startNodeId,
+                               int ignoredNodeId,
+                               float maxCost,
+                               int settledLimit) {
+        SearchWorkspace workspace = witnessWorkspace;
+        workspace.reset();
+        NodeHeap toVisit = workspace.heap();
+        workspace.update(startNodeId, 0, -1);
+        toVisit.addOrDecreaseKey(startNodeId, 0);
+        while (!toVisit.isEmpty() && toVisit.minKey() <= maxCost
+                && workspace.settledCount() < settledLimit) {
+            int currentNodeId = toVisit.poll();
+            workspace.settle(currentNodeId);
+            float currentDistance = workspace.distance(currentNodeId);
+            for (int i = 0; i < outDegrees[currentNodeId]; i++) {
+                int arc = outArcs[currentNodeId][i];
+                int toNodeId = arcTo[arc];
+                if (toNodeId == ignoredNodeId || workspace.isSettled(toNodeId))
+                    continue;
+                float distance = currentDistance + arcCosts[arc];
+                if (distance < workspace.distance(toNodeId)) {
+                    workspace.update(toNodeId, distance, -1);
+                    toVisit.addOrDecreaseKey(toNodeId, distance);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a shortcut to the remaining graph.
+     *
+     * @param fromNodeId id (index) of the shortcut's starting node
+     * @param toNodeId   id (index) of the shortcut's destination node
+     * @param cost       cost of the shortcut
+     * @param firstArc   first arc replaced by the shortcut
+     * @param secondArc  second arc replaced by the shortcut
+     */
+    private void addShortcut(int fromNodeId,
+                             int toNodeId,
+                             float cost,
+                             int firstArc,
+                             int secondArc) {
+        if (arcCount == arcFrom.length) {
+            int capacity = arcCount + arcCount / 2;
+            arcFrom = Arrays.copyOf(arcFrom, capacity);
+            arcTo = Arrays.copyOf(arcTo, capacity);
+            arcCosts = Arrays.copyOf(arcCosts, capacity);
+            shortcutFirstArcs = Arrays.copyOf(shortcutFirstArcs, capacity - edgeCount);
+            shortcutSecondArcs = Arrays.copyOf(shortcutSecondArcs, capacity - edgeCount);
+        }
+        int arc = arcCount++;
+        arcFrom[arc] = fromNodeId;
+        arcTo[arc] = toNodeId;
+        arcCosts[arc] = cost;
+        shortcutFirstArcs[arc - edgeCount] = firstArc;
+        shortcutSecondArcs[arc - edgeCount] = secondArc;
+        link(arc);
+    }
+
+    /**
+     * Adds an arc to the adjacency lists of its nodes.
+     *
+     * @param arc id of the arc
+     */
+    private void link(int arc) {
+        int fromNodeId = arcFrom[arc];
+        int toNodeId = arcTo[arc];
+        if (outDegrees[fromNodeId] == outArcs[fromNodeId].length)
+            outArcs[fromNodeId] = Arrays.copyOf(outArcs[fromNodeId], outDegrees[fromNodeId] * 2);
+        outArcs[fromNodeId][outDegrees[fromNodeId]++] = arc;
+        if (inDegrees[toNodeId] == inArcs[toNodeId].length)
+            inArcs[toNodeId] = Arrays.copyOf(inArcs[toNodeId], inDegrees[toNodeId] * 2);
+        inArcs[toNodeId][inDegrees[toNodeId]++] = arc;
+    }
+
+    /**
+     * Removes an arc from an adjacency list (order is not preserved).
+     *
+     * @param arcs    adjacency list of the node
+     * @param degrees degrees of the nodes, matching the adjacency lists
+     * @param nodeId  id (index) of the node
+     * @param arc     id of the arc to remove
+     */
+    private static void unlink(int[] arcs, int[] degrees, int nodeId, int arc) {
+        for (int i = 0; i < degrees[nodeId]; i++)
+            if (arcs[i] == arc) {
+                arcs[i] = arcs[--degrees[nodeId]];
+                return;
+            }
+    }
+
+}
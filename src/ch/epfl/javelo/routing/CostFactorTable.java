@@ -0,0 +1,183 @@
+package ch.epfl.javelo.routing;
+
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import ch.epfl.javelo.data.Graph;
+
+/**
+ * Cost function decorator evaluating another cost function once per edge of a graph. The cost
+ * factor of every edge is then read from a table (one float per edge) instead of being computed on
+ * each relaxation of a route search.
+ * <p>
+ * An edge has a single starting node, so the cost factor of an edge only depends on its id and
+ * the starting node given to {@code costFactor} is ignored.
+ * <p>
+ * The table can be stored next to the graph in {@code derived_costs_<fingerprint>.bin} (one float
+ * per edge), where the fingerprint identifies the cost function (see {@code fingerprint}), and
+ * mapped back instead of being recomputed.
+ * <p>
+ * Immutable. Arguments are not checked.
+ *
+ * @author Lucas Jung (324724)
+ * @author Florian Kolly (328313)
+ */
+public final class CostFactorTable implements CostFunction {
+
+    /**
+     * Approximate number of nodes whose outgoing edges are evaluated to compute a fingerprint.
+     */
+    private static final int FINGERPRINT_SAMPLED_NODES = 1024;
+
+    /**
+     * Number of integers of the header of the files computed for a graph and a cost function
+     * (see {@code fileHeader}).
+     */
+    static final int FILE_HEADER_INTS = Graph.DERIVED_FILE_HEADER_INTS + 2;
+
+    // 64-bit FNV-1a hash constants
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final FloatBuffer costFactors;
+
+    /**
+     * CostFactorTable's constructor.
+     *
+     * @param costFactors cost factor of each edge
+     */
+    private CostFactorTable(FloatBuffer costFactors) {
+        this.costFactors = costFactors;
+    }
+
+    /**
+     * Computes the name of the file of the table of a cost function, in the directory of the
+     * graph's files.
+     *
+     * @param graph        the graph
+     * @param costFunction the cost function
+     * @return {@code derived_costs_<fingerprint>.bin} (see {@code fingerprint})
+     */
+    public static String fileName(Graph graph, CostFunction costFunction) {
+        return Graph.DERIVED_FILE_PREFIX + "costs_" + fingerprint(graph, costFunction)
+                + ".bin";
+    }
+
+    /**
+     * Evaluates a cost function for every edge of a graph, in memory.
+     *
+     * @param graph        the graph
+     * @param costFunction cost function to evaluate
+     * @return the table of the cost factors of the graph's edges
+     */
+    public static CostFactorTable of(Graph graph, CostFunction costFunction) {
+        FloatBuffer costFactors = FloatBuffer.allocate(graph.edgeCount());
+        write(costFactors, graph, costFunction);
+        return new CostFactorTable(costFactors);
+    }
+
+    /**
+     * Maps the table of a cost function from the directory indicated by {@code basePath}, after
+     * computing and writing it there if it does not exist yet or does not have the size of the
+     * table (e.g. truncated file). The table is written atomically (see
+     * {@code Graph.writeFileAtomically}), directly into the mapped file.
+     *
+     * @param basePath     directory of the table, usually the directory of the graph
+     * @param graph        the graph
+     * @param costFunction cost function to evaluate
+     * @return the table of the cost factors of the graph's edges
+     * @throws IOException if any input/output error is thrown during file related operations
+     */
+    public static CostFactorTable loadOrCompute(Path basePath,
+                                                Graph graph,
+                                                CostFunction costFunction) throws IOException {
+        String fileName = fileName(graph, costFunction);
+        Path filePath = basePath.resolve(fileName);
+        long fileSize = (long) Float.BYTES * graph.edgeCount();
+        if (!(Files.exists(filePath) && Files.size(filePath) == fileSize))
+            Graph.writeFileAtomically(basePath, fileName, fileSize,
+                                      buffer -> write(buffer.asFloatBuffer(), graph,
+                                                      costFunction));
+        try (FileChannel channel = FileChannel.open(filePath)) {
+            return new CostFactorTable(
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize).asFloatBuffer());
+        }
+    }
+
+    /**
+     * Evaluates a cost function for every edge of a graph, writing the cost factors into a buffer
+     * (in the heap or mapped).
+     *
+     * @param costFactors  buffer of the cost factor of each edge
+     * @param graph        the graph
+     * @param costFunction cost function to evaluate
+     */
+    private static void write(FloatBuffer costFactors, Graph graph, CostFunction costFunction) {
+        for (int nodeId = 0; nodeId < graph.nodeCount(); nodeId++)
+            for (int edgeIndex = 0; edgeIndex < graph.nodeOutDegree(nodeId); edgeIndex++) {
+                int edgeId = graph.nodeOutEdgeId(nodeId, edgeIndex);
+                costFactors.put(edgeId, (float) costFunction.costFactor(nodeId, edgeId));
+            }
+    }
+
+    /**
+     * Computes a fingerprint of a cost function on a graph: a hash of its class name, of the
+     * number of edges of the graph and of the cost factors of the outgoing edges of about a
+     * thousand nodes spread over the graph.
+     * <p>
+     * WARNING: Two cost functions of the same class only differing on edges which are not sampled
+     * have the same fingerprint.
+     *
+     * @param graph        the graph
+     * @param costFunction the cost function
+     * @return the fingerprint, in hexadecimal
+     */
+    public static String fingerprint(Graph graph, CostFunction costFunction) {
+        return String.format("%016x", fingerprintBits(graph, costFunction));
+    }
+
+    /**
+     * Computes the header of the files computed for a graph and a cost function (landmarks and
+     * contraction hierarchy), identifying both: the header identifying the graph (see
+     * {@code Graph.derivedFileHeader}) followed by (long, as two ints) the fingerprint of the cost
+     * function (see {@code fingerprint}).
+     *
+     * @param graph        the graph
+     * @param costFunction the cost function
+     * @return the header, of {@code FILE_HEADER_INTS} integers
+     */
+    static int[] fileHeader(Graph graph, CostFunction costFunction) {
+        int[] header = Arrays.copyOf(graph.derivedFileHeader(), FILE_HEADER_INTS);
+        long fingerprint = fingerprintBits(graph, costFunction);
+        header[FILE_HEADER_INTS - 2] = (int) (fingerprint >>> Integer.SIZE);
+        header[FILE_HEADER_INTS - 1] = (int) fingerprint;
+        return header;
+    }
+
+    /**
+     * Computes the fingerprint of a cost function on a graph (see {@code fingerprint}).
+     */
+    private static long fingerprintBits(Graph graph, CostFunction costFunction) {
+        long hash = FNV_OFFSET_BASIS;
+        for (char c : costFunction.getClass().getName().toCharArray())
+            hash = (hash ^ c) * FNV_PRIME;
+        hash = (hash ^ graph.edgeCount()) * FNV_PRIME;
+        int step = Math.max(1, graph.nodeCount() / FINGERPRINT_SAMPLED_NODES);
+        for (int nodeId = 0; nodeId < graph.nodeCount(); nodeId += step)
+            for (int edgeIndex = 0; edgeIndex < graph.nodeOutDegree(nodeId); edgeIndex++) {
+                int edgeId = graph.nodeOutEdgeId(nodeId, edgeIndex);
+                float costFactor = (float) costFunction.costFactor(nodeId, edgeId);
+                hash = (hash ^ Float.floatToIntBits(costFactor)) * FNV_PRIME;
+            }
+        return hash;
+    }
+
+    @Override
+    public double costFactor(int nodeId, int edgeId) {
+        return costFactors.get(edgeId);
+    }
+
+}
@@ -0,0 +1,232 @@
+package ch.epfl.javelo.routing;
+
+import java.util.BitSet;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.IntStream;
+import ch.epfl.javelo.data.Graph;
+
+/**
+ * Costs and lengths of the best routes between every source node and every target node of a graph
+ * (many-to-many matrix).
+ * <p>
+ * Computed with one Dijkstra search per source, stopping as soon as every target is settled, the
+ * searches of the different sources running in parallel. Each search takes a workspace from a pool
+ * of the computation, holding one workspace per thread at most, released with the pool once the
+ * matrix is computed (unlike thread-local workspaces, which the threads of the common pool would
+ * keep). The routes themselves are only computed
+ * on demand, by {@code route}.
+ * <p>
+ * Immutable. Arguments are not checked.
+ *
+ * @author Lucas Jung (324724)
+ * @author Florian Kolly (328313)
+ */
+public final class CostMatrix {
+
+    private final int[] sourceNodeIds;
+    private final int[] targetNodeIds;
+    private final float[][] costs;
+    private final float[][] lengths;
+    private final RouteComputer routeComputer;
+
+    /**
+     * CostMatrix's constructor.
+     *
+     * @param sourceNodeIds ids (indexes) of the source nodes
+     * @param targetNodeIds ids (indexes) of the target nodes
+     * @param costs         cost of the best route from each source to each target
+     * @param lengths       length of the best route from each source to each target
+     * @param routeComputer route computer used to compute the routes on demand
+     */
+    private CostMatrix(int[] sourceNodeIds,
+                       int[] targetNodeIds,
+                       float[][] costs,
+                       float[][] lengths,
+                       RouteComputer routeComputer) {
+        this.sourceNodeIds = sourceNodeIds;
+        this.targetNodeIds = targetNodeIds;
+        this.costs = costs;
+        this.lengths = lengths;
+        this.routeComputer = routeComputer;
+    }
+
+    /**
+     * Computes the costs and lengths of the best routes between every source node and every target
+     * node, using all the available processors.
+     *
+     * @param graph         the graph
+     * @param costFunction  cost function to consider for the route computation
+     * @param sourceNodeIds ids (indexes) of the source nodes
+     * @param targetNodeIds ids (indexes) of the target nodes
+     * @return the matrix of the best routes between the sources and the targets
+     */
+    public static CostMatrix compute(Graph graph,
+                                     CostFunction costFunction,
+                                     int[] sourceNodeIds,
+                                     int[] targetNodeIds) {
+        int[] sources = sourceNodeIds.clone();
+        int[] targets = targetNodeIds.clone();
+        BitSet isTarget = new BitSet(graph.nodeCount());
+        for (int targetNodeId : targets)
+            isTarget.set(targetNodeId);
+        int distinctTargetCount = isTarget.cardinality();
+
+        float[][] costs = new float[sources.length][];
+        float[][] lengths = new float[sources.length][];
+        Queue<SearchWorkspace> workspaces = new ConcurrentLinkedQueue<>();
+        IntStream.range(0, sources.length).parallel().forEach(i -> {
+            SearchWorkspace workspace = workspaces.poll();
+            if (workspace == null)
+                workspace = new SearchWorkspace(graph.nodeCount());
+            try {
+                search(graph, costFunction, workspace, sources[i], isTarget, distinctTargetCount);
+                costs[i] = new float[targets.length];
+                lengths[i] = new float[targets.length];
+                for (int j = 0; j < targets.length; j++) {
+                    costs[i][j] = workspace.distance(targets[j]);
+                    lengths[i][j] = costs[i][j] == Float.POSITIVE_INFINITY
+                            ? Float.POSITIVE_INFINITY
+                            : routeLength(graph, workspace, targets[j]);
+                }
+            } finally {
+                workspaces.add(workspace);
+            }
+        });
+        return new CostMatrix(sources, targets, costs, lengths,
+                              new RouteComputer(graph, costFunction));
+    }
+
+    /**
+     * Retrieves the number of sources (rows) of the matrix.
+     *
+     * @return the number of source nodes
+     */
+    public int sourceCount() {
+        return sourceNodeIds.length;
+    }
+
+    /**
+     * Retrieves the number of targets (columns) of the matrix.
+     *
+     * @return the number of target nodes
+     */
+    public int targetCount() {
+        return targetNodeIds.length;
+    }
+
+    /**
+     * Retrieves the cost of the best route from a source to a target.
+     *
+     * @param sourceIndex index of the source, in the order given to {@code compute}
+     * @param targetIndex index of the target, in the order given to {@code compute}
+     * @return the cost of the best route, 0 if the source and the target are the same node,
+     *         {@code Float.POSITIVE_INFINITY} if no route exists
+     */
+    public float cost(int sourceIndex, int targetIndex) {
+        return costs[sourceIndex][targetIndex];
+    }
+
+    /**
+     * Retrieves the length of the best route from a source to a target.
+     *
+     * @param sourceIndex index of the source, in the order given to {@code compute}
+     * @param targetIndex index of the target, in the order given to {@code compute}
+     * @return the length of the best route, in meters, 0 if the source and the target are the same
+     *         node, {@code Float.POSITIVE_INFINITY} if no route exists
+     */
+    public float length(int sourceIndex, int targetIndex) {
+        return lengths[sourceIndex][targetIndex];
+    }
+
+    /**
+     * Retrieves the costs of the best routes from every source to every target.
+     *
+     * @return a copy of the costs, indexed by source index then target index
+     */
+    public float[][] costs() {
+        return deepCopy(costs);
+    }
+
+    /**
+     * Retrieves the lengths of the best routes from every source to every target.
+     *
+     * @return a copy of the lengths, indexed by source index then target index
+     */
+    public float[][] lengths() {
+        return deepCopy(lengths);
+    }
+
+    /**
+     * Computes a best route from a source to a target. Its cost is the one of the matrix, its
+     * edges may differ from the ones measured by the matrix if several routes have the same cost.
+     *
+     * @param sourceIndex index of the source, in the order given to {@code compute}
+     * @param targetIndex index of the target, in the order given to {@code compute}
+     * @return the route with the minimal total cost from the source to the target, or
+     *         {@code null} if no route exists or if the source and the target are the same node
+     */
+    public Route route(int sourceIndex, int targetIndex) {
+        int sourceNodeId = sourceNodeIds[sourceIndex];
+        int targetNodeId = targetNodeIds[targetIndex];
+        if (sourceNodeId == targetNodeId
+                || costs[sourceIndex][targetIndex] == Float.POSITIVE_INFINITY)
+            return null;
+        return routeComputer.bestRouteBetween(sourceNodeId, targetNodeId);
+    }
+
+    /**
+     * Runs a Dijkstra search from a node, until every target is settled or every reachable node
+     * is.
+     *
+     * @param graph        the graph
+     * @param costFunction cost function to consider for the route computation
+     * @param workspace    workspace of the search, containing the best routes once it is over
+     * @param sourceNodeId id (index) of the starting node of the search
+     * @param isTarget     set of the target node ids
+     * @param targetCount  number of distinct target nodes
+     */
+    private static void search(Graph graph,
+                               CostFunction costFunction,
+                               SearchWorkspace workspace,
+                               int sourceNodeId,
+                               BitSet isTarget,
+                               int targetCount) {
+        Dijkstra.start(workspace, sourceNodeId);
+        int settledTargetCount = 0;
+        while (!workspace.heap().isEmpty() && settledTargetCount < targetCount) {
+            int settledNodeId = Dijkstra.settleClosestNode(graph, costFunction, true, workspace,
+                                                           Double.POSITIVE_INFINITY);
+            if (isTarget.get(settledNodeId))
+                settledTargetCount++;
+        }
+    }
+
+    /**
+     * Computes the length of the best route found by a search to a (reached) node.
+     *
+     * @param graph     the graph
+     * @param workspace workspace of the search, linking a node to the previous one (see
+     *                  {@code Dijkstra})
+     * @param nodeId    id (index) of the route's destination node
+     * @return the length of the route, in meters
+     */
+    private static float routeLength(Graph graph, SearchWorkspace workspace, int nodeId) {
+        double length = 0;
+        for (int previous = workspace.previous(nodeId); previous != -1;
+             previous = workspace.previous(nodeId)) {
+            nodeId = Dijkstra.linkedNodeId(previous);
+            int edgeIndex = Dijkstra.linkedEdgeIndex(previous);
+            length += graph.edgeLength(graph.nodeOutEdgeId(nodeId, edgeIndex));
+        }
+        return (float) length;
+    }
+
+    private static float[][] deepCopy(float[][] matrix) {
+        float[][] copy = new float[matrix.length][];
+        for (int i = 0; i < matrix.length; i++)
+            copy[i] = matrix[i].clone();
+        return copy;
+    }
+
+}
@@ -0,0 +1,143 @@
+package ch.epfl.javelo.routing;
+
+import ch.epfl.javelo.Bits;
+import ch.epfl.javelo.data.Graph;
+
+/**
+ * Steps of the Dijkstra searches (not guided towards a destination) run in a
+ * {@code SearchWorkspace}, forward along the outgoing edges of the nodes or backward along their
+ * incoming edges.
+ * <p>
+ * Each reached node is linked to the node from which it was reached, packed with the index of
+ * the edge between them among the outgoing edges of its starting node (int - U4 -> edge index,
+ * U28 -> node id). A forward search thus links a node to its previous node and the edge to
+ * follow from it, a backward search links a node to its next node and the edge to follow to it.
+ * <p>
+ * Non-instantiable. Arguments are not checked.
+ *
+ * @author Lucas Jung (324724)
+ * @author Florian Kolly (328313)
+ */
+final class Dijkstra {
+
+    /**
+     * Number of bits taken by the node id in a packed link.
+     */
+    private static final byte NODE_ID_LENGTH = 28;
+
+    /**
+     * Number of bits taken by the outgoing edge index in a packed link.
+     */
+    private static final byte EDGE_INDEX_LENGTH = 4;
+
+    private Dijkstra() {}
+
+    /**
+     * Prepares a workspace for a new search from (or, for a backward search, to) a node.
+     *
+     * @param workspace    workspace of the search
+     * @param originNodeId id (index) of the node at which the search starts
+     */
+    static void start(SearchWorkspace workspace, int originNodeId) {
+        workspace.reset();
+        workspace.update(originNodeId, 0, -1);
+        workspace.heap().addOrDecreaseKey(originNodeId, 0);
+    }
+
+    /**
+     * Settles the closest node to the origin which is not settled yet, and relaxes its outgoing
+     * (forward search) or incoming (backward search) edges. The heap of the workspace must not be
+     * empty.
+     *
+     * @param graph        the graph
+     * @param costFunction cost function of the search, always evaluated in the direction of the
+     *                     edges
+     * @param isForward    true to follow the outgoing edges, false to follow the incoming ones
+     * @param workspace    workspace of the search
+     * @param maxDistance  largest distance at which a node is reached, the farther ones being
+     *                     ignored
+     * @return the id (index) of the settled node
+     */
+    static int settleClosestNode(Graph graph,
+                                 CostFunction costFunction,
+                                 boolean isForward,
+                                 SearchWorkspace workspace,
+                                 double maxDistance) {
+        int currentNodeId = workspace.heap().poll();
+        workspace.settle(currentNodeId);
+        float currentDistance = workspace.distance(currentNodeId);
+
+        int degree = isForward ? graph.nodeOutDegree(currentNodeId)
+                : graph.nodeInDegree(currentNodeId);
+        for (int edgeIndex = 0; edgeIndex < degree; edgeIndex++) {
+            int edgeId, fromNodeId, toNodeId;
+            if (isForward) {
+                edgeId = graph.nodeOutEdgeId(currentNodeId, edgeIndex);
+                fromNodeId = currentNodeId;
+                toNodeId = graph.edgeTargetNodeId(edgeId);
+            } else {
+                edgeId = graph.nodeInEdgeId(currentNodeId, edgeIndex);
+                fromNodeId = graph.nodeInEdgeSourceNodeId(currentNodeId, edgeIndex);
+                toNodeId = currentNodeId;
+            }
+            // Node reached by the edge, in the direction of the search
+            int nextNodeId = isForward ? toNodeId : fromNodeId;
+            if (workspace.isSettled(nextNodeId))
+                continue;
+            double cost = costFunction.costFactor(fromNodeId, edgeId);
+            float distance = (float) (currentDistance + cost * graph.edgeLength(edgeId));
+            if (distance <= maxDistance && distance < workspace.distance(nextNodeId)) {
+                int outEdgeIndex = isForward ? edgeIndex
+                        : outEdgeIndex(graph, fromNodeId, edgeId);
+                workspace.update(nextNodeId, distance, link(outEdgeIndex, currentNodeId));
+                workspace.heap().addOrDecreaseKey(nextNodeId, distance);
+            }
+        }
+        return currentNodeId;
+    }
+
+    /**
+     * Computes the index of an edge among the outgoing edges of its starting node, the outgoing
+     * edges of a node having consecutive ids.
+     *
+     * @param graph      the graph
+     * @param fromNodeId id (index) of the starting node of the edge
+     * @param edgeId     id (index) of the edge
+     * @return the outgoing edge index of the edge
+     */
+    static int outEdgeIndex(Graph graph, int fromNodeId, int edgeId) {
+        return edgeId - graph.nodeOutEdgeId(fromNodeId, 0);
+    }
+
+    /**
+     * Packs the link of a reached node.
+     *
+     * @param outEdgeIndex index of the edge among the outgoing edges of its starting node
+     * @param nodeId       id (index) of the node from which the node was reached
+     * @return the packed link
+     */
+    static int link(int outEdgeIndex, int nodeId) {
+        return (outEdgeIndex << NODE_ID_LENGTH) | nodeId;
+    }
+
+    /**
+     * Extracts the node of a packed link.
+     *
+     * @param link the packed link
+     * @return the id (index) of the node from which the node was reached
+     */
+    static int linkedNodeId(int link) {
+        return Bits.extractUnsigned(link, 0, NODE_ID_LENGTH);
+    }
+
+    /**
+     * Extracts the outgoing edge index of a packed link.
+     *
+     * @param link the packed link
+     * @return the index of the edge among the outgoing edges of its starting node
+     */
+    static int linkedEdgeIndex(int link) {
+        return Bits.extractUnsigned(link, NODE_ID_LENGTH, EDGE_INDEX_LENGTH);
+    }
+
+}
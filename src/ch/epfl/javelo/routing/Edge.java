@@ -43,6 +43,22 @@ public record Edge(int fromNodeId,
         return new Edge(fromNodeId, toNodeId, fromPoint, toPoint, length, profile);
     }
 
+    /**
+     * Returns the part of this edge between two positions, with the same nodes, e.g. to start or
+     * end a route in the middle of an edge.
+     *
+     * @param fromPosition position along this edge of the part's start, in meters
+     * @param toPosition   position along this edge of the part's end, in meters (not smaller than
+     *                     {@code fromPosition})
+     * @return the part of this edge between the positions, whose profile is the one of this edge
+     *         shifted accordingly
+     */
+    public Edge subEdge(double fromPosition, double toPosition) {
+        return new Edge(fromNodeId, toNodeId, pointAt(fromPosition), pointAt(toPosition),
+                        toPosition - fromPosition,
+                        position -> profile.applyAsDouble(fromPosition + position));
+    }
+
     /**
      * Computes the position of the closest point to a given point, along this edge (or the line
      * extending this edge).
@@ -86,14 +86,30 @@ public class GpxGenerator {
      */
     public static void writeGpx(String fileName, Route route, ElevationProfile profile)
             throws IOException {
+        try (Writer w = new FileWriter(fileName)) {
+            writeGpx(w, route, profile);
+        }
+    }
+
+    /**
+     * Writes the GPX document, corresponding to a given route and its profile, to a writer.
+     *
+     * @param w       writer of the document (neither flushed nor closed)
+     * @param route   route to represent in the GPX format
+     * @param profile profile of the route
+     * @throws IOException if any input/output error is thrown by the writer
+     */
+    public static void writeGpx(Writer w, Route route, ElevationProfile profile)
+            throws IOException {
         Document doc = createGpx(route, profile);
-        Writer w = new FileWriter(fileName);
 
         try {
             Transformer transformer = TransformerFactory.newDefaultInstance().newTransformer();
             transformer.setOutputProperty(OutputKeys.INDENT, "yes");
             transformer.transform(new DOMSource(doc), new StreamResult(w));
         } catch (TransformerException e) {
+            if (e.getCause() instanceof IOException ioException)
+                throw ioException;
             throw new Error(e); // should never happen
         }
     }
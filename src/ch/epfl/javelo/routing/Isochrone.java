@@ -0,0 +1,131 @@
+package ch.epfl.javelo.routing;
+
+import java.util.Arrays;
+import java.util.List;
+import ch.epfl.javelo.projection.PointCh;
+
+/**
+ * Nodes reachable from an origin node within increasing cost budgets (bands), along with the
+ * convex hull of each band.
+ * <p>
+ * Bands are cumulative: the band at index i contains every node whose best route from the origin
+ * costs at most {@code budget(i)}, including the nodes of the smaller bands.
+ * <p>
+ * Immutable.
+ *
+ * @author Lucas Jung (324724)
+ * @author Florian Kolly (328313)
+ */
+public final class Isochrone {
+
+    private final int originNodeId;
+    private final double[] budgets;
+
+    /**
+     * Reachable node ids, sorted by increasing cost of their best route from the origin.
+     */
+    private final int[] nodeIds;
+    private final float[] costs;
+
+    /**
+     * Number of nodes (at the beginning of {@code nodeIds}) of each band.
+     */
+    private final int[] bandNodeCounts;
+    private final List<List<PointCh>> hulls;
+
+    /**
+     * Isochrone's constructor.
+     *
+     * @param originNodeId   id (index) of the origin node
+     * @param budgets        budget of each band, in increasing order
+     * @param nodeIds        reachable node ids, sorted by increasing cost
+     * @param costs          cost of the best route from the origin to each reachable node
+     * @param bandNodeCounts number of nodes of each band
+     * @param hulls          convex hull of each band
+     */
+    Isochrone(int originNodeId,
+              double[] budgets,
+              int[] nodeIds,
+              float[] costs,
+              int[] bandNodeCounts,
+              List<List<PointCh>> hulls) {
+        this.originNodeId = originNodeId;
+        this.budgets = budgets;
+        this.nodeIds = nodeIds;
+        this.costs = costs;
+        this.bandNodeCounts = bandNodeCounts;
+        this.hulls = List.copyOf(hulls);
+    }
+
+    /**
+     * Retrieves the node from which the costs are measured.
+     *
+     * @return the id (index) of the origin node
+     */
+    public int originNodeId() {
+        return originNodeId;
+    }
+
+    /**
+     * Retrieves the number of bands.
+     *
+     * @return the number of budgets
+     */
+    public int bandCount() {
+        return budgets.length;
+    }
+
+    /**
+     * Retrieves the budget of a band.
+     *
+     * @param bandIndex index of the band, between 0 (included) and the number of bands (excluded)
+     * @return the maximum cost of the routes to the nodes of the band
+     */
+    public double budget(int bandIndex) {
+        return budgets[bandIndex];
+    }
+
+    /**
+     * Retrieves the nodes of a band.
+     *
+     * @param bandIndex index of the band, between 0 (included) and the number of bands (excluded)
+     * @return the ids (indexes) of the nodes reachable within the budget of the band, sorted by
+     *         increasing cost
+     */
+    public int[] nodeIds(int bandIndex) {
+        return Arrays.copyOf(nodeIds, bandNodeCounts[bandIndex]);
+    }
+
+    /**
+     * Retrieves the number of nodes of a band.
+     *
+     * @param bandIndex index of the band, between 0 (included) and the number of bands (excluded)
+     * @return the number of nodes reachable within the budget of the band
+     */
+    public int nodeCount(int bandIndex) {
+        return bandNodeCounts[bandIndex];
+    }
+
+    /**
+     * Retrieves the costs of the best routes to the nodes of a band.
+     *
+     * @param bandIndex index of the band, between 0 (included) and the number of bands (excluded)
+     * @return the cost of the best route from the origin to each node of the band, in the order of
+     *         {@code nodeIds(bandIndex)}
+     */
+    public float[] costs(int bandIndex) {
+        return Arrays.copyOf(costs, bandNodeCounts[bandIndex]);
+    }
+
+    /**
+     * Retrieves the convex hull of the nodes of a band.
+     *
+     * @param bandIndex index of the band, between 0 (included) and the number of bands (excluded)
+     * @return the vertices of the hull, counterclockwise (fewer than 3 points if the nodes are
+     *         aligned)
+     */
+    public List<PointCh> hull(int bandIndex) {
+        return hulls.get(bandIndex);
+    }
+
+}
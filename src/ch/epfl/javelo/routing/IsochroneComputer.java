@@ -0,0 +1,151 @@
+package ch.epfl.javelo.routing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import ch.epfl.javelo.Preconditions;
+import ch.epfl.javelo.data.Graph;
+import ch.epfl.javelo.projection.PointCh;
+
+/**
+ * Represents an isochrone planner. Used to compute the nodes reachable from a point within given
+ * cost budgets.
+ * <p>
+ * The search is a Dijkstra search stopping at the largest budget, so its cost only depends on the
+ * number of nodes reached, not on the size of the graph: each thread searches in its own
+ * workspace, allocated on its first query and reused afterwards. Budgets are expressed in units of
+ * the cost function (meters for a factor of 1), e.g. a distance ridden at a given speed for a time
+ * budget.
+ * <p>
+ * Immutable. Thread-safe.
+ *
+ * @author Lucas Jung (324724)
+ * @author Florian Kolly (328313)
+ */
+public final class IsochroneComputer {
+
+    private final Graph graph;
+    private final CostFunction costFunction;
+    private final ThreadLocal<SearchWorkspace> workspaces;
+
+    /**
+     * IsochroneComputer's constructor.
+     * <p>
+     * WARNING: Creating an isochrone computer with a modifiable {@code costFunction} violates
+     * immutability.
+     *
+     * @param graph        JaVelo graph
+     * @param costFunction cost function to consider for the route computation
+     */
+    public IsochroneComputer(Graph graph, CostFunction costFunction) {
+        this.graph = graph;
+        this.costFunction = costFunction;
+        this.workspaces = ThreadLocal.withInitial(() -> new SearchWorkspace(graph.nodeCount()));
+    }
+
+    /**
+     * Computes the nodes reachable from the closest node to a point within each budget.
+     *
+     * @param point          point from which the nodes are reached
+     * @param searchDistance maximum distance between the point and its closest node, in meters
+     * @param budgets        budgets of the bands, in increasing order
+     * @return the isochrone of the closest node to the point, or {@code null} if there is no node
+     *         within {@code searchDistance}
+     * @throws IllegalArgumentException if there is no budget, or if the budgets are negative or
+     *                                  not in increasing order
+     */
+    public Isochrone isochroneAround(PointCh point, double searchDistance, double... budgets) {
+        int originNodeId = graph.nodeClosestTo(point, searchDistance);
+        return originNodeId == -1 ? null : isochroneFrom(originNodeId, budgets);
+    }
+
+    /**
+     * Computes the nodes reachable from a node within each budget.
+     *
+     * @param originNodeId id (index) of the node from which the nodes are reached
+     * @param budgets      budgets of the bands, in increasing order
+     * @return the isochrone of the node
+     * @throws IllegalArgumentException if there is no budget, or if the budgets are negative or
+     *                                  not in increasing order
+     */
+    public Isochrone isochroneFrom(int originNodeId, double... budgets) {
+        Preconditions.checkArgument(budgets.length > 0 && budgets[0] >= 0);
+        for (int i = 1; i < budgets.length; i++)
+            Preconditions.checkArgument(budgets[i] > budgets[i - 1]);
+        double maxBudget = budgets[budgets.length - 1];
+
+        SearchWorkspace workspace = workspaces.get();
+        Dijkstra.start(workspace, originNodeId);
+        // Nodes in the order they are settled, i.e. by increasing cost
+        int[] nodeIds = new int[64];
+        float[] costs = new float[64];
+        int reachedCount = 0;
+
+        // Nodes beyond the largest budget are never visited
+        while (!workspace.heap().isEmpty()) {
+            int currentNodeId = Dijkstra.settleClosestNode(graph, costFunction, true, workspace,
+                                                           maxBudget);
+            if (reachedCount == nodeIds.length) {
+                nodeIds = Arrays.copyOf(nodeIds, 2 * reachedCount);
+                costs = Arrays.copyOf(costs, 2 * reachedCount);
+            }
+            nodeIds[reachedCount] = currentNodeId;
+            costs[reachedCount] = workspace.distance(currentNodeId);
+            reachedCount++;
+        }
+
+        int[] bandNodeCounts = new int[budgets.length];
+        List<List<PointCh>> hulls = new ArrayList<>();
+        int bandNodeCount = 0;
+        for (int i = 0; i < budgets.length; i++) {
+            while (bandNodeCount < reachedCount && costs[bandNodeCount] <= budgets[i])
+                bandNodeCount++;
+            bandNodeCounts[i] = bandNodeCount;
+            List<PointCh> points = new ArrayList<>(bandNodeCount);
+            for (int j = 0; j < bandNodeCount; j++)
+                points.add(graph.nodePoint(nodeIds[j]));
+            hulls.add(convexHull(points));
+        }
+        return new Isochrone(originNodeId, budgets.clone(), Arrays.copyOf(nodeIds, reachedCount),
+                             Arrays.copyOf(costs, reachedCount), bandNodeCounts, hulls);
+    }
+
+    /**
+     * Computes the convex hull of points (Andrew's monotone chain algorithm).
+     *
+     * @param points the points (modified)
+     * @return the vertices of the hull, counterclockwise, starting with the westernmost point
+     */
+    private static List<PointCh> convexHull(List<PointCh> points) {
+        points.sort((p1, p2) -> p1.e() != p2.e() ? Double.compare(p1.e(), p2.e())
+                : Double.compare(p1.n(), p2.n()));
+        if (points.size() < 3)
+            return List.copyOf(points);
+
+        List<PointCh> hull = new ArrayList<>();
+        // Lower hull from west to east, then upper hull from east to west
+        for (int pass = 0; pass < 2; pass++) {
+            int start = hull.size();
+            for (PointCh point : points) {
+                while (hull.size() >= start + 2
+                        && cross(hull.get(hull.size() - 2), hull.get(hull.size() - 1), point) <= 0)
+                    hull.remove(hull.size() - 1);
+                hull.add(point);
+            }
+            // Last point is the first one of the other half
+            hull.remove(hull.size() - 1);
+            Collections.reverse(points);
+        }
+        return List.copyOf(hull);
+    }
+
+    /**
+     * Computes the cross product of the vectors o->a and o->b, positive if o, a, b turn
+     * counterclockwise.
+     */
+    private static double cross(PointCh o, PointCh a, PointCh b) {
+        return (a.e() - o.e()) * (b.n() - o.n()) - (a.n() - o.n()) * (b.e() - o.e());
+    }
+
+}
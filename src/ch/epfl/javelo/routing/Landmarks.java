@@ -0,0 +1,279 @@
+package ch.epfl.javelo.routing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import ch.epfl.javelo.Preconditions;
+import ch.epfl.javelo.data.Graph;
+
+/**
+ * Landmarks of a graph for a given cost function, used to compute lower bounds of the cost of the
+ * best route between any two nodes (ALT heuristic: A*, landmarks and triangle inequality).
+ * <p>
+ * For each landmark L, the cost of the best route from L to every node and from every node to L is
+ * known. By the triangle inequality, the cost of the best route from u to v is at least
+ * {@code d(L, v) - d(L, u)} and {@code d(u, L) - d(v, L)}. Unlike the euclidean distance, these
+ * bounds take the cost factors into account.
+ * <p>
+ * The landmarks are stored next to the graph in {@code derived_landmarks.bin}: the header
+ * identifying the graph and the cost function (see {@code CostFactorTable.fileHeader}), number of
+ * landmarks K (int - U32), number of nodes (int - U32), node id of each landmark (K ints - U32),
+ * then for each node, the costs from each landmark to the node followed by the costs from the
+ * node to each landmark (2K floats, infinite if there is no route).
+ * <p>
+ * Immutable.
+ *
+ * @author Lucas Jung (324724)
+ * @author Florian Kolly (328313)
+ */
+public final class Landmarks {
+
+    /**
+     * Name of the file containing the landmarks, in the directory of the graph's files.
+     */
+    public static final String FILE_NAME = Graph.DERIVED_FILE_PREFIX + "landmarks.bin";
+
+    /**
+     * Number of integers of the file's header, before the landmarks node ids.
+     */
+    private static final int HEADER_INTS = CostFactorTable.FILE_HEADER_INTS + 2;
+
+    /**
+     * Header identifying the graph and the cost function of the landmarks in their file (see
+     * {@code CostFactorTable.fileHeader}).
+     */
+    private final int[] fileHeader;
+    private final int[] nodeIds;
+    private final int nodeCount;
+
+    /**
+     * Costs of the best routes between each node and the landmarks: 2K floats per node, the costs
+     * from the landmarks to the node followed by the costs from the node to the landmarks.
+     */
+    private final FloatBuffer costs;
+
+    /**
+     * Landmarks' constructor.
+     *
+     * @param fileHeader header identifying the graph and the cost function of the landmarks
+     * @param nodeIds    node id (index) of each landmark
+     * @param nodeCount  number of nodes of the graph
+     * @param costs      costs of the best routes between each node and the landmarks (2K floats
+     *                   per node)
+     */
+    private Landmarks(int[] fileHeader, int[] nodeIds, int nodeCount, FloatBuffer costs) {
+        this.fileHeader = fileHeader;
+        this.nodeIds = nodeIds;
+        this.nodeCount = nodeCount;
+        this.costs = costs;
+    }
+
+    /**
+     * Chooses landmarks in a graph and computes the costs of the best routes between them and every
+     * node. This takes two full searches of the graph per landmark.
+     * <p>
+     * Landmarks are chosen one after the other as far as possible from the previous ones (farthest
+     * selection): the next landmark is the node maximizing the smallest cost of a round trip to the
+     * landmarks already chosen. The first one is the farthest node from the middle node of the
+     * graph.
+     *
+     * @param graph         the graph
+     * @param costFunction  cost function to consider for the route computation
+     * @param landmarkCount number of landmarks to choose
+     * @return the landmarks of the graph
+     * @throws IllegalArgumentException if {@code landmarkCount} is not strictly positive or is
+     *                                  greater than the number of nodes of the graph
+     */
+    public static Landmarks compute(Graph graph, CostFunction costFunction, int landmarkCount) {
+        int nodeCount = graph.nodeCount();
+        Preconditions.checkArgument(landmarkCount > 0 && landmarkCount <= nodeCount);
+        SearchWorkspace workspace = new SearchWorkspace(nodeCount);
+        float[] fromCosts = new float[nodeCount];
+        float[] toCosts = new float[nodeCount];
+        float[] roundTrips = new float[nodeCount];
+        float[] costs = new float[2 * landmarkCount * nodeCount];
+        int[] nodeIds = new int[landmarkCount];
+
+        // The middle node is only used to find a far away node, it is not a landmark
+        int middleNodeId = nodeCount / 2;
+        searchAll(graph, costFunction, true, workspace, middleNodeId, fromCosts);
+        searchAll(graph, costFunction, false, workspace, middleNodeId, toCosts);
+        for (int nodeId = 0; nodeId < nodeCount; nodeId++)
+            roundTrips[nodeId] = fromCosts[nodeId] + toCosts[nodeId];
+        nodeIds[0] = farthestNode(roundTrips);
+
+        Arrays.fill(roundTrips, Float.POSITIVE_INFINITY);
+        for (int i = 0; i < landmarkCount; i++) {
+            searchAll(graph, costFunction, true, workspace, nodeIds[i], fromCosts);
+            searchAll(graph, costFunction, false, workspace, nodeIds[i], toCosts);
+            for (int nodeId = 0; nodeId < nodeCount; nodeId++) {
+                costs[2 * landmarkCount * nodeId + i] = fromCosts[nodeId];
+                costs[2 * landmarkCount * nodeId + landmarkCount + i] = toCosts[nodeId];
+                roundTrips[nodeId] = Math.min(roundTrips[nodeId],
+                                              fromCosts[nodeId] + toCosts[nodeId]);
+            }
+            if (i + 1 < landmarkCount)
+                nodeIds[i + 1] = farthestNode(roundTrips);
+        }
+        return new Landmarks(CostFactorTable.fileHeader(graph, costFunction), nodeIds, nodeCount,
+                             FloatBuffer.wrap(costs));
+    }
+
+    /**
+     * Loads the landmarks of a graph from the file in the directory indicated by {@code basePath},
+     * previously written by {@code writeTo}. The file is mapped in memory, not read.
+     * <p>
+     * The following file is required: {@code derived_landmarks.bin}. The lower bounds are only
+     * valid for the graph and the cost function used to compute the landmarks, so the file must
+     * have been written for both (see {@code CostFactorTable.fileHeader}).
+     *
+     * @param basePath     directory containing the file
+     * @param graph        the graph for which the landmarks were computed
+     * @param costFunction the cost function with which the landmarks were computed
+     * @return the loaded landmarks
+     * @throws IOException              if any input/output error is thrown during file related
+     *                                  operations
+     * @throws IllegalArgumentException if the file does not correspond to the graph and the cost
+     *                                  function
+     */
+    public static Landmarks loadFrom(Path basePath, Graph graph, CostFunction costFunction)
+            throws IOException {
+        ByteBuffer buffer = Graph.mapFileToBuffer(basePath, FILE_NAME);
+        int[] fileHeader = CostFactorTable.fileHeader(graph, costFunction);
+        Preconditions.checkArgument(Graph.hasHeader(buffer.asIntBuffer(), fileHeader)
+                && buffer.capacity() >= HEADER_INTS * Integer.BYTES);
+        int landmarkCount = buffer.getInt(fileHeader.length * Integer.BYTES);
+        int nodeCount = buffer.getInt((fileHeader.length + 1) * Integer.BYTES);
+        Preconditions.checkArgument(landmarkCount > 0 && nodeCount == graph.nodeCount());
+        int costsOffset = (HEADER_INTS + landmarkCount) * Integer.BYTES;
+        Preconditions.checkArgument(buffer.capacity()
+                == costsOffset + 2L * landmarkCount * nodeCount * Float.BYTES);
+
+        int[] nodeIds = new int[landmarkCount];
+        for (int i = 0; i < landmarkCount; i++)
+            nodeIds[i] = buffer.getInt((HEADER_INTS + i) * Integer.BYTES);
+        FloatBuffer costs = buffer.position(costsOffset).slice().asFloatBuffer();
+        return new Landmarks(fileHeader, nodeIds, nodeCount, costs);
+    }
+
+    /**
+     * Writes these landmarks in the directory indicated by {@code basePath}, usually the directory
+     * of the graph, atomically (see {@code Graph.writeFileAtomically}).
+     *
+     * @param basePath directory in which the file is written
+     * @throws IOException if any input/output error is thrown during file related operations
+     */
+    public void writeTo(Path basePath) throws IOException {
+        int costsOffset = (HEADER_INTS + count()) * Integer.BYTES;
+        long fileSize = costsOffset + (long) costs.capacity() * Float.BYTES;
+        Graph.writeFileAtomically(basePath, FILE_NAME, fileSize, buffer -> {
+            IntBuffer ints = buffer.asIntBuffer();
+            ints.put(fileHeader).put(count()).put(nodeCount).put(nodeIds);
+            buffer.slice(costsOffset, buffer.capacity() - costsOffset).asFloatBuffer()
+                    .put(costs.duplicate().clear());
+        });
+    }
+
+    /**
+     * Retrieves the number of landmarks.
+     *
+     * @return the number of landmarks
+     */
+    public int count() {
+        return nodeIds.length;
+    }
+
+    /**
+     * Retrieves the node of a landmark.
+     *
+     * @param landmarkIndex index of the landmark, between 0 (included) and the number of
+     *                      landmarks (excluded)
+     * @return the id (index) of the landmark's node
+     */
+    public int nodeId(int landmarkIndex) {
+        return nodeIds[landmarkIndex];
+    }
+
+    /**
+     * Retrieves the number of nodes of the graph of the landmarks.
+     *
+     * @return the number of nodes of the graph
+     */
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Computes a lower bound of the cost of the best route between two nodes, using the triangle
+     * inequality with every landmark.
+     *
+     * @param fromNodeId id (index) of the route's starting node
+     * @param toNodeId   id (index) of the route's destination node
+     * @return a lower bound (at least 0) of the cost of the best route, infinite if the landmarks
+     *         prove that no route exists
+     */
+    public double lowerBound(int fromNodeId, int toNodeId) {
+        int landmarkCount = nodeIds.length;
+        int fromIndex = 2 * landmarkCount * fromNodeId;
+        int toIndex = 2 * landmarkCount * toNodeId;
+        float bound = 0;
+        for (int i = 0; i < landmarkCount; i++) {
+            // Comparisons are false for NaN (both costs infinite), which gives no information
+            float fromLandmarkBound = costs.get(toIndex + i) - costs.get(fromIndex + i);
+            if (fromLandmarkBound > bound)
+                bound = fromLandmarkBound;
+            float toLandmarkBound = costs.get(fromIndex + landmarkCount + i)
+                    - costs.get(toIndex + landmarkCount + i);
+            if (toLandmarkBound > bound)
+                bound = toLandmarkBound;
+        }
+        return bound;
+    }
+
+    /**
+     * Computes the cost of the best route between a node and every node of the graph, with a
+     * Dijkstra search.
+     *
+     * @param graph         the graph
+     * @param costFunction  cost function to consider for the route computation
+     * @param isForward     true to compute the costs of the routes from the node, false to
+     *                      compute the costs of the routes to the node
+     * @param workspace     workspace of the search
+     * @param nodeId        id (index) of the node
+     * @param costs         array filled with the cost of each node (infinite if there is no route)
+     */
+    private static void searchAll(Graph graph,
+                                  CostFunction costFunction,
+                                  boolean isForward,
+                                  SearchWorkspace workspace,
+                                  int nodeId,
+                                  float[] costs) {
+        Dijkstra.start(workspace, nodeId);
+        while (!workspace.heap().isEmpty())
+            Dijkstra.settleClosestNode(graph, costFunction, isForward, workspace,
+                                       Double.POSITIVE_INFINITY);
+        for (int i = 0; i < costs.length; i++)
+            costs[i] = workspace.distance(i);
+    }
+
+    /**
+     * Finds the node with the largest finite value.
+     *
+     * @param values value of each node
+     * @return the id (index) of the node with the largest finite value, 0 if there is none
+     */
+    private static int farthestNode(float[] values) {
+        int farthestNodeId = 0;
+        float farthestValue = Float.NEGATIVE_INFINITY;
+        for (int nodeId = 0; nodeId < values.length; nodeId++)
+            if (values[nodeId] > farthestValue && values[nodeId] != Float.POSITIVE_INFINITY) {
+                farthestValue = values[nodeId];
+                farthestNodeId = nodeId;
+            }
+        return farthestNodeId;
+    }
+
+}
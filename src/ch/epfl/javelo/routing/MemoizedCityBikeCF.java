@@ -0,0 +1,66 @@
+package ch.epfl.javelo.routing;
+
+import java.util.List;
+import ch.epfl.javelo.data.AttributeSet;
+import ch.epfl.javelo.data.Graph;
+
+/**
+ * Cost function of {@code CityBikeCF}, with the part not depending on the slope computed once per
+ * attribute set and direction of the graph's edges.
+ * <p>
+ * A graph has at most 65 536 distinct attribute sets, usually far fewer than edges, so the flat
+ * cost factors are stored in a small table indexed by attribute set index and direction. The cost
+ * factor of an edge is then read from this table and multiplied by the factor of its slope,
+ * without the checks of the attribute set.
+ * <p>
+ * Immutable.
+ *
+ * @author Lucas Jung (324724)
+ * @author Florian Kolly (328313)
+ */
+public final class MemoizedCityBikeCF implements CostFunction {
+
+    private final Graph graph;
+
+    /**
+     * Flat cost factor of each attribute set: for the attribute set at index i, the cost factor of
+     * the edges in the direction of the OSM way is at index 2i, the one of inverted edges at index
+     * 2i + 1.
+     */
+    private final double[] flatCosts;
+
+    /**
+     * Whether the cost factor of the edges of each attribute set is their flat cost factor,
+     * whatever their slope (see {@code CityBikeCF.ignoresSlope}).
+     */
+    private final boolean[] ignoresSlope;
+
+    /**
+     * MemoizedCityBikeCF's constructor, computing the flat cost factors of the attribute sets of
+     * the graph.
+     *
+     * @param graph JaVelo graph
+     */
+    public MemoizedCityBikeCF(Graph graph) {
+        this.graph = graph;
+        List<AttributeSet> attributeSets = graph.attributeSets();
+        this.flatCosts = new double[2 * attributeSets.size()];
+        this.ignoresSlope = new boolean[attributeSets.size()];
+        for (int i = 0; i < attributeSets.size(); i++) {
+            flatCosts[2 * i] = CityBikeCF.flatCostFactor(attributeSets.get(i), false);
+            flatCosts[2 * i + 1] = CityBikeCF.flatCostFactor(attributeSets.get(i), true);
+            ignoresSlope[i] = CityBikeCF.ignoresSlope(attributeSets.get(i));
+        }
+    }
+
+    @Override
+    public double costFactor(int nodeId, int edgeId) {
+        int attributesIndex = graph.edgeAttributesIndex(edgeId);
+        int index = 2 * attributesIndex + (graph.edgeIsInverted(edgeId) ? 1 : 0);
+        if (ignoresSlope[attributesIndex])
+            return flatCosts[index];
+        double averageUpSlope = graph.edgeElevationGain(edgeId) / graph.edgeLength(edgeId);
+        return CityBikeCF.costFactor(flatCosts[index], averageUpSlope);
+    }
+
+}
@@ -0,0 +1,189 @@
+package ch.epfl.javelo.routing;
+
+import java.util.Arrays;
+
+/**
+ * Indexed binary min-heap of node ids, ordered by a float key.
+ * <p>
+ * Every node is contained at most once: adding a node which is already in the heap only
+ * decreases its key (decrease-key), so the size of the heap is bounded by the search frontier.
+ * Apart from the occasional growth of its internal arrays, the heap does not allocate.
+ * <p>
+ * Mutable, not thread-safe. Arguments are not checked.
+ *
+ * @author Lucas Jung (324724)
+ * @author Florian Kolly (328313)
+ */
+final class NodeHeap {
+
+    /**
+     * Initial capacity of the heap arrays, they grow with the frontier.
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Node ids, in heap order.
+     */
+    private int[] nodeIds;
+
+    /**
+     * Keys of the nodes, in heap order ({@code keys[i]} is the key of {@code nodeIds[i]}).
+     */
+    private float[] keys;
+
+    /**
+     * Map linking a node id to its position in the heap plus one (0 if the node is not in the
+     * heap, so that a freshly allocated array represents an empty heap).
+     */
+    private final int[] positions;
+
+    private int size;
+
+    /**
+     * NodeHeap's constructor.
+     *
+     * @param nodeCount number of nodes in the graph, every node id must be strictly smaller
+     */
+    NodeHeap(int nodeCount) {
+        this.nodeIds = new int[INITIAL_CAPACITY];
+        this.keys = new float[INITIAL_CAPACITY];
+        this.positions = new int[nodeCount];
+        this.size = 0;
+    }
+
+    /**
+     * Checks whether the heap is empty.
+     *
+     * @return true if the heap does not contain any node, false otherwise
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Retrieves the number of nodes in the heap.
+     *
+     * @return the number of nodes in the heap
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Checks whether a node is in the heap.
+     *
+     * @param nodeId id (index) of the node
+     * @return true if the node is in the heap, false otherwise
+     */
+    boolean contains(int nodeId) {
+        return positions[nodeId] != 0;
+    }
+
+    /**
+     * Retrieves the smallest key of the heap (supposed not empty).
+     *
+     * @return the key of the node at the top of the heap
+     */
+    float minKey() {
+        return keys[0];
+    }
+
+    /**
+     * Adds a node to the heap, or decreases its key if it is already in the heap. Nothing happens
+     * if the node is already in the heap with a key smaller than or equal to {@code key}.
+     *
+     * @param nodeId id (index) of the node
+     * @param key    key of the node, the node with the smallest key is polled first
+     */
+    void addOrDecreaseKey(int nodeId, float key) {
+        int position = positions[nodeId] - 1;
+        if (position < 0) {
+            if (size == nodeIds.length) {
+                nodeIds = Arrays.copyOf(nodeIds, size * 2);
+                keys = Arrays.copyOf(keys, size * 2);
+            }
+            position = size++;
+        } else if (key >= keys[position])
+            return;
+        siftUp(position, nodeId, key);
+    }
+
+    /**
+     * Removes the node with the smallest key from the heap (supposed not empty).
+     *
+     * @return the id (index) of the removed node
+     */
+    int poll() {
+        int nodeId = nodeIds[0];
+        positions[nodeId] = 0;
+        size--;
+        if (size > 0)
+            siftDown(0, nodeIds[size], keys[size]);
+        return nodeId;
+    }
+
+    /**
+     * Removes every node from the heap, in time proportional to the size of the heap.
+     */
+    void clear() {
+        for (int i = 0; i < size; i++)
+            positions[nodeIds[i]] = 0;
+        size = 0;
+    }
+
+    /**
+     * Moves the hole at {@code position} up until {@code key} can be stored in it, and stores the
+     * node there.
+     *
+     * @param position position of the hole
+     * @param nodeId   id (index) of the node to store
+     * @param key      key of the node to store
+     */
+    private void siftUp(int position, int nodeId, float key) {
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (keys[parent] <= key)
+                break;
+            place(position, nodeIds[parent], keys[parent]);
+            position = parent;
+        }
+        place(position, nodeId, key);
+    }
+
+    /**
+     * Moves the hole at {@code position} down until {@code key} can be stored in it, and stores
+     * the node there.
+     *
+     * @param position position of the hole
+     * @param nodeId   id (index) of the node to store
+     * @param key      key of the node to store
+     */
+    private void siftDown(int position, int nodeId, float key) {
+        int half = size >>> 1; // nodes after half are leaves
+        while (position < half) {
+            int child = 2 * position + 1;
+            int right = child + 1;
+            if (right < size && keys[right] < keys[child])
+                child = right;
+            if (key <= keys[child])
+                break;
+            place(position, nodeIds[child], keys[child]);
+            position = child;
+        }
+        place(position, nodeId, key);
+    }
+
+    /**
+     * Stores a node at a given position of the heap and records that position.
+     *
+     * @param position position in the heap
+     * @param nodeId   id (index) of the node
+     * @param key      key of the node
+     */
+    private void place(int position, int nodeId, float key) {
+        nodeIds[position] = nodeId;
+        keys[position] = key;
+        positions[nodeId] = position + 1;
+    }
+
+}
@@ -0,0 +1,285 @@
+package ch.epfl.javelo.routing;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import ch.epfl.javelo.Preconditions;
+
+/**
+ * Cache of the best routes between pairs of nodes, for given cost functions, holding at most a
+ * given (estimated) number of bytes. When it is full, the least recently used routes are evicted.
+ * <p>
+ * The cost functions are compared with {@code equals}, i.e. by identity unless they override it:
+ * the routes computed with a cost function are only found again with the same cost function. The
+ * size of a route is estimated from its number of edges and its length (which determines the size
+ * of the elevation profiles of its edges).
+ * <p>
+ * The pairs of nodes between which no route exists are cached too, as entries without route of a
+ * small fixed size, so that the search of the whole reachable graph is not done again each
+ * time an unreachable node is requested.
+ * <p>
+ * Thread-safe: a cache can be shared by every route bean of an application, or by the threads of a
+ * server. The routes are computed outside of the lock, so two threads missing the same route both
+ * compute it.
+ *
+ * @author Lucas Jung (324724)
+ * @author Florian Kolly (328313)
+ */
+public final class RouteCache {
+
+    /**
+     * Default maximum size of the shared cache, in bytes.
+     */
+    private static final long SHARED_MAX_BYTES = 64L << 20;
+
+    /**
+     * Estimated size of a cache entry without its edges, in bytes.
+     */
+    private static final long ENTRY_BYTES = 128;
+
+    /**
+     * Estimated size of an edge of a cached route, without its elevation profile, in bytes.
+     */
+    private static final long EDGE_BYTES = 160;
+
+    /**
+     * Estimated size of the elevation profile of one meter of a cached route, in bytes (one float
+     * sample every 2 meters).
+     */
+    private static final double PROFILE_BYTES_PER_METER = 2;
+
+    private static final RouteCache SHARED = new RouteCache(SHARED_MAX_BYTES);
+
+    private final long maxBytes;
+    private final Map<Key, Entry> entries;
+    private long bytes;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    /**
+     * RouteCache's constructor.
+     *
+     * @param maxBytes maximum estimated size of the cached routes, in bytes
+     * @throws IllegalArgumentException if {@code maxBytes} is negative
+     */
+    public RouteCache(long maxBytes) {
+        Preconditions.checkArgument(maxBytes >= 0);
+        this.maxBytes = maxBytes;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Retrieves the cache shared by the whole application, holding at most 64 MiB.
+     *
+     * @return the shared cache
+     */
+    public static RouteCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Retrieves the best route between two nodes from the cache, or computes it and adds it to the
+     * cache if it is not found.
+     *
+     * @param routeComputer route computer used to compute the route, whose cost function is part
+     *                      of the key of the route
+     * @param startNodeId   id (index) of the route's starting node
+     * @param endNodeId     id (index) of the route's destination node
+     * @return the best route between the nodes, or {@code null} if no route exists between them
+     *         (which is cached too)
+     * @throws IllegalArgumentException if the starting node and the destination node are the same
+     */
+    public Route routeBetween(RouteComputer routeComputer, int startNodeId, int endNodeId) {
+        CostFunction costFunction = routeComputer.costFunction();
+        CachedRoute cached = get(startNodeId, endNodeId, costFunction);
+        if (cached != null)
+            return cached.route();
+        Route route = routeComputer.bestRouteBetween(startNodeId, endNodeId);
+        if (route == null)
+            putNoRoute(startNodeId, endNodeId, costFunction);
+        else
+            put(startNodeId, endNodeId, costFunction, route);
+        return route;
+    }
+
+    /**
+     * Retrieves the best route between two nodes from the cache, counting a hit if it is found and
+     * a miss otherwise.
+     *
+     * @param startNodeId  id (index) of the route's starting node
+     * @param endNodeId    id (index) of the route's destination node
+     * @param costFunction cost function with which the route was computed
+     * @return the cached route, whose route is {@code null} if no route exists between the
+     *         nodes, or {@code null} if the nodes are not in the cache
+     */
+    public synchronized CachedRoute get(int startNodeId, int endNodeId, CostFunction costFunction) {
+        Entry entry = entries.get(new Key(startNodeId, endNodeId, costFunction));
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return new CachedRoute(entry.route());
+    }
+
+    /**
+     * Adds the best route between two nodes to the cache, replacing the previous one if any, then
+     * evicts the least recently used routes until the cache fits in its maximum size. A route
+     * larger than the maximum size is not added.
+     *
+     * @param startNodeId  id (index) of the route's starting node
+     * @param endNodeId    id (index) of the route's destination node
+     * @param costFunction cost function with which the route was computed
+     * @param route        the route
+     * @throws IllegalArgumentException if the route is {@code null}
+     */
+    public synchronized void put(int startNodeId,
+                                 int endNodeId,
+                                 CostFunction costFunction,
+                                 Route route) {
+        Preconditions.checkArgument(route != null);
+        add(new Key(startNodeId, endNodeId, costFunction), route);
+    }
+
+    /**
+     * Records in the cache that no route exists between two nodes, replacing the previous route
+     * if any, then evicts the least recently used routes until the cache fits in its maximum size.
+     *
+     * @param startNodeId  id (index) of the starting node
+     * @param endNodeId    id (index) of the destination node
+     * @param costFunction cost function with which the nodes were found unreachable
+     */
+    public synchronized void putNoRoute(int startNodeId, int endNodeId, CostFunction costFunction) {
+        add(new Key(startNodeId, endNodeId, costFunction), null);
+    }
+
+    /**
+     * Adds an entry to the cache (see {@code put}), the caller holding the lock.
+     *
+     * @param key   key of the entry
+     * @param route the route, or {@code null} if no route exists between the nodes
+     */
+    private void add(Key key, Route route) {
+        long routeBytes = estimatedBytes(route);
+        if (routeBytes > maxBytes)
+            return;
+        Entry previous = entries.put(key, new Entry(route, routeBytes));
+        if (previous != null)
+            bytes -= previous.bytes();
+        bytes += routeBytes;
+        // Least recently used first
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (bytes > maxBytes) {
+            bytes -= iterator.next().bytes();
+            iterator.remove();
+            evictionCount++;
+        }
+    }
+
+    /**
+     * Removes every route from the cache. The counters are not reset.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Retrieves the number of routes in the cache.
+     *
+     * @return the number of cached routes
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Retrieves the estimated size of the routes in the cache.
+     *
+     * @return the estimated size of the cached routes, in bytes
+     */
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    /**
+     * Retrieves the maximum estimated size of the routes in the cache.
+     *
+     * @return the maximum size of the cache, in bytes
+     */
+    public long maxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Retrieves the number of routes found in the cache.
+     *
+     * @return the number of calls to {@code get} which found a route
+     */
+    public synchronized long hitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Retrieves the number of routes not found in the cache.
+     *
+     * @return the number of calls to {@code get} which did not find a route
+     */
+    public synchronized long missCount() {
+        return missCount;
+    }
+
+    /**
+     * Retrieves the number of routes evicted from the cache to free space.
+     *
+     * @return the number of routes evicted by {@code put}
+     */
+    public synchronized long evictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Estimates the size of a cached route.
+     *
+     * @param route the route, or {@code null} if no route exists between the nodes
+     * @return the estimated size of the route and its entry, in bytes
+     */
+    private static long estimatedBytes(Route route) {
+        if (route == null)
+            return ENTRY_BYTES;
+        return ENTRY_BYTES + EDGE_BYTES * route.edges().size()
+                + (long) (PROFILE_BYTES_PER_METER * route.length());
+    }
+
+    /**
+     * Route found in the cache. (record)
+     *
+     * @param route the cached route, or {@code null} if no route exists between the nodes
+     */
+    public record CachedRoute(Route route) {
+
+    }
+
+    /**
+     * Key of a cached route. (record)
+     *
+     * @param startNodeId  id (index) of the route's starting node
+     * @param endNodeId    id (index) of the route's destination node
+     * @param costFunction cost function with which the route was computed
+     */
+    private record Key(int startNodeId, int endNodeId, CostFunction costFunction) {
+
+    }
+
+    /**
+     * Cached route. (record)
+     *
+     * @param route the route, or {@code null} if no route exists between the nodes
+     * @param bytes estimated size of the route, in bytes
+     */
+    private record Entry(Route route, long bytes) {
+
+    }
+
+}
@@ -1,45 +1,65 @@
 package ch.epfl.javelo.routing;
 
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.PriorityQueue;
-import java.util.Queue;
-import ch.epfl.javelo.Bits;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
 import ch.epfl.javelo.Preconditions;
+import ch.epfl.javelo.data.EdgePoint;
 import ch.epfl.javelo.data.Graph;
 import ch.epfl.javelo.projection.PointCh;
 
 /**
  * Represents a route planner. Used to compute the best route between two nodes.
  * <p>
- * Immutable.
+ * The searches are guided by a lower bound of the cost to the destination: the euclidean distance,
+ * or the largest of it and the bound given by landmarks (ALT heuristic) when some are provided.
+ * <p>
+ * Immutable. Thread-safe: each thread searches in its own workspace, allocated on its first query
+ * and reused afterwards. A search can be cancelled by interrupting the thread running it.
  *
  * @author Lucas Jung (324724)
  * @author Florian Kolly (328313)
  */
 public final class RouteComputer {
 
-    private static final float DEFAULT_DISTANCE = Float.POSITIVE_INFINITY;
-    private static final float SEEN_DISTANCE = Float.NEGATIVE_INFINITY;
-
     /**
-     * Number of bits taken by the previous node id in the packed previous node id and outgoing edge
-     * index.
+     * Maximum ratio between the cost of an alternative route and the one of the best route.
      */
-    private static final byte NODE_ID_LENGTH = 28;
+    private static final float MAX_ALTERNATIVE_STRETCH = 1.25f;
 
     /**
-     * Number of bits taken by the outgoing edge index in the packed previous node id and outgoing
-     * edge index.
+     * Maximum fraction of the length of an alternative route shared with each of the routes chosen
+     * before it.
      */
-    private static final byte EDGE_INDEX_LENGTH = 4;
+    private static final double MAX_ALTERNATIVE_OVERLAP = 0.6;
 
     private final Graph graph;
     private final CostFunction costFunction;
+    private final Mode mode;
 
     /**
-     * RouteComputer's constructor.
+     * Landmarks giving lower bounds of the route costs, {@code null} to only use the euclidean
+     * distance.
+     */
+    private final Landmarks landmarks;
+
+    /**
+     * Search arrays of each thread, reused from one query to the next. The forward workspace is
+     * used by both modes, the backward one only by the bidirectional mode and the alternative
+     * routes.
+     */
+    private final ThreadLocal<SearchWorkspace> forwardWorkspaces;
+    private final ThreadLocal<SearchWorkspace> backwardWorkspaces;
+
+    /**
+     * RouteComputer's constructor, using the unidirectional mode.
      * <p>
      * WARNING: Creating a route computer with a modifiable {@code costFunction} violates
      * immutability.
@@ -48,8 +68,101 @@ public final class RouteComputer {
      * @param costFunction cost function to consider for the route computation
      */
     public RouteComputer(Graph graph, CostFunction costFunction) {
+        this(graph, costFunction, Mode.UNIDIRECTIONAL);
+    }
+
+    /**
+     * RouteComputer's constructor.
+     * <p>
+     * WARNING: Creating a route computer with a modifiable {@code costFunction} violates
+     * immutability.
+     *
+     * @param graph        JaVelo graph
+     * @param costFunction cost function to consider for the route computation
+     * @param mode         search algorithm used to compute the routes
+     */
+    public RouteComputer(Graph graph, CostFunction costFunction, Mode mode) {
+        this(graph, costFunction, mode, null);
+    }
+
+    /**
+     * RouteComputer's constructor, guiding the searches with landmarks.
+     * <p>
+     * WARNING: Creating a route computer with a modifiable {@code costFunction} violates
+     * immutability. The landmarks must have been computed with the same cost function, otherwise
+     * the routes computed are not the best ones.
+     *
+     * @param graph        JaVelo graph
+     * @param costFunction cost function to consider for the route computation
+     * @param mode         search algorithm used to compute the routes
+     * @param landmarks    landmarks of the graph, or {@code null} to only use the euclidean
+     *                     distance
+     * @throws IllegalArgumentException if the landmarks were not computed for a graph with as many
+     *                                  nodes as {@code graph}
+     */
+    public RouteComputer(Graph graph, CostFunction costFunction, Mode mode, Landmarks landmarks) {
+        Preconditions.checkArgument(landmarks == null
+                || landmarks.nodeCount() == graph.nodeCount());
         this.graph = graph;
         this.costFunction = costFunction;
+        this.mode = mode;
+        this.landmarks = landmarks;
+        this.forwardWorkspaces = ThreadLocal.withInitial(
+                () -> new SearchWorkspace(graph.nodeCount()));
+        this.backwardWorkspaces = ThreadLocal.withInitial(
+                () -> new SearchWorkspace(graph.nodeCount()));
+    }
+
+    /**
+     * Creates the default route computer of a graph, used by the command line tools and the
+     * server: unidirectional, with {@code CityBikeCF} read through its table of cost factors
+     * (see {@code CostFactorTable.loadOrCompute}, the table being computed in memory if it can't
+     * be written, e.g. read-only directory), and guided by the landmarks of the graph if its
+     * directory contains {@code derived_landmarks.bin} computed for the graph with
+     * {@code CityBikeCF}.
+     * Landmarks computed for another graph or cost function are ignored, as their lower bounds
+     * could overestimate the costs and the routes would not be the best ones anymore.
+     *
+     * @param basePath directory containing the files of the graph
+     * @param graph    the graph loaded from {@code basePath}
+     * @return the default route computer of the graph
+     * @throws IOException if the existing landmarks can't be read
+     */
+    public static RouteComputer loadDefault(Path basePath, Graph graph) throws IOException {
+        CostFunction cityBikeCF = new CityBikeCF(graph);
+        CostFunction costFunction;
+        try {
+            costFunction = CostFactorTable.loadOrCompute(basePath, graph, cityBikeCF);
+        } catch (IOException e) {
+            costFunction = CostFactorTable.of(graph, cityBikeCF);
+        }
+        Landmarks landmarks;
+        try {
+            landmarks = Landmarks.loadFrom(basePath, graph, cityBikeCF);
+        } catch (NoSuchFileException | IllegalArgumentException e) {
+            landmarks = null;
+        }
+        return new RouteComputer(graph, costFunction, Mode.UNIDIRECTIONAL, landmarks);
+    }
+
+    /**
+     * Search algorithm of a route computer. (enum)
+     */
+    public enum Mode {
+
+        /**
+         * A* search from the starting node, guided by a lower bound of the cost to the
+         * destination.
+         */
+        UNIDIRECTIONAL,
+
+        /**
+         * Two A* searches, one forward from the starting node and one backward from the
+         * destination node, stopping when they provably met on the best route. The backward
+         * search follows the incoming edges of the graph.
+         */
+        BIDIRECTIONAL
+
     }
 
     /**
@@ -61,93 +174,724 @@ public final class RouteComputer {
      *         and the node with id {@code endNodeId}, or {@code null} if no route exists between
      *         those nodes
      * @throws IllegalArgumentException if the starting node and the destination node are the same
+     * @throws CancellationException    if the calling thread is interrupted during the search (its
+     *                                  interrupted status is left set)
      */
     public Route bestRouteBetween(int startNodeId, int endNodeId) {
+        Preconditions.checkArgument(startNodeId != endNodeId);
+        return mode == Mode.BIDIRECTIONAL ? bidirectionalRoute(startNodeId, endNodeId)
+                : unidirectionalRoute(startNodeId, endNodeId);
+    }
 
-        /**
-         * Represents a weighted node. (record)
-         * <p>
-         * Used to determine the best node to visit next.
-         *
-         * @param nodeId id (index) of the node
-         * @param score  value used to compare two nodes, the one with the smallest score will be
-         *               visited first
-         */
-        record WeightedNode(int nodeId, float score) implements Comparable<WeightedNode> {
+    /**
+     * Computes the route minimizing the total cost between two points on edges of the graph, e.g.
+     * points snapped with {@code Graph.edgeClosestTo}. The route starts with the part of the
+     * starting edge after (or, through the opposite edge, before) the starting point, and ends with
+     * the part of the destination edge before (or after) the destination point.
+     * <p>
+     * The route is found by a single A* search from both nodes of the starting edge, guided by the
+     * euclidean distance to the destination point: the search mode and the landmarks are ignored.
+     * An edge is followed backward through its opposite edge, the edge between the same nodes in
+     * the other direction with the same length, if there is one.
+     *
+     * @param start point at which the route starts
+     * @param end   point at which the route ends
+     * @return the route with the minimal total cost between the two points, or {@code null} if no
+     *         route exists between them
+     * @throws IllegalArgumentException if both points are the same
+     * @throws CancellationException    if the calling thread is interrupted during the search (its
+     *                                  interrupted status is left set)
+     */
+    public Route bestRouteBetween(EdgePoint start, EdgePoint end) {
+        int startEdgeId = start.edgeId();
+        int startToNodeId = graph.edgeTargetNodeId(startEdgeId);
+        int startOppositeEdgeId = oppositeEdgeId(startEdgeId, start.fromNodeId());
+        double startLength = graph.edgeLength(startEdgeId);
+        if (end.edgeId() == startOppositeEdgeId)
+            end = new EdgePoint(startEdgeId, start.fromNodeId(), startLength - end.position());
+        Preconditions.checkArgument(end.edgeId() != startEdgeId
+                || end.position() != start.position());
+        int endEdgeId = end.edgeId();
+        int endToNodeId = graph.edgeTargetNodeId(endEdgeId);
+        int endOppositeEdgeId = oppositeEdgeId(endEdgeId, end.fromNodeId());
+        double endLength = graph.edgeLength(endEdgeId);
+        PointCh endPoint = Edge.of(graph, endEdgeId, end.fromNodeId(), endToNodeId)
+                               .pointAt(end.position());
+
+        // Route along the starting edge only, if both points are on it
+        float bestCost = Float.POSITIVE_INFINITY;
+        if (endEdgeId == startEdgeId) {
+            bestCost = start.position() < end.position()
+                    ? (float) partialCost(start.fromNodeId(), startEdgeId,
+                                          end.position() - start.position())
+                    : startOppositeEdgeId == -1 ? Float.POSITIVE_INFINITY
+                    : (float) partialCost(startToNodeId, startOppositeEdgeId,
+                                          start.position() - end.position());
+        }
 
-            @Override
-            public int compareTo(WeightedNode that) {
-                return Float.compare(this.score, that.score);
+        SearchWorkspace workspace = forwardWorkspaces.get();
+        workspace.reset();
+        NodeHeap toVisit = workspace.heap();
+        addSource(workspace, startToNodeId, partialCost(start.fromNodeId(), startEdgeId,
+                startLength - start.position()), endPoint);
+        // A point at the starting node of its edge leaves it directly, even on a one-way edge
+        if (start.position() == 0)
+            addSource(workspace, start.fromNodeId(), 0, endPoint);
+        else if (startOppositeEdgeId != -1)
+            addSource(workspace, start.fromNodeId(), partialCost(startToNodeId,
+                    startOppositeEdgeId, start.position()), endPoint);
+        // Last node of the best route found by the search, and its last (partial) edge
+        int lastNodeId = -1, lastEdgeId = -1;
+
+        while (!toVisit.isEmpty() && toVisit.minKey() < bestCost) {
+            checkNotInterrupted();
+            int currentNodeId = toVisit.poll();
+            workspace.settle(currentNodeId);
+            float currentDistance = workspace.distance(currentNodeId);
+            if (currentNodeId == end.fromNodeId()) {
+                float cost = (float) (currentDistance
+                        + partialCost(currentNodeId, endEdgeId, end.position()));
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    lastNodeId = currentNodeId;
+                    lastEdgeId = endEdgeId;
+                }
+            }
+            // A point at the destination node of its edge is reached directly, even on a one-way
+            // edge (the last edge being then the empty opposite edge, -1 if it does not exist)
+            if (currentNodeId == endToNodeId
+                    && (endOppositeEdgeId != -1 || end.position() == endLength)) {
+                float cost = (float) (currentDistance + (end.position() == endLength ? 0
+                        : partialCost(currentNodeId, endOppositeEdgeId,
+                                      endLength - end.position())));
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    lastNodeId = currentNodeId;
+                    lastEdgeId = endOppositeEdgeId;
+                }
             }
 
+            int outDegree = graph.nodeOutDegree(currentNodeId);
+            for (int edgeIndex = 0; edgeIndex < outDegree; edgeIndex++) {
+                int edgeId = graph.nodeOutEdgeId(currentNodeId, edgeIndex);
+                int toNodeId = graph.edgeTargetNodeId(edgeId);
+                if (workspace.isSettled(toNodeId))
+                    continue;
+                double cost = costFunction.costFactor(currentNodeId, edgeId);
+                float distance = (float) (currentDistance + cost * graph.edgeLength(edgeId));
+                if (distance < workspace.distance(toNodeId)) {
+                    workspace.update(toNodeId, distance, Dijkstra.link(edgeIndex, currentNodeId));
+                    toVisit.addOrDecreaseKey(toNodeId, (float) (distance
+                            + graph.nodePoint(toNodeId).distanceTo(endPoint)));
+                }
+            }
         }
+        if (bestCost == Float.POSITIVE_INFINITY)
+            return null; // path does not exist
 
-        Preconditions.checkArgument(startNodeId != endNodeId);
-        Queue<WeightedNode> toVisit = new PriorityQueue<>();
-        int nodeCount = graph.nodeCount();
-        float[] distances = new float[nodeCount];
-        // Packed outgoing edge index with previous node id (U4 U28)
-        int[] previous = new int[nodeCount];
-        Arrays.fill(distances, DEFAULT_DISTANCE);
-        distances[startNodeId] = 0;
-        previous[startNodeId] = -1;
+        LinkedList<Edge> edges = new LinkedList<>();
+        if (lastNodeId == -1) {
+            edges.add(start.position() < end.position()
+                    ? Edge.of(graph, startEdgeId, start.fromNodeId(), startToNodeId)
+                          .subEdge(start.position(), end.position())
+                    : Edge.of(graph, startOppositeEdgeId, startToNodeId, start.fromNodeId())
+                          .subEdge(startLength - start.position(), startLength - end.position()));
+            return new SingleRoute(edges);
+        }
+        edges.addAll(reconstructEdges(workspace, lastNodeId));
+        int firstNodeId = edges.isEmpty() ? lastNodeId : edges.getFirst().fromNodeId();
+        edges.addFirst(firstNodeId == startToNodeId || startOppositeEdgeId == -1
+                ? Edge.of(graph, startEdgeId, start.fromNodeId(), startToNodeId)
+                      .subEdge(start.position(), firstNodeId == startToNodeId ? startLength : 0)
+                : Edge.of(graph, startOppositeEdgeId, startToNodeId, start.fromNodeId())
+                      .subEdge(startLength - start.position(), startLength));
+        edges.addLast(lastEdgeId == endEdgeId || lastEdgeId == -1
+                ? Edge.of(graph, endEdgeId, end.fromNodeId(), endToNodeId)
+                      .subEdge(lastEdgeId == endEdgeId ? 0 : endLength, end.position())
+                : Edge.of(graph, endOppositeEdgeId, endToNodeId, end.fromNodeId())
+                      .subEdge(0, endLength - end.position()));
+        // Parts reduced to a node, when a point is at one
+        Edge firstEdge = edges.getFirst();
+        edges.removeIf(edge -> edge.length() == 0);
+        return new SingleRoute(edges.isEmpty() ? List.of(firstEdge) : edges);
+    }
+
+    /**
+     * Computes up to {@code maxRouteCount} routes between two nodes which are genuinely different:
+     * the best route, followed by alternative routes costing at most 25% more than it and sharing
+     * at most 60% of their length with each route before them. The search mode is ignored.
+     * <p>
+     * The alternatives are found by the via-node method: a forward search from the starting node
+     * and a backward search from the destination node are run until every node through which a
+     * route of acceptable cost passes is settled by both, nodes which provably are not on such a
+     * route being pruned using the lower bound of the costs. Every node settled by both searches
+     * is then a candidate via node, whose route is the best route to it followed by the best route
+     * from it. Candidates are considered by increasing cost, those whose route passes twice
+     * through the same node (detour) or overlaps too much are rejected. The nodes of a considered
+     * route are not considered again, as their routes mostly are the same one. The cost is thus a
+     * small multiple of a single query, however many routes are returned.
+     *
+     * @param startNodeId   id (index) of the routes' starting node
+     * @param endNodeId     id (index) of the routes' destination node
+     * @param maxRouteCount maximum number of routes to compute
+     * @return the best route between the node with id {@code startNodeId} and the node with id
+     *         {@code endNodeId}, followed by its alternatives by increasing cost, or an empty list
+     *         if no route exists between those nodes
+     * @throws IllegalArgumentException if the starting node and the destination node are the same,
+     *                                  or if {@code maxRouteCount} is not positive
+     * @throws CancellationException    if the calling thread is interrupted during the search (its
+     *                                  interrupted status is left set)
+     */
+    public List<Route> alternativeRoutesBetween(int startNodeId, int endNodeId, int maxRouteCount) {
+        Preconditions.checkArgument(startNodeId != endNodeId && maxRouteCount > 0);
+        SearchWorkspace forward = forwardWorkspaces.get();
+        SearchWorkspace backward = backwardWorkspaces.get();
+        forward.reset();
+        backward.reset();
+        PointCh startPoint = graph.nodePoint(startNodeId);
+        PointCh endPoint = graph.nodePoint(endNodeId);
+
+        forward.update(startNodeId, 0, -1);
+        forward.heap().addOrDecreaseKey(startNodeId, 0);
+        backward.update(endNodeId, 0, -1);
+        backward.heap().addOrDecreaseKey(endNodeId, 0);
+        float bestCost = Float.POSITIVE_INFINITY;
+        // Nodes settled by both searches
+        int[] candidates = new int[64];
+        int candidateCount = 0;
+
+        while (true) {
+            checkNotInterrupted();
+            // Dijkstra searches (keys are distances), each stopping beyond the acceptable cost
+            float maxCost = MAX_ALTERNATIVE_STRETCH * bestCost;
+            boolean forwardActive = !forward.heap().isEmpty() && forward.heap().minKey() <= maxCost;
+            boolean backwardActive = !backward.heap().isEmpty()
+                    && backward.heap().minKey() <= maxCost;
+            if (!forwardActive && !backwardActive)
+                break;
+            boolean isForward = forwardActive
+                    && (!backwardActive || forward.heap().minKey() <= backward.heap().minKey());
+            SearchWorkspace workspace = isForward ? forward : backward;
+            SearchWorkspace opposite = isForward ? backward : forward;
+            int currentNodeId = workspace.heap().poll();
+            workspace.settle(currentNodeId);
+            float currentDistance = workspace.distance(currentNodeId);
+            if (opposite.isSettled(currentNodeId)) {
+                if (candidateCount == candidates.length)
+                    candidates = Arrays.copyOf(candidates, 2 * candidateCount);
+                candidates[candidateCount++] = currentNodeId;
+            }
+
+            int degree = isForward ? graph.nodeOutDegree(currentNodeId)
+                    : graph.nodeInDegree(currentNodeId);
+            for (int edgeIndex = 0; edgeIndex < degree; edgeIndex++) {
+                int edgeId, fromNodeId, toNodeId;
+                if (isForward) {
+                    edgeId = graph.nodeOutEdgeId(currentNodeId, edgeIndex);
+                    fromNodeId = currentNodeId;
+                    toNodeId = graph.edgeTargetNodeId(edgeId);
+                } else {
+                    edgeId = graph.nodeInEdgeId(currentNodeId, edgeIndex);
+                    fromNodeId = graph.nodeInEdgeSourceNodeId(currentNodeId, edgeIndex);
+                    toNodeId = currentNodeId;
+                }
+                int nextNodeId = isForward ? toNodeId : fromNodeId;
+                if (workspace.isSettled(nextNodeId))
+                    continue;
+                double cost = costFunction.costFactor(fromNodeId, edgeId);
+                float distance = (float) (currentDistance + cost * graph.edgeLength(edgeId));
+                if (distance < workspace.distance(nextNodeId)) {
+                    PointCh nextPoint = graph.nodePoint(nextNodeId);
+                    double remaining = isForward
+                            ? lowerBound(nextNodeId, nextPoint, endNodeId, endPoint)
+                            : lowerBound(startNodeId, startPoint, nextNodeId, nextPoint);
+                    // Every route through the node costs too much, or none exists
+                    if (remaining == Double.POSITIVE_INFINITY || distance + remaining > maxCost)
+                        continue;
+                    int outEdgeIndex = isForward ? edgeIndex
+                            : Dijkstra.outEdgeIndex(graph, fromNodeId, edgeId);
+                    workspace.update(nextNodeId, distance,
+                                     Dijkstra.link(outEdgeIndex, currentNodeId));
+                    workspace.heap().addOrDecreaseKey(nextNodeId, distance);
+                    bestCost = Math.min(bestCost, distance + opposite.distance(nextNodeId));
+                }
+            }
+        }
+
+        // Candidates sorted by increasing cost (the bits of positive floats have the same order)
+        float maxCost = MAX_ALTERNATIVE_STRETCH * bestCost;
+        long[] sortedCandidates = new long[candidateCount];
+        int sortedCount = 0;
+        for (int i = 0; i < candidateCount; i++) {
+            float cost = forward.distance(candidates[i]) + backward.distance(candidates[i]);
+            if (cost <= maxCost)
+                sortedCandidates[sortedCount++] =
+                        ((long) Float.floatToIntBits(cost) << Integer.SIZE) | candidates[i];
+        }
+        Arrays.sort(sortedCandidates, 0, sortedCount);
+
+        List<Route> routes = new ArrayList<>();
+        List<Set<Integer>> routesEdgeIds = new ArrayList<>();
+        Set<Integer> consideredNodeIds = new HashSet<>();
+        for (int i = 0; i < sortedCount && routes.size() < maxRouteCount; i++) {
+            int viaNodeId = (int) sortedCandidates[i];
+            if (consideredNodeIds.contains(viaNodeId))
+                continue;
+            ViaPath path = viaPath(forward, backward, viaNodeId);
+            Set<Integer> pathNodeIds = new HashSet<>();
+            boolean isSimple = true;
+            for (int nodeId : path.nodeIds())
+                isSimple &= pathNodeIds.add(nodeId);
+            consideredNodeIds.addAll(pathNodeIds);
+            // The best route is always kept
+            if (routes.isEmpty() || isSimple && isAcceptableAlternative(path, routesEdgeIds)) {
+                List<Edge> edges = new ArrayList<>(path.edgeIds().length);
+                Set<Integer> edgeIds = new HashSet<>();
+                for (int j = 0; j < path.edgeIds().length; j++) {
+                    int edgeId = path.edgeIds()[j];
+                    edges.add(Edge.of(graph, edgeId, path.nodeIds()[j], path.nodeIds()[j + 1]));
+                    edgeIds.add(edgeId);
+                }
+                routes.add(new SingleRoute(edges));
+                routesEdgeIds.add(edgeIds);
+            }
+        }
+        return List.copyOf(routes);
+    }
+
+    /**
+     * Creates the tree of the best routes from a node, initially empty. The search mode is
+     * ignored.
+     * <p>
+     * The tree grows in the forward workspace of the thread using it (see {@code RouteTree}).
+     *
+     * @param rootNodeId id (index) of the starting node of the routes
+     * @return the forward tree rooted at the node
+     */
+    public RouteTree forwardTree(int rootNodeId) {
+        return new RouteTree(this, graph, costFunction, true, rootNodeId);
+    }
+
+    /**
+     * Creates the tree of the best routes to a node, initially empty. The search mode is ignored.
+     * <p>
+     * The tree grows in the backward workspace of the thread using it (see {@code RouteTree}).
+     *
+     * @param rootNodeId id (index) of the destination node of the routes
+     * @return the backward tree rooted at the node
+     */
+    public RouteTree backwardTree(int rootNodeId) {
+        return new RouteTree(this, graph, costFunction, false, rootNodeId);
+    }
+
+    /**
+     * Retrieves the workspace of the calling thread in a direction, shared by the route
+     * computations and the trees of this route computer.
+     *
+     * @param isForward true for the forward workspace, false for the backward one
+     * @return the workspace of the current thread
+     */
+    SearchWorkspace workspace(boolean isForward) {
+        return isForward ? forwardWorkspaces.get() : backwardWorkspaces.get();
+    }
+
+    /**
+     * Retrieves the search algorithm of this route computer.
+     *
+     * @return the mode of this route computer
+     */
+    public Mode mode() {
+        return mode;
+    }
+
+    /**
+     * Retrieves the landmarks guiding the searches of this route computer.
+     *
+     * @return the landmarks, or {@code null} if only the euclidean distance is used
+     */
+    public Landmarks landmarks() {
+        return landmarks;
+    }
+
+    /**
+     * Retrieves the cost function of this route computer.
+     *
+     * @return the cost function considered for the route computation
+     */
+    public CostFunction costFunction() {
+        return costFunction;
+    }
+
+    /**
+     * Retrieves the number of nodes settled (visited) by the last route computation of the calling
+     * thread, in both directions for the bidirectional mode. Used to compare the search modes.
+     *
+     * @return the number of nodes settled by the last call to {@code bestRouteBetween} made by the
+     *         current thread, 0 if it never called it
+     */
+    public int lastSettledNodeCount() {
+        int count = forwardWorkspaces.get().settledCount();
+        if (mode == Mode.BIDIRECTIONAL)
+            count += backwardWorkspaces.get().settledCount();
+        return count;
+    }
+
+    /**
+     * Computes the best route between two (different) nodes using a single A* search.
+     *
+     * @param startNodeId id (index) of the route's starting node
+     * @param endNodeId   id (index) of the route's destination node
+     * @return the best route between the two nodes, or {@code null} if no route exists
+     */
+    private Route unidirectionalRoute(int startNodeId, int endNodeId) {
+        SearchWorkspace workspace = forwardWorkspaces.get();
+        workspace.reset();
+        // Indexed heap: each node is in toVisit at most once, score is decreased in place
+        NodeHeap toVisit = workspace.heap();
+        workspace.update(startNodeId, 0, -1);
         // Score is not 0 but it is the only element in toVisit so it does not matter
-        toVisit.add(new WeightedNode(startNodeId, 0));
+        toVisit.addOrDecreaseKey(startNodeId, 0);
         PointCh endPoint = graph.nodePoint(endNodeId);
 
         while (!toVisit.isEmpty()) {
-            WeightedNode current = toVisit.poll();
-            // In case node was added twice in toVisit
-            if (distances[current.nodeId] == SEEN_DISTANCE)
-                continue;
-            if (current.nodeId == endNodeId) // path found
-                return reconstructRoute(previous, current.nodeId);
+            checkNotInterrupted();
+            int currentNodeId = toVisit.poll();
+            if (currentNodeId == endNodeId) // path found
+                return reconstructRoute(workspace, currentNodeId, null, -1);
+            workspace.settle(currentNodeId);
+            float currentDistance = workspace.distance(currentNodeId);
 
-            int outDegree = graph.nodeOutDegree(current.nodeId);
+            int outDegree = graph.nodeOutDegree(currentNodeId);
             for (int edgeIndex = 0; edgeIndex < outDegree; edgeIndex++) {
-                int edgeId = graph.nodeOutEdgeId(current.nodeId, edgeIndex);
+                int edgeId = graph.nodeOutEdgeId(currentNodeId, edgeIndex);
                 int toNodeId = graph.edgeTargetNodeId(edgeId);
                 // Don't evaluate cost function if node has already been visited
-                if (distances[toNodeId] == SEEN_DISTANCE)
+                if (workspace.isSettled(toNodeId))
                     continue;
-                double cost = costFunction.costFactor(current.nodeId, edgeId);
-                float distance = (float) (distances[current.nodeId]
-                        + cost * graph.edgeLength(edgeId));
-                if (distance < distances[toNodeId]) {
-                    // Using euclidean distance to destination as heuristic
-                    PointCh toPoint = graph.nodePoint(toNodeId);
-                    float score = (float) (distance + toPoint.distanceTo(endPoint));
-                    distances[toNodeId] = distance;
-                    previous[toNodeId] = (edgeIndex << NODE_ID_LENGTH) | current.nodeId;
-                    toVisit.add(new WeightedNode(toNodeId, score));
+                double cost = costFunction.costFactor(currentNodeId, edgeId);
+                float distance = (float) (currentDistance + cost * graph.edgeLength(edgeId));
+                if (distance < workspace.distance(toNodeId)) {
+                    double estimate = lowerBound(toNodeId, graph.nodePoint(toNodeId), endNodeId,
+                                                 endPoint);
+                    // Landmarks prove that the destination can't be reached from this node
+                    if (estimate == Double.POSITIVE_INFINITY)
+                        continue;
+                    float score = (float) (distance + estimate);
+                    workspace.update(toNodeId, distance, Dijkstra.link(edgeIndex, currentNodeId));
+                    toVisit.addOrDecreaseKey(toNodeId, score);
                 }
             }
-            distances[current.nodeId] = SEEN_DISTANCE;
         }
         return null; // path does not exist
     }
 
     /**
-     * Generates the route/path ending at {@code currentNodeId}.
+     * Computes the best route between two (different) nodes using two A* searches, one forward
+     * from the starting node and one backward from the destination node.
+     * <p>
+     * Both searches use the same (average) potential, half the difference between the lower
+     * bounds of the costs to the destination and from the start, with opposite signs. Both bounds
+     * are consistent (cost factors are at least 1, landmark bounds follow the triangle inequality),
+     * so is the potential for both searches, and a node settled by either search has its final
+     * distance. With such potentials, the best route has been found as soon as the sum of the
+     * smallest scores of both searches is not smaller than the cost of the best route seen so far.
+     *
+     * @param startNodeId id (index) of the route's starting node
+     * @param endNodeId   id (index) of the route's destination node
+     * @return the best route between the two nodes, or {@code null} if no route exists
+     */
+    private Route bidirectionalRoute(int startNodeId, int endNodeId) {
+        SearchWorkspace forward = forwardWorkspaces.get();
+        SearchWorkspace backward = backwardWorkspaces.get();
+        forward.reset();
+        backward.reset();
+        NodeHeap forwardToVisit = forward.heap();
+        NodeHeap backwardToVisit = backward.heap();
+        PointCh startPoint = graph.nodePoint(startNodeId);
+        PointCh endPoint = graph.nodePoint(endNodeId);
+
+        forward.update(startNodeId, 0, -1);
+        forwardToVisit.addOrDecreaseKey(startNodeId, 0);
+        backward.update(endNodeId, 0, -1);
+        backwardToVisit.addOrDecreaseKey(endNodeId, 0);
+        // Cost of the best route found so far, through meetingNodeId
+        float bestCost = Float.POSITIVE_INFINITY;
+        int meetingNodeId = -1;
+
+        while (!forwardToVisit.isEmpty() && !backwardToVisit.isEmpty()
+                && forwardToVisit.minKey() + backwardToVisit.minKey() < bestCost) {
+            checkNotInterrupted();
+            // Expand the search with the smallest frontier
+            boolean isForward = forwardToVisit.size() <= backwardToVisit.size();
+            SearchWorkspace workspace = isForward ? forward : backward;
+            SearchWorkspace opposite = isForward ? backward : forward;
+            int currentNodeId = workspace.heap().poll();
+            workspace.settle(currentNodeId);
+            float currentDistance = workspace.distance(currentNodeId);
+
+            int degree = isForward ? graph.nodeOutDegree(currentNodeId)
+                    : graph.nodeInDegree(currentNodeId);
+            for (int edgeIndex = 0; edgeIndex < degree; edgeIndex++) {
+                int edgeId, fromNodeId, toNodeId;
+                if (isForward) {
+                    edgeId = graph.nodeOutEdgeId(currentNodeId, edgeIndex);
+                    fromNodeId = currentNodeId;
+                    toNodeId = graph.edgeTargetNodeId(edgeId);
+                } else {
+                    edgeId = graph.nodeInEdgeId(currentNodeId, edgeIndex);
+                    fromNodeId = graph.nodeInEdgeSourceNodeId(currentNodeId, edgeIndex);
+                    toNodeId = currentNodeId;
+                }
+                // Node reached by the edge, in the direction of the search
+                int nextNodeId = isForward ? toNodeId : fromNodeId;
+                if (workspace.isSettled(nextNodeId))
+                    continue;
+                // The cost function always evaluates the edge in its own direction
+                double cost = costFunction.costFactor(fromNodeId, edgeId);
+                float distance = (float) (currentDistance + cost * graph.edgeLength(edgeId));
+                if (distance < workspace.distance(nextNodeId)) {
+                    PointCh nextPoint = graph.nodePoint(nextNodeId);
+                    double potential = (lowerBound(nextNodeId, nextPoint, endNodeId, endPoint)
+                            - lowerBound(startNodeId, startPoint, nextNodeId, nextPoint)) / 2;
+                    // Landmarks prove that the node is not on a route from start to destination
+                    if (Double.isNaN(potential) || Double.isInfinite(potential))
+                        continue;
+                    // Packed outgoing edge index of fromNodeId and the other node of the edge
+                    int outEdgeIndex = isForward ? edgeIndex
+                            : Dijkstra.outEdgeIndex(graph, fromNodeId, edgeId);
+                    workspace.update(nextNodeId, distance,
+                                     Dijkstra.link(outEdgeIndex, currentNodeId));
+                    float score = (float) (isForward ? distance + potential : distance - potential);
+                    workspace.heap().addOrDecreaseKey(nextNodeId, score);
+
+                    float routeCost = distance + opposite.distance(nextNodeId);
+                    if (routeCost < bestCost) {
+                        bestCost = routeCost;
+                        meetingNodeId = nextNodeId;
+                    }
+                }
+            }
+        }
+        if (meetingNodeId == -1)
+            return null; // path does not exist
+        return reconstructRoute(forward, meetingNodeId, backward, meetingNodeId);
+    }
+
+    /**
+     * Route through a via node, as node ids and the ids of the edges between them.
+     *
+     * @param nodeIds ids (indexes) of the nodes of the route, in order
+     * @param edgeIds ids (indexes) of the edges of the route, the edge at index i going from the
+     *                node at index i to the node at index i + 1
+     */
+    private record ViaPath(int[] nodeIds, int[] edgeIds) {
+    }
+
+    /**
+     * Generates the route made of the best route to a node found by a forward search, followed by
+     * the best route from it found by a backward search.
      *
-     * @param previous      map linking a node id to the id of the previous node packed with the
-     *                      outgoing edge index to follow (int - U4 -> edge index, U28 -> node id)
+     * @param forward   workspace of the forward search (see {@code reconstructRoute})
+     * @param backward  workspace of the backward search (see {@code reconstructRoute})
+     * @param viaNodeId id (index) of a node settled by both searches
+     * @return the route through the via node
+     */
+    private ViaPath viaPath(SearchWorkspace forward, SearchWorkspace backward, int viaNodeId) {
+        int forwardEdgeCount = 0, backwardEdgeCount = 0;
+        for (int nodeId = viaNodeId; forward.previous(nodeId) != -1; forwardEdgeCount++)
+            nodeId = Dijkstra.linkedNodeId(forward.previous(nodeId));
+        for (int nodeId = viaNodeId; backward.previous(nodeId) != -1; backwardEdgeCount++)
+            nodeId = Dijkstra.linkedNodeId(backward.previous(nodeId));
+
+        int[] nodeIds = new int[forwardEdgeCount + backwardEdgeCount + 1];
+        int[] edgeIds = new int[forwardEdgeCount + backwardEdgeCount];
+        nodeIds[forwardEdgeCount] = viaNodeId;
+        for (int i = forwardEdgeCount; i > 0; i--) {
+            int previous = forward.previous(nodeIds[i]);
+            nodeIds[i - 1] = Dijkstra.linkedNodeId(previous);
+            int edgeIndex = Dijkstra.linkedEdgeIndex(previous);
+            edgeIds[i - 1] = graph.nodeOutEdgeId(nodeIds[i - 1], edgeIndex);
+        }
+        for (int i = forwardEdgeCount; i < edgeIds.length; i++) {
+            int next = backward.previous(nodeIds[i]);
+            nodeIds[i + 1] = Dijkstra.linkedNodeId(next);
+            int edgeIndex = Dijkstra.linkedEdgeIndex(next);
+            edgeIds[i] = graph.nodeOutEdgeId(nodeIds[i], edgeIndex);
+        }
+        return new ViaPath(nodeIds, edgeIds);
+    }
+
+    /**
+     * Checks that a route does not share too much of its length with the routes chosen before it.
+     *
+     * @param path          the route
+     * @param routesEdgeIds ids of the edges of each route chosen before it
+     * @return true if the length shared with each route is at most
+     *         {@code MAX_ALTERNATIVE_OVERLAP} times the length of the route
+     */
+    private boolean isAcceptableAlternative(ViaPath path, List<Set<Integer>> routesEdgeIds) {
+        double length = 0;
+        for (int edgeId : path.edgeIds())
+            length += graph.edgeLength(edgeId);
+        for (Set<Integer> routeEdgeIds : routesEdgeIds) {
+            double sharedLength = 0;
+            for (int edgeId : path.edgeIds())
+                if (routeEdgeIds.contains(edgeId))
+                    sharedLength += graph.edgeLength(edgeId);
+            if (sharedLength > MAX_ALTERNATIVE_OVERLAP * length)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Adds a starting node to a search toward a point, at a given cost.
+     *
+     * @param workspace workspace of the search
+     * @param nodeId    id (index) of the node
+     * @param cost      cost of the route to the node, possibly infinite
+     * @param endPoint  destination point of the search
+     */
+    private void addSource(SearchWorkspace workspace, int nodeId, double cost, PointCh endPoint) {
+        if (cost < workspace.distance(nodeId)) {
+            workspace.update(nodeId, (float) cost, -1);
+            workspace.heap().addOrDecreaseKey(nodeId,
+                    (float) (cost + graph.nodePoint(nodeId).distanceTo(endPoint)));
+        }
+    }
+
+    /**
+     * Computes the cost of a part of an edge.
+     *
+     * @param fromNodeId id (index) of the edge's starting node
+     * @param edgeId     id (index) of the edge
+     * @param length     length of the part, in meters
+     * @return the cost of the part, 0 if its length is 0 even if the edge is forbidden
+     */
+    private double partialCost(int fromNodeId, int edgeId, double length) {
+        return length == 0 ? 0 : costFunction.costFactor(fromNodeId, edgeId) * length;
+    }
+
+    /**
+     * Finds the opposite of an edge: the edge going from its destination node to its starting
+     * node, with the same length.
+     *
+     * @param edgeId     id (index) of the edge
+     * @param fromNodeId id (index) of the edge's starting node
+     * @return the id (index) of the opposite edge, or -1 if there is none
+     */
+    private int oppositeEdgeId(int edgeId, int fromNodeId) {
+        int toNodeId = graph.edgeTargetNodeId(edgeId);
+        for (int edgeIndex = 0; edgeIndex < graph.nodeOutDegree(toNodeId); edgeIndex++) {
+            int oppositeEdgeId = graph.nodeOutEdgeId(toNodeId, edgeIndex);
+            if (oppositeEdgeId != edgeId && graph.edgeTargetNodeId(oppositeEdgeId) == fromNodeId
+                    && graph.edgeLength(oppositeEdgeId) == graph.edgeLength(edgeId))
+                return oppositeEdgeId;
+        }
+        return -1;
+    }
+
+    /**
+     * Cancels the current search if the calling thread has been interrupted, so that a search
+     * which is no longer needed stops as soon as possible.
+     *
+     * @throws CancellationException if the calling thread is interrupted
+     */
+    static void checkNotInterrupted() {
+        if (Thread.currentThread().isInterrupted())
+            throw new CancellationException();
+    }
+
+    /**
+     * Computes a lower bound of the cost of the best route between two nodes: their euclidean
+     * distance, or the bound given by the landmarks if it is larger.
+     *
+     * @param fromNodeId id (index) of the route's starting node
+     * @param fromPoint  position of the route's starting node
+     * @param toNodeId   id (index) of the route's destination node
+     * @param toPoint    position of the route's destination node
+     * @return a lower bound of the cost of the best route, infinite if no route exists
+     */
+    private double lowerBound(int fromNodeId, PointCh fromPoint, int toNodeId, PointCh toPoint) {
+        double bound = fromPoint.distanceTo(toPoint);
+        return landmarks == null ? bound
+                : Math.max(bound, landmarks.lowerBound(fromNodeId, toNodeId));
+    }
+
+    /**
+     * Generates the route/path ending at {@code currentNodeId}, optionally followed by the route
+     * starting at {@code nextNodeId} found by a backward search.
+     *
+     * @param workspace     workspace of the (forward) search, linking a node id to the id of the
+     *                      previous node packed with the outgoing edge index to follow (int - U4 ->
+     *                      edge index, U28 -> node id), or {@code null} if there is none
+     * @param currentNodeId last node id (index) of the route to reconstruct, or -1 if there is no
+     *                      forward search
+     * @param backward      workspace of the backward search linking a node id to the id of the next
+     *                      node packed with its outgoing edge index to follow (int - U4 -> edge
+     *                      index, U28 -> node id), or {@code null} if there is none
+     * @param nextNodeId    first node id (index) of the route to reconstruct from the backward
+     *                      search, or -1 if there is none
+     * @return the route ending at {@code currentNodeId}, followed by the one starting at
+     *         {@code nextNodeId}
+     */
+    Route reconstructRoute(SearchWorkspace workspace,
+                           int currentNodeId,
+                           SearchWorkspace backward,
+                           int nextNodeId) {
+        return new SingleRoute(reconstructEdges(workspace, currentNodeId, backward, nextNodeId));
+    }
+
+    /**
+     * Generates the edges of the route/path ending at {@code currentNodeId}, found by a forward
+     * search.
+     *
+     * @param workspace     workspace of the search
      * @param currentNodeId last node id (index) of the route to reconstruct
-     * @return the route ending at {@code currentNodeId}
+     * @return the edges of the route, empty if {@code currentNodeId} is a starting node
      */
-    private Route reconstructRoute(int[] previous, int currentNodeId) {
-        List<Edge> edges = new LinkedList<>();
+    private LinkedList<Edge> reconstructEdges(SearchWorkspace workspace, int currentNodeId) {
+        return reconstructEdges(workspace, currentNodeId, null, -1);
+    }
+
+    /**
+     * Generates the edges of the route/path ending at {@code currentNodeId}, optionally followed
+     * by the route starting at {@code nextNodeId} found by a backward search (see
+     * {@code reconstructRoute}).
+     *
+     * @param workspace     workspace of the (forward) search, or {@code null} if there is none
+     * @param currentNodeId last node id (index) of the route to reconstruct, or -1 if there is no
+     *                      forward search
+     * @param backward      workspace of the backward search, or {@code null} if there is none
+     * @param nextNodeId    first node id (index) of the route to reconstruct from the backward
+     *                      search, or -1 if there is none
+     * @return the edges of the route
+     */
+    private LinkedList<Edge> reconstructEdges(SearchWorkspace workspace,
+                                              int currentNodeId,
+                                              SearchWorkspace backward,
+                                              int nextNodeId) {
+        LinkedList<Edge> edges = new LinkedList<>();
         int toNodeId = currentNodeId;
-        while (previous[toNodeId] != -1) {
-            int previousNodeId = Bits.extractUnsigned(previous[toNodeId], 0, NODE_ID_LENGTH);
-            int outGoingEdgeIndex = Bits.extractUnsigned(previous[toNodeId], NODE_ID_LENGTH,
-                    EDGE_INDEX_LENGTH);
+        while (workspace != null && workspace.previous(toNodeId) != -1) {
+            int previous = workspace.previous(toNodeId);
+            int previousNodeId = Dijkstra.linkedNodeId(previous);
+            int outGoingEdgeIndex = Dijkstra.linkedEdgeIndex(previous);
             int edgeId = graph.nodeOutEdgeId(previousNodeId, outGoingEdgeIndex);
             Edge edge = Edge.of(graph, edgeId, previousNodeId, toNodeId);
-            edges.add(0, edge); // prepend
+            edges.addFirst(edge); // prepend
             toNodeId = previousNodeId;
         }
-        return new SingleRoute(edges);
+        int fromNodeId = nextNodeId;
+        while (backward != null && backward.previous(fromNodeId) != -1) {
+            int next = backward.previous(fromNodeId);
+            int followingNodeId = Dijkstra.linkedNodeId(next);
+            int outGoingEdgeIndex = Dijkstra.linkedEdgeIndex(next);
+            int edgeId = graph.nodeOutEdgeId(fromNodeId, outGoingEdgeIndex);
+            edges.addLast(Edge.of(graph, edgeId, fromNodeId, followingNodeId));
+            fromNodeId = followingNodeId;
+        }
+        return edges;
     }
 
 }
@@ -0,0 +1,156 @@
+package ch.epfl.javelo.routing;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.CancellationException;
+import ch.epfl.javelo.Preconditions;
+import ch.epfl.javelo.data.Graph;
+
+/**
+ * Tree of the best routes from a root node to the other nodes (forward tree), or from the other
+ * nodes to a root node (backward tree), grown on demand.
+ * <p>
+ * The tree is built by a Dijkstra search which is not guided towards any destination, so it can
+ * be resumed for any node: asking for the route of a node only settles the nodes closer to the
+ * root than it which are not settled yet, and the routes of the nodes already settled are
+ * immediately known. Used to recompute the routes to (or from) a fixed node when the other end
+ * keeps moving a short distance, e.g. while a waypoint is dragged. As the search is not guided,
+ * it settles every node closer to the root than the requested one: the tree is only worth it for
+ * short routes, the A* search of {@code RouteComputer} being faster for a single long route.
+ * <p>
+ * The tree has no search arrays of its own: it grows in the workspace of the route computer of
+ * the thread using it (the forward or backward one, depending on its direction). A route
+ * computation of the same thread, or another tree of the same direction, reuses this workspace;
+ * the tree then notices it and starts its search again from the root.
+ * <p>
+ * Mutable, not thread-safe (meant to be used by a single thread at a time).
+ *
+ * @author Lucas Jung (324724)
+ * @author Florian Kolly (328313)
+ */
+public final class RouteTree {
+
+    private final RouteComputer routeComputer;
+    private final Graph graph;
+    private final CostFunction costFunction;
+
+    private final boolean isForward;
+    private int rootNodeId;
+
+    /**
+     * Workspace in which the tree was last grown, and generation of its search at that time. The
+     * tree's search is lost if the workspace was reset since, or if it is another thread's. The
+     * workspace is only weakly referenced, so that it is released with its thread.
+     */
+    private WeakReference<SearchWorkspace> workspace;
+    private int generation;
+
+    /**
+     * RouteTree's constructor.
+     *
+     * @param routeComputer route computer building the routes of the tree
+     * @param graph         JaVelo graph
+     * @param costFunction  cost function to consider for the route computation
+     * @param isForward     true for the tree of the routes from the root, false for the tree of
+     *                      the routes to the root
+     * @param rootNodeId    id (index) of the root node
+     */
+    RouteTree(RouteComputer routeComputer,
+              Graph graph,
+              CostFunction costFunction,
+              boolean isForward,
+              int rootNodeId) {
+        this.routeComputer = routeComputer;
+        this.graph = graph;
+        this.costFunction = costFunction;
+        this.isForward = isForward;
+        reset(rootNodeId);
+    }
+
+    /**
+     * Retrieves the root node of the tree.
+     *
+     * @return the id (index) of the node from which (forward tree) or to which (backward tree) the
+     *         routes of the tree go
+     */
+    public int rootNodeId() {
+        return rootNodeId;
+    }
+
+    /**
+     * Checks if the tree is a forward one.
+     *
+     * @return true if the routes of the tree start at the root, false if they end at it
+     */
+    public boolean isForward() {
+        return isForward;
+    }
+
+    /**
+     * Retrieves the number of nodes whose best route is known.
+     *
+     * @return the number of nodes settled by the search of the tree
+     */
+    public int settledNodeCount() {
+        return holdsSearch() ? workspace.get().settledCount() : 0;
+    }
+
+    /**
+     * Empties the tree and roots it at another node.
+     *
+     * @param rootNodeId id (index) of the new root node
+     */
+    public void reset(int rootNodeId) {
+        this.rootNodeId = rootNodeId;
+        startSearch();
+    }
+
+    /**
+     * Computes the best route between the root and a node, growing the tree until the node is
+     * settled if it is not yet.
+     *
+     * @param nodeId id (index) of the node
+     * @return the route with the minimal total cost from the root to the node (forward tree) or
+     *         from the node to the root (backward tree), or {@code null} if no route exists
+     * @throws IllegalArgumentException if the node is the root
+     * @throws CancellationException    if the calling thread is interrupted while the tree grows
+     *                                  (its interrupted status is left set, the tree stays usable)
+     */
+    public Route route(int nodeId) {
+        Preconditions.checkArgument(nodeId != rootNodeId);
+        if (!holdsSearch())
+            startSearch();
+        SearchWorkspace workspace = this.workspace.get();
+        NodeHeap toVisit = workspace.heap();
+        while (!workspace.isSettled(nodeId) && !toVisit.isEmpty()) {
+            RouteComputer.checkNotInterrupted();
+            Dijkstra.settleClosestNode(graph, costFunction, isForward, workspace,
+                                       Double.POSITIVE_INFINITY);
+        }
+        if (!workspace.isSettled(nodeId))
+            return null; // path does not exist
+        return isForward() ? routeComputer.reconstructRoute(workspace, nodeId, null, -1)
+                : routeComputer.reconstructRoute(null, -1, workspace, nodeId);
+    }
+
+    /**
+     * Checks whether the workspace of the calling thread still holds the tree's search.
+     *
+     * @return true if the tree can keep growing in its workspace, false otherwise
+     */
+    private boolean holdsSearch() {
+        SearchWorkspace workspace = this.workspace.get();
+        return workspace == routeComputer.workspace(isForward)
+                && workspace.generation() == generation;
+    }
+
+    /**
+     * Starts the tree's search from the root, in the workspace of the calling thread.
+     */
+    private void startSearch() {
+        SearchWorkspace workspace = routeComputer.workspace(isForward);
+        Dijkstra.start(workspace, rootNodeId);
+        this.workspace = new WeakReference<>(workspace);
+        generation = workspace.generation();
+    }
+
+}
@@ -0,0 +1,171 @@
+package ch.epfl.javelo.routing;
+
+import java.util.Arrays;
+
+/**
+ * Reusable arrays of a shortest path search over the nodes of a graph.
+ * <p>
+ * The arrays are allocated once and reused from one search to the next. Instead of filling them
+ * before every search, each node is stamped with the generation of the search which last touched
+ * it: values stamped with an older generation are considered unset. Resetting the workspace thus
+ * costs time proportional to the explored area, not to the size of the graph.
+ * <p>
+ * Mutable, not thread-safe (meant to be used by a single thread). Arguments are not checked.
+ *
+ * @author Lucas Jung (324724)
+ * @author Florian Kolly (328313)
+ */
+final class SearchWorkspace {
+
+    /**
+     * Distance of a node which has not been reached by the current search.
+     */
+    private static final float DEFAULT_DISTANCE = Float.POSITIVE_INFINITY;
+
+    /**
+     * Difference between two successive generations. A node stamped with {@code generation} has
+     * been reached by the current search, a node stamped with {@code generation + 1} has been
+     * settled by it.
+     */
+    private static final int GENERATION_STEP = 2;
+
+    private final float[] distances;
+
+    /**
+     * How each node was reached, as chosen by the search (e.g. packed outgoing edge index with
+     * previous node id (U4 U28)), or -1 for the search's origin.
+     */
+    private final int[] previous;
+
+    /**
+     * Generation of the search which last touched each node.
+     */
+    private final int[] stamps;
+
+    private final NodeHeap heap;
+
+    private int generation;
+    private int settledCount;
+
+    /**
+     * SearchWorkspace's constructor.
+     *
+     * @param nodeCount number of nodes in the graph
+     */
+    SearchWorkspace(int nodeCount) {
+        this.distances = new float[nodeCount];
+        this.previous = new int[nodeCount];
+        this.stamps = new int[nodeCount];
+        this.heap = new NodeHeap(nodeCount);
+        this.generation = 0; // never used, all stamps are initially 0
+    }
+
+    /**
+     * Prepares the workspace for a new search, forgetting everything about the previous one.
+     */
+    void reset() {
+        heap.clear();
+        settledCount = 0;
+        if (generation > Integer.MAX_VALUE - 2 * GENERATION_STEP) {
+            // Generations would overflow, old stamps could then be mistaken for new ones
+            Arrays.fill(stamps, 0);
+            generation = 0;
+        }
+        generation += GENERATION_STEP;
+    }
+
+    /**
+     * Retrieves the generation of the current search, which changes on every reset. Used to know
+     * whether the workspace still holds a given search.
+     *
+     * @return the generation of the current search
+     */
+    int generation() {
+        return generation;
+    }
+
+    /**
+     * Retrieves the heap of nodes to visit.
+     *
+     * @return the heap of the current search
+     */
+    NodeHeap heap() {
+        return heap;
+    }
+
+    /**
+     * Retrieves the best known distance (cost) from the origin of the search to a node.
+     *
+     * @param nodeId id (index) of the node
+     * @return the distance to the node, {@code Float.POSITIVE_INFINITY} if it has not been reached
+     */
+    float distance(int nodeId) {
+        return isReached(nodeId) ? distances[nodeId] : DEFAULT_DISTANCE;
+    }
+
+    /**
+     * Retrieves how a reached node was reached (e.g. packed previous node id and outgoing edge
+     * index (U4 U28)).
+     *
+     * @param nodeId id (index) of the node (supposed reached)
+     * @return the value recorded by the last update of the node, -1 for the search's origin
+     */
+    int previous(int nodeId) {
+        return previous[nodeId];
+    }
+
+    /**
+     * Checks whether a node has been reached by the current search.
+     *
+     * @param nodeId id (index) of the node
+     * @return true if the node has been reached (settled or not), false otherwise
+     */
+    boolean isReached(int nodeId) {
+        int stamp = stamps[nodeId];
+        return stamp == generation || stamp == generation + 1;
+    }
+
+    /**
+     * Checks whether a node has been settled by the current search.
+     *
+     * @param nodeId id (index) of the node
+     * @return true if the node has been settled, false otherwise
+     */
+    boolean isSettled(int nodeId) {
+        return stamps[nodeId] == generation + 1;
+    }
+
+    /**
+     * Records a better distance to a (not yet settled) node.
+     *
+     * @param nodeId   id (index) of the node
+     * @param distance new distance to the node
+     * @param previous how the node was reached (e.g. packed previous node id and outgoing edge
+     *                 index (U4 U28)), -1 for the search's origin
+     */
+    void update(int nodeId, float distance, int previous) {
+        stamps[nodeId] = generation;
+        distances[nodeId] = distance;
+        this.previous[nodeId] = previous;
+    }
+
+    /**
+     * Marks a reached node as settled, its distance is final.
+     *
+     * @param nodeId id (index) of the node (supposed reached)
+     */
+    void settle(int nodeId) {
+        stamps[nodeId] = generation + 1;
+        settledCount++;
+    }
+
+    /**
+     * Retrieves the number of nodes settled since the last reset.
+     *
+     * @return the number of settled nodes
+     */
+    int settledCount() {
+        return settledCount;
+    }
+
+}
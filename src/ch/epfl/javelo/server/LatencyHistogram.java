@@ -0,0 +1,112 @@
+package ch.epfl.javelo.server;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import ch.epfl.javelo.Preconditions;
+
+/**
+ * Histogram of latencies, giving their percentiles with a relative error of at most 12.5%.
+ * <p>
+ * The latencies are counted in buckets of logarithmic width: 8 buckets per power of two, so that
+ * recording a latency is a single atomic increment and the histogram never grows.
+ * <p>
+ * Thread-safe. The percentiles computed while latencies are being recorded may include only part
+ * of them.
+ *
+ * @author Lucas Jung (324724)
+ * @author Florian Kolly (328313)
+ */
+public final class LatencyHistogram {
+
+    /**
+     * Number of bits of a latency, after its most significant bit, identifying its bucket.
+     */
+    private static final int SUB_BUCKET_BITS = 3;
+
+    /**
+     * Number of buckets per power of two.
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Total number of buckets, covering every positive long.
+     */
+    private static final int BUCKET_COUNT = SUB_BUCKETS * (Long.SIZE - SUB_BUCKET_BITS);
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos latency, in nanoseconds
+     * @throws IllegalArgumentException if the latency is negative
+     */
+    public void record(long nanos) {
+        Preconditions.checkArgument(nanos >= 0);
+        counts.incrementAndGet(bucket(nanos));
+    }
+
+    /**
+     * Computes the number of latencies recorded.
+     *
+     * @return the number of latencies recorded
+     */
+    public long count() {
+        long count = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++)
+            count += counts.get(bucket);
+        return count;
+    }
+
+    /**
+     * Computes a percentile of the latencies recorded.
+     *
+     * @param percentile percentile, between 0 (excluded) and 100 (included)
+     * @return the upper bound of the bucket containing the given percentile of the latencies, in
+     *         nanoseconds (at most 12.5% more than the actual latency), or 0 if no latency was
+     *         recorded
+     * @throws IllegalArgumentException if the percentile is not between 0 (excluded) and 100
+     *                                  (included)
+     */
+    public long percentile(double percentile) {
+        Preconditions.checkArgument(0 < percentile && percentile <= 100);
+        long[] snapshot = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            snapshot[bucket] = counts.get(bucket);
+            count += snapshot[bucket];
+        }
+        // Rank of the latency, from 1
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long runningCount = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            runningCount += snapshot[bucket];
+            if (runningCount >= rank)
+                return upperBound(bucket);
+        }
+        return 0;
+    }
+
+    /**
+     * Computes the bucket of a latency: the latencies below {@code SUB_BUCKETS} have their own
+     * bucket, the other ones are identified by the position of their most significant bit and the
+     * {@code SUB_BUCKET_BITS} following bits.
+     */
+    private static int bucket(long nanos) {
+        if (nanos < SUB_BUCKETS)
+            return (int) nanos;
+        int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(nanos) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (nanos >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * Computes the greatest latency of a bucket.
+     */
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowerBound = (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+
+}
@@ -0,0 +1,352 @@
+package ch.epfl.javelo.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import ch.epfl.javelo.Preconditions;
+import ch.epfl.javelo.data.Graph;
+import ch.epfl.javelo.projection.Ch1903;
+import ch.epfl.javelo.projection.PointCh;
+import ch.epfl.javelo.projection.SwissBounds;
+import ch.epfl.javelo.routing.ElevationProfile;
+import ch.epfl.javelo.routing.ElevationProfileComputer;
+import ch.epfl.javelo.routing.GpxGenerator;
+import ch.epfl.javelo.routing.Route;
+import ch.epfl.javelo.routing.RouteCache;
+import ch.epfl.javelo.routing.RouteComputer;
+
+/**
+ * HTTP service computing routes on a graph loaded once and shared by all requests.
+ * <p>
+ * Endpoints (GET), the points being given in WGS84 degrees as {@code from=lat,lon&to=lat,lon} and
+ * snapped to the closest node within 500 m:
+ * <ul>
+ * <li>{@code /route}: length, total ascent and descent, and points of the route (JSON);</li>
+ * <li>{@code /elevation}: elevation profile of the route, sampled at most every 5 m (JSON);</li>
+ * <li>{@code /gpx}: GPX document of the route;</li>
+ * <li>{@code /stats}: number of requests and 50th and 99th percentiles of their latency, in
+ * milliseconds, for each endpoint (JSON), all the requests being counted, error responses
+ * included.</li>
+ * </ul>
+ * Invalid parameters give a 400 response, points without any node nearby or without a route
+ * between them a 404 response, and unexpected errors (e.g. a file of the graph which can't be
+ * read) a 500 response.
+ * <p>
+ * The requests are handled by a fixed number of threads, the other ones waiting in the queue of
+ * the server. The routes are kept in the shared route cache.
+ *
+ * @author Lucas Jung (324724)
+ * @author Florian Kolly (328313)
+ */
+public final class RoutingServer {
+
+    /**
+     * Maximum radius, in meters, where a node is sought for a point.
+     */
+    private static final int SEARCH_DISTANCE = 500;
+
+    /**
+     * Maximum distance between the samples of the elevation profiles, in meters.
+     */
+    private static final int MAX_STEP_LENGTH = 5;
+
+    /**
+     * Format of the coordinates, in degrees, and of the elevations, lengths and latencies.
+     */
+    private static final String DEGREES_FORMAT = "%.6f";
+    private static final String METERS_FORMAT = "%.1f";
+
+    private static final String ROUTE_ENDPOINT = "/route";
+    private static final String ELEVATION_ENDPOINT = "/elevation";
+    private static final String GPX_ENDPOINT = "/gpx";
+    private static final String STATS_ENDPOINT = "/stats";
+
+    private final Graph graph;
+    private final RouteComputer routeComputer;
+    private final RouteCache routeCache;
+    private final Map<String, LatencyHistogram> latencies = new LinkedHashMap<>();
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * RoutingServer's constructor. The server is not started.
+     *
+     * @param graph         the graph
+     * @param routeComputer route computer of the graph, used by all threads
+     * @param routeCache    cache of the routes
+     */
+    public RoutingServer(Graph graph, RouteComputer routeComputer, RouteCache routeCache) {
+        this.graph = graph;
+        this.routeComputer = routeComputer;
+        this.routeCache = routeCache;
+        for (String endpoint : new String[] {ROUTE_ENDPOINT, ELEVATION_ENDPOINT, GPX_ENDPOINT,
+                                             STATS_ENDPOINT})
+            latencies.put(endpoint, new LatencyHistogram());
+    }
+
+    /**
+     * Response to a request.
+     *
+     * @param status      HTTP status code
+     * @param contentType type of the body
+     * @param body        body of the response
+     */
+    private record Response(int status, String contentType, String body) {
+
+        private static Response json(String body) {
+            return new Response(200, "application/json", body);
+        }
+
+        private static Response error(int status, String message) {
+            return new Response(status, "text/plain; charset=utf-8", message + "\n");
+        }
+
+    }
+
+    /**
+     * Entry point of the service.
+     * <p>
+     * Usage: {@code RoutingServer <graph directory> [port] [thread count]}, port 8080 and as many
+     * threads as processors by default. The routes are computed by the default route computer of
+     * the graph (see {@code RouteComputer.loadDefault}).
+     *
+     * @param args command line arguments
+     * @throws IOException if any input/output error is thrown during file related operations
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: RoutingServer <graph directory> [port] [thread count]");
+            System.exit(2);
+        }
+        Path basePath = Path.of(args[0]);
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+        int threadCount = args.length > 2
+                ? Integer.parseInt(args[2])
+                : Runtime.getRuntime().availableProcessors();
+
+        Graph graph = Graph.loadFrom(basePath);
+        RoutingServer server = new RoutingServer(graph, RouteComputer.loadDefault(basePath, graph),
+                                                 RouteCache.shared());
+        server.start(new InetSocketAddress(port), threadCount);
+        System.err.printf("Listening on port %d with %d threads%n", server.port(), threadCount);
+    }
+
+    /**
+     * Starts the server.
+     *
+     * @param address     address on which the server listens (port 0 for any free port)
+     * @param threadCount number of threads handling the requests
+     * @throws IOException              if the server can't be bound to the address
+     * @throws IllegalArgumentException if {@code threadCount} is not strictly positive
+     * @throws IllegalStateException    if the server was already started
+     */
+    public synchronized void start(InetSocketAddress address, int threadCount) throws IOException {
+        Preconditions.checkArgument(threadCount > 0);
+        if (server != null)
+            throw new IllegalStateException();
+        server = HttpServer.create(address, 0);
+        for (String endpoint : latencies.keySet())
+            server.createContext(endpoint, exchange -> handle(exchange, endpoint));
+        executor = Executors.newFixedThreadPool(threadCount);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Stops the server, without waiting for the requests being handled.
+     */
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Retrieves the port on which the server listens.
+     *
+     * @return the port of the server
+     * @throws NullPointerException if the server was not started
+     */
+    public synchronized int port() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Handles a request, recording its latency (until its response is written, or fails to be).
+     */
+    private void handle(HttpExchange exchange, String endpoint) throws IOException {
+        long t0 = System.nanoTime();
+        try {
+            Response response;
+            if (!exchange.getRequestMethod().equals("GET"))
+                response = Response.error(405, "Method not allowed");
+            else if (!exchange.getRequestURI().getPath().equals(endpoint))
+                response = Response.error(404, "Not found");
+            else {
+                try {
+                    response = respond(endpoint,
+                                       parameters(exchange.getRequestURI().getRawQuery()));
+                } catch (IllegalArgumentException e) {
+                    response = Response.error(400, "Invalid parameters");
+                } catch (RuntimeException | IOException e) {
+                    response = Response.error(500, "Internal error");
+                }
+            }
+            byte[] body = response.body().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", response.contentType());
+            exchange.sendResponseHeaders(response.status(), body.length);
+            OutputStream stream = exchange.getResponseBody();
+            stream.write(body);
+        } finally {
+            // Recorded before the response is complete, so that it is counted by the next request
+            latencies.get(endpoint).record(System.nanoTime() - t0);
+            exchange.close();
+        }
+    }
+
+    /**
+     * Computes the response of an endpoint.
+     *
+     * @throws IllegalArgumentException if the parameters are invalid
+     */
+    private Response respond(String endpoint, Map<String, String> parameters) throws IOException {
+        if (endpoint.equals(STATS_ENDPOINT))
+            return Response.json(statistics());
+
+        int startNodeId = nodeId(parameters.get("from"));
+        int endNodeId = nodeId(parameters.get("to"));
+        if (startNodeId == -1 || endNodeId == -1)
+            return Response.error(404, "No road near the point");
+        Preconditions.checkArgument(startNodeId != endNodeId);
+        Route route = routeCache.routeBetween(routeComputer, startNodeId, endNodeId);
+        if (route == null)
+            return Response.error(404, "No route between the points");
+        ElevationProfile profile = ElevationProfileComputer.elevationProfile(route,
+                                                                             MAX_STEP_LENGTH);
+
+        return switch (endpoint) {
+            case ROUTE_ENDPOINT -> Response.json(routeJson(route, profile));
+            case ELEVATION_ENDPOINT -> Response.json(elevationJson(profile));
+            case GPX_ENDPOINT -> {
+                Writer writer = new StringWriter();
+                GpxGenerator.writeGpx(writer, route, profile);
+                yield new Response(200, "application/gpx+xml", writer.toString());
+            }
+            default -> throw new Error(); // should never happen
+        };
+    }
+
+    /**
+     * Finds the node closest to a point given as {@code lat,lon} in degrees.
+     *
+     * @return the id (index) of the closest node, or -1 if there is no node within the search
+     *         distance
+     * @throws IllegalArgumentException if the point is missing, malformed or outside Switzerland
+     */
+    private int nodeId(String point) {
+        Preconditions.checkArgument(point != null);
+        String[] coordinates = point.split(",");
+        Preconditions.checkArgument(coordinates.length == 2);
+        // NumberFormatException is an IllegalArgumentException
+        double lon = Math.toRadians(Double.parseDouble(coordinates[1]));
+        double lat = Math.toRadians(Double.parseDouble(coordinates[0]));
+        double e = Ch1903.e(lon, lat), n = Ch1903.n(lon, lat);
+        Preconditions.checkArgument(SwissBounds.containsEN(e, n));
+        return graph.nodeClosestTo(new PointCh(e, n), SEARCH_DISTANCE);
+    }
+
+    private static String routeJson(Route route, ElevationProfile profile) {
+        StringBuilder json = new StringBuilder("{");
+        appendField(json, "length", METERS_FORMAT, route.length()).append(',');
+        appendField(json, "ascent", METERS_FORMAT, profile.totalAscent()).append(',');
+        appendField(json, "descent", METERS_FORMAT, profile.totalDescent()).append(',');
+        json.append("\"points\":[");
+        boolean isFirst = true;
+        for (PointCh point : route.points()) {
+            if (!isFirst)
+                json.append(',');
+            isFirst = false;
+            json.append(String.format(Locale.ROOT, "[%s,%s]",
+                                      String.format(Locale.ROOT, DEGREES_FORMAT,
+                                                    Math.toDegrees(point.lat())),
+                                      String.format(Locale.ROOT, DEGREES_FORMAT,
+                                                    Math.toDegrees(point.lon()))));
+        }
+        return json.append("]}").toString();
+    }
+
+    private static String elevationJson(ElevationProfile profile) {
+        int sampleCount = (int) Math.ceil(profile.length() / MAX_STEP_LENGTH) + 1;
+        double step = profile.length() / (sampleCount - 1);
+        StringBuilder json = new StringBuilder("{");
+        appendField(json, "length", METERS_FORMAT, profile.length()).append(',');
+        appendField(json, "minElevation", METERS_FORMAT, profile.minElevation()).append(',');
+        appendField(json, "maxElevation", METERS_FORMAT, profile.maxElevation()).append(',');
+        appendField(json, "ascent", METERS_FORMAT, profile.totalAscent()).append(',');
+        appendField(json, "descent", METERS_FORMAT, profile.totalDescent()).append(',');
+        appendField(json, "step", "%.3f", step).append(',');
+        json.append("\"elevations\":[");
+        for (int i = 0; i < sampleCount; i++) {
+            if (i > 0)
+                json.append(',');
+            json.append(String.format(Locale.ROOT, METERS_FORMAT, profile.elevationAt(i * step)));
+        }
+        return json.append("]}").toString();
+    }
+
+    private String statistics() {
+        StringBuilder json = new StringBuilder("{");
+        for (Map.Entry<String, LatencyHistogram> entry : latencies.entrySet()) {
+            if (json.length() > 1)
+                json.append(',');
+            LatencyHistogram histogram = entry.getValue();
+            json.append('"').append(entry.getKey().substring(1)).append("\":{");
+            json.append("\"count\":").append(histogram.count()).append(',');
+            appendField(json, "p50", "%.3f", histogram.percentile(50) / 1e6).append(',');
+            appendField(json, "p99", "%.3f", histogram.percentile(99) / 1e6).append('}');
+        }
+        return json.append('}').toString();
+    }
+
+    private static StringBuilder appendField(StringBuilder json,
+                                             String name,
+                                             String format,
+                                             double value) {
+        return json.append('"').append(name).append("\":")
+                   .append(String.format(Locale.ROOT, format, value));
+    }
+
+    /**
+     * Decodes the parameters of a query string.
+     */
+    private static Map<String, String> parameters(String rawQuery) {
+        Map<String, String> parameters = new HashMap<>();
+        if (rawQuery == null)
+            return parameters;
+        for (String parameter : rawQuery.split("&")) {
+            int equals = parameter.indexOf('=');
+            if (equals == -1)
+                continue;
+            String name = URLDecoder.decode(parameter.substring(0, equals),
+                                            StandardCharsets.UTF_8);
+            parameters.put(name, URLDecoder.decode(parameter.substring(equals + 1),
+                                                   StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+
+}
@@ -0,0 +1,87 @@
+package ch.epfl.javelo.cli;
+
+import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.random.RandomGenerator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ch.epfl.javelo.data.Graph;
+import ch.epfl.javelo.projection.PointCh;
+import ch.epfl.javelo.projection.SwissBounds;
+import ch.epfl.javelo.routing.CityBikeCF;
+import ch.epfl.javelo.routing.Route;
+import ch.epfl.javelo.routing.RouteComputer;
+import ch.epfl.test.TestGraphs;
+
+class BatchRouterTest {
+
+    @Test
+    void batchRouterWritesTheResultsInOrder(@TempDir Path gpxDirectory)
+            throws IOException, InterruptedException {
+        RandomGenerator rng = newRandom();
+        Graph graph = TestGraphs.randomGrid(20, 15, rng);
+        RouteComputer routeComputer = new RouteComputer(graph, new CityBikeCF(graph));
+        BatchRouter batchRouter = new BatchRouter(graph, routeComputer, gpxDirectory);
+
+        StringBuilder input = new StringBuilder("# start,end\n\n");
+        String[] expected = new String[RANDOM_ITERATIONS + 3];
+        int expectedRouteCount = 0;
+        for (int i = 0; i < RANDOM_ITERATIONS; i++) {
+            int startNodeId = rng.nextInt(graph.nodeCount());
+            int endNodeId = rng.nextInt(graph.nodeCount());
+            int lineNumber = i + 3;
+            input.append(startNodeId).append(", ").append(endNodeId).append('\n');
+            Route route = startNodeId != endNodeId
+                    ? routeComputer.bestRouteBetween(startNodeId, endNodeId)
+                    : null;
+            if (startNodeId == endNodeId)
+                expected[i] = lineNumber + "," + startNodeId + "," + endNodeId + ",same_node,,,";
+            else if (route == null)
+                expected[i] = lineNumber + "," + startNodeId + "," + endNodeId + ",no_route,,,";
+            else {
+                expected[i] = String.format(Locale.ROOT, "%d,%d,%d,ok,%.1f,0.0,0.0", lineNumber,
+                                            startNodeId, endNodeId, route.length());
+                expectedRouteCount++;
+            }
+        }
+        PointCh node = graph.nodePoint(0);
+        int lineNumber = RANDOM_ITERATIONS + 3;
+        input.append(node.e() + 10).append(',').append(node.n()).append(',')
+             .append(SwissBounds.MAX_E - 1).append(',').append(SwissBounds.MAX_N - 1).append('\n');
+        expected[RANDOM_ITERATIONS] = lineNumber + ",0,-1,no_node,,,";
+        input.append("1,2,3\n");
+        expected[RANDOM_ITERATIONS + 1] = (lineNumber + 1) + ",-1,-1,invalid,,,";
+        input.append("a,2\n");
+        expected[RANDOM_ITERATIONS + 2] = (lineNumber + 2) + ",-1,-1,invalid,,,";
+
+        StringWriter output = new StringWriter();
+        BatchRouter.Statistics statistics = batchRouter.run(
+                new BufferedReader(new StringReader(input.toString())), output, 4);
+        String[] lines = output.toString().split("\n");
+        assertEquals("line,start_node,end_node,status,length,ascent,descent", lines[0]);
+        assertEquals(expected.length + 1, lines.length);
+        for (int i = 0; i < expected.length; i++)
+            assertEquals(expected[i], lines[i + 1]);
+        assertEquals(expected.length, statistics.queryCount());
+        assertEquals(expectedRouteCount, statistics.routeCount());
+
+        for (int i = 0; i < RANDOM_ITERATIONS; i++)
+            assertEquals(expected[i].contains(",ok,"),
+                         Files.exists(gpxDirectory.resolve((i + 3) + ".gpx")));
+        assertTrue(statistics.queriesPerSecond() > 0);
+
+        assertThrows(IllegalArgumentException.class, () -> batchRouter.run(
+                new BufferedReader(new StringReader("")), new StringWriter(), 0));
+    }
+
+}
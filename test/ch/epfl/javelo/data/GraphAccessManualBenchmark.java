@@ -0,0 +1,120 @@
+package ch.epfl.javelo.data;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * Compares the throughput of the graph accessors depending on the storage of the graph's files:
+ * mapped buffers (as loaded by {@code Graph.loadFrom}), heap buffers (files read into arrays), and
+ * var handles reading the mapped buffers directly, without the graph's classes. Each variant reads
+ * the target node, length and attribute set of the outgoing edges of every node, in node order
+ * (sequential scan) and in random node order.
+ * <p>
+ * Usage: {@code GraphAccessManualBenchmark [graph directory]}, {@code .javelo/lausanne} by
+ * default.
+ */
+public class GraphAccessManualBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int ITERATIONS = 20;
+
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(
+            int[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle SHORT = MethodHandles.byteBufferViewVarHandle(
+            short[].class, ByteOrder.BIG_ENDIAN);
+
+    public static void main(String[] args) throws IOException {
+        Path basePath = Path.of(args.length > 0 ? args[0] : ".javelo/lausanne");
+        Graph mappedGraph = Graph.loadFrom(basePath);
+        Graph heapGraph = new Graph(
+                new GraphNodes(read(basePath, "nodes.bin").asIntBuffer()),
+                new GraphSectors(read(basePath, "sectors.bin")),
+                new GraphEdges(read(basePath, "edges.bin"),
+                               read(basePath, "profile_ids.bin").asIntBuffer(),
+                               read(basePath, "elevations.bin").asShortBuffer()),
+                mappedGraph.attributeSets());
+        ByteBuffer nodes = map(basePath, "nodes.bin");
+        ByteBuffer edges = map(basePath, "edges.bin");
+
+        int nodeCount = mappedGraph.nodeCount();
+        int[] sequentialOrder = new int[nodeCount];
+        for (int i = 0; i < nodeCount; i++)
+            sequentialOrder[i] = i;
+        int[] randomOrder = new SplittableRandom(2022).ints(nodeCount, 0, nodeCount).toArray();
+        System.out.printf("%d nodes, %d edges%n", nodeCount, mappedGraph.edgeCount());
+
+        for (int[] order : List.of(sequentialOrder, randomOrder)) {
+            String name = order == sequentialOrder ? "sequential" : "random";
+            benchmark("mapped buffers, " + name, order, nodeId -> scanNode(mappedGraph, nodeId));
+            benchmark("heap buffers, " + name, order, nodeId -> scanNode(heapGraph, nodeId));
+            benchmark("var handles, " + name, order, nodeId -> scanNode(nodes, edges, nodeId));
+        }
+    }
+
+    private static double scanNode(Graph graph, int nodeId) {
+        double sum = 0;
+        for (int i = 0; i < graph.nodeOutDegree(nodeId); i++) {
+            int edgeId = graph.nodeOutEdgeId(nodeId, i);
+            sum += graph.edgeTargetNodeId(edgeId) + graph.edgeLength(edgeId)
+                    + graph.edgeAttributesIndex(edgeId);
+        }
+        return sum;
+    }
+
+    /**
+     * Same as {@code scanNode(Graph, int)}, decoding the formats of {@code GraphNodes} and
+     * {@code GraphEdges} with var handles.
+     */
+    private static double scanNode(ByteBuffer nodes, ByteBuffer edges, int nodeId) {
+        int outEdges = (int) INT.get(nodes, nodeId * 12 + 8);
+        int outDegree = outEdges >>> 28;
+        int firstEdgeId = outEdges & ((1 << 28) - 1);
+        double sum = 0;
+        for (int edgeId = firstEdgeId; edgeId < firstEdgeId + outDegree; edgeId++) {
+            int target = (int) INT.get(edges, edgeId * 10);
+            int length = Short.toUnsignedInt((short) SHORT.get(edges, edgeId * 10 + 4));
+            int attributes = Short.toUnsignedInt((short) SHORT.get(edges, edgeId * 10 + 8));
+            sum += (target < 0 ? ~target : target) + length / 16d + attributes;
+        }
+        return sum;
+    }
+
+    private static void benchmark(String name, int[] order, IntToDoubleFunction scan) {
+        double result = 0;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++)
+            result = scanAll(order, scan);
+        long t0 = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++)
+            result = scanAll(order, scan);
+        long time = System.nanoTime() - t0;
+        System.out.printf("%-30s %8.2f ns/node (checksum %.1f)%n",
+                name, (double) time / ITERATIONS / order.length, result);
+    }
+
+    private static double scanAll(int[] order, IntToDoubleFunction scan) {
+        double sum = 0;
+        for (int nodeId : order)
+            sum += scan.applyAsDouble(nodeId);
+        return sum;
+    }
+
+    private static ByteBuffer read(Path basePath, String fileName) throws IOException {
+        return ByteBuffer.wrap(Files.readAllBytes(basePath.resolve(fileName)));
+    }
+
+    private static ByteBuffer map(Path basePath, String fileName) throws IOException {
+        try (FileChannel channel = FileChannel.open(basePath.resolve(fileName))) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+}
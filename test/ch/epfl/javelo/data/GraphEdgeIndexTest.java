@@ -0,0 +1,127 @@
+package ch.epfl.javelo.data;
+
+import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.random.RandomGenerator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ch.epfl.javelo.data.SyntheticGraphGenerator.Topology;
+import ch.epfl.javelo.Math2;
+import ch.epfl.javelo.projection.PointCh;
+import ch.epfl.javelo.projection.SwissBounds;
+import ch.epfl.test.TestGraphs;
+
+class GraphEdgeIndexTest {
+
+    @Test
+    void edgeClosestToFindsTheClosestEdge() {
+        RandomGenerator rng = newRandom();
+        Graph graph = TestGraphs.randomGrid(20, 15, rng);
+        for (int i = 0; i < RANDOM_ITERATIONS; i++) {
+            PointCh point = new PointCh(SwissBounds.MIN_E + rng.nextDouble(0, 2_300),
+                                        SwissBounds.MIN_N + rng.nextDouble(0, 1_800));
+            double searchDistance = rng.nextDouble(10, 300);
+            EdgePoint edgePoint = graph.edgeClosestTo(point, searchDistance);
+
+            double expectedDistance = Double.POSITIVE_INFINITY;
+            for (int nodeId = 0; nodeId < graph.nodeCount(); nodeId++)
+                for (int j = 0; j < graph.nodeOutDegree(nodeId); j++) {
+                    int edgeId = graph.nodeOutEdgeId(nodeId, j);
+                    PointCh from = graph.nodePoint(nodeId);
+                    PointCh to = graph.nodePoint(graph.edgeTargetNodeId(edgeId));
+                    expectedDistance = Math.min(expectedDistance,
+                                                distanceToSegment(point, from, to));
+                }
+
+            if (expectedDistance >= searchDistance) {
+                assertNull(edgePoint);
+                continue;
+            }
+            int edgeId = edgePoint.edgeId();
+            PointCh from = graph.nodePoint(edgePoint.fromNodeId());
+            PointCh to = graph.nodePoint(graph.edgeTargetNodeId(edgeId));
+            assertEquals(expectedDistance, distanceToSegment(point, from, to), 1e-6);
+            assertTrue(edgePoint.position() >= 0
+                               && edgePoint.position() <= graph.edgeLength(edgeId));
+            // The position is the one of the projection of the point, scaled to the edge's length
+            double ratio = edgePoint.position() / graph.edgeLength(edgeId);
+            PointCh snapped = new PointCh(Math2.interpolate(from.e(), to.e(), ratio),
+                                          Math2.interpolate(from.n(), to.n(), ratio));
+            assertEquals(expectedDistance, snapped.distanceTo(point), 1e-3);
+        }
+    }
+
+    @Test
+    void edgeIndexListsEveryEdgeInTheCellsOfItsNodes() {
+        Graph graph = TestGraphs.randomGrid(10, 10, newRandom());
+        for (int nodeId = 0; nodeId < graph.nodeCount(); nodeId++) {
+            // A node is on each of its outgoing edges
+            EdgePoint edgePoint = graph.edgeClosestTo(graph.nodePoint(nodeId), 1);
+            if (graph.nodeOutDegree(nodeId) == 0)
+                continue;
+            assertEquals(0, graph.nodePoint(nodeId).distanceTo(
+                    pointOf(graph, edgePoint)), 1e-3);
+        }
+    }
+
+    @Test
+    void edgeIndexIsPersistedOnFirstUseAndReplacedIfStale(@TempDir Path directory)
+            throws IOException {
+        Path graphPath = directory.resolve("graph"), otherGraphPath = directory.resolve("other");
+        SyntheticGraphGenerator.generate(graphPath, 2_000, Topology.GRID, 1);
+        SyntheticGraphGenerator.generate(otherGraphPath, 2_000, Topology.GRID, 2);
+        Path indexPath = graphPath.resolve(GraphEdgeIndex.FILE_NAME);
+
+        Graph graph = Graph.loadFrom(graphPath);
+        // Only computed by the first search of an edge
+        assertFalse(Files.exists(indexPath));
+        List<EdgePoint> expectedEdgePoints = closestEdgePoints(graph);
+        assertTrue(Files.exists(indexPath));
+        // Mapped from the file
+        assertEquals(expectedEdgePoints, closestEdgePoints(Graph.loadFrom(graphPath)));
+
+        // The index of another graph with the same number of nodes is replaced
+        closestEdgePoints(Graph.loadFrom(otherGraphPath));
+        Path otherIndexPath = otherGraphPath.resolve(GraphEdgeIndex.FILE_NAME);
+        Files.copy(otherIndexPath, indexPath, StandardCopyOption.REPLACE_EXISTING);
+        assertEquals(expectedEdgePoints, closestEdgePoints(Graph.loadFrom(graphPath)));
+        assertFalse(Arrays.equals(Files.readAllBytes(otherIndexPath),
+                                  Files.readAllBytes(indexPath)));
+    }
+
+    private static List<EdgePoint> closestEdgePoints(Graph graph) {
+        List<EdgePoint> edgePoints = new ArrayList<>();
+        for (int nodeId = 0; nodeId < graph.nodeCount(); nodeId += 7)
+            edgePoints.add(graph.edgeClosestTo(graph.nodePoint(nodeId), 100));
+        return edgePoints;
+    }
+
+    private static PointCh pointOf(Graph graph, EdgePoint edgePoint) {
+        PointCh from = graph.nodePoint(edgePoint.fromNodeId());
+        PointCh to = graph.nodePoint(graph.edgeTargetNodeId(edgePoint.edgeId()));
+        double ratio = edgePoint.position() / graph.edgeLength(edgePoint.edgeId());
+        return new PointCh(Math2.interpolate(from.e(), to.e(), ratio),
+                           Math2.interpolate(from.n(), to.n(), ratio));
+    }
+
+    private static double distanceToSegment(PointCh point, PointCh from, PointCh to) {
+        double uE = to.e() - from.e(), uN = to.n() - from.n();
+        double squaredLength = Math2.squaredNorm(uE, uN);
+        double ratio = squaredLength == 0 ? 0 : Math2.clamp(0,
+                Math2.dotProduct(point.e() - from.e(), point.n() - from.n(), uE, uN)
+                        / squaredLength, 1);
+        return Math2.norm(point.e() - from.e() - ratio * uE, point.n() - from.n() - ratio * uN);
+    }
+
+}
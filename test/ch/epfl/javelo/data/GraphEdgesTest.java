@@ -9,6 +9,9 @@ import java.util.stream.Stream;
 import static org.junit.Assert.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import ch.epfl.javelo.Bits;
+import ch.epfl.javelo.Math2;
+import ch.epfl.javelo.Q28_4;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -80,6 +83,11 @@ class GraphEdgesTest {
                 elevationsBuffer.asReadOnlyBuffer());
     }
 
+    @Test
+    void countTest() {
+        assertEquals(4, edges.count());
+    }
+
     static Stream<Arguments> isInvertedTest() {
         return Stream.of(Arguments.of(edges, 0, false), Arguments.of(edges, 1, true),
                 Arguments.of(edges, 2, false), Arguments.of(edges, 3, true));
@@ -407,6 +415,71 @@ class GraphEdgesTest {
         }
     }
 
+    @Test
+    void graphEdgesProfileSamplesWorksLikeReferenceDecoderOnRandomProfiles() {
+        var edgesCount = 64;
+        var rng = newRandom();
+        for (int i = 0; i < RANDOM_ITERATIONS; i += 1) {
+            var edgesBuffer = ByteBuffer.allocate(10 * edgesCount);
+            var profileIds = IntBuffer.allocate(edgesCount);
+            var elevations = ShortBuffer.allocate(edgesCount * 200);
+            for (int edgeId = 0; edgeId < edgesCount; edgeId += 1) {
+                var type = rng.nextInt(4);
+                var firstSampleId = elevations.position();
+                var length = rng.nextInt(1 << 10); // UQ12.4, up to 64 m
+                var sampleCount = 1 + Math2.ceilDiv(length, 32);
+                edgesBuffer.putInt(10 * edgeId, rng.nextBoolean() ? edgeId : ~edgeId);
+                edgesBuffer.putShort(10 * edgeId + 4, (short) length);
+                profileIds.put(edgeId, type << 30 | firstSampleId);
+                elevations.put((short) rng.nextInt(1 << 16));
+                var compressedCount = switch (type) {
+                    case 1 -> sampleCount - 1;
+                    case 2 -> Math2.ceilDiv(sampleCount - 1, 2);
+                    case 3 -> Math2.ceilDiv(sampleCount - 1, 4);
+                    default -> 0;
+                };
+                for (int j = 0; j < compressedCount; j += 1)
+                    elevations.put((short) rng.nextInt(1 << 16));
+            }
+            var graphEdges = new GraphEdges(edgesBuffer, profileIds, elevations.clear());
+            for (int edgeId = 0; edgeId < edgesCount; edgeId += 1)
+                assertArrayEquals(referenceProfileSamples(graphEdges, edgeId),
+                                  graphEdges.profileSamples(edgeId));
+        }
+    }
+
+    /**
+     * Decodes the samples of a profile delta by delta, as {@code profileSamples} did before
+     * decoding whole shorts.
+     */
+    private static float[] referenceProfileSamples(GraphEdges edges, int edgeId) {
+        var profileId = edges.profileIds().get(edgeId);
+        var type = profileId >>> 30;
+        var firstSampleId = profileId & ((1 << 30) - 1);
+        if (type == 0)
+            return new float[0];
+        var length = Short.toUnsignedInt(edges.edgesBuffer().getShort(10 * edgeId + 4));
+        var samples = new float[1 + Math2.ceilDiv(length, 32)];
+        samples[0] = Q28_4.asFloat(Short.toUnsignedInt(edges.elevations().get(firstSampleId)));
+        for (int i = 1; i < samples.length; i += 1) {
+            if (type == 1) {
+                samples[i] = Q28_4.asFloat(
+                        Short.toUnsignedInt(edges.elevations().get(firstSampleId + i)));
+                continue;
+            }
+            var samplesPerShort = (type - 1) * 2;
+            var sampleSize = Short.SIZE / samplesPerShort;
+            var compressed = edges.elevations().get(
+                    firstSampleId + 1 + (i - 1) / samplesPerShort);
+            var start = (samplesPerShort - 1 - (i - 1) % samplesPerShort) * sampleSize;
+            samples[i] = samples[i - 1]
+                    + Q28_4.asFloat(Bits.extractSigned(compressed, start, sampleSize));
+        }
+        if (edges.isInverted(edgeId))
+            return new TestCase(new short[0], samples).uncompressedInverted();
+        return samples;
+    }
+
     private record TestCase(short[] compressed, float[] uncompressed) {
 
         public float[] uncompressedInverted() {
@@ -0,0 +1,134 @@
+package ch.epfl.javelo.data;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class GraphInEdgesTest {
+
+    private static final int[] NODES = {
+            0, 0, (2 << 28) | 0,
+            0, 0, (1 << 28) | 2,
+            0, 0, (2 << 28) | 3,
+            0, 0, 0};
+
+    // Edges: 0 -> 1 (0), 0 -> 2 (1), 1 -> 2 (2), 2 -> 0 (3), 2 -> 1 (4), node 3 is isolated
+    private static final int[][] EDGES = {{0, 1}, {0, 2}, {1, 2}, {2, 0}, {2, 1}};
+
+    private static Graph graph;
+
+    @BeforeAll
+    static void initGraph() {
+        graph = new Graph(new GraphNodes(IntBuffer.wrap(NODES)),
+                          new GraphSectors(ByteBuffer.allocate(0)),
+                          new GraphEdges(edgesBuffer(), IntBuffer.allocate(EDGES.length),
+                                         ShortBuffer.allocate(0)),
+                          List.of(new AttributeSet(0)));
+    }
+
+    @Test
+    void incomingEdgesInDegreeIsCorrect() {
+        assertEquals(1, graph.nodeInDegree(0));
+        assertEquals(2, graph.nodeInDegree(1));
+        assertEquals(2, graph.nodeInDegree(2));
+        assertEquals(0, graph.nodeInDegree(3));
+    }
+
+    @Test
+    void incomingEdgesListsEveryEdgeWithItsSource() {
+        assertEveryEdgeIsListed(graph);
+    }
+
+    @Test
+    void incomingEdgesArePersistedOnFirstUse(@TempDir Path basePath) throws IOException {
+        writeGraphFiles(basePath, EDGES);
+        Path inEdgesPath = basePath.resolve(GraphInEdges.FILE_NAME);
+        long expectedSize = Integer.BYTES * (4 + NODES.length / 3 + 1 + 2 * EDGES.length);
+
+        Graph graph = Graph.loadFrom(basePath);
+        // Only computed by the first backward access
+        assertFalse(Files.exists(inEdgesPath));
+        assertEveryEdgeIsListed(graph);
+        assertEquals(expectedSize, Files.size(inEdgesPath));
+        // Mapped from the file
+        assertEveryEdgeIsListed(Graph.loadFrom(basePath));
+
+        // A file not matching the graph is replaced
+        Files.write(inEdgesPath, new byte[Integer.BYTES]);
+        assertEveryEdgeIsListed(Graph.loadFrom(basePath));
+        assertEquals(expectedSize, Files.size(inEdgesPath));
+    }
+
+    @Test
+    void incomingEdgesOfAnotherGraphWithTheSameCountsAreReplaced(@TempDir Path basePath)
+            throws IOException {
+        // Same numbers of nodes and edges, edges 2 and 4 being swapped
+        int[][] otherEdges = {{0, 1}, {0, 2}, {1, 1}, {2, 0}, {2, 2}};
+        writeGraphFiles(basePath, otherEdges);
+        Graph otherGraph = Graph.loadFrom(basePath);
+        assertEquals(2, otherGraph.nodeInDegree(2));
+        byte[] otherInEdges = Files.readAllBytes(basePath.resolve(GraphInEdges.FILE_NAME));
+
+        writeGraphFiles(basePath, EDGES);
+        assertEveryEdgeIsListed(Graph.loadFrom(basePath));
+        assertFalse(Arrays.equals(otherInEdges,
+                                  Files.readAllBytes(basePath.resolve(GraphInEdges.FILE_NAME))));
+    }
+
+    private static void writeGraphFiles(Path basePath, int[][] edges) throws IOException {
+        Files.write(basePath.resolve("nodes.bin"), toBytes(NODES));
+        Files.write(basePath.resolve("edges.bin"), edgesBuffer(edges).array());
+        Files.write(basePath.resolve("profile_ids.bin"), new byte[edges.length * Integer.BYTES]);
+        Files.write(basePath.resolve("elevations.bin"), new byte[0]);
+        Files.write(basePath.resolve("attributes.bin"), new byte[Long.BYTES]);
+        Files.write(basePath.resolve("sectors.bin"), new byte[0]);
+    }
+
+    private static void assertEveryEdgeIsListed(Graph graph) {
+        Set<Integer> seenEdges = new HashSet<>();
+        for (int nodeId = 0; nodeId < graph.nodeCount(); nodeId++)
+            for (int i = 0; i < graph.nodeInDegree(nodeId); i++) {
+                int edgeId = graph.nodeInEdgeId(nodeId, i);
+                assertEquals(EDGES[edgeId][0], graph.nodeInEdgeSourceNodeId(nodeId, i));
+                assertEquals(EDGES[edgeId][1], nodeId);
+                assertEquals(nodeId, graph.edgeTargetNodeId(edgeId));
+                assertTrue(seenEdges.add(edgeId));
+            }
+        assertEquals(EDGES.length, seenEdges.size());
+    }
+
+    private static ByteBuffer edgesBuffer() {
+        return edgesBuffer(EDGES);
+    }
+
+    private static ByteBuffer edgesBuffer(int[][] edgesNodes) {
+        ByteBuffer edges = ByteBuffer.allocate(edgesNodes.length * 10);
+        for (int[] edge : edgesNodes) {
+            edges.putInt(edge[1]);
+            edges.putShort((short) 16);
+            edges.putShort((short) 0);
+            edges.putShort((short) 0);
+        }
+        return edges.flip();
+    }
+
+    private static byte[] toBytes(int[] values) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * Integer.BYTES);
+        buffer.asIntBuffer().put(values);
+        return buffer.array();
+    }
+
+}
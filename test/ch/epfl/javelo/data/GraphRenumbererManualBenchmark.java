@@ -0,0 +1,77 @@
+package ch.epfl.javelo.data;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import ch.epfl.javelo.routing.CityBikeCF;
+import ch.epfl.javelo.routing.Route;
+import ch.epfl.javelo.routing.RouteComputer;
+
+/**
+ * Measures the speedup of the route computer on a graph renumbered by {@code GraphRenumberer}:
+ * the same random queries (mapped to the new node ids through the nodes' points) are computed on
+ * the original graph and on the renumbered one, alternately.
+ * <p>
+ * Usage: {@code GraphRenumbererManualBenchmark [graph directory] [renumbered graph directory]},
+ * {@code .javelo/ch_west} and {@code .javelo/ch_west_hilbert} by default. The renumbered graph is
+ * written first if its directory does not exist.
+ */
+public class GraphRenumbererManualBenchmark {
+
+    private static final int QUERY_COUNT = 50;
+    private static final int ROUNDS = 4;
+
+    public static void main(String[] args) throws IOException {
+        Path basePath = Path.of(args.length > 0 ? args[0] : ".javelo/ch_west");
+        Path targetPath = Path.of(args.length > 1 ? args[1] : ".javelo/ch_west_hilbert");
+        if (!Files.exists(targetPath)) {
+            long t0 = System.nanoTime();
+            GraphRenumberer.renumber(basePath, targetPath);
+            System.out.printf("Renumbered in %.1f s%n", (System.nanoTime() - t0) / 1e9);
+        }
+        Graph graph = Graph.loadFrom(basePath);
+        Graph renumbered = Graph.loadFrom(targetPath);
+
+        SplittableRandom rng = new SplittableRandom(2022);
+        int[][] queries = new int[QUERY_COUNT][];
+        int[][] renumberedQueries = new int[QUERY_COUNT][];
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            int startNodeId = rng.nextInt(graph.nodeCount());
+            int endNodeId = rng.nextInt(graph.nodeCount());
+            queries[i] = new int[] {startNodeId, endNodeId};
+            renumberedQueries[i] = new int[] {
+                    renumbered.nodeClosestTo(graph.nodePoint(startNodeId), 1),
+                    renumbered.nodeClosestTo(graph.nodePoint(endNodeId), 1)};
+        }
+
+        RouteComputer routeComputer = new RouteComputer(graph, new CityBikeCF(graph));
+        RouteComputer renumberedRouteComputer = new RouteComputer(renumbered,
+                                                                  new CityBikeCF(renumbered));
+        // The first round is the warmup
+        for (int round = 0; round < ROUNDS; round++) {
+            long time = run(routeComputer, queries);
+            long renumberedTime = run(renumberedRouteComputer, renumberedQueries);
+            System.out.printf("round %d: original %8.1f ms/query, renumbered %8.1f ms/query"
+                                      + " (speedup %.2f)%n",
+                    round, time / 1e6 / QUERY_COUNT, renumberedTime / 1e6 / QUERY_COUNT,
+                    (double) time / renumberedTime);
+        }
+    }
+
+    private static long run(RouteComputer routeComputer, int[][] queries) {
+        double length = 0;
+        long t0 = System.nanoTime();
+        for (int[] query : queries) {
+            if (query[0] == query[1])
+                continue;
+            Route route = routeComputer.bestRouteBetween(query[0], query[1]);
+            if (route != null)
+                length += route.length();
+        }
+        long time = System.nanoTime() - t0;
+        System.out.printf("  total length %.0f m%n", length);
+        return time;
+    }
+
+}
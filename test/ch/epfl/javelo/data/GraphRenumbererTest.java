@@ -0,0 +1,180 @@
+package ch.epfl.javelo.data;
+
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.random.RandomGenerator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ch.epfl.javelo.projection.PointCh;
+import ch.epfl.javelo.projection.SwissBounds;
+
+class GraphRenumbererTest {
+
+    private static final double SECTOR_WIDTH = SwissBounds.WIDTH / 128;
+    private static final double SECTOR_HEIGHT = SwissBounds.HEIGHT / 128;
+
+    @Test
+    void hilbertIndexVisitsEveryCellOnceThroughNeighbours() {
+        assertEquals(0, GraphRenumberer.hilbertIndex(1, 0, 0));
+        assertEquals(1, GraphRenumberer.hilbertIndex(1, 0, 1));
+        assertEquals(2, GraphRenumberer.hilbertIndex(1, 1, 1));
+        assertEquals(3, GraphRenumberer.hilbertIndex(1, 1, 0));
+
+        int order = 4, n = 1 << order;
+        int[][] cells = new int[n * n][];
+        for (int x = 0; x < n; x++)
+            for (int y = 0; y < n; y++) {
+                int index = (int) GraphRenumberer.hilbertIndex(order, x, y);
+                assertEquals(null, cells[index]);
+                cells[index] = new int[] {x, y};
+            }
+        for (int i = 1; i < cells.length; i++)
+            assertEquals(1, Math.abs(cells[i][0] - cells[i - 1][0])
+                    + Math.abs(cells[i][1] - cells[i - 1][1]));
+    }
+
+    @Test
+    void renumberedGraphIsTheSameGraph(@TempDir Path directory) throws IOException {
+        Path basePath = directory.resolve("graph");
+        Path targetPath = directory.resolve("renumbered");
+        writeRandomGraph(basePath, 40, 30, newRandom());
+        GraphRenumberer.renumber(basePath, targetPath);
+        Graph graph = Graph.loadFrom(basePath);
+        Graph renumbered = Graph.loadFrom(targetPath);
+        assertEquals(graph.nodeCount(), renumbered.nodeCount());
+        assertEquals(graph.edgeCount(), renumbered.edgeCount());
+
+        Map<PointCh, Integer> newNodeIds = new HashMap<>();
+        for (int nodeId = 0; nodeId < renumbered.nodeCount(); nodeId++)
+            newNodeIds.put(renumbered.nodePoint(nodeId), nodeId);
+        double distance = 0, renumberedDistance = 0;
+        for (int nodeId = 0; nodeId < graph.nodeCount(); nodeId++) {
+            PointCh point = graph.nodePoint(nodeId);
+            int newNodeId = newNodeIds.get(point);
+            // Sectors still give the node
+            assertEquals(newNodeId, renumbered.nodeClosestTo(point, 1));
+            assertEquals(graph.nodeOutDegree(nodeId), renumbered.nodeOutDegree(newNodeId));
+            for (int i = 0; i < graph.nodeOutDegree(nodeId); i++) {
+                int edgeId = graph.nodeOutEdgeId(nodeId, i);
+                int newEdgeId = renumbered.nodeOutEdgeId(newNodeId, i);
+                assertEquals(graph.nodePoint(graph.edgeTargetNodeId(edgeId)),
+                             renumbered.nodePoint(renumbered.edgeTargetNodeId(newEdgeId)));
+                assertEquals(graph.edgeIsInverted(edgeId), renumbered.edgeIsInverted(newEdgeId));
+                assertEquals(graph.edgeLength(edgeId), renumbered.edgeLength(newEdgeId));
+                assertEquals(graph.edgeAttributes(edgeId), renumbered.edgeAttributes(newEdgeId));
+                for (double x = 0; x <= graph.edgeLength(edgeId); x += 1)
+                    assertEquals(graph.edgeProfile(edgeId).applyAsDouble(x),
+                                 renumbered.edgeProfile(newEdgeId).applyAsDouble(x));
+            }
+            if (nodeId > 0) {
+                distance += graph.nodePoint(nodeId - 1).distanceTo(point);
+                renumberedDistance += renumbered.nodePoint(nodeId - 1)
+                                                .distanceTo(renumbered.nodePoint(nodeId));
+            }
+        }
+        // Consecutive nodes are closer to each other
+        assertTrue(renumberedDistance < distance);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> GraphRenumberer.renumber(basePath, basePath));
+    }
+
+    /**
+     * Writes the files of a grid of nodes about 500 m apart, spanning several sectors, with edges
+     * between neighbours in both directions. The nodes are sorted by sector, and randomly within
+     * their sector.
+     */
+    private static void writeRandomGraph(Path basePath,
+                                         int width,
+                                         int height,
+                                         RandomGenerator rng) throws IOException {
+        Files.createDirectories(basePath);
+        List<List<Integer>> sectorNodes = new ArrayList<>();
+        for (int i = 0; i < 128 * 128; i++)
+            sectorNodes.add(new ArrayList<>());
+        double[] es = new double[width * height], ns = new double[width * height];
+        for (int y = 0; y < height; y++)
+            for (int x = 0; x < width; x++) {
+                int gridId = y * width + x;
+                es[gridId] = SwissBounds.MIN_E + 20_000 + 500 * x + rng.nextDouble(-100, 100);
+                ns[gridId] = SwissBounds.MIN_N + 20_000 + 500 * y + rng.nextDouble(-100, 100);
+                int sector = (int) ((ns[gridId] - SwissBounds.MIN_N) / SECTOR_HEIGHT) * 128
+                        + (int) ((es[gridId] - SwissBounds.MIN_E) / SECTOR_WIDTH);
+                sectorNodes.get(sector).add(gridId);
+            }
+        int[] nodeIds = new int[width * height];
+        List<Integer> order = new ArrayList<>();
+        try (DataOutputStream sectors = newStream(basePath, "sectors.bin")) {
+            for (List<Integer> nodes : sectorNodes) {
+                Collections.shuffle(nodes, new java.util.Random(rng.nextLong()));
+                sectors.writeInt(order.size());
+                sectors.writeShort(nodes.size());
+                for (int gridId : nodes) {
+                    nodeIds[gridId] = order.size();
+                    order.add(gridId);
+                }
+            }
+        }
+
+        int elevationCount = 0;
+        try (DataOutputStream nodes = newStream(basePath, "nodes.bin");
+             DataOutputStream edges = newStream(basePath, "edges.bin");
+             DataOutputStream profileIds = newStream(basePath, "profile_ids.bin");
+             DataOutputStream elevations = newStream(basePath, "elevations.bin")) {
+            int edgeCount = 0;
+            for (int gridId : order) {
+                int x = gridId % width, y = gridId / width;
+                int[][] neighbours = {{x + 1, y}, {x - 1, y}, {x, y + 1}, {x, y - 1}};
+                int outDegree = 0;
+                for (int[] neighbour : neighbours) {
+                    if (neighbour[0] < 0 || neighbour[0] >= width || neighbour[1] < 0
+                            || neighbour[1] >= height)
+                        continue;
+                    int target = neighbour[1] * width + neighbour[0];
+                    double length = Math.hypot(es[target] - es[gridId], ns[target] - ns[gridId]);
+                    int lengthQ = (int) Math.round(length * 16);
+                    edges.writeInt(rng.nextBoolean() ? ~nodeIds[target] : nodeIds[target]);
+                    edges.writeShort(lengthQ);
+                    edges.writeShort(rng.nextInt(1 << 10));
+                    edges.writeShort(rng.nextInt(2));
+                    // Uncompressed profile (type 1) or none
+                    int sampleCount = 1 + (lengthQ + 31) / 32;
+                    if (rng.nextBoolean()) {
+                        profileIds.writeInt((1 << 30) | elevationCount);
+                        for (int i = 0; i < sampleCount; i++)
+                            elevations.writeShort(rng.nextInt(1 << 14));
+                        elevationCount += sampleCount;
+                    } else
+                        profileIds.writeInt(0);
+                    outDegree++;
+                }
+                nodes.writeInt((int) Math.round(es[gridId] * 16));
+                nodes.writeInt((int) Math.round(ns[gridId] * 16));
+                nodes.writeInt((outDegree << 28) | edgeCount);
+                edgeCount += outDegree;
+            }
+        }
+        try (DataOutputStream attributes = newStream(basePath, "attributes.bin")) {
+            attributes.writeLong(AttributeSet.of(Attribute.HIGHWAY_TRACK).bits());
+            attributes.writeLong(AttributeSet.of(Attribute.HIGHWAY_RESIDENTIAL).bits());
+        }
+    }
+
+    private static DataOutputStream newStream(Path basePath, String fileName) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(basePath.resolve(fileName))));
+    }
+
+}
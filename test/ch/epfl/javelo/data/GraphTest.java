@@ -19,6 +19,7 @@ import ch.epfl.javelo.Bits;
 import ch.epfl.javelo.Q28_4;
 import ch.epfl.javelo.projection.PointCh;
 import ch.epfl.javelo.projection.SwissBounds;
+import ch.epfl.test.TestGraphs;
 import ch.epfl.test.TestUtils;
 
 import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
@@ -159,6 +160,11 @@ public class GraphTest {
         assertEquals(4, graph.nodeCount());
     }
 
+    @Test
+    void edgeCountTest() {
+        assertEquals(3, graph.edgeCount());
+    }
+
     @Test
     void nodePointTest() {
         TestUtils.assertEqualsPointCh(node0, graph.nodePoint(0), 1e-6);
@@ -200,6 +206,33 @@ public class GraphTest {
                         2 * SECTOR_WIDTH));
     }
 
+    @Test
+    void nodeClosestToWorksOnRandomPoints() {
+        var rng = newRandom();
+        var graph = TestGraphs.randomGrid(20, 15, rng);
+        var points = new ArrayList<PointCh>();
+        for (int i = 0; i < RANDOM_ITERATIONS; i += 1) {
+            var point = new PointCh(SwissBounds.MIN_E + rng.nextDouble(0, 2200),
+                                    SwissBounds.MIN_N + rng.nextDouble(0, 1700));
+            var searchDistance = rng.nextDouble(0, 300);
+            var expected = -1;
+            var smallestDistance = searchDistance;
+            for (int nodeId = 0; nodeId < graph.nodeCount(); nodeId += 1) {
+                var distance = graph.nodePoint(nodeId).distanceTo(point);
+                if (distance < smallestDistance) {
+                    smallestDistance = distance;
+                    expected = nodeId;
+                }
+            }
+            assertEquals(expected, graph.nodeClosestTo(point, searchDistance));
+            points.add(point);
+        }
+        var closestNodeIds = graph.nodesClosestTo(points, 150);
+        assertEquals(points.size(), closestNodeIds.length);
+        for (int i = 0; i < points.size(); i += 1)
+            assertEquals(graph.nodeClosestTo(points.get(i), 150), closestNodeIds[i]);
+    }
+
     @Test
     void edgeTargetNodeIdTest() {
         assertEquals(2, graph.edgeTargetNodeId(0));
@@ -214,6 +247,21 @@ public class GraphTest {
         assertFalse(graph.edgeIsInverted(2));
     }
 
+    @Test
+    void edgeAttributesIndexTest() {
+        assertEquals(0, graph.edgeAttributesIndex(0));
+        assertEquals(0, graph.edgeAttributesIndex(1));
+        assertEquals(1, graph.edgeAttributesIndex(2));
+    }
+
+    @Test
+    void attributeSetsTest() {
+        assertEquals(List.of(new AttributeSet(0L), new AttributeSet(0b100111L)),
+                     graph.attributeSets());
+        assertThrows(UnsupportedOperationException.class,
+                () -> graph.attributeSets().add(new AttributeSet(0L)));
+    }
+
     @Test
     void edgeAttributesTest() {
         assertEquals(new AttributeSet(0), graph.edgeAttributes(0));
@@ -0,0 +1,160 @@
+package ch.epfl.javelo.data;
+
+import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.random.RandomGenerator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ch.epfl.javelo.data.SyntheticGraphGenerator.Topology;
+import ch.epfl.javelo.routing.CityBikeCF;
+import ch.epfl.javelo.routing.RouteComputer;
+
+class SyntheticGraphGeneratorTest {
+
+    private static final int NODE_COUNT = 5_000;
+
+    @Test
+    void gridGraphIsConsistent(@TempDir Path directory) throws IOException {
+        Graph graph = generatedGraph(directory, Topology.GRID);
+        int edgeCount = 0;
+        for (int nodeId = 0; nodeId < graph.nodeCount(); nodeId++) {
+            int outDegree = graph.nodeOutDegree(nodeId);
+            assertTrue(2 <= outDegree && outDegree <= 4);
+            edgeCount += outDegree;
+        }
+        assertEquals(graph.edgeCount(), edgeCount);
+
+        RandomGenerator rng = newRandom();
+        RouteComputer routeComputer = new RouteComputer(graph, new CityBikeCF(graph));
+        int routeCount = 0;
+        for (int i = 0; i < RANDOM_ITERATIONS; i++) {
+            int startNodeId = rng.nextInt(graph.nodeCount());
+            int endNodeId = rng.nextInt(graph.nodeCount());
+            if (startNodeId != endNodeId
+                    && routeComputer.bestRouteBetween(startNodeId, endNodeId) != null)
+                routeCount++;
+        }
+        // A few nodes are cut off by forbidden or one-way roads
+        assertTrue(routeCount > RANDOM_ITERATIONS * 0.8);
+    }
+
+    @Test
+    void randomPlanarGraphIsConsistent(@TempDir Path directory) throws IOException {
+        Graph graph = generatedGraph(directory, Topology.RANDOM_PLANAR);
+        int maxOutDegree = 0;
+        for (int nodeId = 0; nodeId < graph.nodeCount(); nodeId++)
+            maxOutDegree = Math.max(maxOutDegree, graph.nodeOutDegree(nodeId));
+        assertTrue(5 <= maxOutDegree && maxOutDegree <= 8);
+        assertTrue(graph.edgeCount() > 4 * NODE_COUNT);
+    }
+
+    @Test
+    void generatorUsesEveryProfileTypeAndAttributeSet(@TempDir Path directory)
+            throws IOException {
+        Graph graph = generatedGraph(directory, Topology.RANDOM_PLANAR);
+        GraphEdges edges = edges(directory);
+        int[] typeCounts = new int[4];
+        int[] attributeSetCounts = new int[graph.attributeSets().size()];
+        for (int edgeId = 0; edgeId < graph.edgeCount(); edgeId++) {
+            typeCounts[edges.profileIds().get(edgeId) >>> 30]++;
+            attributeSetCounts[graph.edgeAttributesIndex(edgeId)]++;
+        }
+        for (int typeCount : typeCounts)
+            assertTrue(typeCount > 0);
+        // Most profiles are compressed with 4 bits deltas
+        assertTrue(typeCounts[3] > graph.edgeCount() / 2);
+        for (int attributeSetCount : attributeSetCounts)
+            assertTrue(attributeSetCount > 0);
+    }
+
+    @Test
+    void generatorIsDeterministic(@TempDir Path directory) throws IOException {
+        Path first = directory.resolve("first");
+        Path second = directory.resolve("second");
+        Path other = directory.resolve("other");
+        SyntheticGraphGenerator.generate(first, NODE_COUNT, Topology.RANDOM_PLANAR, 1);
+        SyntheticGraphGenerator.generate(second, NODE_COUNT, Topology.RANDOM_PLANAR, 1);
+        SyntheticGraphGenerator.generate(other, NODE_COUNT, Topology.RANDOM_PLANAR, 2);
+        for (String fileName : new String[] {"nodes.bin", "sectors.bin", "edges.bin",
+                "profile_ids.bin", "elevations.bin", "attributes.bin"})
+            assertArrayEquals(Files.readAllBytes(first.resolve(fileName)),
+                              Files.readAllBytes(second.resolve(fileName)));
+        assertFalse(Files.mismatch(first.resolve("edges.bin"), other.resolve("edges.bin")) < 0);
+    }
+
+    @Test
+    void generatorThrowsOnInvalidNodeCount(@TempDir Path directory) {
+        assertThrows(IllegalArgumentException.class, () -> SyntheticGraphGenerator.generate(
+                directory, SyntheticGraphGenerator.MIN_NODE_COUNT - 1, Topology.GRID, 1));
+        assertThrows(IllegalArgumentException.class, () -> SyntheticGraphGenerator.generate(
+                directory, SyntheticGraphGenerator.MAX_NODE_COUNT + 1, Topology.GRID, 1));
+    }
+
+    /**
+     * Generates a graph, loads it and checks that its sectors give every node, that each road is
+     * made of two opposite edges sharing their length, attributes and profile, and that the
+     * lengths and elevation gains match the positions and profiles.
+     */
+    private static Graph generatedGraph(Path directory, Topology topology) throws IOException {
+        int nodeCount = SyntheticGraphGenerator.generate(directory, NODE_COUNT, topology, 2022);
+        Graph graph = Graph.loadFrom(directory);
+        GraphEdges edges = edges(directory);
+        assertEquals(nodeCount, graph.nodeCount());
+        assertTrue(NODE_COUNT <= nodeCount && nodeCount < NODE_COUNT * 1.02);
+
+        for (int nodeId = 0; nodeId < graph.nodeCount(); nodeId++) {
+            assertEquals(nodeId, graph.nodeClosestTo(graph.nodePoint(nodeId), 1));
+            for (int i = 0; i < graph.nodeOutDegree(nodeId); i++) {
+                int edgeId = graph.nodeOutEdgeId(nodeId, i);
+                int targetNodeId = graph.edgeTargetNodeId(edgeId);
+                assertNotEquals(nodeId, targetNodeId);
+                assertEquals(graph.nodePoint(nodeId).distanceTo(graph.nodePoint(targetNodeId)),
+                             graph.edgeLength(edgeId), 1.0 / 16);
+
+                int oppositeEdgeId = -1;
+                for (int j = 0; j < graph.nodeOutDegree(targetNodeId); j++) {
+                    int candidateEdgeId = graph.nodeOutEdgeId(targetNodeId, j);
+                    if (graph.edgeTargetNodeId(candidateEdgeId) == nodeId)
+                        oppositeEdgeId = candidateEdgeId;
+                }
+                assertNotEquals(-1, oppositeEdgeId);
+                assertNotEquals(graph.edgeIsInverted(edgeId),
+                                graph.edgeIsInverted(oppositeEdgeId));
+                assertEquals(graph.edgeLength(edgeId), graph.edgeLength(oppositeEdgeId));
+                assertEquals(graph.edgeAttributes(edgeId), graph.edgeAttributes(oppositeEdgeId));
+                assertEquals(edges.profileIds().get(edgeId),
+                             edges.profileIds().get(oppositeEdgeId));
+
+                float[] samples = edges.profileSamples(edgeId);
+                float[] oppositeSamples = edges.profileSamples(oppositeEdgeId);
+                assertEquals(samples.length, oppositeSamples.length);
+                double elevationGain = 0;
+                for (int j = 0; j < samples.length; j++) {
+                    assertEquals(samples[j], oppositeSamples[samples.length - 1 - j]);
+                    assertTrue(200 < samples[j] && samples[j] < 2500);
+                    if (j > 0)
+                        elevationGain += Math.max(0, samples[j] - samples[j - 1]);
+                }
+                assertEquals(elevationGain, graph.edgeElevationGain(edgeId));
+            }
+        }
+        return graph;
+    }
+
+    private static GraphEdges edges(Path directory) throws IOException {
+        return new GraphEdges(
+                Graph.mapFileToBuffer(directory, "edges.bin"),
+                Graph.mapFileToBuffer(directory, "profile_ids.bin").asIntBuffer(),
+                Graph.mapFileToBuffer(directory, "elevations.bin").asShortBuffer());
+    }
+
+}
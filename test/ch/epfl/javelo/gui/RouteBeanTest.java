@@ -0,0 +1,164 @@
+package ch.epfl.javelo.gui;
+
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.random.RandomGenerator;
+import org.junit.jupiter.api.Test;
+import ch.epfl.javelo.data.Graph;
+import ch.epfl.javelo.routing.CityBikeCF;
+import ch.epfl.javelo.routing.Route;
+import ch.epfl.javelo.routing.RouteCache;
+import ch.epfl.javelo.routing.RouteComputer;
+import ch.epfl.test.TestGraphs;
+
+class RouteBeanTest {
+
+    private static final Graph GRAPH = TestGraphs.randomGrid(20, 15, newRandom());
+
+    // Publications of the route bean, run by the test thread (acting as the application thread)
+    private final BlockingQueue<Runnable> publications = new LinkedBlockingQueue<>();
+
+    @Test
+    void routeIsMadeOfTheBestRoutesBetweenWaypoints() throws InterruptedException {
+        RouteComputer routeComputer = new RouteComputer(GRAPH, new CityBikeCF(GRAPH));
+        RouteBean routeBean = newRouteBean(routeComputer);
+        RandomGenerator rng = newRandom();
+        for (int i = 0; i < 20; i++) {
+            List<Waypoint> waypoints = randomWaypoints(rng, 2 + rng.nextInt(10));
+            routeBean.waypoints().setAll(waypoints);
+            publications.poll(10, TimeUnit.SECONDS).run();
+
+            double expectedLength = 0;
+            boolean exists = true;
+            for (int j = 0; j < waypoints.size() - 1 && exists; j++) {
+                int startNodeId = waypoints.get(j).closestNodeId();
+                int endNodeId = waypoints.get(j + 1).closestNodeId();
+                if (startNodeId == endNodeId)
+                    continue;
+                Route segment = routeComputer.bestRouteBetween(startNodeId, endNodeId);
+                exists = segment != null;
+                expectedLength += exists ? segment.length() : 0;
+            }
+            assertEquals(exists, routeBean.isRouteValid());
+            if (!exists) {
+                assertFalse(routeBean.isRouteValid());
+                assertNull(routeBean.elevationProfile());
+                continue;
+            }
+            assertTrue(routeBean.isRouteValid());
+            assertEquals(expectedLength, routeBean.route().length(), 1e-6);
+            assertEquals(waypoints.get(0).closestNodeId(),
+                         routeBean.route().edges().get(0).fromNodeId());
+        }
+    }
+
+    @Test
+    void movedWaypointRouteIsTheBestRoute() throws InterruptedException {
+        RouteComputer routeComputer = new RouteComputer(GRAPH, new CityBikeCF(GRAPH));
+        RouteBean routeBean = newRouteBean(routeComputer);
+        RandomGenerator rng = newRandom();
+        List<Waypoint> waypoints = new ArrayList<>(randomWaypoints(rng, 4));
+        routeBean.waypoints().setAll(waypoints);
+        publications.poll(10, TimeUnit.SECONDS).run();
+        for (int i = 0; i < 20; i++) {
+            // Moves a waypoint to a neighbour of its node
+            int movedIndex = rng.nextInt(waypoints.size());
+            int nodeId = waypoints.get(movedIndex).closestNodeId();
+            if (GRAPH.nodeOutDegree(nodeId) == 0)
+                continue;
+            int edgeId = GRAPH.nodeOutEdgeId(nodeId, rng.nextInt(GRAPH.nodeOutDegree(nodeId)));
+            int newNodeId = GRAPH.edgeTargetNodeId(edgeId);
+            waypoints.set(movedIndex, new Waypoint(GRAPH.nodePoint(newNodeId), newNodeId));
+            routeBean.waypoints().set(movedIndex, waypoints.get(movedIndex));
+            publications.poll(10, TimeUnit.SECONDS).run();
+
+            RouteBean expectedBean = newRouteBean(routeComputer);
+            expectedBean.waypoints().setAll(waypoints);
+            publications.poll(10, TimeUnit.SECONDS).run();
+            assertEquals(expectedBean.isRouteValid(), routeBean.isRouteValid());
+            if (expectedBean.isRouteValid())
+                assertEquals(expectedBean.route().length(), routeBean.route().length(),
+                             1e-3 * expectedBean.route().length());
+        }
+    }
+
+    @Test
+    void onlyLatestRouteIsPublished() throws InterruptedException {
+        RouteComputer routeComputer = new RouteComputer(GRAPH, new CityBikeCF(GRAPH));
+        RouteBean routeBean = newRouteBean(routeComputer);
+        RandomGenerator rng = newRandom();
+        List<Waypoint> latestWaypoints = List.of();
+        for (int i = 0; i < 10; i++) {
+            latestWaypoints = randomWaypoints(rng, 10);
+            routeBean.waypoints().setAll(latestWaypoints);
+        }
+        // Superseded computations are either cancelled or ignored when published
+        for (Runnable publication = publications.poll(10, TimeUnit.SECONDS); publication != null;
+             publication = publications.poll(500, TimeUnit.MILLISECONDS))
+            publication.run();
+
+        RouteBean expectedBean = newRouteBean(routeComputer);
+        expectedBean.waypoints().setAll(latestWaypoints);
+        publications.poll(10, TimeUnit.SECONDS).run();
+        assertEquals(expectedBean.isRouteValid(), routeBean.isRouteValid());
+        if (expectedBean.isRouteValid())
+            assertEquals(expectedBean.route().length(), routeBean.route().length());
+    }
+
+    @Test
+    void lessThanTwoWaypointsEmptiesRouteImmediately() throws InterruptedException {
+        RouteComputer routeComputer = new RouteComputer(GRAPH, new CityBikeCF(GRAPH));
+        RouteBean routeBean = newRouteBean(routeComputer);
+        routeBean.waypoints().setAll(randomWaypoints(newRandom(), 2));
+        routeBean.waypoints().remove(1);
+        assertNull(routeBean.route());
+        assertNull(routeBean.elevationProfile());
+        // The computation for two waypoints, if not cancelled in time, is ignored
+        Runnable publication = publications.poll(500, TimeUnit.MILLISECONDS);
+        if (publication != null)
+            publication.run();
+        assertNull(routeBean.route());
+    }
+
+    @Test
+    void segmentsAreSharedThroughTheCache() throws InterruptedException {
+        RouteComputer routeComputer = new RouteComputer(GRAPH, new CityBikeCF(GRAPH));
+        RouteCache routeCache = new RouteCache(1 << 20);
+        List<Waypoint> waypoints = randomWaypoints(newRandom(), 5);
+        RouteBean routeBean = new RouteBean(routeComputer, routeCache, publications::add);
+        routeBean.waypoints().setAll(waypoints);
+        publications.poll(10, TimeUnit.SECONDS).run();
+        long missCount = routeCache.missCount();
+        assertEquals(0, routeCache.hitCount());
+
+        RouteBean otherBean = new RouteBean(routeComputer, routeCache, publications::add);
+        otherBean.waypoints().setAll(waypoints);
+        publications.poll(10, TimeUnit.SECONDS).run();
+        assertEquals(routeBean.isRouteValid(), otherBean.isRouteValid());
+        // Missing routes are not cached
+        if (routeBean.isRouteValid()) {
+            assertEquals(missCount, routeCache.missCount());
+            assertEquals(missCount, routeCache.hitCount());
+            assertEquals(routeBean.route().length(), otherBean.route().length());
+        }
+    }
+
+    private RouteBean newRouteBean(RouteComputer routeComputer) {
+        return new RouteBean(routeComputer, new RouteCache(1 << 20), publications::add);
+    }
+
+    private static List<Waypoint> randomWaypoints(RandomGenerator rng, int count) {
+        return rng.ints(count, 0, GRAPH.nodeCount())
+                  .mapToObj(nodeId -> new Waypoint(GRAPH.nodePoint(nodeId), nodeId))
+                  .toList();
+    }
+
+}
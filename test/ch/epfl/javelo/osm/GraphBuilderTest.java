@@ -0,0 +1,435 @@
+package ch.epfl.javelo.osm;
+
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.random.RandomGenerator;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ch.epfl.javelo.Math2;
+import ch.epfl.javelo.data.Attribute;
+import ch.epfl.javelo.data.AttributeSet;
+import ch.epfl.javelo.data.Graph;
+import ch.epfl.javelo.data.GraphSectors;
+import ch.epfl.javelo.projection.Ch1903;
+import ch.epfl.javelo.projection.PointCh;
+
+class GraphBuilderTest {
+
+    // Grid of nodes of the extract, about 110 m apart, near Lausanne
+    private static final int ROW_COUNT = 12;
+    private static final int COLUMN_COUNT = 15;
+    private static final long FIRST_NODE_ID = 1_000;
+    private static final long OUTSIDE_NODE_ID = 1;
+    private static final long SOUTH_WEST_LAT = 465_000_000; // 1e-7 degrees
+    private static final long SOUTH_WEST_LON = 66_000_000;
+    private static final int STEP = 10_000;
+
+    private static final double DEM_CELL_SIZE = 25;
+
+    /**
+     * Elevation of the points, a plane which the grid interpolates exactly.
+     */
+    private static double elevation(double e, double n) {
+        return 500 + 0.05 * (e - 2_530_000) - 0.02 * (n - 1_150_000);
+    }
+
+    /**
+     * Elements of an extract, in the units of the PBF format. (record)
+     */
+    private record Extract(long[] nodeIds, long[] lats, long[] lons, List<Way> ways) {
+
+        private record Way(long id, long[] nodeIds, Map<String, String> tags) {
+        }
+
+        static Extract newExtract() {
+            RandomGenerator rng = newRandom();
+            int nodeCount = ROW_COUNT * COLUMN_COUNT + 1;
+            long[] nodeIds = new long[nodeCount];
+            long[] lats = new long[nodeCount];
+            long[] lons = new long[nodeCount];
+            nodeIds[0] = OUTSIDE_NODE_ID;
+            lats[0] = 485_000_000; // North of Switzerland
+            lons[0] = SOUTH_WEST_LON;
+            for (int row = 0; row < ROW_COUNT; row++)
+                for (int column = 0; column < COLUMN_COUNT; column++) {
+                    int i = 1 + row * COLUMN_COUNT + column;
+                    nodeIds[i] = gridNodeId(row, column);
+                    lats[i] = SOUTH_WEST_LAT + row * STEP + rng.nextInt(-STEP / 4, STEP / 4);
+                    lons[i] = SOUTH_WEST_LON + column * STEP + rng.nextInt(-STEP / 4, STEP / 4);
+                }
+
+            List<Way> ways = new ArrayList<>();
+            for (int row = 0; row < ROW_COUNT; row++) {
+                List<Long> wayNodeIds = new ArrayList<>();
+                for (int column = 0; column < COLUMN_COUNT; column++) {
+                    wayNodeIds.add(gridNodeId(row, column));
+                    // Repeated node, without segment
+                    if (row == 0 && column == 0)
+                        wayNodeIds.add(gridNodeId(row, column));
+                }
+                ways.add(new Way(ways.size() + 1, toArray(wayNodeIds), row % 2 == 0
+                        ? Map.of("highway", "residential", "name", "Rue " + row)
+                        : Map.of("highway", "track", "tracktype", "grade2",
+                                 "surface", "gravel")));
+            }
+            for (int column = 0; column < COLUMN_COUNT; column += 3) {
+                List<Long> wayNodeIds = new ArrayList<>();
+                for (int row = 0; row < ROW_COUNT; row++)
+                    wayNodeIds.add(gridNodeId(row, column));
+                ways.add(new Way(ways.size() + 1, toArray(wayNodeIds),
+                                 Map.of("highway", "cycleway")));
+            }
+            long[] cell = {gridNodeId(0, 1), gridNodeId(0, 2), gridNodeId(1, 2),
+                           gridNodeId(1, 1), gridNodeId(0, 1)};
+            ways.add(new Way(ways.size() + 1, cell, Map.of("building", "yes")));
+            ways.add(new Way(ways.size() + 1, cell,
+                             Map.of("highway", "pedestrian", "area", "yes")));
+            ways.add(new Way(ways.size() + 1, new long[]{gridNodeId(0, 0), OUTSIDE_NODE_ID},
+                             Map.of("highway", "service")));
+            return new Extract(nodeIds, lats, lons, ways);
+        }
+
+        private static long[] toArray(List<Long> values) {
+            return values.stream().mapToLong(Long::longValue).toArray();
+        }
+
+        static double degrees(long value) {
+            // As computed by the PBF reader, with the default granularity
+            return 1e-9 * (100 * value);
+        }
+
+        void writeXml(Path file) throws IOException {
+            try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                writer.write("<?xml version='1.0' encoding='UTF-8'?>\n<osm version=\"0.6\">\n");
+                for (int i = 0; i < nodeIds.length; i++)
+                    writer.write("<node id=\"%d\" lat=\"%s\" lon=\"%s\"/>\n".formatted(
+                            nodeIds[i], degrees(lats[i]), degrees(lons[i])));
+                for (Way way : ways) {
+                    writer.write("<way id=\"" + way.id() + "\">\n");
+                    for (long nodeId : way.nodeIds())
+                        writer.write("<nd ref=\"" + nodeId + "\"/>\n");
+                    for (Map.Entry<String, String> tag : way.tags().entrySet())
+                        writer.write("<tag k=\"%s\" v=\"%s\"/>\n".formatted(tag.getKey(),
+                                                                            tag.getValue()));
+                    writer.write("</way>\n");
+                }
+                writer.write("<relation id=\"1\"/>\n</osm>\n");
+            }
+        }
+
+        void writePbf(Path file) throws IOException {
+            try (DataOutputStream stream = new DataOutputStream(Files.newOutputStream(file))) {
+                ProtobufWriter header = new ProtobufWriter();
+                header.string(4, "OsmSchema-V0.6");
+                header.string(4, "DenseNodes");
+                writeBlob(stream, "OSMHeader", header);
+
+                ProtobufWriter denseNodes = new ProtobufWriter();
+                denseNodes.packedDeltas(1, nodeIds);
+                denseNodes.packedDeltas(8, lats);
+                denseNodes.packedDeltas(9, lons);
+                ProtobufWriter nodesGroup = new ProtobufWriter();
+                nodesGroup.message(2, denseNodes);
+                ProtobufWriter nodesBlock = new ProtobufWriter();
+                nodesBlock.message(1, new ProtobufWriter());
+                nodesBlock.message(2, nodesGroup);
+                writeBlob(stream, "OSMData", nodesBlock);
+
+                Map<String, Integer> strings = new LinkedHashMap<>();
+                strings.put("", 0);
+                ProtobufWriter waysGroup = new ProtobufWriter();
+                for (Way way : ways) {
+                    ProtobufWriter wayMessage = new ProtobufWriter();
+                    wayMessage.varint(1, way.id());
+                    List<Long> keys = new ArrayList<>();
+                    List<Long> values = new ArrayList<>();
+                    for (Map.Entry<String, String> tag : way.tags().entrySet()) {
+                        keys.add((long) strings.computeIfAbsent(tag.getKey(),
+                                                                k -> strings.size()));
+                        values.add((long) strings.computeIfAbsent(tag.getValue(),
+                                                                  v -> strings.size()));
+                    }
+                    wayMessage.packed(2, toArray(keys));
+                    wayMessage.packed(3, toArray(values));
+                    wayMessage.packedDeltas(8, way.nodeIds());
+                    waysGroup.message(3, wayMessage);
+                }
+                ProtobufWriter stringTable = new ProtobufWriter();
+                for (String string : strings.keySet())
+                    stringTable.string(1, string);
+                ProtobufWriter waysBlock = new ProtobufWriter();
+                waysBlock.message(1, stringTable);
+                waysBlock.message(2, waysGroup);
+                writeBlob(stream, "OSMData", waysBlock);
+            }
+        }
+
+        private static void writeBlob(DataOutputStream stream, String type,
+                                      ProtobufWriter data) throws IOException {
+            byte[] rawData = data.toByteArray();
+            ByteArrayOutputStream zlibData = new ByteArrayOutputStream();
+            try (OutputStream deflater = new DeflaterOutputStream(zlibData, new Deflater())) {
+                deflater.write(rawData);
+            }
+            ProtobufWriter blob = new ProtobufWriter();
+            blob.varint(2, rawData.length);
+            blob.bytes(3, zlibData.toByteArray());
+            byte[] blobBytes = blob.toByteArray();
+            ProtobufWriter blobHeader = new ProtobufWriter();
+            blobHeader.string(1, type);
+            blobHeader.varint(3, blobBytes.length);
+            byte[] blobHeaderBytes = blobHeader.toByteArray();
+            stream.writeInt(blobHeaderBytes.length);
+            stream.write(blobHeaderBytes);
+            stream.write(blobBytes);
+        }
+
+    }
+
+    /**
+     * Writer of the fields of a Protocol Buffers message used by the PBF format.
+     */
+    private static final class ProtobufWriter {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        void varint(int fieldNumber, long value) {
+            rawVarint((long) fieldNumber << 3);
+            rawVarint(value);
+        }
+
+        void string(int fieldNumber, String value) {
+            bytes(fieldNumber, value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        void message(int fieldNumber, ProtobufWriter message) {
+            bytes(fieldNumber, message.toByteArray());
+        }
+
+        void bytes(int fieldNumber, byte[] value) {
+            rawVarint(((long) fieldNumber << 3) | 2);
+            rawVarint(value.length);
+            bytes.writeBytes(value);
+        }
+
+        void packed(int fieldNumber, long[] values) {
+            ProtobufWriter packed = new ProtobufWriter();
+            for (long value : values)
+                packed.rawVarint(value);
+            message(fieldNumber, packed);
+        }
+
+        /**
+         * Writes values delta-encoded, as signed varints.
+         */
+        void packedDeltas(int fieldNumber, long[] values) {
+            ProtobufWriter packed = new ProtobufWriter();
+            long previous = 0;
+            for (long value : values) {
+                long delta = value - previous;
+                packed.rawVarint((delta << 1) ^ (delta >> 63));
+                previous = value;
+            }
+            message(fieldNumber, packed);
+        }
+
+        private void rawVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                bytes.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            bytes.write((int) value);
+        }
+
+        byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+
+    }
+
+    private static long gridNodeId(int row, int column) {
+        return FIRST_NODE_ID + row * COLUMN_COUNT + column;
+    }
+
+    private static PointCh projected(long lat, long lon) {
+        double lonRadians = Math.toRadians(Extract.degrees(lon));
+        double latRadians = Math.toRadians(Extract.degrees(lat));
+        return new PointCh(Ch1903.e(lonRadians, latRadians), Ch1903.n(lonRadians, latRadians));
+    }
+
+    /**
+     * Writes a grid of the elevations of a rectangle containing the grid of nodes, in LV03 to
+     * check the conversion.
+     */
+    private static void writeElevationGrid(Path file) throws IOException {
+        PointCh southWest = projected(SOUTH_WEST_LAT - STEP, SOUTH_WEST_LON - STEP);
+        PointCh northEast = projected(SOUTH_WEST_LAT + ROW_COUNT * STEP,
+                                      SOUTH_WEST_LON + COLUMN_COUNT * STEP);
+        double west = Math.floor(southWest.e() - 200);
+        double south = Math.floor(southWest.n() - 200);
+        int columnCount = (int) ((northEast.e() + 200 - west) / DEM_CELL_SIZE);
+        int rowCount = (int) ((northEast.n() + 200 - south) / DEM_CELL_SIZE);
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.US_ASCII)) {
+            writer.write("ncols " + columnCount + "\nnrows " + rowCount + "\n");
+            writer.write("xllcorner " + (west - 2_000_000) + "\n");
+            writer.write("yllcorner " + (south - 1_000_000) + "\n");
+            writer.write("cellsize " + DEM_CELL_SIZE + "\nNODATA_value -9999\n");
+            for (int row = rowCount - 1; row >= 0; row--) {
+                for (int column = 0; column < columnCount; column++)
+                    writer.write(String.format(Locale.ROOT, "%.4f ", elevation(
+                            west + (column + 0.5) * DEM_CELL_SIZE,
+                            south + (row + 0.5) * DEM_CELL_SIZE)));
+                writer.write('\n');
+            }
+        }
+    }
+
+    private static Path newXmlExtract(Path directory) throws IOException {
+        Path file = directory.resolve("extract.osm");
+        Extract.newExtract().writeXml(file);
+        return file;
+    }
+
+    @Test
+    void buildBuildsTheRoadsInSwitzerland(@TempDir Path directory) throws IOException {
+        Path graphPath = directory.resolve("graph");
+        GraphBuilder.Statistics statistics = GraphBuilder.build(
+                new OsmXmlReader(newXmlExtract(directory)), ElevationModel.NONE, graphPath, 2);
+
+        int rowSegmentCount = ROW_COUNT * (COLUMN_COUNT - 1);
+        int columnSegmentCount = Math2.ceilDiv(COLUMN_COUNT, 3) * (ROW_COUNT - 1);
+        assertEquals(ROW_COUNT * COLUMN_COUNT, statistics.nodeCount());
+        assertEquals(2 * (rowSegmentCount + columnSegmentCount), statistics.edgeCount());
+        // residential, track (grade 2, gravel), cycleway and service
+        assertEquals(4, statistics.attributeSetCount());
+        assertEquals(1, statistics.droppedSegmentCount());
+
+        Graph graph = Graph.loadFrom(graphPath);
+        assertEquals(statistics.nodeCount(), graph.nodeCount());
+        assertEquals(statistics.edgeCount(), graph.edgeCount());
+        assertEquals(List.of(AttributeSet.of(Attribute.HIGHWAY_RESIDENTIAL),
+                             AttributeSet.of(Attribute.HIGHWAY_TRACK,
+                                             Attribute.TRACKTYPE_GRADE2,
+                                             Attribute.SURFACE_GRAVEL),
+                             AttributeSet.of(Attribute.HIGHWAY_CYCLEWAY),
+                             AttributeSet.of(Attribute.HIGHWAY_SERVICE)),
+                     graph.attributeSets());
+
+        int[] edgeCounts = new int[graph.attributeSets().size()];
+        for (int nodeId = 0; nodeId < graph.nodeCount(); nodeId++) {
+            PointCh point = graph.nodePoint(nodeId);
+            for (int i = 0; i < graph.nodeOutDegree(nodeId); i++) {
+                int edgeId = graph.nodeOutEdgeId(nodeId, i);
+                PointCh targetPoint = graph.nodePoint(graph.edgeTargetNodeId(edgeId));
+                assertEquals(point.distanceTo(targetPoint), graph.edgeLength(edgeId), 0.1);
+                assertTrue(Double.isNaN(graph.edgeProfile(edgeId).applyAsDouble(0)));
+                edgeCounts[graph.edgeAttributesIndex(edgeId)]++;
+            }
+        }
+        assertArrayEquals(new int[]{rowSegmentCount, rowSegmentCount, 2 * columnSegmentCount, 0},
+                          edgeCounts);
+    }
+
+    @Test
+    void buildSortsTheNodesBySector(@TempDir Path directory) throws IOException {
+        Path graphPath = directory.resolve("graph");
+        GraphBuilder.build(new OsmXmlReader(newXmlExtract(directory)), ElevationModel.NONE,
+                           graphPath, 1);
+        Graph graph = Graph.loadFrom(graphPath);
+        int previousSector = -1;
+        for (int nodeId = 0; nodeId < graph.nodeCount(); nodeId++) {
+            PointCh point = graph.nodePoint(nodeId);
+            int sector = GraphSectors.row(point.n()) * 128 + GraphSectors.column(point.e());
+            assertTrue(previousSector <= sector);
+            previousSector = sector;
+            assertEquals(nodeId, graph.nodeClosestTo(point, 1));
+        }
+    }
+
+    @Test
+    void buildSamplesTheProfilesOfTheElevationModel(@TempDir Path directory)
+            throws IOException {
+        Path gridFile = directory.resolve("dem.asc");
+        writeElevationGrid(gridFile);
+        Path graphPath = directory.resolve("graph");
+        GraphBuilder.build(new OsmXmlReader(newXmlExtract(directory)),
+                           ElevationModel.loadAsciiGrid(gridFile), graphPath, 3);
+        Graph graph = Graph.loadFrom(graphPath);
+        for (int nodeId = 0; nodeId < graph.nodeCount(); nodeId++) {
+            PointCh point = graph.nodePoint(nodeId);
+            double elevation = elevation(point.e(), point.n());
+            for (int i = 0; i < graph.nodeOutDegree(nodeId); i++) {
+                int edgeId = graph.nodeOutEdgeId(nodeId, i);
+                PointCh targetPoint = graph.nodePoint(graph.edgeTargetNodeId(edgeId));
+                double targetElevation = elevation(targetPoint.e(), targetPoint.n());
+                double length = graph.edgeLength(edgeId);
+                assertEquals(elevation, graph.edgeProfile(edgeId).applyAsDouble(0), 0.1);
+                assertEquals(targetElevation, graph.edgeProfile(edgeId).applyAsDouble(length),
+                             0.1);
+                assertEquals(Math.max(0, targetElevation - elevation),
+                             graph.edgeElevationGain(edgeId), 0.2);
+            }
+        }
+    }
+
+    @Test
+    void buildReadsXmlAndPbfExtractsTheSameWay(@TempDir Path directory) throws IOException {
+        Extract extract = Extract.newExtract();
+        Path xmlFile = directory.resolve("extract.osm");
+        Path pbfFile = directory.resolve("extract.osm.pbf");
+        extract.writeXml(xmlFile);
+        extract.writePbf(pbfFile);
+        Path gridFile = directory.resolve("dem.asc");
+        writeElevationGrid(gridFile);
+        ElevationModel elevationModel = ElevationModel.loadAsciiGrid(gridFile);
+
+        Path xmlGraphPath = directory.resolve("xml");
+        Path pbfGraphPath = directory.resolve("pbf");
+        GraphBuilder.Statistics xmlStatistics = GraphBuilder.build(
+                OsmReader.of(xmlFile, 2), elevationModel, xmlGraphPath, 2);
+        GraphBuilder.Statistics pbfStatistics = GraphBuilder.build(
+                OsmReader.of(pbfFile, 2), elevationModel, pbfGraphPath, 2);
+        assertEquals(xmlStatistics, pbfStatistics);
+        for (String fileName : List.of("nodes.bin", "sectors.bin", "edges.bin",
+                                       "profile_ids.bin", "elevations.bin", "attributes.bin"))
+            assertArrayEquals(Files.readAllBytes(xmlGraphPath.resolve(fileName)),
+                              Files.readAllBytes(pbfGraphPath.resolve(fileName)));
+    }
+
+    @Test
+    void roadAttributesKeepsTheAttributesOfTheRoads() {
+        assertEquals(AttributeSet.of(Attribute.HIGHWAY_TRACK, Attribute.SURFACE_GRAVEL),
+                     GraphBuilder.roadAttributes(Map.of("highway", "track", "surface", "gravel",
+                                                        "name", "Chemin")));
+        assertNull(GraphBuilder.roadAttributes(Map.of("surface", "gravel")));
+        assertNull(GraphBuilder.roadAttributes(Map.of("highway", "bus_stop")));
+        assertNull(GraphBuilder.roadAttributes(Map.of("highway", "pedestrian", "area", "yes")));
+    }
+
+    @Test
+    void buildFailsOnInvalidThreadCount(@TempDir Path directory) {
+        assertThrows(IllegalArgumentException.class, () -> GraphBuilder.build(
+                new OsmXmlReader(directory.resolve("extract.osm")), ElevationModel.NONE,
+                directory, 0));
+    }
+
+}
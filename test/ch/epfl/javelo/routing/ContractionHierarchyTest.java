@@ -0,0 +1,147 @@
+package ch.epfl.javelo.routing;
+
+import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.random.RandomGenerator;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ch.epfl.javelo.data.Graph;
+import ch.epfl.test.TestGraphs;
+
+class ContractionHierarchyTest {
+
+    private static Graph graph;
+    private static CostFunction costFunction;
+    private static ContractionHierarchy hierarchy;
+
+    @BeforeAll
+    static void buildHierarchy() {
+        graph = TestGraphs.randomGrid(20, 15, newRandom());
+        costFunction = new CityBikeCF(graph);
+        hierarchy = ContractionHierarchy.build(graph, costFunction);
+    }
+
+    @Test
+    void bestRouteBetweenThrowsOnSameNodes() {
+        assertThrows(IllegalArgumentException.class, () -> hierarchy.bestRouteBetween(3, 3));
+    }
+
+    @Test
+    void ranksArePermutationOfNodes() {
+        boolean[] seen = new boolean[graph.nodeCount()];
+        for (int nodeId = 0; nodeId < graph.nodeCount(); nodeId++) {
+            int rank = hierarchy.rank(nodeId);
+            assertTrue(!seen[rank]);
+            seen[rank] = true;
+        }
+    }
+
+    @Test
+    void bestRouteBetweenHasSameCostAsRouteComputer() {
+        assertSameRoutesAsRouteComputer(hierarchy);
+    }
+
+    @Test
+    void bestRouteBetweenIsContinuous() {
+        RandomGenerator rng = newRandom();
+        for (int i = 0; i < RANDOM_ITERATIONS; i++) {
+            int startNodeId = rng.nextInt(graph.nodeCount());
+            int endNodeId = rng.nextInt(graph.nodeCount());
+            if (startNodeId == endNodeId)
+                continue;
+            Route route = hierarchy.bestRouteBetween(startNodeId, endNodeId);
+            if (route == null)
+                continue;
+            int nodeId = startNodeId;
+            for (Edge edge : route.edges()) {
+                assertEquals(nodeId, edge.fromNodeId());
+                nodeId = edge.toNodeId();
+            }
+            assertEquals(endNodeId, nodeId);
+        }
+    }
+
+    @Test
+    void writtenHierarchyCanBeLoaded(@TempDir Path directory) throws IOException {
+        hierarchy.writeTo(directory);
+        assertEquals(4L * (CostFactorTable.FILE_HEADER_INTS + graph.nodeCount()),
+                     Files.size(directory.resolve(ContractionHierarchy.RANKS_FILE_NAME)));
+
+        ContractionHierarchy loaded = ContractionHierarchy.loadFrom(directory, graph,
+                                                                    costFunction);
+        assertEquals(hierarchy.shortcutCount(), loaded.shortcutCount());
+        for (int nodeId = 0; nodeId < graph.nodeCount(); nodeId++)
+            assertEquals(hierarchy.rank(nodeId), loaded.rank(nodeId));
+        assertSameRoutesAsRouteComputer(loaded);
+    }
+
+    @Test
+    void loadFromThrowsOnOtherGraph(@TempDir Path directory) throws IOException {
+        hierarchy.writeTo(directory);
+        Graph otherGraph = TestGraphs.randomGrid(5, 5, newRandom());
+        assertThrows(IllegalArgumentException.class,
+                () -> ContractionHierarchy.loadFrom(directory, otherGraph,
+                                                    new CityBikeCF(otherGraph)));
+
+        RandomGenerator rng = newRandom();
+        rng.nextLong();
+        Graph sameSizeGraph = TestGraphs.randomGrid(20, 15, rng);
+        assertThrows(IllegalArgumentException.class,
+                () -> ContractionHierarchy.loadFrom(directory, sameSizeGraph,
+                                                    new CityBikeCF(sameSizeGraph)));
+    }
+
+    @Test
+    void loadFromThrowsOnOtherCostFunction(@TempDir Path directory) throws IOException {
+        hierarchy.writeTo(directory);
+        assertThrows(IllegalArgumentException.class,
+                () -> ContractionHierarchy.loadFrom(directory, graph, (nodeId, edgeId) -> 1));
+    }
+
+    private static void assertSameRoutesAsRouteComputer(ContractionHierarchy hierarchy) {
+        RouteComputer routeComputer = new RouteComputer(graph, costFunction);
+        RandomGenerator rng = newRandom();
+        for (int i = 0; i < RANDOM_ITERATIONS; i++) {
+            int startNodeId = rng.nextInt(graph.nodeCount());
+            int endNodeId = rng.nextInt(graph.nodeCount());
+            if (startNodeId == endNodeId)
+                continue;
+            Route expected = routeComputer.bestRouteBetween(startNodeId, endNodeId);
+            Route actual = hierarchy.bestRouteBetween(startNodeId, endNodeId);
+            if (expected == null) {
+                assertNull(actual);
+                continue;
+            }
+            double expectedCost = routeCost(expected);
+            assertEquals(expectedCost, routeCost(actual), 1e-4 * expectedCost);
+        }
+    }
+
+    /**
+     * Computes the total cost of a route, using the cheapest edge between each pair of nodes.
+     */
+    private static double routeCost(Route route) {
+        double cost = 0;
+        for (Edge edge : route.edges()) {
+            double edgeCost = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < graph.nodeOutDegree(edge.fromNodeId()); i++) {
+                int edgeId = graph.nodeOutEdgeId(edge.fromNodeId(), i);
+                if (graph.edgeTargetNodeId(edgeId) == edge.toNodeId())
+                    edgeCost = Math.min(edgeCost,
+                            costFunction.costFactor(edge.fromNodeId(), edgeId)
+                                    * graph.edgeLength(edgeId));
+            }
+            cost += edgeCost;
+        }
+        return cost;
+    }
+
+}
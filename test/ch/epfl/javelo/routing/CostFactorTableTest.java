@@ -0,0 +1,103 @@
+package ch.epfl.javelo.routing;
+
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ch.epfl.javelo.data.Graph;
+import ch.epfl.javelo.data.SyntheticGraphGenerator;
+import ch.epfl.javelo.data.SyntheticGraphGenerator.Topology;
+import ch.epfl.test.TestGraphs;
+
+class CostFactorTableTest {
+
+    private static Graph graph;
+    private static CostFunction costFunction;
+
+    @BeforeAll
+    static void initGraph() {
+        graph = TestGraphs.randomGrid(12, 10, newRandom());
+        costFunction = new CityBikeCF(graph);
+    }
+
+    @Test
+    void costFactorIsTheDecoratedOne() {
+        CostFactorTable table = CostFactorTable.of(graph, costFunction);
+        for (int nodeId = 0; nodeId < graph.nodeCount(); nodeId++)
+            for (int i = 0; i < graph.nodeOutDegree(nodeId); i++) {
+                int edgeId = graph.nodeOutEdgeId(nodeId, i);
+                assertEquals((float) costFunction.costFactor(nodeId, edgeId),
+                             table.costFactor(nodeId, edgeId));
+            }
+    }
+
+    @Test
+    void fingerprintDependsOnCostFunction() {
+        CostFunction flat = (nodeId, edgeId) -> 1;
+        assertEquals(CostFactorTable.fingerprint(graph, costFunction),
+                     CostFactorTable.fingerprint(graph, new CityBikeCF(graph)));
+        assertNotEquals(CostFactorTable.fingerprint(graph, costFunction),
+                        CostFactorTable.fingerprint(graph, flat));
+    }
+
+    @Test
+    void loadOrComputeWritesTheTableOnce(@TempDir Path directory) throws IOException {
+        CostFactorTable computed = CostFactorTable.loadOrCompute(directory, graph, costFunction);
+        Path filePath = directory.resolve(CostFactorTable.fileName(graph, costFunction));
+        assertEquals(4L * graph.edgeCount(), Files.size(filePath));
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+
+        CostFactorTable loaded = CostFactorTable.loadOrCompute(directory, graph, costFunction);
+        for (int nodeId = 0; nodeId < graph.nodeCount(); nodeId++)
+            for (int i = 0; i < graph.nodeOutDegree(nodeId); i++) {
+                int edgeId = graph.nodeOutEdgeId(nodeId, i);
+                assertEquals(computed.costFactor(nodeId, edgeId),
+                             loaded.costFactor(nodeId, edgeId));
+            }
+
+        // A truncated table is computed again (the tables mapped above are not read anymore)
+        Files.write(filePath, new byte[Float.BYTES]);
+        CostFactorTable recomputed = CostFactorTable.loadOrCompute(directory, graph, costFunction);
+        assertEquals(4L * graph.edgeCount(), Files.size(filePath));
+        int edgeId = graph.nodeOutEdgeId(0, 0);
+        assertEquals((float) costFunction.costFactor(0, edgeId),
+                     recomputed.costFactor(0, edgeId));
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    void filesDerivedFromAPreviousGraphAreDeleted(@TempDir Path directory) throws IOException {
+        SyntheticGraphGenerator.generate(directory, 400, Topology.GRID, 1);
+        Graph previous = Graph.loadFrom(directory);
+        CostFunction previousCostFunction = new CityBikeCF(previous);
+        previous.nodeInDegree(0);
+        previous.edgeClosestTo(previous.nodePoint(0), 100);
+        CostFactorTable.loadOrCompute(directory, previous, previousCostFunction);
+        Landmarks.compute(previous, previousCostFunction, 2).writeTo(directory);
+        ContractionHierarchy.build(previous, previousCostFunction).writeTo(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(12, files.count());
+        }
+
+        SyntheticGraphGenerator.generate(directory, 400, Topology.GRID, 2);
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(Set.of("nodes.bin", "sectors.bin", "edges.bin", "profile_ids.bin",
+                                "elevations.bin", "attributes.bin"),
+                         files.map(file -> file.getFileName().toString())
+                                 .collect(Collectors.toSet()));
+        }
+    }
+
+}
@@ -0,0 +1,82 @@
+package ch.epfl.javelo.routing;
+
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import java.util.random.RandomGenerator;
+import org.junit.jupiter.api.Test;
+import ch.epfl.javelo.data.Graph;
+import ch.epfl.test.TestGraphs;
+
+class CostMatrixTest {
+
+    @Test
+    void matrixContainsTheBestRoutes() {
+        Graph graph = TestGraphs.randomGrid(20, 15, newRandom());
+        CostFunction costFunction = new CityBikeCF(graph);
+        RouteComputer routeComputer = new RouteComputer(graph, costFunction);
+        RandomGenerator rng = newRandom();
+        int[] sources = rng.ints(12, 0, graph.nodeCount()).toArray();
+        int[] targets = rng.ints(30, 0, graph.nodeCount()).toArray();
+        targets[0] = sources[0];
+
+        CostMatrix matrix = CostMatrix.compute(graph, costFunction, sources, targets);
+        assertEquals(sources.length, matrix.sourceCount());
+        assertEquals(targets.length, matrix.targetCount());
+        for (int i = 0; i < sources.length; i++)
+            for (int j = 0; j < targets.length; j++) {
+                if (sources[i] == targets[j]) {
+                    assertEquals(0, matrix.cost(i, j));
+                    assertEquals(0, matrix.length(i, j));
+                    assertNull(matrix.route(i, j));
+                    continue;
+                }
+                Route expected = routeComputer.bestRouteBetween(sources[i], targets[j]);
+                if (expected == null) {
+                    assertEquals(Float.POSITIVE_INFINITY, matrix.cost(i, j));
+                    assertEquals(Float.POSITIVE_INFINITY, matrix.length(i, j));
+                    assertNull(matrix.route(i, j));
+                    continue;
+                }
+                assertEquals(expected.length(), matrix.length(i, j), 1e-3);
+                assertEquals(expected.length(), matrix.route(i, j).length());
+                assertEquals(routeCost(graph, costFunction, expected), matrix.cost(i, j),
+                             1e-4 * matrix.cost(i, j));
+            }
+    }
+
+    @Test
+    void costsAndLengthsAreCopies() {
+        Graph graph = TestGraphs.randomGrid(5, 5, newRandom());
+        CostMatrix matrix = CostMatrix.compute(graph, new CityBikeCF(graph), new int[] {0, 1},
+                                               new int[] {2, 3, 4});
+        float[][] costs = matrix.costs();
+        assertEquals(2, costs.length);
+        assertEquals(3, costs[0].length);
+        assertNotSame(costs, matrix.costs());
+        costs[0][0] = -1;
+        assertEquals(matrix.costs()[0][0], matrix.cost(0, 0));
+        assertEquals(matrix.lengths()[1][2], matrix.length(1, 2));
+    }
+
+    /**
+     * Computes the total cost of a route, using the cheapest edge between each pair of nodes.
+     */
+    private static double routeCost(Graph graph, CostFunction costFunction, Route route) {
+        double cost = 0;
+        for (Edge edge : route.edges()) {
+            double edgeCost = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < graph.nodeOutDegree(edge.fromNodeId()); i++) {
+                int edgeId = graph.nodeOutEdgeId(edge.fromNodeId(), i);
+                if (graph.edgeTargetNodeId(edgeId) == edge.toNodeId())
+                    edgeCost = Math.min(edgeCost,
+                            costFunction.costFactor(edge.fromNodeId(), edgeId)
+                                    * graph.edgeLength(edgeId));
+            }
+            cost += edgeCost;
+        }
+        return cost;
+    }
+
+}
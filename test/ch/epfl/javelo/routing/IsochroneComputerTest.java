@@ -0,0 +1,98 @@
+package ch.epfl.javelo.routing;
+
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.Arrays;
+import java.util.List;
+import java.util.random.RandomGenerator;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+import ch.epfl.javelo.data.Graph;
+import ch.epfl.javelo.projection.PointCh;
+import ch.epfl.javelo.projection.SwissBounds;
+import ch.epfl.test.TestGraphs;
+
+class IsochroneComputerTest {
+
+    private static final Graph GRAPH = TestGraphs.randomGrid(20, 15, newRandom());
+    private static final CostFunction COST_FUNCTION = new CityBikeCF(GRAPH);
+
+    @Test
+    void isochroneThrowsOnInvalidBudgets() {
+        IsochroneComputer computer = new IsochroneComputer(GRAPH, COST_FUNCTION);
+        assertThrows(IllegalArgumentException.class, () -> computer.isochroneFrom(0));
+        assertThrows(IllegalArgumentException.class, () -> computer.isochroneFrom(0, -1));
+        assertThrows(IllegalArgumentException.class, () -> computer.isochroneFrom(0, 500, 500));
+        assertThrows(IllegalArgumentException.class, () -> computer.isochroneFrom(0, 500, 200));
+    }
+
+    @Test
+    void isochroneAroundIsNullWithoutCloseNode() {
+        IsochroneComputer computer = new IsochroneComputer(GRAPH, COST_FUNCTION);
+        PointCh farPoint = new PointCh(SwissBounds.MAX_E - 1, SwissBounds.MAX_N - 1);
+        assertNull(computer.isochroneAround(farPoint, 1000, 500));
+    }
+
+    @Test
+    void bandsContainTheNodesWithinTheirBudget() {
+        IsochroneComputer computer = new IsochroneComputer(GRAPH, COST_FUNCTION);
+        RandomGenerator rng = newRandom();
+        int[] allNodeIds = IntStream.range(0, GRAPH.nodeCount()).toArray();
+        double[] budgets = {200, 800, 1500, 4000};
+        for (int i = 0; i < 20; i++) {
+            int originNodeId = rng.nextInt(GRAPH.nodeCount());
+            Isochrone isochrone = computer.isochroneFrom(originNodeId, budgets);
+            CostMatrix matrix = CostMatrix.compute(GRAPH, COST_FUNCTION,
+                                                   new int[] {originNodeId}, allNodeIds);
+            assertEquals(originNodeId, isochrone.originNodeId());
+            assertEquals(budgets.length, isochrone.bandCount());
+            for (int band = 0; band < budgets.length; band++) {
+                int bandIndex = band;
+                int[] expected = IntStream.range(0, GRAPH.nodeCount())
+                                          .filter(n -> matrix.cost(0, n) <= budgets[bandIndex])
+                                          .toArray();
+                int[] actual = isochrone.nodeIds(band).clone();
+                assertEquals(expected.length, isochrone.nodeCount(band));
+                assertEquals(originNodeId, actual[0]);
+                Arrays.sort(actual);
+                assertArrayEquals(expected, actual);
+
+                float[] costs = isochrone.costs(band);
+                for (int j = 0; j < costs.length; j++) {
+                    assertEquals(matrix.cost(0, isochrone.nodeIds(band)[j]), costs[j]);
+                    assertTrue(j == 0 || costs[j - 1] <= costs[j]);
+                }
+                assertHullContains(isochrone.hull(band), isochrone.nodeIds(band));
+            }
+        }
+    }
+
+    @Test
+    void hullOfSingleNodeIsItsPoint() {
+        IsochroneComputer computer = new IsochroneComputer(GRAPH, COST_FUNCTION);
+        // The budget only allows to reach the origin
+        Isochrone isochrone = computer.isochroneFrom(0, 0);
+        assertArrayEquals(new int[] {0}, isochrone.nodeIds(0));
+        assertEquals(List.of(GRAPH.nodePoint(0)), isochrone.hull(0));
+    }
+
+    private static void assertHullContains(List<PointCh> hull, int[] nodeIds) {
+        if (hull.size() < 3)
+            return;
+        for (int nodeId : nodeIds) {
+            PointCh p = GRAPH.nodePoint(nodeId);
+            for (int i = 0; i < hull.size(); i++) {
+                PointCh a = hull.get(i);
+                PointCh b = hull.get((i + 1) % hull.size());
+                double cross = (b.e() - a.e()) * (p.n() - a.n())
+                        - (b.n() - a.n()) * (p.e() - a.e());
+                assertTrue(cross >= -1e-6);
+            }
+        }
+    }
+
+}
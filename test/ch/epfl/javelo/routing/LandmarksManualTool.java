@@ -0,0 +1,31 @@
+package ch.epfl.javelo.routing;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import ch.epfl.javelo.data.Graph;
+
+/**
+ * Chooses the landmarks of a graph for {@code CityBikeCF} and writes them next to the graph
+ * ({@code derived_landmarks.bin}), to be loaded by {@code Landmarks.loadFrom}.
+ * <p>
+ * Arguments (optional): directory of the graph (default {@code .javelo/ch_west}), number of
+ * landmarks (default 16).
+ */
+public class LandmarksManualTool {
+
+    public static void main(String[] args) throws IOException {
+        Path basePath = Path.of(args.length > 0 ? args[0] : ".javelo/ch_west");
+        int landmarkCount = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        Graph graph = Graph.loadFrom(basePath);
+
+        long t0 = System.nanoTime();
+        Landmarks landmarks = Landmarks.compute(graph, new CityBikeCF(graph), landmarkCount);
+        System.out.printf("%d landmarks computed in %.1f s%n", landmarkCount,
+                          (System.nanoTime() - t0) / 1e9);
+        for (int i = 0; i < landmarks.count(); i++)
+            System.out.println("  " + landmarks.nodeId(i) + " "
+                                       + graph.nodePoint(landmarks.nodeId(i)));
+        landmarks.writeTo(basePath);
+    }
+
+}
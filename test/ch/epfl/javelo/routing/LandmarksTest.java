@@ -0,0 +1,137 @@
+package ch.epfl.javelo.routing;
+
+import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.random.RandomGenerator;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ch.epfl.javelo.data.Graph;
+import ch.epfl.test.TestGraphs;
+
+class LandmarksTest {
+
+    private static final int LANDMARK_COUNT = 6;
+
+    private static Graph graph;
+    private static CostFunction costFunction;
+    private static Landmarks landmarks;
+
+    @BeforeAll
+    static void computeLandmarks() {
+        graph = TestGraphs.randomGrid(20, 15, newRandom());
+        costFunction = new CityBikeCF(graph);
+        landmarks = Landmarks.compute(graph, costFunction, LANDMARK_COUNT);
+    }
+
+    @Test
+    void computeThrowsOnInvalidLandmarkCount() {
+        assertThrows(IllegalArgumentException.class,
+                () -> Landmarks.compute(graph, costFunction, 0));
+        assertThrows(IllegalArgumentException.class,
+                () -> Landmarks.compute(graph, costFunction, graph.nodeCount() + 1));
+    }
+
+    @Test
+    void computeChoosesDistinctLandmarks() {
+        assertEquals(LANDMARK_COUNT, landmarks.count());
+        assertEquals(graph.nodeCount(), landmarks.nodeCount());
+        for (int i = 0; i < LANDMARK_COUNT; i++)
+            for (int j = i + 1; j < LANDMARK_COUNT; j++)
+                assertNotEquals(landmarks.nodeId(i), landmarks.nodeId(j));
+    }
+
+    @Test
+    void lowerBoundIsAtMostBestRouteCost() {
+        RandomGenerator rng = newRandom();
+        SearchWorkspace workspace = new SearchWorkspace(graph.nodeCount());
+        for (int i = 0; i < RANDOM_ITERATIONS / 50; i++) {
+            int fromNodeId = rng.nextInt(graph.nodeCount());
+            float[] costs = dijkstra(fromNodeId, workspace);
+            for (int toNodeId = 0; toNodeId < graph.nodeCount(); toNodeId++) {
+                double bound = landmarks.lowerBound(fromNodeId, toNodeId);
+                assertTrue(bound >= 0);
+                assertTrue(bound <= costs[toNodeId] * (1 + 1e-5),
+                           fromNodeId + " -> " + toNodeId);
+            }
+        }
+    }
+
+    @Test
+    void lowerBoundIsExactFromAndToLandmarks() {
+        SearchWorkspace workspace = new SearchWorkspace(graph.nodeCount());
+        for (int i = 0; i < LANDMARK_COUNT; i++) {
+            int landmarkNodeId = landmarks.nodeId(i);
+            float[] costs = dijkstra(landmarkNodeId, workspace);
+            for (int nodeId = 0; nodeId < graph.nodeCount(); nodeId++)
+                if (costs[nodeId] != Float.POSITIVE_INFINITY)
+                    assertEquals(costs[nodeId], landmarks.lowerBound(landmarkNodeId, nodeId),
+                                 1e-5 * costs[nodeId]);
+        }
+    }
+
+    @Test
+    void writtenLandmarksCanBeLoaded(@TempDir Path directory) throws IOException {
+        landmarks.writeTo(directory);
+        Landmarks loaded = Landmarks.loadFrom(directory, graph, costFunction);
+        assertEquals(landmarks.count(), loaded.count());
+        for (int i = 0; i < landmarks.count(); i++)
+            assertEquals(landmarks.nodeId(i), loaded.nodeId(i));
+        RandomGenerator rng = newRandom();
+        for (int i = 0; i < RANDOM_ITERATIONS; i++) {
+            int fromNodeId = rng.nextInt(graph.nodeCount());
+            int toNodeId = rng.nextInt(graph.nodeCount());
+            assertEquals(landmarks.lowerBound(fromNodeId, toNodeId),
+                         loaded.lowerBound(fromNodeId, toNodeId));
+        }
+    }
+
+    @Test
+    void loadFromThrowsOnOtherGraphOrCostFunction(@TempDir Path directory) throws IOException {
+        landmarks.writeTo(directory);
+        Graph smallGraph = TestGraphs.randomGrid(5, 5, newRandom());
+        assertThrows(IllegalArgumentException.class,
+                () -> Landmarks.loadFrom(directory, smallGraph, new CityBikeCF(smallGraph)));
+        // Same number of nodes, other random roads
+        RandomGenerator rng = newRandom();
+        rng.nextLong();
+        Graph otherGraph = TestGraphs.randomGrid(20, 15, rng);
+        assertThrows(IllegalArgumentException.class,
+                () -> Landmarks.loadFrom(directory, otherGraph, new CityBikeCF(otherGraph)));
+        assertThrows(IllegalArgumentException.class,
+                () -> Landmarks.loadFrom(directory, graph, (nodeId, edgeId) -> 1));
+    }
+
+    /**
+     * Computes the cost of the best route from a node to every node, infinite if there is none.
+     */
+    private static float[] dijkstra(int fromNodeId, SearchWorkspace workspace) {
+        workspace.reset();
+        workspace.update(fromNodeId, 0, -1);
+        workspace.heap().addOrDecreaseKey(fromNodeId, 0);
+        while (!workspace.heap().isEmpty()) {
+            int nodeId = workspace.heap().poll();
+            for (int i = 0; i < graph.nodeOutDegree(nodeId); i++) {
+                int edgeId = graph.nodeOutEdgeId(nodeId, i);
+                int toNodeId = graph.edgeTargetNodeId(edgeId);
+                float distance = (float) (workspace.distance(nodeId)
+                        + costFunction.costFactor(nodeId, edgeId) * graph.edgeLength(edgeId));
+                if (distance < workspace.distance(toNodeId)) {
+                    workspace.update(toNodeId, distance, -1);
+                    workspace.heap().addOrDecreaseKey(toNodeId, distance);
+                }
+            }
+        }
+        float[] costs = new float[graph.nodeCount()];
+        for (int nodeId = 0; nodeId < graph.nodeCount(); nodeId++)
+            costs[nodeId] = workspace.distance(nodeId);
+        return costs;
+    }
+
+}
@@ -0,0 +1,65 @@
+package ch.epfl.javelo.routing;
+
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import ch.epfl.javelo.data.Attribute;
+import ch.epfl.javelo.data.AttributeSet;
+import ch.epfl.javelo.data.Graph;
+import ch.epfl.javelo.data.GraphEdges;
+import ch.epfl.javelo.data.GraphNodes;
+import ch.epfl.javelo.data.GraphSectors;
+import ch.epfl.test.TestGraphs;
+
+class MemoizedCityBikeCFTest {
+
+    @Test
+    void costFactorIsCityBikeOne() {
+        Graph graph = TestGraphs.randomGrid(20, 15, newRandom());
+        CostFunction expected = new CityBikeCF(graph);
+        CostFunction actual = new MemoizedCityBikeCF(graph);
+        for (int nodeId = 0; nodeId < graph.nodeCount(); nodeId++)
+            for (int i = 0; i < graph.nodeOutDegree(nodeId); i++) {
+                int edgeId = graph.nodeOutEdgeId(nodeId, i);
+                assertEquals(expected.costFactor(nodeId, edgeId),
+                             actual.costFactor(nodeId, edgeId));
+            }
+    }
+
+    @Test
+    void costFactorIsCityBikeOneForStepsAndOneWays() {
+        // Edge i goes from node 0 to node 1 with the attributes at index i / 2, inverted if i odd,
+        // and an elevation gain making a slope of 0%, 2%, 4%, 8% or 20% (length 10 m)
+        List<AttributeSet> attributeSets = List.of(
+                AttributeSet.of(Attribute.HIGHWAY_STEPS),
+                AttributeSet.of(Attribute.HIGHWAY_RESIDENTIAL, Attribute.ONEWAY_YES),
+                AttributeSet.of(Attribute.HIGHWAY_RESIDENTIAL, Attribute.ONEWAY_M1),
+                AttributeSet.of(Attribute.HIGHWAY_TRACK, Attribute.LCN_YES),
+                AttributeSet.of(Attribute.HIGHWAY_MOTORWAY));
+        int[] elevationGains = {0, 2 * 16 / 10, 4 * 16 / 10, 8 * 16 / 10, 2 * 16};
+        int edgeCount = 2 * attributeSets.size() * elevationGains.length;
+        ByteBuffer edges = ByteBuffer.allocate(10 * edgeCount);
+        for (int i = 0; i < edgeCount; i++) {
+            edges.putInt(i % 2 == 1 ? ~1 : 1);
+            edges.putShort((short) (10 * 16));
+            edges.putShort((short) elevationGains[i / (2 * attributeSets.size())]);
+            edges.putShort((short) ((i / 2) % attributeSets.size()));
+        }
+        IntBuffer nodes = IntBuffer.wrap(new int[] {0, 0, 0, 0, 0, 0});
+        Graph graph = new Graph(new GraphNodes(nodes), new GraphSectors(ByteBuffer.allocate(0)),
+                                new GraphEdges(edges.flip(), IntBuffer.allocate(edgeCount),
+                                               ShortBuffer.allocate(0)),
+                                attributeSets);
+        CostFunction expected = new CityBikeCF(graph);
+        CostFunction actual = new MemoizedCityBikeCF(graph);
+        for (int edgeId = 0; edgeId < edgeCount; edgeId++)
+            assertEquals(expected.costFactor(0, edgeId), actual.costFactor(0, edgeId));
+        assertEquals(CityBikeCF.STEPS_COST_FACTOR,
+                     actual.costFactor(0, edgeCount - 2 * attributeSets.size()));
+    }
+
+}
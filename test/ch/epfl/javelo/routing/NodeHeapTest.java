@@ -0,0 +1,107 @@
+package ch.epfl.javelo.routing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.PriorityQueue;
+import org.junit.jupiter.api.Test;
+
+import static ch.epfl.test.TestRandomizer.*;
+
+class NodeHeapTest {
+
+    @Test
+    void nodeHeapIsInitiallyEmpty() {
+        NodeHeap heap = new NodeHeap(10);
+        assertTrue(heap.isEmpty());
+        assertEquals(0, heap.size());
+        for (int nodeId = 0; nodeId < 10; nodeId++)
+            assertFalse(heap.contains(nodeId));
+    }
+
+    @Test
+    void nodeHeapPollsNodesInKeyOrder() {
+        NodeHeap heap = new NodeHeap(5);
+        heap.addOrDecreaseKey(3, 4f);
+        heap.addOrDecreaseKey(1, 2f);
+        heap.addOrDecreaseKey(4, 0.5f);
+        heap.addOrDecreaseKey(0, 3f);
+        assertEquals(4, heap.size());
+        assertEquals(0.5f, heap.minKey());
+        assertEquals(4, heap.poll());
+        assertEquals(1, heap.poll());
+        assertEquals(0, heap.poll());
+        assertEquals(3, heap.poll());
+        assertTrue(heap.isEmpty());
+    }
+
+    @Test
+    void nodeHeapDecreasesKeyInsteadOfAddingTwice() {
+        NodeHeap heap = new NodeHeap(5);
+        heap.addOrDecreaseKey(2, 10f);
+        heap.addOrDecreaseKey(3, 5f);
+        heap.addOrDecreaseKey(2, 1f);
+        assertEquals(2, heap.size());
+        assertEquals(1f, heap.minKey());
+        assertEquals(2, heap.poll());
+        assertFalse(heap.contains(2));
+        assertEquals(3, heap.poll());
+    }
+
+    @Test
+    void nodeHeapIgnoresLargerKeys() {
+        NodeHeap heap = new NodeHeap(5);
+        heap.addOrDecreaseKey(2, 1f);
+        heap.addOrDecreaseKey(3, 5f);
+        heap.addOrDecreaseKey(2, 10f);
+        assertEquals(1f, heap.minKey());
+        assertEquals(2, heap.poll());
+    }
+
+    @Test
+    void nodeHeapClearRemovesEveryNode() {
+        NodeHeap heap = new NodeHeap(200);
+        for (int nodeId = 0; nodeId < 200; nodeId += 2)
+            heap.addOrDecreaseKey(nodeId, nodeId);
+        heap.clear();
+        assertTrue(heap.isEmpty());
+        for (int nodeId = 0; nodeId < 200; nodeId++)
+            assertFalse(heap.contains(nodeId));
+        heap.addOrDecreaseKey(7, 3f);
+        assertEquals(1, heap.size());
+        assertEquals(7, heap.poll());
+    }
+
+    @Test
+    void nodeHeapWorksLikePriorityQueueOnRandomOperations() {
+        int nodeCount = 500;
+        var rng = newRandom();
+        NodeHeap heap = new NodeHeap(nodeCount);
+        float[] keys = new float[nodeCount];
+        PriorityQueue<Integer> expected = new PriorityQueue<>(
+                (a, b) -> Float.compare(keys[a], keys[b]));
+        for (int i = 0; i < RANDOM_ITERATIONS * 10; i++) {
+            if (rng.nextInt(3) == 0 && !expected.isEmpty()) {
+                float expectedKey = keys[expected.peek()];
+                assertEquals(expectedKey, heap.minKey());
+                int polled = heap.poll();
+                assertEquals(expectedKey, keys[polled]);
+                assertTrue(expected.remove(polled));
+            } else {
+                int nodeId = rng.nextInt(nodeCount);
+                float key = rng.nextFloat(1000);
+                heap.addOrDecreaseKey(nodeId, key);
+                if (!expected.contains(nodeId)) {
+                    keys[nodeId] = key;
+                    expected.add(nodeId);
+                } else if (key < keys[nodeId]) {
+                    expected.remove(nodeId);
+                    keys[nodeId] = key;
+                    expected.add(nodeId);
+                }
+            }
+            assertEquals(expected.size(), heap.size());
+        }
+    }
+
+}
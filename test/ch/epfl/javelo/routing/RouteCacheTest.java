@@ -0,0 +1,112 @@
+package ch.epfl.javelo.routing;
+
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import ch.epfl.javelo.data.Graph;
+import ch.epfl.javelo.projection.PointCh;
+import ch.epfl.javelo.projection.SwissBounds;
+import ch.epfl.test.TestGraphs;
+
+class RouteCacheTest {
+
+    private static final PointCh POINT = new PointCh(SwissBounds.MIN_E + 1_000,
+                                                     SwissBounds.MIN_N + 1_000);
+
+    @Test
+    void routeCacheCountsHitsAndMisses() {
+        RouteCache cache = new RouteCache(1 << 20);
+        CostFunction costFunction = (nodeId, edgeId) -> 1;
+        Route route = newRoute(100);
+        assertNull(cache.get(0, 1, costFunction));
+        cache.put(0, 1, costFunction, route);
+        assertSame(route, cache.get(0, 1, costFunction).route());
+        assertNull(cache.get(1, 0, costFunction));
+        assertNull(cache.get(0, 1, (nodeId, edgeId) -> 1));
+        assertEquals(1, cache.hitCount());
+        assertEquals(3, cache.missCount());
+        assertEquals(0, cache.evictionCount());
+        assertEquals(1, cache.size());
+        assertThrows(IllegalArgumentException.class, () -> cache.put(0, 2, costFunction, null));
+    }
+
+    @Test
+    void routeCacheEvictsLeastRecentlyUsedRoutes() {
+        CostFunction costFunction = (nodeId, edgeId) -> 1;
+        Route route = newRoute(100);
+        RouteCache sizing = new RouteCache(1 << 20);
+        sizing.put(0, 1, costFunction, route);
+        long routeBytes = sizing.bytes();
+
+        RouteCache cache = new RouteCache(3 * routeBytes);
+        for (int i = 1; i <= 3; i++)
+            cache.put(0, i, costFunction, route);
+        assertSame(route, cache.get(0, 1, costFunction).route());
+        cache.put(0, 4, costFunction, route);
+        assertEquals(1, cache.evictionCount());
+        assertEquals(3, cache.size());
+        assertTrue(cache.bytes() <= cache.maxBytes());
+        assertNull(cache.get(0, 2, costFunction));
+        assertSame(route, cache.get(0, 1, costFunction).route());
+
+        // Replacing a route does not evict anything
+        cache.put(0, 4, costFunction, route);
+        assertEquals(1, cache.evictionCount());
+        assertEquals(3 * routeBytes, cache.bytes());
+
+        // Too large routes are not cached
+        cache.put(0, 5, costFunction, newRoute(100_000));
+        assertNull(cache.get(0, 5, costFunction));
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.bytes());
+    }
+
+    @Test
+    void routeBetweenComputesMissingRoutesOnce() {
+        Graph graph = TestGraphs.randomGrid(10, 10, newRandom());
+        RouteComputer routeComputer = new RouteComputer(graph, new CityBikeCF(graph));
+        RouteCache cache = new RouteCache(1 << 20);
+        Route route = cache.routeBetween(routeComputer, 0, graph.nodeCount() - 1);
+        assertSame(route, cache.routeBetween(routeComputer, 0, graph.nodeCount() - 1));
+        assertEquals(1, cache.hitCount());
+        assertEquals(1, cache.missCount());
+    }
+
+    @Test
+    void routeBetweenCachesUnreachableNodes() {
+        Graph graph = TestGraphs.randomGrid(10, 10, newRandom());
+        // Every edge is forbidden
+        CostFunction costFunction = (nodeId, edgeId) -> Double.POSITIVE_INFINITY;
+        RouteComputer routeComputer = new RouteComputer(graph, costFunction);
+        RouteCache cache = new RouteCache(1 << 20);
+        assertNull(cache.routeBetween(routeComputer, 0, graph.nodeCount() - 1));
+        assertNull(cache.get(0, graph.nodeCount() - 1, costFunction).route());
+        assertNull(cache.routeBetween(routeComputer, 0, graph.nodeCount() - 1));
+        assertEquals(2, cache.hitCount());
+        assertEquals(1, cache.missCount());
+        assertEquals(1, cache.size());
+
+        // Unreachable nodes only cost the fixed size of an entry
+        RouteCache sizing = new RouteCache(1 << 20);
+        sizing.put(0, 1, costFunction, newRoute(1));
+        assertTrue(0 < cache.bytes() && cache.bytes() < sizing.bytes());
+
+        // Recording a route as unreachable replaces it
+        cache.put(0, 1, costFunction, newRoute(1));
+        cache.putNoRoute(0, 1, costFunction);
+        assertNull(cache.get(0, 1, costFunction).route());
+        assertEquals(2, cache.size());
+    }
+
+    private static Route newRoute(double length) {
+        PointCh toPoint = new PointCh(POINT.e() + length, POINT.n());
+        return new SingleRoute(List.of(new Edge(0, 1, POINT, toPoint, length, x -> Double.NaN)));
+    }
+
+}
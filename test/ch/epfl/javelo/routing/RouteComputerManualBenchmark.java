@@ -0,0 +1,147 @@
+package ch.epfl.javelo.routing;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import ch.epfl.javelo.data.Graph;
+import ch.epfl.javelo.projection.PointCh;
+
+/**
+ * Compares the route computer with the previous implementation, which used a
+ * {@code PriorityQueue} of weighted nodes, its search modes, with and without landmarks, and the
+ * cost factors read from tables, on the query pair of {@code Stage6ManualTest}.
+ */
+public class RouteComputerManualBenchmark {
+
+    private static final int START_NODE_ID = 2046055;
+    private static final int END_NODE_ID = 2694240;
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int ITERATIONS = 20;
+
+    public static void main(String[] args) throws IOException {
+        Graph graph = Graph.loadFrom(Path.of(".javelo/ch_west"));
+        CostFunction costFunction = new CityBikeCF(graph);
+        RouteComputer routeComputer = new RouteComputer(graph, costFunction);
+
+        benchmark("PriorityQueue<WeightedNode> (before)",
+                () -> priorityQueueCost(graph, costFunction, START_NODE_ID, END_NODE_ID));
+        benchmark("NodeHeap (after)", () -> {
+            Route route = routeComputer.bestRouteBetween(START_NODE_ID, END_NODE_ID);
+            return route.length();
+        });
+
+        for (RouteComputer.Mode mode : RouteComputer.Mode.values()) {
+            RouteComputer modeRouteComputer = new RouteComputer(graph, costFunction, mode);
+            benchmark(mode.toString(), () -> {
+                Route route = modeRouteComputer.bestRouteBetween(START_NODE_ID, END_NODE_ID);
+                return route.length();
+            });
+            System.out.println("  settled nodes: " + modeRouteComputer.lastSettledNodeCount());
+        }
+
+        RouteComputer tableRouteComputer = new RouteComputer(graph,
+                CostFactorTable.of(graph, costFunction));
+        benchmark("CostFactorTable", () -> {
+            Route route = tableRouteComputer.bestRouteBetween(START_NODE_ID, END_NODE_ID);
+            return route.length();
+        });
+
+        RouteComputer memoizedRouteComputer = new RouteComputer(graph,
+                new MemoizedCityBikeCF(graph));
+        benchmark("MemoizedCityBikeCF", () -> {
+            Route route = memoizedRouteComputer.bestRouteBetween(START_NODE_ID, END_NODE_ID);
+            return route.length();
+        });
+
+        // Landmarks written by LandmarksManualTool, computed if missing
+        Path basePath = Path.of(".javelo/ch_west");
+        Landmarks landmarks = Files.exists(basePath.resolve(Landmarks.FILE_NAME))
+                ? Landmarks.loadFrom(basePath, graph, costFunction)
+                : Landmarks.compute(graph, costFunction, 16);
+        for (RouteComputer.Mode mode : RouteComputer.Mode.values()) {
+            RouteComputer altRouteComputer = new RouteComputer(graph, costFunction, mode,
+                                                               landmarks);
+            benchmark(mode + " + ALT (" + landmarks.count() + " landmarks)", () -> {
+                Route route = altRouteComputer.bestRouteBetween(START_NODE_ID, END_NODE_ID);
+                return route.length();
+            });
+            System.out.println("  settled nodes: " + altRouteComputer.lastSettledNodeCount());
+        }
+    }
+
+    private static void benchmark(String name, Query query) {
+        var threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        double result = 0;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++)
+            result = query.run();
+        long allocated = threadBean.getThreadAllocatedBytes(threadId);
+        long t0 = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++)
+            result = query.run();
+        long time = System.nanoTime() - t0;
+        allocated = threadBean.getThreadAllocatedBytes(threadId) - allocated;
+        System.out.printf("%-40s %8.1f ms/query %8.1f MB allocated/query (checksum %.2f)%n",
+                name, time / 1e6 / ITERATIONS, allocated / 1e6 / ITERATIONS, result);
+    }
+
+    /**
+     * Previous A* loop, one record allocated per relaxation and duplicates kept in the queue.
+     * Only returns the cost of the best route, the route reconstruction being the same.
+     */
+    private static double priorityQueueCost(Graph graph,
+                                            CostFunction costFunction,
+                                            int startNodeId,
+                                            int endNodeId) {
+        record WeightedNode(int nodeId, float score) implements Comparable<WeightedNode> {
+
+            @Override
+            public int compareTo(WeightedNode that) {
+                return Float.compare(this.score, that.score);
+            }
+
+        }
+
+        PriorityQueue<WeightedNode> toVisit = new PriorityQueue<>();
+        float[] distances = new float[graph.nodeCount()];
+        Arrays.fill(distances, Float.POSITIVE_INFINITY);
+        distances[startNodeId] = 0;
+        toVisit.add(new WeightedNode(startNodeId, 0));
+        PointCh endPoint = graph.nodePoint(endNodeId);
+        while (!toVisit.isEmpty()) {
+            WeightedNode current = toVisit.poll();
+            if (distances[current.nodeId] == Float.NEGATIVE_INFINITY)
+                continue;
+            if (current.nodeId == endNodeId)
+                return distances[endNodeId];
+            for (int i = 0; i < graph.nodeOutDegree(current.nodeId); i++) {
+                int edgeId = graph.nodeOutEdgeId(current.nodeId, i);
+                int toNodeId = graph.edgeTargetNodeId(edgeId);
+                if (distances[toNodeId] == Float.NEGATIVE_INFINITY)
+                    continue;
+                float distance = (float) (distances[current.nodeId]
+                        + costFunction.costFactor(current.nodeId, edgeId)
+                                * graph.edgeLength(edgeId));
+                if (distance < distances[toNodeId]) {
+                    distances[toNodeId] = distance;
+                    float score = (float) (distance
+                            + graph.nodePoint(toNodeId).distanceTo(endPoint));
+                    toVisit.add(new WeightedNode(toNodeId, score));
+                }
+            }
+            distances[current.nodeId] = Float.NEGATIVE_INFINITY;
+        }
+        return Double.NaN;
+    }
+
+    @FunctionalInterface
+    private interface Query {
+
+        double run();
+
+    }
+
+}
@@ -1,15 +1,40 @@
 package ch.epfl.javelo.routing;
 
+import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
+import static ch.epfl.test.TestRandomizer.newRandom;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.random.RandomGenerator;
+import java.util.stream.Stream;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ch.epfl.javelo.Q28_4;
+import ch.epfl.javelo.data.Attribute;
+import ch.epfl.javelo.data.AttributeSet;
+import ch.epfl.javelo.data.EdgePoint;
 import ch.epfl.javelo.data.Graph;
+import ch.epfl.javelo.data.GraphEdges;
+import ch.epfl.javelo.data.GraphNodes;
+import ch.epfl.javelo.data.GraphSectors;
+import ch.epfl.javelo.data.SyntheticGraphGenerator;
+import ch.epfl.javelo.data.SyntheticGraphGenerator.Topology;
 import ch.epfl.javelo.projection.PointCh;
+import ch.epfl.javelo.projection.SwissBounds;
+import ch.epfl.test.TestGraphs;
 
 public class RouteComputerTest {
 
@@ -57,6 +82,269 @@ public class RouteComputerTest {
         assertEquals(new PointCh(2559366.699598735, 1219108.3736624513), r.pointAt(95000));
     }
 
+    @Test
+    void bidirectionalBestRouteBetweenLausanneTest() throws IOException {
+        Graph gLausanne = Graph.loadFrom(Path.of(".javelo/lausanne"));
+        CostFunction cfLausanne = new CityBikeCF(gLausanne);
+        RouteComputer rcUnidirectional = new RouteComputer(gLausanne, cfLausanne);
+        RouteComputer rcBidirectional = new RouteComputer(gLausanne, cfLausanne,
+                                                          RouteComputer.Mode.BIDIRECTIONAL);
+        int[][] pairs = {{159049, 117669}, {210641, 43713}, {117669, 159049}};
+        for (int[] pair : pairs) {
+            Route expected = rcUnidirectional.bestRouteBetween(pair[0], pair[1]);
+            Route actual = rcBidirectional.bestRouteBetween(pair[0], pair[1]);
+            assertEquals(routeCost(gLausanne, cfLausanne, expected),
+                    routeCost(gLausanne, cfLausanne, actual), 1e-1);
+            assertEquals(pair[0], actual.edges().get(0).fromNodeId());
+            assertEquals(pair[1], actual.edges().get(actual.edges().size() - 1).toNodeId());
+        }
+        assertNull(rcBidirectional.bestRouteBetween(149195, 153181));
+    }
+
+    @Test
+    void bidirectionalModeSettlesFewerNodes() throws IOException {
+        Graph gLausanne = Graph.loadFrom(Path.of(".javelo/lausanne"));
+        CostFunction cfLausanne = new CityBikeCF(gLausanne);
+        RouteComputer rcUnidirectional = new RouteComputer(gLausanne, cfLausanne);
+        RouteComputer rcBidirectional = new RouteComputer(gLausanne, cfLausanne,
+                                                          RouteComputer.Mode.BIDIRECTIONAL);
+        rcUnidirectional.bestRouteBetween(210641, 43713);
+        rcBidirectional.bestRouteBetween(210641, 43713);
+        assertTrue(rcBidirectional.lastSettledNodeCount() > 0);
+        assertTrue(rcBidirectional.lastSettledNodeCount()
+                < rcUnidirectional.lastSettledNodeCount());
+    }
+
+    @Test
+    void landmarksRoutesHaveSameCost() {
+        Graph graph = TestGraphs.randomGrid(30, 20, newRandom());
+        CostFunction costFunction = new CityBikeCF(graph);
+        Landmarks landmarks = Landmarks.compute(graph, costFunction, 4);
+        RouteComputer rcEuclidean = new RouteComputer(graph, costFunction);
+        RandomGenerator rng = newRandom();
+        long euclideanSettledNodes = 0, landmarksSettledNodes = 0;
+        for (RouteComputer.Mode mode : RouteComputer.Mode.values()) {
+            RouteComputer rcLandmarks = new RouteComputer(graph, costFunction, mode, landmarks);
+            for (int i = 0; i < RANDOM_ITERATIONS; i++) {
+                int startNodeId = rng.nextInt(graph.nodeCount());
+                int endNodeId = rng.nextInt(graph.nodeCount());
+                if (startNodeId == endNodeId)
+                    continue;
+                Route expected = rcEuclidean.bestRouteBetween(startNodeId, endNodeId);
+                Route actual = rcLandmarks.bestRouteBetween(startNodeId, endNodeId);
+                if (expected == null) {
+                    assertNull(actual);
+                    continue;
+                }
+                double expectedCost = routeCost(graph, costFunction, expected);
+                assertEquals(expectedCost, routeCost(graph, costFunction, actual),
+                             1e-4 * expectedCost);
+                if (mode == RouteComputer.Mode.UNIDIRECTIONAL) {
+                    euclideanSettledNodes += rcEuclidean.lastSettledNodeCount();
+                    landmarksSettledNodes += rcLandmarks.lastSettledNodeCount();
+                }
+            }
+        }
+        assertTrue(landmarksSettledNodes < euclideanSettledNodes);
+    }
+
+    @Test
+    void edgePointRoutesMatchNodeRoutes() {
+        Graph graph = TestGraphs.randomGrid(30, 20, newRandom());
+        CostFunction costFunction = new CityBikeCF(graph);
+        RouteComputer routeComputer = new RouteComputer(graph, costFunction);
+        RandomGenerator rng = newRandom();
+        for (int i = 0; i < RANDOM_ITERATIONS; i++) {
+            int startNodeId = rng.nextInt(graph.nodeCount());
+            int endNodeId = rng.nextInt(graph.nodeCount());
+            if (startNodeId == endNodeId || graph.nodeOutDegree(startNodeId) == 0
+                    || graph.nodeInDegree(endNodeId) == 0)
+                continue;
+            // Points at the nodes, on edges leaving the start and reaching the destination
+            EdgePoint start = new EdgePoint(graph.nodeOutEdgeId(startNodeId, 0), startNodeId, 0);
+            int endEdgeId = graph.nodeInEdgeId(endNodeId, 0);
+            EdgePoint end = new EdgePoint(endEdgeId, graph.nodeInEdgeSourceNodeId(endNodeId, 0),
+                                          graph.edgeLength(endEdgeId));
+            Route expected = routeComputer.bestRouteBetween(startNodeId, endNodeId);
+            Route actual = routeComputer.bestRouteBetween(start, end);
+            if (expected == null) {
+                assertNull(actual);
+                continue;
+            }
+            double expectedCost = routeCost(graph, costFunction, expected);
+            assertEquals(expectedCost, routeCost(graph, costFunction, actual),
+                         1e-4 * expectedCost);
+        }
+    }
+
+    @Test
+    void edgePointRoutesStartAndEndInsideEdges() {
+        Graph graph = TestGraphs.randomGrid(30, 20, newRandom());
+        CostFunction costFunction = new CityBikeCF(graph);
+        RouteComputer routeComputer = new RouteComputer(graph, costFunction);
+        RandomGenerator rng = newRandom();
+        for (int i = 0; i < RANDOM_ITERATIONS; i++) {
+            PointCh startPoint = graph.nodePoint(rng.nextInt(graph.nodeCount()));
+            PointCh endPoint = graph.nodePoint(rng.nextInt(graph.nodeCount()));
+            EdgePoint start = graph.edgeClosestTo(new PointCh(startPoint.e() + 30,
+                                                              startPoint.n() + 10), 100);
+            EdgePoint end = graph.edgeClosestTo(new PointCh(endPoint.e() - 20,
+                                                            endPoint.n() + 30), 100);
+            if (start == null || end == null || start.equals(end))
+                continue;
+            Route route = routeComputer.bestRouteBetween(start, end);
+            if (route == null)
+                continue;
+            assertEquals(0, pointOf(graph, start).distanceTo(route.pointAt(0)), 1e-3);
+            assertEquals(0, pointOf(graph, end).distanceTo(route.pointAt(route.length())), 1e-3);
+        }
+
+        // Both points on the same (allowed) edge
+        int edgeId = -1, fromNodeId = -1;
+        for (int nodeId = 0; edgeId == -1; nodeId++)
+            for (int j = 0; j < graph.nodeOutDegree(nodeId); j++)
+                if (costFunction.costFactor(nodeId, graph.nodeOutEdgeId(nodeId, j))
+                        != Double.POSITIVE_INFINITY) {
+                    edgeId = graph.nodeOutEdgeId(nodeId, j);
+                    fromNodeId = nodeId;
+                }
+        double length = graph.edgeLength(edgeId);
+        Route route = routeComputer.bestRouteBetween(
+                new EdgePoint(edgeId, fromNodeId, 0.25 * length),
+                new EdgePoint(edgeId, fromNodeId, 0.75 * length));
+        assertEquals(1, route.edges().size());
+        assertEquals(0.5 * length, route.length(), 1e-9);
+        int finalEdgeId = edgeId, finalFromNodeId = fromNodeId;
+        assertThrows(IllegalArgumentException.class, () -> routeComputer.bestRouteBetween(
+                new EdgePoint(finalEdgeId, finalFromNodeId, 1),
+                new EdgePoint(finalEdgeId, finalFromNodeId, 1)));
+    }
+
+    @Test
+    void edgePointRoutesLeaveAndReachOneWayEdgesAtTheirNodes() {
+        // Node 0 is linked to node 1 by a one-way edge (0), and to node 2 by a two-way road
+        // (edges 1 and 3), node 1 to node 2 by a one-way edge (2)
+        double[][] nodes = {{0, 0}, {1_000, 0}, {0, 100}};
+        int[] firstEdgeIds = {0, 2, 3, 4};
+        int[][] edges = {{1, 1_000}, {2, 100}, {2, 1_005}, {0, 100}};
+        IntBuffer nodesBuffer = IntBuffer.allocate(3 * nodes.length);
+        for (int nodeId = 0; nodeId < nodes.length; nodeId++)
+            nodesBuffer.put(Q28_4.ofInt((int) (SwissBounds.MIN_E + 1_000 + nodes[nodeId][0])))
+                    .put(Q28_4.ofInt((int) (SwissBounds.MIN_N + 1_000 + nodes[nodeId][1])))
+                    .put((firstEdgeIds[nodeId + 1] - firstEdgeIds[nodeId]) << 28
+                                 | firstEdgeIds[nodeId]);
+        ByteBuffer edgesBuffer = ByteBuffer.allocate(10 * edges.length);
+        for (int[] edge : edges)
+            edgesBuffer.putInt(edge[0]).putShort((short) Q28_4.ofInt(edge[1]))
+                    .putShort((short) 0).putShort((short) 0);
+        Graph graph = new Graph(new GraphNodes(nodesBuffer.flip()),
+                                new GraphSectors(ByteBuffer.allocate(0)),
+                                new GraphEdges(edgesBuffer.flip(), IntBuffer.allocate(edges.length),
+                                               ShortBuffer.allocate(0)),
+                                List.of(AttributeSet.of(Attribute.HIGHWAY_RESIDENTIAL)));
+        RouteComputer routeComputer = new RouteComputer(graph, (nodeId, edgeId) -> 1);
+
+        // Points at node 0 on the one-way edge 0, and at node 2 on the one-way edge 2
+        EdgePoint atStartOfOneWay = new EdgePoint(0, 0, 0);
+        EdgePoint atEndOfOneWay = new EdgePoint(2, 1, 1_005);
+        EdgePoint[][] pairs = {{atStartOfOneWay, new EdgePoint(1, 0, 100)},
+                {new EdgePoint(3, 2, 100), atEndOfOneWay},
+                {atStartOfOneWay, atEndOfOneWay}};
+        for (EdgePoint[] pair : pairs) {
+            Route route = routeComputer.bestRouteBetween(pair[0], pair[1]);
+            assertEquals(100, route.length(), 1e-9);
+            assertEquals(List.of(0, 2), route.edges().stream()
+                    .flatMap(edge -> Stream.of(edge.fromNodeId(), edge.toNodeId()))
+                    .toList());
+        }
+    }
+
+    @Test
+    void alternativeRoutesAreCheapAndDiverse() {
+        Graph graph = TestGraphs.randomGrid(30, 20, newRandom());
+        CostFunction costFunction = new CityBikeCF(graph);
+        RouteComputer routeComputer = new RouteComputer(graph, costFunction);
+        RandomGenerator rng = newRandom();
+        int alternativeCount = 0;
+        for (int i = 0; i < RANDOM_ITERATIONS; i++) {
+            int startNodeId = rng.nextInt(graph.nodeCount());
+            int endNodeId = rng.nextInt(graph.nodeCount());
+            if (startNodeId == endNodeId)
+                continue;
+            Route best = routeComputer.bestRouteBetween(startNodeId, endNodeId);
+            List<Route> routes = routeComputer.alternativeRoutesBetween(startNodeId, endNodeId, 3);
+            if (best == null) {
+                assertTrue(routes.isEmpty());
+                continue;
+            }
+            assertTrue(routes.size() >= 1 && routes.size() <= 3);
+            alternativeCount += routes.size() - 1;
+            double bestCost = routeCost(graph, costFunction, best);
+            assertEquals(bestCost, routeCost(graph, costFunction, routes.get(0)), 1e-4 * bestCost);
+
+            List<Set<Long>> previousEdges = new ArrayList<>();
+            for (Route route : routes) {
+                assertEquals(startNodeId, route.edges().get(0).fromNodeId());
+                assertEquals(endNodeId, route.edges().get(route.edges().size() - 1).toNodeId());
+                assertTrue(routeCost(graph, costFunction, route) <= 1.25 * bestCost * (1 + 1e-4));
+                Set<Integer> nodeIds = new HashSet<>();
+                Set<Long> edges = new HashSet<>();
+                for (Edge edge : route.edges()) {
+                    assertTrue(nodeIds.add(edge.fromNodeId()));
+                    edges.add(((long) edge.fromNodeId() << Integer.SIZE) | edge.toNodeId());
+                }
+                for (Set<Long> other : previousEdges) {
+                    double sharedLength = 0;
+                    for (Edge edge : route.edges())
+                        if (other.contains(((long) edge.fromNodeId() << Integer.SIZE)
+                                | edge.toNodeId()))
+                            sharedLength += edge.length();
+                    assertTrue(sharedLength <= 0.6 * route.length() + 1e-6);
+                }
+                previousEdges.add(edges);
+            }
+        }
+        assertTrue(alternativeCount > 0);
+        assertThrows(IllegalArgumentException.class,
+                () -> routeComputer.alternativeRoutesBetween(0, 1, 0));
+    }
+
+    @Test
+    void bestRouteBetweenIsCancelledByInterruption() {
+        Graph graph = TestGraphs.randomGrid(10, 10, newRandom());
+        for (RouteComputer.Mode mode : RouteComputer.Mode.values()) {
+            RouteComputer routeComputer = new RouteComputer(graph, new CityBikeCF(graph), mode);
+            Thread.currentThread().interrupt();
+            try {
+                assertThrows(CancellationException.class,
+                        () -> routeComputer.bestRouteBetween(0, graph.nodeCount() - 1));
+                assertTrue(Thread.currentThread().isInterrupted());
+            } finally {
+                Thread.interrupted();
+            }
+            assertNotNull(routeComputer.bestRouteBetween(0, 1));
+        }
+    }
+
+    /**
+     * Computes the total cost of a route, using the cheapest edge between each pair of nodes.
+     */
+    private static double routeCost(Graph graph, CostFunction costFunction, Route route) {
+        double cost = 0;
+        for (Edge edge : route.edges()) {
+            double edgeCost = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < graph.nodeOutDegree(edge.fromNodeId()); i++) {
+                int edgeId = graph.nodeOutEdgeId(edge.fromNodeId(), i);
+                if (graph.edgeTargetNodeId(edgeId) == edge.toNodeId())
+                    edgeCost = Math.min(edgeCost,
+                            costFunction.costFactor(edge.fromNodeId(), edgeId)
+                                    * graph.edgeLength(edgeId));
+            }
+            cost += edgeCost;
+        }
+        return cost;
+    }
+
     // == GIVEN TESTS ==
 
     private Graph graph;
@@ -141,4 +429,22 @@ public class RouteComputerTest {
         assertEquals(expected20kN, actualPointAt20kN, 1);
     }
 
+    @Test
+    void loadDefaultIgnoresLandmarksOfAnotherCostFunction(@TempDir Path directory)
+            throws IOException {
+        SyntheticGraphGenerator.generate(directory, 400, Topology.GRID, 1);
+        Graph graph = Graph.loadFrom(directory);
+        Landmarks.compute(graph, (nodeId, edgeId) -> 1, 2).writeTo(directory);
+        assertNull(RouteComputer.loadDefault(directory, graph).landmarks());
+
+        Landmarks.compute(graph, new CityBikeCF(graph), 2).writeTo(directory);
+        assertNotNull(RouteComputer.loadDefault(directory, graph).landmarks());
+    }
+
+    private static PointCh pointOf(Graph graph, EdgePoint edgePoint) {
+        Edge edge = Edge.of(graph, edgePoint.edgeId(), edgePoint.fromNodeId(),
+                            graph.edgeTargetNodeId(edgePoint.edgeId()));
+        return edge.pointAt(edgePoint.position());
+    }
+
 }
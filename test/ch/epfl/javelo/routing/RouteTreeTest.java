@@ -0,0 +1,131 @@
+package ch.epfl.javelo.routing;
+
+import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.concurrent.CancellationException;
+import java.util.random.RandomGenerator;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import ch.epfl.javelo.data.Graph;
+import ch.epfl.test.TestGraphs;
+
+class RouteTreeTest {
+
+    private static Graph graph;
+    private static CostFunction costFunction;
+    private static RouteComputer routeComputer;
+
+    @BeforeAll
+    static void initGraph() {
+        graph = TestGraphs.randomGrid(25, 20, newRandom());
+        costFunction = new CityBikeCF(graph);
+        routeComputer = new RouteComputer(graph, costFunction);
+    }
+
+    @Test
+    void treeRoutesAreTheBestRoutes() {
+        RandomGenerator rng = newRandom();
+        int rootNodeId = rng.nextInt(graph.nodeCount());
+        RouteTree forward = routeComputer.forwardTree(rootNodeId);
+        RouteTree backward = routeComputer.backwardTree(rootNodeId);
+        assertTrue(forward.isForward());
+        assertFalse(backward.isForward());
+        for (int i = 0; i < RANDOM_ITERATIONS; i++) {
+            int nodeId = rng.nextInt(graph.nodeCount());
+            if (nodeId == rootNodeId)
+                continue;
+            assertSameCost(routeComputer.bestRouteBetween(rootNodeId, nodeId),
+                           forward.route(nodeId));
+            assertSameCost(routeComputer.bestRouteBetween(nodeId, rootNodeId),
+                           backward.route(nodeId));
+        }
+    }
+
+    @Test
+    void settledNodesAreNotSearchedAgain() {
+        RouteTree tree = routeComputer.forwardTree(0);
+        int nodeId = graph.nodeCount() - 1;
+        tree.route(nodeId);
+        int settledNodeCount = tree.settledNodeCount();
+        assertTrue(settledNodeCount > 0);
+        tree.route(nodeId);
+        tree.route(1);
+        assertEquals(settledNodeCount, tree.settledNodeCount());
+    }
+
+    @Test
+    void resetTreeHasNewRoot() {
+        RouteTree tree = routeComputer.backwardTree(0);
+        tree.route(graph.nodeCount() - 1);
+        int rootNodeId = graph.nodeCount() / 2;
+        tree.reset(rootNodeId);
+        assertEquals(rootNodeId, tree.rootNodeId());
+        assertEquals(0, tree.settledNodeCount());
+        assertSameCost(routeComputer.bestRouteBetween(0, rootNodeId), tree.route(0));
+        assertThrows(IllegalArgumentException.class, () -> tree.route(rootNodeId));
+    }
+
+    @Test
+    void treeSearchesAgainAfterARouteComputationOfItsThread() {
+        RouteTree tree = routeComputer.forwardTree(0);
+        int nodeId = graph.nodeCount() - 1;
+        tree.route(nodeId);
+        assertTrue(tree.settledNodeCount() > 0);
+        // The route computation reuses the forward workspace of the tree
+        Route expected = routeComputer.bestRouteBetween(0, nodeId);
+        assertEquals(0, tree.settledNodeCount());
+        assertSameCost(expected, tree.route(nodeId));
+        assertTrue(tree.settledNodeCount() > 0);
+    }
+
+    @Test
+    void interruptedTreeStaysUsable() {
+        RouteTree tree = routeComputer.forwardTree(0);
+        int nodeId = graph.nodeCount() - 1;
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(CancellationException.class, () -> tree.route(nodeId));
+        } finally {
+            Thread.interrupted();
+        }
+        assertSameCost(routeComputer.bestRouteBetween(0, nodeId), tree.route(nodeId));
+    }
+
+    private static void assertSameCost(Route expected, Route actual) {
+        if (expected == null) {
+            assertNull(actual);
+            return;
+        }
+        assertNotNull(actual);
+        double expectedCost = routeCost(expected);
+        assertEquals(expectedCost, routeCost(actual), 1e-4 * expectedCost);
+        assertEquals(expected.edges().get(0).fromNodeId(), actual.edges().get(0).fromNodeId());
+        assertEquals(expected.pointAt(expected.length()), actual.pointAt(actual.length()));
+    }
+
+    /**
+     * Computes the total cost of a route, using the cheapest edge between each pair of nodes.
+     */
+    private static double routeCost(Route route) {
+        double cost = 0;
+        for (Edge edge : route.edges()) {
+            double edgeCost = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < graph.nodeOutDegree(edge.fromNodeId()); i++) {
+                int edgeId = graph.nodeOutEdgeId(edge.fromNodeId(), i);
+                if (graph.edgeTargetNodeId(edgeId) == edge.toNodeId())
+                    edgeCost = Math.min(edgeCost,
+                            costFunction.costFactor(edge.fromNodeId(), edgeId)
+                                    * graph.edgeLength(edgeId));
+            }
+            cost += edgeCost;
+        }
+        return cost;
+    }
+
+}
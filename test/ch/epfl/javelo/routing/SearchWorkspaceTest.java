@@ -0,0 +1,67 @@
+package ch.epfl.javelo.routing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+class SearchWorkspaceTest {
+
+    @Test
+    void searchWorkspaceNodesAreInitiallyUnreached() {
+        SearchWorkspace workspace = new SearchWorkspace(10);
+        workspace.reset();
+        for (int nodeId = 0; nodeId < 10; nodeId++) {
+            assertFalse(workspace.isReached(nodeId));
+            assertFalse(workspace.isSettled(nodeId));
+            assertEquals(Float.POSITIVE_INFINITY, workspace.distance(nodeId));
+        }
+    }
+
+    @Test
+    void searchWorkspaceRecordsDistancesAndPrevious() {
+        SearchWorkspace workspace = new SearchWorkspace(10);
+        workspace.reset();
+        workspace.update(3, 0, -1);
+        workspace.update(5, 12.5f, (2 << 28) | 3);
+        assertTrue(workspace.isReached(3));
+        assertFalse(workspace.isSettled(3));
+        assertEquals(12.5f, workspace.distance(5));
+        assertEquals(-1, workspace.previous(3));
+        assertEquals((2 << 28) | 3, workspace.previous(5));
+        workspace.settle(3);
+        assertTrue(workspace.isReached(3));
+        assertTrue(workspace.isSettled(3));
+        assertEquals(0, workspace.distance(3));
+    }
+
+    @Test
+    void searchWorkspaceResetForgetsPreviousSearch() {
+        SearchWorkspace workspace = new SearchWorkspace(10);
+        workspace.reset();
+        workspace.update(1, 4, -1);
+        workspace.settle(1);
+        workspace.update(2, 8, 1);
+        workspace.heap().addOrDecreaseKey(2, 8);
+        workspace.reset();
+        assertFalse(workspace.isReached(1));
+        assertFalse(workspace.isSettled(1));
+        assertFalse(workspace.isReached(2));
+        assertEquals(Float.POSITIVE_INFINITY, workspace.distance(1));
+        assertTrue(workspace.heap().isEmpty());
+        assertFalse(workspace.heap().contains(2));
+    }
+
+    @Test
+    void searchWorkspaceSurvivesManyResets() {
+        SearchWorkspace workspace = new SearchWorkspace(4);
+        for (int i = 0; i < 100_000; i++) {
+            workspace.reset();
+            assertFalse(workspace.isReached(i % 4));
+            workspace.update(i % 4, i, -1);
+            workspace.settle(i % 4);
+            assertTrue(workspace.isSettled(i % 4));
+        }
+    }
+
+}
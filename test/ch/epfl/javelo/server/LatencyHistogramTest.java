@@ -0,0 +1,46 @@
+package ch.epfl.javelo.server;
+
+import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+    @Test
+    void latencyHistogramGivesPercentilesWithinTheirBucket() {
+        var rng = newRandom();
+        var histogram = new LatencyHistogram();
+        assertEquals(0, histogram.percentile(50));
+        var latencies = new long[RANDOM_ITERATIONS];
+        for (int i = 0; i < RANDOM_ITERATIONS; i++) {
+            latencies[i] = rng.nextLong(1L << rng.nextInt(1, 40));
+            histogram.record(latencies[i]);
+        }
+        Arrays.sort(latencies);
+        assertEquals(RANDOM_ITERATIONS, histogram.count());
+        for (double percentile : new double[] {1, 10, 50, 90, 99, 100}) {
+            var expected = latencies[(int) Math.ceil(percentile / 100 * RANDOM_ITERATIONS) - 1];
+            var actual = histogram.percentile(percentile);
+            assertTrue(expected <= actual && actual <= expected * 1.125, percentile + "%");
+        }
+    }
+
+    @Test
+    void latencyHistogramIsExactForSmallLatencies() {
+        var histogram = new LatencyHistogram();
+        for (int i = 0; i < 8; i++)
+            histogram.record(i);
+        assertEquals(3, histogram.percentile(50));
+        assertEquals(7, histogram.percentile(100));
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.percentile(100));
+        assertThrows(IllegalArgumentException.class, () -> histogram.record(-1));
+        assertThrows(IllegalArgumentException.class, () -> histogram.percentile(0));
+        assertThrows(IllegalArgumentException.class, () -> histogram.percentile(101));
+    }
+
+}
@@ -0,0 +1,105 @@
+package ch.epfl.javelo.server;
+
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Locale;
+import org.junit.jupiter.api.Test;
+import ch.epfl.javelo.data.Graph;
+import ch.epfl.javelo.projection.PointCh;
+import ch.epfl.javelo.routing.CityBikeCF;
+import ch.epfl.javelo.routing.Route;
+import ch.epfl.javelo.routing.RouteCache;
+import ch.epfl.javelo.routing.RouteComputer;
+import ch.epfl.test.TestGraphs;
+
+class RoutingServerTest {
+
+    @Test
+    void routingServerServesRoutesAndStatistics() throws IOException, InterruptedException {
+        var graph = TestGraphs.randomGrid(20, 15, newRandom());
+        var routeComputer = new RouteComputer(graph, new CityBikeCF(graph));
+        var server = new RoutingServer(graph, routeComputer, new RouteCache(1 << 20));
+        server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 2);
+        try {
+            var client = HttpClient.newHttpClient();
+            int startNodeId = -1, endNodeId = -1;
+            Route route = null;
+            // Two nodes connected by a route
+            for (int nodeId = 1; route == null; nodeId++) {
+                startNodeId = 0;
+                endNodeId = nodeId;
+                route = routeComputer.bestRouteBetween(startNodeId, endNodeId);
+            }
+            var query = "?from=" + latLon(graph, startNodeId) + "&to=" + latLon(graph, endNodeId);
+
+            var response = get(client, server, "/route" + query);
+            assertEquals(200, response.statusCode());
+            assertTrue(response.body().startsWith(
+                    String.format(Locale.ROOT, "{\"length\":%.1f,", route.length())));
+            assertEquals(route.points().size(), response.body().split("\\],\\[").length);
+
+            response = get(client, server, "/elevation" + query);
+            assertEquals(200, response.statusCode());
+            assertTrue(response.body().contains("\"elevations\":["));
+
+            response = get(client, server, "/gpx" + query);
+            assertEquals(200, response.statusCode());
+            assertEquals(route.points().size(), response.body().split("<rtept").length - 1);
+
+            assertEquals(400, get(client, server, "/route?from=46.5,6.6").statusCode());
+            assertEquals(400, get(client, server, "/route?from=a,b&to=46.5,6.6").statusCode());
+            assertEquals(404, get(client, server, "/route?from=47.5,9.5&to=46.5,6.6")
+                    .statusCode());
+            assertEquals(404, get(client, server, "/route/other" + query).statusCode());
+
+            response = get(client, server, "/stats");
+            assertEquals(200, response.statusCode());
+            assertTrue(response.body().startsWith("{\"route\":{\"count\":5,\"p50\":"));
+            assertTrue(response.body().contains("\"gpx\":{\"count\":1,"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    void routingServerAnswersAndCountsUnexpectedErrors() throws IOException, InterruptedException {
+        var graph = TestGraphs.randomGrid(20, 15, newRandom());
+        var routeComputer = new RouteComputer(graph, (nodeId, edgeId) -> {
+            throw new IllegalStateException();
+        });
+        var server = new RoutingServer(graph, routeComputer, new RouteCache(1 << 20));
+        server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 2);
+        try {
+            var client = HttpClient.newHttpClient();
+            var query = "?from=" + latLon(graph, 0) + "&to=" + latLon(graph, 1);
+            assertEquals(500, get(client, server, "/route" + query).statusCode());
+
+            var response = get(client, server, "/stats");
+            assertTrue(response.body().startsWith("{\"route\":{\"count\":1,\"p50\":"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static String latLon(Graph graph, int nodeId) {
+        PointCh point = graph.nodePoint(nodeId);
+        return String.format(Locale.ROOT, "%.8f,%.8f", Math.toDegrees(point.lat()),
+                             Math.toDegrees(point.lon()));
+    }
+
+    private static HttpResponse<String> get(HttpClient client, RoutingServer server, String path)
+            throws IOException, InterruptedException {
+        var uri = URI.create("http://localhost:" + server.port() + path);
+        return client.send(HttpRequest.newBuilder(uri).GET().build(),
+                           HttpResponse.BodyHandlers.ofString());
+    }
+
+}
@@ -0,0 +1,101 @@
+package ch.epfl.test;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.random.RandomGenerator;
+import ch.epfl.javelo.data.Attribute;
+import ch.epfl.javelo.data.AttributeSet;
+import ch.epfl.javelo.data.Graph;
+import ch.epfl.javelo.data.GraphEdges;
+import ch.epfl.javelo.data.GraphNodes;
+import ch.epfl.javelo.data.GraphSectors;
+import ch.epfl.javelo.projection.SwissBounds;
+
+public final class TestGraphs {
+
+    private static final double STEP = 100;
+
+    // Highway of each kind of road, every kind exists as a two-way and a one-way road
+    private static final Attribute[] HIGHWAYS = {Attribute.HIGHWAY_RESIDENTIAL,
+            Attribute.HIGHWAY_CYCLEWAY, Attribute.HIGHWAY_TRACK, Attribute.HIGHWAY_PRIMARY,
+            Attribute.HIGHWAY_SECONDARY, Attribute.HIGHWAY_PATH};
+    private static final int ONEWAY_ATTRIBUTES = 1;
+    private static final int NO_ACCESS_ATTRIBUTES = 2 * HIGHWAYS.length;
+
+    private TestGraphs() {}
+
+    /**
+     * Builds a random graph in memory: a (slightly shaken) grid of {@code width * height} nodes
+     * spaced by about 100 m, all within the first sector, some roads being missing, one-way or
+     * forbidden. Every road is made of two edges, one of them inverted. Edges have no profile.
+     */
+    public static Graph randomGrid(int width, int height, RandomGenerator rng) {
+        int nodeCount = width * height;
+        double[] es = new double[nodeCount];
+        double[] ns = new double[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            es[i] = SwissBounds.MIN_E + STEP * (1 + i % width) + rng.nextDouble(-20, 20);
+            ns[i] = SwissBounds.MIN_N + STEP * (1 + i / width) + rng.nextDouble(-20, 20);
+        }
+
+        // Outgoing edges of each node: {target node, inverted, attributes index}
+        List<List<int[]>> outEdges = new ArrayList<>();
+        for (int i = 0; i < nodeCount; i++)
+            outEdges.add(new ArrayList<>());
+        for (int i = 0; i < nodeCount; i++) {
+            int[] neighbours = {i % width + 1 < width ? i + 1 : -1,
+                    i + width < nodeCount ? i + width : -1};
+            for (int neighbour : neighbours) {
+                if (neighbour == -1 || rng.nextDouble() < 0.1)
+                    continue;
+                int attributes = rng.nextDouble() < 0.05
+                        ? NO_ACCESS_ATTRIBUTES
+                        : 2 * rng.nextInt(HIGHWAYS.length)
+                                + (rng.nextDouble() < 0.15 ? ONEWAY_ATTRIBUTES : 0);
+                outEdges.get(i).add(new int[] {neighbour, 0, attributes});
+                outEdges.get(neighbour).add(new int[] {i, 1, attributes});
+            }
+        }
+
+        int edgeCount = outEdges.stream().mapToInt(List::size).sum();
+        IntBuffer nodes = IntBuffer.allocate(3 * nodeCount);
+        ByteBuffer edges = ByteBuffer.allocate(10 * edgeCount);
+        int edgeId = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            nodes.put((int) Math.round(es[i] * 16));
+            nodes.put((int) Math.round(ns[i] * 16));
+            nodes.put((outEdges.get(i).size() << 28) | edgeId);
+            for (int[] edge : outEdges.get(i)) {
+                int target = edge[0];
+                double length = Math.hypot(es[target] - es[i], ns[target] - ns[i]);
+                edges.putInt(edge[1] == 1 ? ~target : target);
+                edges.putShort((short) Math.round(length * 16));
+                edges.putShort((short) rng.nextInt(8 * 16));
+                edges.putShort((short) edge[2]);
+                edgeId++;
+            }
+        }
+
+        // All nodes are in the first sector, the other ones are empty
+        ByteBuffer sectors = ByteBuffer.allocate(128 * 128 * 6);
+        sectors.putInt(0).putShort((short) nodeCount);
+        while (sectors.hasRemaining())
+            sectors.putInt(nodeCount).putShort((short) 0);
+
+        List<AttributeSet> attributeSets = new ArrayList<>();
+        for (Attribute highway : HIGHWAYS) {
+            attributeSets.add(AttributeSet.of(highway));
+            attributeSets.add(AttributeSet.of(highway, Attribute.ONEWAY_YES));
+        }
+        attributeSets.add(AttributeSet.of(Attribute.HIGHWAY_RESIDENTIAL, Attribute.ACCESS_NO));
+
+        return new Graph(new GraphNodes(nodes.flip()), new GraphSectors(sectors.flip()),
+                         new GraphEdges(edges.flip(), IntBuffer.allocate(edgeCount),
+                                        ShortBuffer.allocate(0)),
+                         attributeSets);
+    }
+
+}